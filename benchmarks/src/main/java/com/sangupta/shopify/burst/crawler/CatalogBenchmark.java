@@ -0,0 +1,141 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * Benchmarks loading a catalogue of 100k images from JSON, and from a
+ * {@link BurstCatalogWriter} catalogue either fully decoded or visiting only
+ * home URLs.
+ * 
+ * @author sangupta
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogBenchmark {
+
+	private static final int IMAGES = 100000;
+
+	private static final Type IMAGE_LIST = new TypeToken<List<BurstImage>>() {
+	}.getType();
+
+	private File json;
+
+	private File catalog;
+
+	@Setup
+	public void setup() throws IOException {
+		final List<BurstImage> images = new ArrayList<>();
+		for (int index = 0; index < IMAGES; index++) {
+			BurstImage image = new BurstImage();
+			image.homeUrl = "https://burst.shopify.com/photos/photo-number-" + index;
+			image.url = image.homeUrl + "/download";
+			image.title = "Photo number " + index;
+			image.description = "Free stock photo number " + index + " of a scenic view";
+			image.author = "Author " + (index % 500);
+			image.authorUrl = "https://burst.shopify.com/@author-" + (index % 500);
+			image.license = "Shopify Burst License";
+			image.licenseUrl = "https://burst.shopify.com/licenses/shopify-some-rights-reserved";
+			for (int tag = 0; tag < 5; tag++) {
+				image.tags.add("tag-" + ((index + tag * 7) % 2000));
+			}
+
+			images.add(image);
+		}
+
+		this.json = File.createTempFile("burst-catalog", ".json");
+		try (Writer writer = new OutputStreamWriter(new FileOutputStream(this.json), StandardCharsets.UTF_8)) {
+			new Gson().toJson(images, writer);
+		}
+
+		this.catalog = File.createTempFile("burst-catalog", ".bin");
+		try (BurstCatalogWriter writer = new BurstCatalogWriter(this.catalog)) {
+			for (BurstImage image : images) {
+				writer.write(image);
+			}
+		}
+
+		System.out.println("JSON: " + this.json.length() + " bytes, catalogue: " + this.catalog.length() + " bytes");
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.json.delete();
+		this.catalog.delete();
+	}
+
+	@Benchmark
+	public List<BurstImage> json() throws IOException {
+		try (Reader reader = new InputStreamReader(new FileInputStream(this.json), StandardCharsets.UTF_8)) {
+			return new Gson().fromJson(reader, IMAGE_LIST);
+		}
+	}
+
+	@Benchmark
+	public List<BurstImage> catalogReadAll() throws IOException {
+		return new BurstCatalogReader(this.catalog).readAll();
+	}
+
+	@Benchmark
+	public void catalogHomeUrls(Blackhole blackhole) throws IOException {
+		BurstCatalogReader.Cursor cursor = new BurstCatalogReader(this.catalog).cursor();
+		while (cursor.next()) {
+			blackhole.consume(cursor.getHomeUrl());
+		}
+	}
+
+}
@@ -0,0 +1,131 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * End-to-end crawl throughput against a {@link StubBurstServer}. Reported
+ * scores are photos crawled per second, with all politeness delays disabled.
+ * The <code>numWorkers</code> parameter only affects crawlers that support
+ * concurrent fetching.
+ * 
+ * @author sangupta
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CrawlThroughputBenchmark {
+
+	private static final int NUM_PHOTOS = 200;
+
+	@Param({ "1", "4" })
+	public int numWorkers;
+
+	private StubBurstServer server;
+
+	private StubHttpService httpService;
+
+	@Setup
+	public void setup() throws IOException {
+		this.server = new StubBurstServer(NUM_PHOTOS, 100, 25);
+		this.server.start();
+
+		this.httpService = new StubHttpService(this.server);
+	}
+
+	@TearDown
+	public void tearDown() {
+		this.server.stop();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_PHOTOS)
+	public void sitemapCrawl(Blackhole blackhole) {
+		BurstSitemapCrawler crawler = new BurstSitemapCrawler(this.options()) {
+
+			@Override
+			protected InputStream openStream(String url) throws IOException {
+				return super.openStream(CrawlThroughputBenchmark.this.httpService.rewrite(url));
+			}
+
+		};
+		crawler.httpService = this.httpService;
+		crawler.crawl(collector(blackhole));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_PHOTOS)
+	public void listingCrawl(Blackhole blackhole) {
+		BurstCrawler crawler = new BurstCrawler(this.options());
+		crawler.setHttpService(this.httpService);
+		crawler.crawl(collector(blackhole));
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(NUM_PHOTOS)
+	public void pipelinedListingCrawl(Blackhole blackhole) {
+		BurstCrawler crawler = new BurstCrawler(this.options().setPipelined(true).setNumListingWorkers(2));
+		crawler.setHttpService(this.httpService);
+		crawler.crawl(collector(blackhole));
+	}
+
+	private BurstCrawlerOptions options() {
+		return new BurstCrawlerOptions().setNumWorkers(this.numWorkers).setDelayBetweenImagesMillis(0).setDelayBetweenPagesMillis(0);
+	}
+
+	private static GenericConsumer<BurstImage> collector(final Blackhole blackhole) {
+		return new GenericConsumer<BurstImage>() {
+
+			@Override
+			public boolean consume(BurstImage image) {
+				blackhole.consume(image);
+				return true;
+			}
+
+		};
+	}
+
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.sangupta.jerry.http.service.impl.DefaultHttpServiceImpl;
+
+/**
+ * An {@link com.sangupta.jerry.http.service.HttpService} that serves text
+ * responses from memory, so that benchmarks measure parsing and not the
+ * network. Any photo page URL not explicitly registered is served the default
+ * photo page.
+ * 
+ * @author sangupta
+ *
+ */
+public class FixtureHttpService extends DefaultHttpServiceImpl {
+
+	/**
+	 * Prefix of all photo page URLs
+	 */
+	private static final String PHOTO_PREFIX = "https://burst.shopify.com/photos/";
+
+	/**
+	 * Registered responses
+	 */
+	private final Map<String, String> responses = new HashMap<>();
+
+	/**
+	 * Response for unregistered photo pages
+	 */
+	private String photoPage;
+
+	/**
+	 * Register a response for given URL.
+	 * 
+	 * @param url     the URL
+	 * 
+	 * @param content the content to respond with
+	 * 
+	 * @return this instance
+	 */
+	public FixtureHttpService serve(String url, String content) {
+		this.responses.put(url, content);
+		return this;
+	}
+
+	/**
+	 * Set the response for all photo pages that are not registered explicitly.
+	 * 
+	 * @param content the photo page HTML
+	 * 
+	 * @return this instance
+	 */
+	public FixtureHttpService servePhotoPages(String content) {
+		this.photoPage = content;
+		return this;
+	}
+
+	@Override
+	public String getTextResponse(String url) {
+		String content = this.responses.get(url);
+		if (content != null) {
+			return content;
+		}
+
+		if (url.startsWith(PHOTO_PREFIX)) {
+			return this.photoPage;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Open the registered response as a stream, for crawlers that stream
+	 * content such as sitemaps.
+	 * 
+	 * @param url the URL
+	 * 
+	 * @return the response bytes as a stream, or <code>null</code> if nothing is
+	 *         registered for the URL
+	 * 
+	 * @throws IOException never, declared for compatibility with
+	 *                     {@link AbstractBurstCrawler#openStream(String)}
+	 */
+	public InputStream openStream(String url) throws IOException {
+		String content = this.getTextResponse(url);
+		if (content == null) {
+			return null;
+		}
+
+		return new ByteArrayInputStream(content.getBytes("UTF-8"));
+	}
+
+}
@@ -0,0 +1,85 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Loads recorded pages used by the benchmarks from the classpath.
+ * 
+ * @author sangupta
+ *
+ */
+public class Fixtures {
+
+	/**
+	 * A recorded Shopify Burst photo page
+	 */
+	public static final String PHOTO_PAGE = "fixtures/photo-page.html";
+
+	/**
+	 * A recorded page of latest photos listing
+	 */
+	public static final String LISTING_PAGE = "fixtures/listing-page.html";
+
+	/**
+	 * The recorded main sitemap index
+	 */
+	public static final String SITEMAP_INDEX = "fixtures/sitemap.xml";
+
+	/**
+	 * A recorded child sitemap listing photo pages
+	 */
+	public static final String PHOTO_SITEMAP = "fixtures/sitemap-photos.xml";
+
+	/**
+	 * Read the fixture as a UTF-8 string.
+	 * 
+	 * @param name the classpath resource name
+	 * 
+	 * @return the contents of the fixture
+	 * 
+	 * @throws IOException if the fixture cannot be read
+	 */
+	public static String read(String name) throws IOException {
+		InputStream stream = Fixtures.class.getClassLoader().getResourceAsStream(name);
+		if (stream == null) {
+			throw new IOException("Fixture not found on classpath: " + name);
+		}
+
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			byte[] buffer = new byte[8192];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+
+			return out.toString("UTF-8");
+		} finally {
+			stream.close();
+		}
+	}
+
+}
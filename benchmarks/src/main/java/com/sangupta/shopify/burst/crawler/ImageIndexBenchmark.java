@@ -0,0 +1,102 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks finding images by tag, author and words among 100k images using
+ * an {@link ImageIndex}, against a linear scan of the list.
+ * 
+ * @author sangupta
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ImageIndexBenchmark {
+
+	private static final int IMAGES = 100000;
+
+	private List<BurstImage> images;
+
+	private ImageIndex index;
+
+	@Setup
+	public void setup() {
+		this.images = new ArrayList<>();
+		this.index = new ImageIndex();
+		for (int id = 0; id < IMAGES; id++) {
+			BurstImage image = new BurstImage();
+			image.homeUrl = "https://burst.shopify.com/photos/photo-" + id;
+			image.title = "Scenic view number " + id + " of " + (id % 3 == 0 ? "mountains" : "the sea");
+			image.description = "Free stock photo of a scenic view";
+			image.author = "Author " + (id % 500);
+			for (int tag = 0; tag < 5; tag++) {
+				image.tags.add("tag-" + ((id + tag * 7) % 2000));
+			}
+
+			this.images.add(image);
+			this.index.add(image);
+		}
+	}
+
+	@Benchmark
+	public List<BurstImage> indexTagAndAuthor() {
+		return this.index.query().tag("tag-42").author("Author 42").find();
+	}
+
+	@Benchmark
+	public List<BurstImage> indexWords() {
+		return this.index.query().words("mountains view").tag("tag-42").find();
+	}
+
+	@Benchmark
+	public List<BurstImage> scanTagAndAuthor() {
+		List<BurstImage> matches = new ArrayList<>();
+		for (BurstImage image : this.images) {
+			if ("Author 42".equalsIgnoreCase(image.author) && image.tags.contains("tag-42")) {
+				matches.add(image);
+			}
+		}
+
+		return matches;
+	}
+
+}
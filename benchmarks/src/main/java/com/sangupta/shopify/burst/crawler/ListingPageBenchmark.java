@@ -0,0 +1,97 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * Benchmarks {@link BurstCrawler#getPhotosFromPage(GenericConsumer, BurstCrawlerOptions, Document)}
+ * over a recorded listing page. Photo pages linked from the listing are served
+ * from memory.
+ * 
+ * @author sangupta
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListingPageBenchmark {
+
+	private static final String LISTING_URL = "https://burst.shopify.com/photos?sort=latest";
+
+	@Param({ "true", "false" })
+	public boolean populateDetails;
+
+	private String listing;
+
+	private FixtureHttpService httpService;
+
+	private BurstCrawlerOptions options;
+
+	@Setup
+	public void setup() throws IOException {
+		this.listing = Fixtures.read(Fixtures.LISTING_PAGE);
+		this.httpService = new FixtureHttpService().servePhotoPages(Fixtures.read(Fixtures.PHOTO_PAGE));
+
+		this.options = new BurstCrawlerOptions();
+		this.options.populateDetails = this.populateDetails;
+	}
+
+	@Benchmark
+	public void getPhotosFromPage(final Blackhole blackhole) {
+		BurstCrawler crawler = new BurstCrawler(this.options);
+		crawler.setHttpService(this.httpService);
+
+		Document doc = Jsoup.parse(this.listing, LISTING_URL);
+		crawler.getPhotosFromPage(new GenericConsumer<BurstImage>() {
+
+			@Override
+			public boolean consume(BurstImage image) {
+				blackhole.consume(image);
+				return true;
+			}
+
+		}, this.options, doc);
+	}
+
+}
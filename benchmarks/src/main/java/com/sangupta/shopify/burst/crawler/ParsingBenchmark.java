@@ -0,0 +1,113 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sangupta.jerry.io.AdvancedStringReader;
+import com.sangupta.jerry.util.GsonUtils;
+
+/**
+ * Benchmarks the individual parsing steps of a photo page: building the JSoup
+ * DOM in {@link AbstractBurstCrawler#populateFromHTML(BurstImage, String)}, and
+ * reading the JSON-LD block either via Gson tree binding or via the streaming
+ * reader used by {@link BurstPageExtractor}. Also measures building the DOM of
+ * a listing page.
+ * 
+ * @author sangupta
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParsingBenchmark {
+
+	private static final String PAGE_URL = "https://burst.shopify.com/photos/pouring-hot-coffee";
+
+	private static final String LISTING_URL = "https://burst.shopify.com/photos?sort=latest";
+
+	private static final String JSON_LD_START = "<script type=\"application/ld+json\">";
+
+	private String html;
+
+	private String json;
+
+	private String listing;
+
+	private BurstSitemapCrawler crawler;
+
+	@Setup
+	public void setup() throws IOException {
+		this.html = Fixtures.read(Fixtures.PHOTO_PAGE);
+		this.json = new AdvancedStringReader(this.html).readBetween(JSON_LD_START, "</script>");
+		this.listing = Fixtures.read(Fixtures.LISTING_PAGE);
+		this.crawler = new BurstSitemapCrawler();
+	}
+
+	@Benchmark
+	public Document parseListingPage() {
+		return Jsoup.parse(this.listing, LISTING_URL);
+	}
+
+	@Benchmark
+	public BurstImage populateFromHTML() {
+		BurstImage image = new BurstImage();
+		image.homeUrl = PAGE_URL;
+
+		this.crawler.populateFromHTML(image, this.html);
+		return image;
+	}
+
+	@Benchmark
+	public BurstJsonLinkedData linkedDataScanAndGson() {
+		String json = new AdvancedStringReader(this.html).readBetween(JSON_LD_START, "</script>");
+		return GsonUtils.getGson().fromJson(json, BurstJsonLinkedData.class);
+	}
+
+	@Benchmark
+	public BurstJsonLinkedData linkedDataGson() {
+		return GsonUtils.getGson().fromJson(this.json, BurstJsonLinkedData.class);
+	}
+
+	@Benchmark
+	public BurstJsonLinkedData linkedDataStreaming() throws IOException {
+		return BurstPageExtractor.readLinkedData(this.json);
+	}
+
+}
@@ -0,0 +1,95 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.sangupta.jerry.io.AdvancedStringReader;
+import com.sangupta.jerry.util.GsonUtils;
+
+/**
+ * Compares the multi-pass extraction of a photo page (JSoup DOM, string scan
+ * for JSON-LD and Gson tree binding) against the single pass
+ * {@link BurstPageExtractor}.
+ * 
+ * @author sangupta
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhotoPageExtractionBenchmark {
+
+	private static final String PAGE_URL = "https://burst.shopify.com/photos/pouring-hot-coffee";
+
+	private String html;
+
+	private BurstSitemapCrawler crawler;
+
+	@Setup
+	public void setup() throws IOException {
+		this.html = Fixtures.read(Fixtures.PHOTO_PAGE);
+		this.crawler = new BurstSitemapCrawler();
+	}
+
+	@Benchmark
+	public BurstImage documentParse() {
+		BurstImage image = new BurstImage();
+		image.homeUrl = PAGE_URL;
+
+		this.crawler.populateFromHTML(image, this.html);
+
+		AdvancedStringReader reader = new AdvancedStringReader(this.html);
+		String json = reader.readBetween("<script type=\"application/ld+json\">", "</script>");
+		BurstJsonLinkedData data = GsonUtils.getGson().fromJson(json, BurstJsonLinkedData.class);
+		this.crawler.populateFromLinkedData(image, data);
+
+		return image;
+	}
+
+	@Benchmark
+	public BurstImage singlePass() {
+		BurstImage image = new BurstImage();
+		image.homeUrl = PAGE_URL;
+
+		BurstJsonLinkedData data = BurstPageExtractor.extract(image, this.html);
+		this.crawler.populateFromLinkedData(image, data);
+
+		return image;
+	}
+
+}
@@ -0,0 +1,109 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * Benchmarks scanning of sitemaps for <code>&lt;loc&gt;</code> entries. All
+ * sitemaps are served from memory and every photo URL is marked as previously
+ * crawled, so no photo page is ever fetched or parsed.
+ * 
+ * @author sangupta
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SitemapScanBenchmark {
+
+	private static final int CHILD_SITEMAPS = 8;
+
+	private FixtureHttpService httpService;
+
+	private BurstCrawlerOptions options;
+
+	@Setup
+	public void setup() throws IOException {
+		final String childSitemap = Fixtures.read(Fixtures.PHOTO_SITEMAP);
+
+		this.httpService = new FixtureHttpService();
+		this.httpService.serve("https://burst.shopify.com/sitemap.xml", Fixtures.read(Fixtures.SITEMAP_INDEX));
+		for (int index = 1; index <= CHILD_SITEMAPS; index++) {
+			this.httpService.serve("https://burst.shopify.com/sitemap-photos-" + index + ".xml", childSitemap);
+		}
+
+		this.options = new BurstCrawlerOptions().setDelayBetweenImagesMillis(0);
+
+		// mark every photo as crawled so only scanning is measured
+		String remaining = childSitemap;
+		int start;
+		while ((start = remaining.indexOf("<loc>")) >= 0) {
+			int end = remaining.indexOf("</loc>", start);
+			this.options.previouslyCrawled.add(remaining.substring(start + 5, end));
+			remaining = remaining.substring(end);
+		}
+	}
+
+	@Benchmark
+	public void scanSitemaps(final Blackhole blackhole) {
+		BurstSitemapCrawler crawler = new BurstSitemapCrawler(this.options) {
+
+			@Override
+			protected InputStream openStream(String url) throws IOException {
+				return SitemapScanBenchmark.this.httpService.openStream(url);
+			}
+
+		};
+		crawler.httpService = this.httpService;
+
+		crawler.crawl(new GenericConsumer<BurstImage>() {
+
+			@Override
+			public boolean consume(BurstImage image) {
+				blackhole.consume(image);
+				return true;
+			}
+
+		});
+	}
+
+}
@@ -0,0 +1,245 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * An in-process HTTP server that mimics the Shopify Burst website. It serves a
+ * main sitemap, synthetic child sitemaps, latest photo listing pages and a
+ * recorded photo page for every photo URL. All URLs in served content use the
+ * real site host so that crawlers treat them as genuine; use
+ * {@link StubHttpService} to route requests to this server.
+ * 
+ * @author sangupta
+ *
+ */
+public class StubBurstServer {
+
+	/**
+	 * The real site host used in all served URLs
+	 */
+	public static final String SITE = "https://burst.shopify.com";
+
+	/**
+	 * Total number of photos on the site
+	 */
+	private final int numPhotos;
+
+	/**
+	 * Number of photos in each child sitemap
+	 */
+	private final int photosPerSitemap;
+
+	/**
+	 * Number of photos on each listing page
+	 */
+	private final int photosPerPage;
+
+	/**
+	 * The photo page HTML served for every photo
+	 */
+	private final byte[] photoPage;
+
+	/**
+	 * The underlying server
+	 */
+	private HttpServer server;
+
+	/**
+	 * Threads serving requests
+	 */
+	private ExecutorService executor;
+
+	public StubBurstServer(int numPhotos, int photosPerSitemap, int photosPerPage) throws IOException {
+		this.numPhotos = numPhotos;
+		this.photosPerSitemap = photosPerSitemap;
+		this.photosPerPage = photosPerPage;
+		this.photoPage = Fixtures.read(Fixtures.PHOTO_PAGE).getBytes("UTF-8");
+	}
+
+	/**
+	 * Start the server on a free local port.
+	 * 
+	 * @throws IOException if the server cannot be started
+	 */
+	public void start() throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		this.executor = Executors.newFixedThreadPool(16);
+
+		this.server.createContext("/", new HttpHandler() {
+
+			@Override
+			public void handle(HttpExchange exchange) throws IOException {
+				serve(exchange);
+			}
+
+		});
+
+		this.server.setExecutor(this.executor);
+		this.server.start();
+	}
+
+	/**
+	 * Stop the server.
+	 */
+	public void stop() {
+		if (this.server != null) {
+			this.server.stop(0);
+			this.executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Base URL of the running server.
+	 * 
+	 * @return the base URL such as <code>http://127.0.0.1:12345</code>
+	 */
+	public String getBaseUrl() {
+		InetSocketAddress address = this.server.getAddress();
+		return "http://" + address.getAddress().getHostAddress() + ":" + address.getPort();
+	}
+
+	/**
+	 * Number of child sitemaps served.
+	 * 
+	 * @return the number of sitemaps
+	 */
+	public int getNumSitemaps() {
+		return (this.numPhotos + this.photosPerSitemap - 1) / this.photosPerSitemap;
+	}
+
+	/**
+	 * Number of listing pages served.
+	 * 
+	 * @return the number of pages
+	 */
+	public int getNumPages() {
+		return (this.numPhotos + this.photosPerPage - 1) / this.photosPerPage;
+	}
+
+	private void serve(HttpExchange exchange) throws IOException {
+		final String path = exchange.getRequestURI().getPath();
+		final String query = exchange.getRequestURI().getQuery();
+
+		try {
+			if ("/sitemap.xml".equals(path)) {
+				respond(exchange, "application/xml", this.mainSitemap().getBytes("UTF-8"));
+				return;
+			}
+
+			if (path.startsWith("/sitemap-photos-") && path.endsWith(".xml")) {
+				int index = Integer.parseInt(path.substring(16, path.length() - 4));
+				respond(exchange, "application/xml", this.childSitemap(index).getBytes("UTF-8"));
+				return;
+			}
+
+			if ("/photos".equals(path)) {
+				respond(exchange, "text/html", this.listingPage(pageFromQuery(query)).getBytes("UTF-8"));
+				return;
+			}
+
+			if (path.startsWith("/photos/")) {
+				respond(exchange, "text/html", this.photoPage);
+				return;
+			}
+
+			exchange.sendResponseHeaders(404, -1);
+		} finally {
+			exchange.close();
+		}
+	}
+
+	private String mainSitemap() {
+		StringBuilder builder = new StringBuilder(256);
+		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<sitemapindex xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+		for (int index = 1; index <= this.getNumSitemaps(); index++) {
+			builder.append("  <sitemap><loc>").append(SITE).append("/sitemap-photos-").append(index).append(".xml</loc></sitemap>\n");
+		}
+
+		return builder.append("</sitemapindex>\n").toString();
+	}
+
+	private String childSitemap(int index) {
+		final int start = (index - 1) * this.photosPerSitemap;
+		final int end = Math.min(this.numPhotos, start + this.photosPerSitemap);
+
+		StringBuilder builder = new StringBuilder(256);
+		builder.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\">\n");
+		for (int photo = start; photo < end; photo++) {
+			builder.append("  <url><loc>").append(SITE).append("/photos/photo-").append(photo).append("</loc><lastmod>2019-03-10T10:15:00+00:00</lastmod></url>\n");
+		}
+
+		return builder.append("</urlset>\n").toString();
+	}
+
+	private String listingPage(int page) {
+		final int start = (page - 1) * this.photosPerPage;
+		final int end = Math.min(this.numPhotos, start + this.photosPerPage);
+
+		StringBuilder builder = new StringBuilder(256);
+		builder.append("<!DOCTYPE html>\n<html><head><title>Latest Free Stock Photos</title></head><body>\n<main role=\"main\">\n");
+		for (int photo = start; photo < end; photo++) {
+			builder.append("<div class=\"tile photo-tile\"><a class=\"photo-tile__image-wrapper\" href=\"/photos/photo-").append(photo).append("\"><img class=\"tile__image\" alt=\"Photo ").append(photo).append("\"></a></div>\n");
+		}
+
+		builder.append("<nav class=\"pagination\"><span class=\"last\"><a href=\"/photos?page=").append(this.getNumPages()).append("&amp;sort=latest\">Last</a></span></nav>\n");
+		return builder.append("</main>\n</body></html>\n").toString();
+	}
+
+	private static int pageFromQuery(String query) {
+		if (query == null) {
+			return 1;
+		}
+
+		for (String pair : query.split("&")) {
+			if (pair.startsWith("page=")) {
+				try {
+					return Math.max(1, Integer.parseInt(pair.substring(5)));
+				} catch (NumberFormatException e) {
+					return 1;
+				}
+			}
+		}
+
+		return 1;
+	}
+
+	private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+		exchange.getResponseHeaders().set("Content-Type", contentType + "; charset=utf-8");
+		exchange.sendResponseHeaders(200, body.length);
+
+		OutputStream out = exchange.getResponseBody();
+		out.write(body);
+		out.close();
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import com.sangupta.jerry.http.WebResponse;
+import com.sangupta.jerry.http.service.impl.DefaultHttpServiceImpl;
+
+/**
+ * An {@link com.sangupta.jerry.http.service.HttpService} that routes all
+ * requests for the Shopify Burst website to a {@link StubBurstServer}, making
+ * real HTTP calls over the loopback interface.
+ * 
+ * @author sangupta
+ *
+ */
+public class StubHttpService extends DefaultHttpServiceImpl {
+
+	/**
+	 * Base URL of the stub server
+	 */
+	private final String baseUrl;
+
+	public StubHttpService(StubBurstServer server) {
+		this.baseUrl = server.getBaseUrl();
+	}
+
+	@Override
+	public String getTextResponse(String url) {
+		return super.getTextResponse(this.rewrite(url));
+	}
+
+	@Override
+	public WebResponse getResponse(String url) {
+		return super.getResponse(this.rewrite(url));
+	}
+
+	/**
+	 * Point the URL at the stub server.
+	 * 
+	 * @param url the URL on the real site
+	 * 
+	 * @return the URL on the stub server
+	 */
+	public String rewrite(String url) {
+		if (url.startsWith(StubBurstServer.SITE)) {
+			return this.baseUrl + url.substring(StubBurstServer.SITE.length());
+		}
+
+		return url;
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Benchmarks lookups of photo URLs, half of them previously seen, against a
+ * {@link HashSet} of {@link String}s and the {@link FingerprintUrlSeenSet}
+ * variants.
+ * 
+ * @author sangupta
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UrlSeenSetBenchmark {
+
+	private static final int LOOKUPS = 10000;
+
+	@Param({ "100000", "1000000" })
+	public int size;
+
+	private Set<String> hashSet;
+
+	private FingerprintUrlSeenSet heap;
+
+	private FingerprintUrlSeenSet offHeap;
+
+	private FingerprintUrlSeenSet bloom;
+
+	private String[] lookups;
+
+	@Setup
+	public void setup() {
+		this.hashSet = new HashSet<>();
+		this.heap = new FingerprintUrlSeenSet(this.size);
+		this.offHeap = FingerprintUrlSeenSet.offHeap(this.size);
+		this.bloom = new FingerprintUrlSeenSet(this.size).withBloomFilter(0.01);
+
+		for (int index = 0; index < this.size; index++) {
+			String url = url(index);
+			this.hashSet.add(url);
+			this.heap.add(url);
+			this.offHeap.add(url);
+			this.bloom.add(url);
+		}
+
+		// every other lookup misses
+		this.lookups = new String[LOOKUPS];
+		for (int index = 0; index < LOOKUPS; index++) {
+			int id = (int) ((index * 2654435761L) % this.size);
+			this.lookups[index] = url(index % 2 == 0 ? id : this.size + id);
+		}
+	}
+
+	@Benchmark
+	public void hashSet(Blackhole blackhole) {
+		for (String url : this.lookups) {
+			blackhole.consume(this.hashSet.contains(url));
+		}
+	}
+
+	@Benchmark
+	public void fingerprintHeap(Blackhole blackhole) {
+		lookup(this.heap, blackhole);
+	}
+
+	@Benchmark
+	public void fingerprintOffHeap(Blackhole blackhole) {
+		lookup(this.offHeap, blackhole);
+	}
+
+	@Benchmark
+	public void fingerprintBloom(Blackhole blackhole) {
+		lookup(this.bloom, blackhole);
+	}
+
+	private void lookup(UrlSeenSet set, Blackhole blackhole) {
+		for (String url : this.lookups) {
+			blackhole.consume(set.contains(url));
+		}
+	}
+
+	private static String url(int index) {
+		return "https://burst.shopify.com/photos/photo-" + index;
+	}
+
+}
@@ -21,23 +21,35 @@
 
 package com.sangupta.shopify.burst.crawler;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sangupta.jerry.consume.GenericConsumer;
 import com.sangupta.jerry.http.service.HttpService;
-import com.sangupta.jerry.io.AdvancedStringReader;
 import com.sangupta.jerry.util.AssertUtils;
-import com.sangupta.jerry.util.GsonUtils;
 
 /**
  * Abstract crawler implementation for Shopify Burst. Provides common code
@@ -64,6 +76,64 @@ public abstract class AbstractBurstCrawler {
 	 */
 	protected final BurstCrawlerOptions options;
 
+	/**
+	 * Crawl state for incremental crawls, <code>null</code> if disabled or not
+	 * crawling
+	 */
+	protected CrawlStateStore crawlState;
+
+	/**
+	 * HTTP response cache, created on first use if configured
+	 */
+	private HttpCache httpCache;
+
+	/**
+	 * Rate limiter shared by all fetches, created on first use if configured
+	 */
+	private AdaptiveRateLimiter rateLimiter;
+
+	/**
+	 * Deduplicates values repeating across images, <code>null</code> if
+	 * disabled
+	 */
+	protected final StringInterner interner;
+
+	/**
+	 * Rules to extract image details and listing links with, compiled once
+	 */
+	protected final ExtractionPlan extraction;
+
+	/**
+	 * Backend for direct fetches when none is configured
+	 */
+	private final DirectFetchBackend defaultFetchBackend;
+
+	/**
+	 * Limits retries across all fetches of the crawler
+	 */
+	private final RetryBudget retryBudget;
+
+	/**
+	 * Metrics of all crawls made by this crawler
+	 */
+	protected final CrawlMetrics metrics = new CrawlMetrics();
+
+	/**
+	 * Runs the {@link BurstCrawlerOptions#metricsReporter} while crawling
+	 */
+	private ScheduledExecutorService metricsReporting;
+
+	/**
+	 * Number of {@link #beginCrawl()} calls not yet matched by
+	 * {@link #endCrawl()}
+	 */
+	private int crawlDepth;
+
+	/**
+	 * Time the last checkpoint was saved
+	 */
+	private long lastCheckpointMillis;
+
 	/**
 	 * Construct an instance using the provided {@link BurstCrawlerOptions}.
 	 * 
@@ -75,6 +145,10 @@ public abstract class AbstractBurstCrawler {
 		}
 
 		this.options = options;
+		this.interner = options.internValues ? new StringInterner() : null;
+		this.extraction = (options.extractionRules != null ? options.extractionRules : ExtractionRules.defaults()).compile();
+		this.defaultFetchBackend = new DirectFetchBackend(options);
+		this.retryBudget = new RetryBudget(options.retryBudgetRatio);
 	}
 
 	/**
@@ -113,6 +187,668 @@ public abstract class AbstractBurstCrawler {
 		return images;
 	}
 
+	/**
+	 * Crawl on a background thread, returning images as they are read from the
+	 * {@link CrawlIterator}. At most <code>bufferSize</code> images wait to be
+	 * read; beyond that the crawl waits for the reader. The iterator must be
+	 * closed if it is not read to the end; images still buffered then are
+	 * dropped, although recorded as crawled. A <code>bufferSize</code> of
+	 * <code>0</code> hands each image over only as it is read.
+	 * 
+	 * @param bufferSize the number of images that may wait to be read
+	 * 
+	 * @return the {@link CrawlIterator}
+	 */
+	public CrawlIterator crawlIterator(int bufferSize) {
+		final CrawlIterator iterator = new CrawlIterator(this, bufferSize);
+		iterator.start();
+		return iterator;
+	}
+
+	/**
+	 * Return the metrics of all crawls made by this crawler.
+	 * 
+	 * @return the {@link CrawlMetrics}
+	 */
+	public CrawlMetrics getMetrics() {
+		return this.metrics;
+	}
+
+	/**
+	 * Prepare for a crawl: open the crawl state, if configured, and start
+	 * reporting metrics. Implementations call this when a crawl starts. Calls
+	 * nested within a crawl that has already begun do nothing.
+	 */
+	protected void beginCrawl() {
+		if (this.crawlDepth++ > 0) {
+			return;
+		}
+
+		if (this.options.registerMetricsMBean) {
+			this.metrics.register(this.getCrawlerName() + "@" + Integer.toHexString(System.identityHashCode(this)));
+		}
+
+		final MetricsReporter reporter = this.options.metricsReporter;
+		if (reporter != null && this.options.metricsReportIntervalMillis > 0) {
+			this.metricsReporting = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "burst-metrics-reporter");
+					thread.setDaemon(true);
+					return thread;
+				}
+
+			});
+
+			final long interval = this.options.metricsReportIntervalMillis;
+			this.metricsReporting.scheduleAtFixedRate(new Runnable() {
+
+				@Override
+				public void run() {
+					reporter.report(metrics);
+				}
+
+			}, interval, interval, TimeUnit.MILLISECONDS);
+		}
+
+		this.openCrawlState();
+	}
+
+	/**
+	 * Clean up after a crawl: close the crawl state and make a final report of
+	 * metrics. Implementations call this when a crawl ends. Calls matching a
+	 * nested {@link #beginCrawl()} do nothing.
+	 */
+	protected void endCrawl() {
+		if (--this.crawlDepth > 0) {
+			return;
+		}
+
+		this.closeCrawlState();
+
+		if (this.metricsReporting != null) {
+			this.metricsReporting.shutdownNow();
+			this.metricsReporting = null;
+		}
+
+		if (this.options.metricsReporter != null) {
+			this.options.metricsReporter.report(this.metrics);
+		}
+
+		this.metrics.unregister();
+	}
+
+	/**
+	 * Open the {@link CrawlStateStore} if one has been configured via
+	 * {@link BurstCrawlerOptions#crawlStateFile}. Called from
+	 * {@link #beginCrawl()}.
+	 */
+	protected void openCrawlState() {
+		if (this.options.crawlStateFile == null) {
+			return;
+		}
+
+		try {
+			this.crawlState = new CrawlStateStore(this.options.crawlStateFile);
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to open crawl state file: " + this.options.crawlStateFile, e);
+		}
+	}
+
+	/**
+	 * Close the {@link CrawlStateStore}, if open. Called from
+	 * {@link #endCrawl()}.
+	 */
+	protected void closeCrawlState() {
+		if (this.crawlState == null) {
+			return;
+		}
+
+		try {
+			this.crawlState.close();
+		} catch (IOException e) {
+			LOGGER.error("Unable to close crawl state file", e);
+		}
+
+		this.crawlState = null;
+	}
+
+	/**
+	 * Read the checkpoint to resume from, if one has been configured via
+	 * {@link BurstCrawlerOptions#checkpointFile} and was saved by a crawler of
+	 * the same type.
+	 * 
+	 * @return the {@link CrawlCheckpoint}, or <code>null</code> if the crawl
+	 *         should start over
+	 */
+	protected CrawlCheckpoint resumeCheckpoint() {
+		this.lastCheckpointMillis = System.currentTimeMillis();
+		if (this.options.checkpointFile == null || !this.options.resumeFromCheckpoint) {
+			return null;
+		}
+
+		CrawlCheckpoint checkpoint = CrawlCheckpoint.load(this.options.checkpointFile);
+		if (checkpoint == null) {
+			return null;
+		}
+
+		if (!this.getCrawlerName().equals(checkpoint.crawler)) {
+			LOGGER.warn("Ignoring crawl checkpoint saved by {}", checkpoint.crawler);
+			return null;
+		}
+
+		LOGGER.info("Resuming crawl from checkpoint saved at {}", new Date(checkpoint.savedAt));
+		return checkpoint;
+	}
+
+	/**
+	 * Check if it is time to save a checkpoint.
+	 * 
+	 * @return <code>true</code> if a checkpoint file is configured and the
+	 *         checkpoint interval has passed since the last one
+	 */
+	protected boolean isCheckpointDue() {
+		return this.options.checkpointFile != null
+				&& System.currentTimeMillis() - this.lastCheckpointMillis >= this.options.checkpointIntervalMillis;
+	}
+
+	/**
+	 * Save the checkpoint to {@link BurstCrawlerOptions#checkpointFile}, if
+	 * configured. Failures are logged, as the crawl itself may go on.
+	 * 
+	 * @param checkpoint the {@link CrawlCheckpoint} to save
+	 */
+	protected void saveCheckpoint(CrawlCheckpoint checkpoint) {
+		if (this.options.checkpointFile == null) {
+			return;
+		}
+
+		checkpoint.crawler = this.getCrawlerName();
+		checkpoint.savedAt = System.currentTimeMillis();
+		try {
+			checkpoint.save(this.options.checkpointFile);
+			LOGGER.debug("Saved crawl checkpoint to {}", this.options.checkpointFile);
+		} catch (IOException e) {
+			LOGGER.error("Unable to save crawl checkpoint to: " + this.options.checkpointFile, e);
+		}
+
+		this.lastCheckpointMillis = checkpoint.savedAt;
+	}
+
+	/**
+	 * Remove the checkpoint once a crawl has completed, so that the next crawl
+	 * starts over.
+	 */
+	protected void clearCheckpoint() {
+		final File file = this.options.checkpointFile;
+		if (file != null && file.exists() && !file.delete()) {
+			LOGGER.warn("Unable to delete crawl checkpoint: {}", file);
+		}
+	}
+
+	/**
+	 * Return the simple name of this crawler's class, or of the class it
+	 * extends when anonymous.
+	 */
+	private String getCrawlerName() {
+		String name = this.getClass().getSimpleName();
+		if (name.isEmpty()) {
+			name = this.getClass().getSuperclass().getSimpleName();
+		}
+
+		return name;
+	}
+
+	/**
+	 * Check if the photo page needs to be fetched in this crawl. Always
+	 * <code>true</code> unless the crawl is incremental.
+	 * 
+	 * @param url        the photo page URL
+	 * 
+	 * @param lastmod    the sitemap <code>lastmod</code>, may be
+	 *                   <code>null</code>
+	 * 
+	 * @param changefreq the sitemap <code>changefreq</code>, may be
+	 *                   <code>null</code>
+	 * 
+	 * @return <code>true</code> if the page should be fetched
+	 */
+	protected boolean isDue(String url, String lastmod, String changefreq) {
+		if (this.crawlState == null) {
+			return true;
+		}
+
+		boolean due = this.crawlState.isDue(url, lastmod, changefreq);
+		if (!due) {
+			LOGGER.debug("URL unchanged since last crawl, skipping: {}", url);
+		}
+
+		return due;
+	}
+
+	/**
+	 * Fetch the photo page. Changed images must be recorded in the crawl state
+	 * via {@link #recordPhoto(String, String, BurstImage)} once they have been
+	 * handed over to the collector, so that an image lost on the way is fetched
+	 * again in the next crawl.
+	 * 
+	 * @param url the photo page URL
+	 * 
+	 * @return the {@link BurstImage}, or <code>null</code> if it could not be
+	 *         fetched
+	 */
+	protected BurstImage fetchPhoto(String url) {
+		return this.getBurstImageFromURL(url);
+	}
+
+	/**
+	 * Check if a fetched photo is unchanged since the last crawl, in which case
+	 * it is recorded in the crawl state right away as there is nothing to hand
+	 * over. Always <code>false</code> unless the crawl is incremental.
+	 * 
+	 * @param url     the photo page URL
+	 * 
+	 * @param lastmod the sitemap <code>lastmod</code>, may be <code>null</code>
+	 * 
+	 * @param image   the fetched {@link BurstImage}
+	 * 
+	 * @return <code>true</code> if the image need not be handed over
+	 */
+	protected boolean isUnchanged(String url, String lastmod, BurstImage image) {
+		if (this.crawlState == null || this.crawlState.isChanged(url, image)) {
+			return false;
+		}
+
+		LOGGER.debug("Image details unchanged since last crawl: {}", url);
+		this.crawlState.record(url, lastmod, image);
+		return true;
+	}
+
+	/**
+	 * Record a photo in the crawl state, if any, after it has been handed over
+	 * to the collector.
+	 * 
+	 * @param url     the photo page URL
+	 * 
+	 * @param lastmod the sitemap <code>lastmod</code>, may be <code>null</code>
+	 * 
+	 * @param image   the {@link BurstImage} handed over
+	 */
+	protected void recordPhoto(String url, String lastmod, BurstImage image) {
+		if (this.crawlState != null) {
+			this.crawlState.record(url, lastmod, image);
+		}
+	}
+
+	/**
+	 * Return the {@link FetchBackend} to make fetches with: the one configured
+	 * via {@link BurstCrawlerOptions#fetchBackend}, or a
+	 * {@link UrlConnectionFetchBackend} when direct connections are asked for,
+	 * or the HTTP cache or the adaptive rate limiter is configured, as they need
+	 * request and response headers.
+	 * 
+	 * @return the {@link FetchBackend}, or <code>null</code> if fetches go
+	 *         through the {@link HttpService}
+	 */
+	protected FetchBackend getFetchBackend() {
+		if (this.options.fetchBackend != null) {
+			return this.options.fetchBackend;
+		}
+
+		if (this.options.directConnections || this.getHttpCache() != null || this.getRateLimiter() != null) {
+			return this.defaultFetchBackend;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Open a connection to the given URL, for fetches made over direct
+	 * connections when no {@link FetchBackend} is configured. Gzip encoding is
+	 * requested from the server, so the body may need to be decompressed.
+	 * Override to customize how connections are made.
+	 * 
+	 * @param url the URL to connect to
+	 * 
+	 * @return the {@link HttpURLConnection}, not yet connected
+	 * 
+	 * @throws IOException if the URL cannot be opened
+	 */
+	protected HttpURLConnection openConnection(String url) throws IOException {
+		return this.defaultFetchBackend.openDirect(url);
+	}
+
+	/**
+	 * Open a streaming connection to the given URL, for responses such as
+	 * sitemaps that are too large to be read fully in memory. When an HTTP cache
+	 * is configured the response is revalidated, and served from the cache if
+	 * not modified.
+	 * 
+	 * @param url the URL to open
+	 * 
+	 * @return the response body as an {@link InputStream}, possibly gzipped, or
+	 *         <code>null</code> if the server did not respond with a success code
+	 * 
+	 * @throws IOException if the connection fails
+	 */
+	protected InputStream openStream(String url) throws IOException {
+		ConditionalResponse response = this.fetchConditional(url);
+		if (response == null) {
+			return null;
+		}
+
+		return response.body;
+	}
+
+	/**
+	 * Fetch the text content of the URL through the {@link FetchBackend}, if
+	 * any, or through the {@link HttpService} otherwise. Content is assumed to
+	 * be UTF-8.
+	 * 
+	 * @param url the URL to fetch
+	 * 
+	 * @return the content, or <code>null</code> if it could not be fetched
+	 */
+	protected String fetchText(String url) {
+		if (this.getFetchBackend() == null) {
+			return this.getTextResponse(url);
+		}
+
+		try {
+			ConditionalResponse response = this.fetchConditional(url);
+			if (response == null) {
+				return null;
+			}
+
+			return readText(response.body);
+		} catch (IOException e) {
+			LOGGER.debug("Unable to fetch url: {}", url);
+			return null;
+		}
+	}
+
+	/**
+	 * Fetch text content through the {@link HttpService}, recording metrics.
+	 */
+	private String getTextResponse(String url) {
+		final long start = System.nanoTime();
+		final String text = this.httpService.getTextResponse(url);
+		if (text == null) {
+			this.metrics.recordError("fetch-failed");
+			return null;
+		}
+
+		this.metrics.recordFetch(System.nanoTime() - start, Streams.utf8Length(text));
+		return text;
+	}
+
+	/**
+	 * Return the HTTP cache, opening it on first use.
+	 * 
+	 * @return the {@link HttpCache}, or <code>null</code> if not configured
+	 */
+	protected synchronized HttpCache getHttpCache() {
+		if (this.httpCache == null && this.options.httpCacheFolder != null) {
+			try {
+				this.httpCache = new HttpCache(this.options.httpCacheFolder, this.options.httpCacheMaxBytes);
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to open HTTP cache in: " + this.options.httpCacheFolder, e);
+			}
+		}
+
+		return this.httpCache;
+	}
+
+	/**
+	 * Return the adaptive rate limiter, creating it on first use. It is kept
+	 * across crawls so that the rate learnt is not lost.
+	 * 
+	 * @return the {@link AdaptiveRateLimiter}, or <code>null</code> if not
+	 *         configured
+	 */
+	protected synchronized AdaptiveRateLimiter getRateLimiter() {
+		if (this.rateLimiter == null && this.options.adaptiveRateLimit) {
+			this.rateLimiter = new AdaptiveRateLimiter(this.options, this.metrics);
+		}
+
+		return this.rateLimiter;
+	}
+
+	/**
+	 * Return the fixed politeness delay to use. The delay is dropped when the
+	 * adaptive rate limiter paces fetches instead.
+	 * 
+	 * @param millis the configured delay
+	 * 
+	 * @return the delay to use, in millis
+	 */
+	protected long politenessDelay(long millis) {
+		return this.getRateLimiter() == null ? millis : 0;
+	}
+
+	/**
+	 * Response of a conditional request
+	 */
+	static class ConditionalResponse {
+
+		/**
+		 * The cached entry the request was validated against, if any
+		 */
+		final HttpCache.Entry cached;
+
+		/**
+		 * Whether the server responded with <code>304 Not Modified</code>
+		 */
+		final boolean notModified;
+
+		/**
+		 * The raw body, from the network or from the cache
+		 */
+		final InputStream body;
+
+		ConditionalResponse(HttpCache.Entry cached, boolean notModified, InputStream body) {
+			this.cached = cached;
+			this.notModified = notModified;
+			this.body = body;
+		}
+
+	}
+
+	/**
+	 * Fetch the URL through the {@link FetchBackend}, or a
+	 * {@link UrlConnectionFetchBackend} if none, sending validators from the
+	 * HTTP cache if there is an entry for it. Fresh responses are cached as they
+	 * are read.
+	 * 
+	 * @param url the URL to fetch
+	 * 
+	 * @return the response, or <code>null</code> if the server did not respond
+	 *         with a success code
+	 * 
+	 * @throws IOException if the connection fails
+	 */
+	ConditionalResponse fetchConditional(String url) throws IOException {
+		final HttpCache cache = this.getHttpCache();
+		final HttpCache.Entry cached = cache == null ? null : cache.get(url);
+
+		final FetchResponse response = this.fetch(url, cached);
+		if (response.getStatusCode() == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+			response.close();
+
+			InputStream body = cache.openBody(url);
+			if (body != null) {
+				LOGGER.debug("Not modified, using cached response for url: {}", url);
+				return new ConditionalResponse(cached, true, body);
+			}
+
+			// evicted meanwhile, fetch afresh
+			return this.readResponse(url, this.fetch(url, null), cache);
+		}
+
+		return this.readResponse(url, response, cache);
+	}
+
+	/**
+	 * Fetch the URL, sending validators of the cached entry if any. Requests
+	 * that fail to connect or time out, or that the server fails or is too busy
+	 * for, are retried within the {@link RetryBudget}. When the adaptive rate
+	 * limiter is configured, a token is taken before each request, the response
+	 * is fed back to it, and retries are made once it allows; otherwise retries
+	 * back off exponentially, or for as long as <code>Retry-After</code> asks if
+	 * longer. Bodies of responses retried are drained if small, so that their
+	 * connection is kept.
+	 */
+	private FetchResponse fetch(String url, HttpCache.Entry cached) throws IOException {
+		FetchBackend backend = this.getFetchBackend();
+		if (backend == null) {
+			backend = this.defaultFetchBackend;
+		}
+
+		final Map<String, String> headers = new HashMap<>();
+		if (cached != null) {
+			if (cached.etag != null) {
+				headers.put("If-None-Match", cached.etag);
+			}
+
+			if (cached.lastModified != null) {
+				headers.put("If-Modified-Since", cached.lastModified);
+			}
+		}
+
+		final AdaptiveRateLimiter limiter = this.getRateLimiter();
+		this.retryBudget.onRequest();
+		long retryAfterMillis = 0;
+		for (int attempt = 0;; attempt++) {
+			if (attempt > 0 && limiter == null) {
+				this.backOff(url, attempt, retryAfterMillis);
+			}
+
+			if (limiter != null && !limiter.acquire()) {
+				throw new InterruptedIOException("Interrupted waiting to fetch url: " + url);
+			}
+
+			final long start = System.nanoTime();
+			final FetchResponse response;
+			try {
+				response = backend.fetch(url, headers);
+			} catch (IOException e) {
+				this.metrics.recordError(e.getClass().getSimpleName());
+				if (limiter != null) {
+					limiter.onFailure();
+				}
+
+				if (!isRetryable(e) || !this.mayRetry(attempt)) {
+					throw e;
+				}
+
+				LOGGER.debug("Fetch failed with {}, retrying url: {}", e.toString(), url);
+				retryAfterMillis = 0;
+				continue;
+			}
+
+			final long nanos = System.nanoTime() - start;
+			final int code = response.getStatusCode();
+			retryAfterMillis = AdaptiveRateLimiter.parseRetryAfter(response.getHeader("Retry-After"));
+			if (limiter != null) {
+				limiter.onResponse(code, nanos, retryAfterMillis);
+			}
+
+			if (response.isSuccess() || code == HttpURLConnection.HTTP_NOT_MODIFIED) {
+				// bytes are counted as the body is read
+				this.metrics.recordFetch(nanos, 0);
+				return response;
+			}
+
+			this.metrics.recordError("http-" + code);
+			if (!isRetryable(code) || !this.mayRetry(attempt)) {
+				return response;
+			}
+
+			LOGGER.debug("Server responded with code {}, retrying url: {}", code, url);
+			response.close();
+		}
+	}
+
+	/**
+	 * Check if another attempt may be made after given attempt, taking a token
+	 * from the {@link RetryBudget} if so.
+	 */
+	private boolean mayRetry(int attempt) {
+		if (attempt >= this.options.maxRetries) {
+			return false;
+		}
+
+		if (!this.retryBudget.tryRetry()) {
+			LOGGER.debug("Retry budget exhausted, not retrying");
+			this.metrics.recordError("retry-budget-exhausted");
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Wait before making given attempt, doubling the delay with every attempt,
+	 * or for as long as the server asked via <code>Retry-After</code> if longer.
+	 */
+	private void backOff(String url, int attempt, long retryAfterMillis) throws InterruptedIOException {
+		final long delay = Math.max(this.options.retryBackoffMillis << Math.min(attempt - 1, 16), retryAfterMillis);
+		if (delay <= 0) {
+			return;
+		}
+
+		try {
+			Thread.sleep(delay);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted waiting to retry url: " + url);
+		}
+	}
+
+	/**
+	 * Check if a request that failed with given exception may succeed if
+	 * retried: connection failures and timeouts may, while malformed URLs,
+	 * unknown hosts and interruptions do not.
+	 */
+	private static boolean isRetryable(IOException e) {
+		if (e instanceof SocketTimeoutException) {
+			return true;
+		}
+
+		return !(e instanceof InterruptedIOException || e instanceof MalformedURLException || e instanceof UnknownHostException);
+	}
+
+	/**
+	 * Check if a request answered with given status code may succeed if
+	 * retried: when the server is too busy, or failed.
+	 */
+	private static boolean isRetryable(int code) {
+		return code == 429 || (code >= 500 && code != HttpURLConnection.HTTP_NOT_IMPLEMENTED);
+	}
+
+	private ConditionalResponse readResponse(String url, FetchResponse response, HttpCache cache) {
+		if (!response.isSuccess() || response.getBody() == null) {
+			LOGGER.debug("Server responded with code {} for url: {}", response.getStatusCode(), url);
+			response.close();
+			return null;
+		}
+
+		InputStream body = this.metrics.countBytes(response.getBody());
+		if (cache != null) {
+			body = cache.cacheWhileReading(url, response.getHeader("ETag"), response.getHeader("Last-Modified"), body);
+		}
+
+		return new ConditionalResponse(null, false, body);
+	}
+
+	/**
+	 * Read the raw, possibly gzipped, body as UTF-8 text.
+	 */
+	private static String readText(InputStream body) throws IOException {
+		return new String(Streams.readFully(Streams.decompressIfNeeded(body)), StandardCharsets.UTF_8);
+	}
+
 	/**
 	 * Convert the photo URL such as
 	 * 'https://burst.shopify.com/photos/pouring-hot-coffee' to a
@@ -125,6 +861,7 @@ public abstract class AbstractBurstCrawler {
 	protected BurstImage getBurstImageFromURL(String url) {
 		if(this.options.previouslyCrawled.contains(url)) {
 			LOGGER.debug("URL present in previously visited set, skipping: {}", url);
+			this.metrics.recordSkippedPreviouslyCrawled();
 			return null;
 		}
 
@@ -132,7 +869,31 @@ public abstract class AbstractBurstCrawler {
 
 		// download the HTML for image page
 		try {
-			String html = this.httpService.getTextResponse(url);
+			final HttpCache cache = this.getHttpCache();
+			
+			final boolean lite = this.options.metadataLite && this.options.populateDetails;
+			
+			String html;
+			if (this.getFetchBackend() == null && !lite) {
+				html = this.getTextResponse(url);
+			} else {
+				ConditionalResponse response = this.fetchConditional(url);
+				if (response == null) {
+					html = null;
+				} else if (response.notModified && response.cached.image != null) {
+					// reuse the image parsed earlier
+					Streams.closeQuietly(response.body);
+					BurstImage image = response.cached.copyOfImage();
+					image.homeUrl = url;
+					this.internValues(image);
+					return image;
+				} else if (lite) {
+					return this.getBurstImageFromLinkedData(url, response.body);
+				} else {
+					html = readText(response.body);
+				}
+			}
+			
 			if (AssertUtils.isEmpty(html)) {
 				LOGGER.debug("Unable to download photo page url: {}", url);
 				return null;
@@ -147,85 +908,190 @@ public abstract class AbstractBurstCrawler {
 				return image;
 			}
 	
-			// parse and extract data
-			this.populateFromHTML(image, html);
-	
-			// read name, description from json+ld
-			final AdvancedStringReader reader = new AdvancedStringReader(html);
-			final String jsonLinkedData = reader.readBetween("<script type=\"application/ld+json\">", "</script>");
-			if (AssertUtils.isNotEmpty(jsonLinkedData)) {
-				final BurstJsonLinkedData data = GsonUtils.getGson().fromJson(jsonLinkedData, BurstJsonLinkedData.class);
+			if (this.options.extractionRules != null) {
+				final long start = System.nanoTime();
+				this.populateFromHTML(image, html);
+				this.metrics.recordHtmlParse(System.nanoTime() - start);
+				this.internValues(image);
+				if (cache != null) {
+					cache.putImage(url, image);
+				}
+
+				return image;
+			}
+
+			// single pass over html for meta links and json+ld, as per the
+			// default extraction rules
+			long start = System.nanoTime();
+			final String json = BurstPageExtractor.scan(image, html);
+			long htmlNanos = System.nanoTime() - start;
+			
+			if (json != null) {
+				start = System.nanoTime();
+				final BurstJsonLinkedData data = BurstPageExtractor.readLinkedDataQuietly(json, url);
+				this.metrics.recordJsonLdParse(System.nanoTime() - start);
 				
-				String contentUrl = data.contentUrl;
-				int questionMark = contentUrl.indexOf('?');
-				if(questionMark > 0) {
-					contentUrl = contentUrl.substring(0, questionMark);
+				if (data != null) {
+					this.populateFromLinkedData(image, data);
 				}
-	
-				image.url = contentUrl;
-				image.title = data.name;
-				image.description = data.description;
-				image.author = data.author;
-				image.licenseUrl = data.license;
+			}
+
+			// without linked data, the rules fill in from the markup what the
+			// scanner could not find
+			if (json == null) {
+				start = System.nanoTime();
+				final Document doc = Jsoup.parse(html, url);
+				this.extraction.populateMissing(image, doc);
+				htmlNanos += System.nanoTime() - start;
+			}
+			
+			this.metrics.recordHtmlParse(htmlNanos);
+			
+			this.internValues(image);
+			
+			// keep parsed image for revalidation
+			if (cache != null) {
+				cache.putImage(url, image);
 			}
 	
 			return image;
 		} catch(Exception e) {
 			LOGGER.error("Unable to extract image data from url: " + url, e);
+			this.metrics.recordError(e.getClass().getSimpleName());
 		}
 		
 		return null;
 	}
 
 	/**
-	 * Populate the fields of {@link BurstImage} from the HTML page.
+	 * Read the photo page only till the end of its JSON linked data, and
+	 * populate the image from it alone. Closing the body before its end
+	 * abandons the rest of the response, which is then neither downloaded nor
+	 * cached.
 	 * 
-	 * @param image the {@link BurstImage} to populate
+	 * @param url  the photo page URL
+	 * 
+	 * @param body the response body, possibly gzipped
 	 * 
-	 * @param doc   the JSoup {@link Document} to use
+	 * @return the {@link BurstImage}, or <code>null</code> if the page has no
+	 *         readable linked data
 	 */
-	protected void populateFromHTML(BurstImage image, String html) {
-		final Document doc = Jsoup.parse(html);
-		if (doc == null) {
-			return;
+	private BurstImage getBurstImageFromLinkedData(String url, InputStream body) throws IOException {
+		long start = System.nanoTime();
+		final String json;
+		try {
+			json = BurstPageExtractor.readLinkedDataBlock(Streams.decompressIfNeeded(body), this.options.metadataLiteMaxBytes);
+		} finally {
+			Streams.closeQuietly(body);
 		}
 
-		Elements elements = doc.select("main");
-		if (elements == null) {
-			return;
+		this.metrics.recordHtmlParse(System.nanoTime() - start);
+		if (json == null) {
+			LOGGER.debug("No JSON linked data within first {} bytes of url: {}", this.options.metadataLiteMaxBytes, url);
+			this.metrics.recordError("no-linked-data");
+			return null;
 		}
 
-		Element mainNode = elements.first();
-		if (mainNode == null) {
-			return;
+		start = System.nanoTime();
+		final BurstJsonLinkedData data = BurstPageExtractor.readLinkedDataQuietly(json, url);
+		this.metrics.recordJsonLdParse(System.nanoTime() - start);
+		if (data == null) {
+			this.metrics.recordError("no-linked-data");
+			return null;
 		}
 
-		elements = mainNode.select(".photo__meta a");
-		if (elements != null && elements.size() > 0) {
-			for (int index = 0; index < elements.size(); index++) {
-				Element ele = elements.get(index);
-				String href = ele.absUrl("href");
-				if (AssertUtils.isEmpty(href)) {
-					href = ele.attr("href");
-				}
-
-				// populate author url
-				if (href.startsWith("https://burst.shopify.com/@")) {
-					image.authorUrl = href;
-					image.author = ele.text();
-					continue;
-				}
+		final BurstImage image = new BurstImage();
+		image.homeUrl = url;
+		this.populateFromLinkedData(image, data);
+		this.internValues(image);
+		return image;
+	}
 
-				// populate license and license url
-				if (href.contains("/licenses/")) {
-					image.license = ele.text();
-					continue;
-				}
+	/**
+	 * Replace the repeating values of the image, such as author and tags, with
+	 * instances shared across the crawl, if enabled via
+	 * {@link BurstCrawlerOptions#internValues}.
+	 * 
+	 * @param image the {@link BurstImage} to update
+	 */
+	protected void internValues(BurstImage image) {
+		if (this.interner != null) {
+			this.interner.intern(image);
+		}
+	}
 
-				// populate tags
-				image.tags.add(ele.text());
+	/**
+	 * Populate name, description, author, license URL and the download URL of the
+	 * image from the JSON linked data of the photo page. Values missing from the
+	 * linked data are left as they are.
+	 * 
+	 * @param image the {@link BurstImage} to populate
+	 * 
+	 * @param data  the {@link BurstJsonLinkedData} read from the page
+	 */
+	protected void populateFromLinkedData(BurstImage image, BurstJsonLinkedData data) {
+		String contentUrl = data.contentUrl;
+		if (contentUrl != null) {
+			int questionMark = contentUrl.indexOf('?');
+			if (questionMark > 0) {
+				contentUrl = contentUrl.substring(0, questionMark);
 			}
 		}
+
+		image.url = firstNonNull(contentUrl, image.url);
+		image.title = firstNonNull(data.name, image.title);
+		image.description = firstNonNull(data.description, image.description);
+		image.author = firstNonNull(data.author, image.author);
+		image.licenseUrl = firstNonNull(data.license, image.licenseUrl);
+	}
+
+	private static String firstNonNull(String value, String fallback) {
+		return value != null ? value : fallback;
+	}
+
+	/**
+	 * Populate the fields of {@link BurstImage} from the HTML page by building a
+	 * complete JSoup {@link Document} and evaluating the extraction rules on it.
+	 * With the default rules, {@link #getBurstImageFromURL(String)} uses the
+	 * single pass {@link BurstPageExtractor} instead.
+	 * 
+	 * @param image the {@link BurstImage} to populate
+	 * 
+	 * @param html  the HTML of the photo page
+	 */
+	protected void populateFromHTML(BurstImage image, String html) {
+		final Document doc = Jsoup.parse(html, image.homeUrl == null ? "" : image.homeUrl);
+		this.extraction.populate(image, doc);
+	}
+
+	/**
+	 * Return the compiled extraction rules of this crawler.
+	 * 
+	 * @return the {@link ExtractionPlan}
+	 */
+	public ExtractionPlan getExtractionPlan() {
+		return this.extraction;
+	}
+
+	/**
+	 * {@link UrlConnectionFetchBackend} opening its connections via
+	 * {@link AbstractBurstCrawler#openConnection(String)}
+	 */
+	private class DirectFetchBackend extends UrlConnectionFetchBackend {
+
+		DirectFetchBackend(BurstCrawlerOptions options) {
+			super(options);
+		}
+
+		@Override
+		protected HttpURLConnection openConnection(String url) throws IOException {
+			return AbstractBurstCrawler.this.openConnection(url);
+		}
+
+		HttpURLConnection openDirect(String url) throws IOException {
+			return super.openConnection(url);
+		}
+
 	}
 
 }
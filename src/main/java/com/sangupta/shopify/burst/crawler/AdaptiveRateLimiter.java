@@ -0,0 +1,313 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A token bucket rate limiter shared by all fetches of a crawler, that adapts
+ * its rate to how the server is doing. Up to <code>burst</code> requests may
+ * start at once, after which requests are admitted at the current rate; a
+ * thread only waits when it is ahead of the rate.
+ * 
+ * The rate is raised by a tenth after every second's worth of healthy
+ * responses, and lowered when responses slow beyond the target latency, when
+ * requests fail, and most of all on <code>429</code> and <code>503</code>
+ * responses. A <code>Retry-After</code> value pauses all requests till it
+ * passes. The rate always stays between the configured minimum and maximum.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class AdaptiveRateLimiter {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveRateLimiter.class);
+
+	/**
+	 * Weight of the latest response in the latency average
+	 */
+	private static final double LATENCY_WEIGHT = 0.2;
+
+	private static final double INCREASE_FACTOR = 1.1;
+
+	/**
+	 * Applied when responses are slow, or a request failed
+	 */
+	private static final double SLOW_DECREASE_FACTOR = 0.8;
+
+	/**
+	 * Applied when the server says it is overloaded
+	 */
+	private static final double OVERLOAD_DECREASE_FACTOR = 0.5;
+
+	private final double minRate;
+
+	private final double maxRate;
+
+	private final int burst;
+
+	private final long targetLatencyNanos;
+
+	/**
+	 * Metrics to record waits in, may be <code>null</code>
+	 */
+	private final CrawlMetrics metrics;
+
+	/**
+	 * Current rate in requests per second
+	 */
+	private double rate;
+
+	/**
+	 * Tokens available; negative when threads hold reservations ahead of the
+	 * rate
+	 */
+	private double tokens;
+
+	private long lastRefillNanos;
+
+	/**
+	 * No request starts before this time
+	 */
+	private long pausedUntilNanos;
+
+	/**
+	 * Moving average of response latency, <code>-1</code> till the first
+	 * response
+	 */
+	private double latencyNanos = -1;
+
+	/**
+	 * Responses since the rate last changed
+	 */
+	private int responsesSinceChange;
+
+	/**
+	 * Create a limiter.
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to read rates from
+	 * 
+	 * @param metrics the {@link CrawlMetrics} to record waits in, may be
+	 *                <code>null</code>
+	 */
+	public AdaptiveRateLimiter(BurstCrawlerOptions options, CrawlMetrics metrics) {
+		if (options.minRatePerSecond <= 0 || options.maxRatePerSecond < options.minRatePerSecond) {
+			throw new IllegalArgumentException("Rate limits must satisfy 0 < min <= max");
+		}
+
+		this.minRate = options.minRatePerSecond;
+		this.maxRate = options.maxRatePerSecond;
+		this.rate = Math.max(this.minRate, Math.min(this.maxRate, options.ratePerSecond));
+		this.burst = Math.max(1, options.rateLimitBurst);
+		this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(options.targetLatencyMillis);
+		this.metrics = metrics;
+
+		this.tokens = this.burst;
+		this.lastRefillNanos = System.nanoTime();
+		this.pausedUntilNanos = this.lastRefillNanos;
+	}
+
+	/**
+	 * Take a token, waiting if the rate has been exceeded or requests are
+	 * paused.
+	 * 
+	 * @return <code>true</code> if the request may proceed, <code>false</code> if
+	 *         the thread was interrupted while waiting
+	 */
+	public boolean acquire() {
+		final long wait;
+		synchronized (this) {
+			final long now = System.nanoTime();
+			this.refill(now);
+
+			this.tokens -= 1;
+
+			long start = Math.max(now, this.pausedUntilNanos);
+			if (this.tokens < 0) {
+				start += (long) (-this.tokens / this.rate * 1e9);
+			}
+
+			wait = start - now;
+		}
+
+		if (wait <= 0) {
+			return !Thread.currentThread().isInterrupted();
+		}
+
+		try {
+			TimeUnit.NANOSECONDS.sleep(wait);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			if (this.metrics != null) {
+				this.metrics.recordPolitenessWait(wait);
+			}
+		}
+	}
+
+	/**
+	 * Adapt to a response from the server.
+	 * 
+	 * @param statusCode       the HTTP status code
+	 * 
+	 * @param latencyNanos     time taken for the response
+	 * 
+	 * @param retryAfterMillis the <code>Retry-After</code> delay sent by the
+	 *                         server, or <code>0</code>
+	 */
+	public synchronized void onResponse(int statusCode, long latencyNanos, long retryAfterMillis) {
+		if (retryAfterMillis > 0) {
+			this.pause(retryAfterMillis);
+		}
+
+		if (isOverloaded(statusCode)) {
+			this.decrease(OVERLOAD_DECREASE_FACTOR, "server responded " + statusCode);
+			return;
+		}
+
+		if (statusCode >= 500) {
+			this.decrease(SLOW_DECREASE_FACTOR, "server responded " + statusCode);
+			return;
+		}
+
+		this.latencyNanos = this.latencyNanos < 0 ? latencyNanos : LATENCY_WEIGHT * latencyNanos + (1 - LATENCY_WEIGHT) * this.latencyNanos;
+		if (this.latencyNanos > this.targetLatencyNanos) {
+			// at most once per second's worth of responses
+			if (++this.responsesSinceChange >= this.rate) {
+				this.decrease(SLOW_DECREASE_FACTOR, "latency above target");
+			}
+
+			return;
+		}
+
+		if (++this.responsesSinceChange >= this.rate && this.rate < this.maxRate) {
+			this.rate = Math.min(this.maxRate, this.rate * INCREASE_FACTOR);
+			this.responsesSinceChange = 0;
+			LOGGER.debug("Raising rate to {} requests per second", this.rate);
+		}
+	}
+
+	/**
+	 * Adapt to a request that failed without a response, such as a timeout.
+	 */
+	public synchronized void onFailure() {
+		this.decrease(SLOW_DECREASE_FACTOR, "request failed");
+	}
+
+	/**
+	 * Return the current rate.
+	 * 
+	 * @return the rate in requests per second
+	 */
+	public synchronized double getRatePerSecond() {
+		return this.rate;
+	}
+
+	/**
+	 * Check if the status code means the server wants clients to slow down.
+	 * 
+	 * @param statusCode the HTTP status code
+	 * 
+	 * @return <code>true</code> for <code>429</code> and <code>503</code>
+	 */
+	public static boolean isOverloaded(int statusCode) {
+		return statusCode == 429 || statusCode == 503;
+	}
+
+	/**
+	 * Parse a <code>Retry-After</code> header, given either as seconds or as an
+	 * HTTP date.
+	 * 
+	 * @param value the header value, may be <code>null</code>
+	 * 
+	 * @return the delay in millis, or <code>0</code> if missing or invalid
+	 */
+	public static long parseRetryAfter(String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return 0;
+		}
+
+		value = value.trim();
+		try {
+			return Math.max(0, TimeUnit.SECONDS.toMillis(Long.parseLong(value)));
+		} catch (NumberFormatException e) {
+			// try as a date
+		}
+
+		SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		try {
+			Date date = format.parse(value);
+			return Math.max(0, date.getTime() - System.currentTimeMillis());
+		} catch (ParseException e) {
+			return 0;
+		}
+	}
+
+	/**
+	 * Add tokens earned since the last refill, up to the burst size. Nothing is
+	 * earned while paused.
+	 */
+	private void refill(long now) {
+		final long from = Math.max(this.lastRefillNanos, this.pausedUntilNanos);
+		if (now > from) {
+			this.tokens = Math.min(this.burst, this.tokens + (now - from) / 1e9 * this.rate);
+		}
+
+		this.lastRefillNanos = Math.max(this.lastRefillNanos, now);
+	}
+
+	private void pause(long millis) {
+		final long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		if (until > this.pausedUntilNanos) {
+			this.refill(System.nanoTime());
+			this.pausedUntilNanos = until;
+
+			// no burst straight after the pause
+			this.tokens = Math.min(this.tokens, 0);
+			LOGGER.info("Pausing requests for {} millis as asked by server", millis);
+		}
+	}
+
+	private void decrease(double factor, String reason) {
+		this.rate = Math.max(this.minRate, this.rate * factor);
+		this.responsesSinceChange = 0;
+		LOGGER.debug("Lowering rate to {} requests per second, {}", this.rate, reason);
+	}
+
+}
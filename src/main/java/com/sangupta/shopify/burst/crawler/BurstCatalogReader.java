@@ -0,0 +1,459 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads a catalogue written by {@link BurstCatalogWriter}. The file is
+ * memory-mapped, and only the dictionary is read on open; records are decoded
+ * as they are visited. A {@link Cursor} moves over records and decodes only
+ * the fields asked for, while iterating returns complete {@link BurstImage}s.
+ * 
+ * Instances may be shared between threads, a {@link Cursor} may not.
+ * 
+ * @author sangupta
+ *
+ */
+public class BurstCatalogReader implements Iterable<BurstImage>, Closeable {
+
+	/**
+	 * The mapped file
+	 */
+	private final MappedByteBuffer buffer;
+
+	/**
+	 * Dictionary strings by number
+	 */
+	private final String[] dictionary;
+
+	/**
+	 * Offsets of records where home URLs are stored in full
+	 */
+	private final int[] restarts;
+
+	/**
+	 * Number of records
+	 */
+	private final int count;
+
+	/**
+	 * Open a catalogue.
+	 * 
+	 * @param file the catalogue file
+	 * 
+	 * @throws IOException if the file cannot be read, or is not a catalogue
+	 */
+	public BurstCatalogReader(File file) throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "r"); FileChannel channel = raf.getChannel()) {
+			if (channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("Catalogue is too large: " + file);
+			}
+
+			// mapping stays valid once the channel is closed
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+
+		final int size = this.buffer.capacity();
+		if (size < 5 + BurstCatalogWriter.FOOTER_BYTES || this.buffer.getInt(0) != BurstCatalogWriter.MAGIC
+				|| this.buffer.getInt(size - 4) != BurstCatalogWriter.MAGIC) {
+			throw new IOException("Not a Burst catalogue: " + file);
+		}
+
+		if (this.buffer.get(4) != BurstCatalogWriter.VERSION) {
+			throw new IOException("Unsupported Burst catalogue version " + this.buffer.get(4) + ": " + file);
+		}
+
+		final int footer = size - BurstCatalogWriter.FOOTER_BYTES;
+		final int dictionaryOffset = (int) this.buffer.getLong(footer);
+		final int restartsOffset = (int) this.buffer.getLong(footer + 8);
+		this.count = this.buffer.getInt(footer + 16);
+
+		final Cursor cursor = new Cursor();
+		cursor.position = dictionaryOffset;
+		this.dictionary = new String[cursor.readVarint()];
+		for (int index = 0; index < this.dictionary.length; index++) {
+			this.dictionary[index] = cursor.readString();
+		}
+
+		this.restarts = new int[(footer - restartsOffset) / 4];
+		for (int index = 0; index < this.restarts.length; index++) {
+			this.restarts[index] = this.buffer.getInt(restartsOffset + index * 4);
+		}
+	}
+
+	/**
+	 * Return the number of images in the catalogue.
+	 * 
+	 * @return the number of images
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Return a cursor placed before the first record.
+	 * 
+	 * @return a new {@link Cursor}
+	 */
+	public Cursor cursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * Read the image at given index. Only the records from the nearest restart
+	 * point onwards are visited.
+	 * 
+	 * @param index the index of the image
+	 * 
+	 * @return the {@link BurstImage}
+	 */
+	public BurstImage get(int index) {
+		if (index < 0 || index >= this.count) {
+			throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.count);
+		}
+
+		final Cursor cursor = new Cursor();
+		final int restart = index / BurstCatalogWriter.RESTART_INTERVAL;
+		cursor.position = this.restarts[restart];
+		cursor.index = restart * BurstCatalogWriter.RESTART_INTERVAL - 1;
+		while (cursor.index < index) {
+			cursor.next();
+		}
+
+		return cursor.toImage();
+	}
+
+	/**
+	 * Read all images.
+	 * 
+	 * @return a {@link List} of all {@link BurstImage}s
+	 */
+	public List<BurstImage> readAll() {
+		final List<BurstImage> images = new ArrayList<>(this.count);
+		for (BurstImage image : this) {
+			images.add(image);
+		}
+
+		return images;
+	}
+
+	@Override
+	public Iterator<BurstImage> iterator() {
+		final Cursor cursor = new Cursor();
+		return new Iterator<BurstImage>() {
+
+			@Override
+			public boolean hasNext() {
+				return cursor.index + 1 < count;
+			}
+
+			@Override
+			public BurstImage next() {
+				if (!cursor.next()) {
+					throw new NoSuchElementException();
+				}
+
+				return cursor.toImage();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException("Catalogue is read-only");
+			}
+
+		};
+	}
+
+	/**
+	 * Nothing to release: the mapping is freed once the reader is no longer
+	 * referenced.
+	 */
+	@Override
+	public void close() {
+		// nothing to do
+	}
+
+	/**
+	 * Moves over the records of the catalogue, decoding fields only when they
+	 * are asked for.
+	 */
+	public class Cursor {
+
+		/**
+		 * Read position in the buffer
+		 */
+		private int position = 5;
+
+		/**
+		 * Index of the current record
+		 */
+		private int index = -1;
+
+		/**
+		 * Home URL of the current record, which the next one is stored against
+		 */
+		private byte[] homeUrl = new byte[128];
+
+		/**
+		 * Length of {@link #homeUrl}, <code>-1</code> for <code>null</code>
+		 */
+		private int homeUrlLength = -1;
+
+		private int urlPosition;
+
+		private int titlePosition;
+
+		private int descriptionPosition;
+
+		private int referencesPosition;
+
+		private int tagsPosition;
+
+		Cursor() {
+			// created by the reader
+		}
+
+		/**
+		 * Move to the next record.
+		 * 
+		 * @return <code>false</code> if there are no more records
+		 */
+		public boolean next() {
+			if (this.index + 1 >= count) {
+				return false;
+			}
+
+			this.index++;
+
+			final int shared = this.readVarint();
+			final int suffix = this.readVarint();
+			if (suffix == 0) {
+				this.homeUrlLength = -1;
+			} else {
+				final int length = shared + suffix - 1;
+				if (length > this.homeUrl.length) {
+					byte[] grown = new byte[Math.max(length, this.homeUrl.length * 2)];
+					System.arraycopy(this.homeUrl, 0, grown, 0, shared);
+					this.homeUrl = grown;
+				}
+
+				this.read(this.homeUrl, shared, suffix - 1);
+				this.homeUrlLength = length;
+			}
+
+			this.urlPosition = this.position;
+			this.readVarint();
+			this.skip(this.readVarint() - 1);
+
+			this.titlePosition = this.position;
+			this.skip(this.readVarint() - 1);
+
+			this.descriptionPosition = this.position;
+			this.skip(this.readVarint() - 1);
+
+			this.referencesPosition = this.position;
+			for (int reference = 0; reference < 4; reference++) {
+				this.readVarint();
+			}
+
+			this.tagsPosition = this.position;
+			final int tags = this.readVarint();
+			for (int tag = 0; tag < tags; tag++) {
+				this.readVarint();
+			}
+
+			return true;
+		}
+
+		public int getIndex() {
+			return this.index;
+		}
+
+		public String getHomeUrl() {
+			if (this.homeUrlLength < 0) {
+				return null;
+			}
+
+			return new String(this.homeUrl, 0, this.homeUrlLength, StandardCharsets.UTF_8);
+		}
+
+		public String getUrl() {
+			final int saved = this.position;
+			try {
+				this.position = this.urlPosition;
+				final int shared = this.readVarint();
+				final int suffix = this.readVarint();
+				if (suffix == 0) {
+					return null;
+				}
+
+				final byte[] bytes = new byte[shared + suffix - 1];
+				System.arraycopy(this.homeUrl, 0, bytes, 0, shared);
+				this.read(bytes, shared, suffix - 1);
+				return new String(bytes, StandardCharsets.UTF_8);
+			} finally {
+				this.position = saved;
+			}
+		}
+
+		public String getTitle() {
+			return this.stringAt(this.titlePosition);
+		}
+
+		public String getDescription() {
+			return this.stringAt(this.descriptionPosition);
+		}
+
+		public String getAuthor() {
+			return this.referenceAt(0);
+		}
+
+		public String getAuthorUrl() {
+			return this.referenceAt(1);
+		}
+
+		public String getLicense() {
+			return this.referenceAt(2);
+		}
+
+		public String getLicenseUrl() {
+			return this.referenceAt(3);
+		}
+
+		public List<String> getTags() {
+			final int saved = this.position;
+			try {
+				this.position = this.tagsPosition;
+				final int tags = this.readVarint();
+				if (tags == 0) {
+					return Collections.emptyList();
+				}
+
+				final List<String> list = new ArrayList<>(tags);
+				for (int tag = 0; tag < tags; tag++) {
+					list.add(dictionary[this.readVarint() - 1]);
+				}
+
+				return list;
+			} finally {
+				this.position = saved;
+			}
+		}
+
+		/**
+		 * Decode all fields of the current record.
+		 * 
+		 * @return the {@link BurstImage}
+		 */
+		public BurstImage toImage() {
+			final BurstImage image = new BurstImage();
+			image.homeUrl = this.getHomeUrl();
+			image.url = this.getUrl();
+			image.title = this.getTitle();
+			image.description = this.getDescription();
+			image.author = this.getAuthor();
+			image.authorUrl = this.getAuthorUrl();
+			image.license = this.getLicense();
+			image.licenseUrl = this.getLicenseUrl();
+			image.tags.addAll(this.getTags());
+			return image;
+		}
+
+		private String stringAt(int at) {
+			final int saved = this.position;
+			try {
+				this.position = at;
+				return this.readString();
+			} finally {
+				this.position = saved;
+			}
+		}
+
+		private String referenceAt(int field) {
+			final int saved = this.position;
+			try {
+				this.position = this.referencesPosition;
+				for (int skipped = 0; skipped < field; skipped++) {
+					this.readVarint();
+				}
+
+				final int reference = this.readVarint();
+				return reference == 0 ? null : dictionary[reference - 1];
+			} finally {
+				this.position = saved;
+			}
+		}
+
+		private String readString() {
+			final int length = this.readVarint();
+			if (length == 0) {
+				return null;
+			}
+
+			final byte[] bytes = new byte[length - 1];
+			this.read(bytes, 0, bytes.length);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		private int readVarint() {
+			int value = 0;
+			int shift = 0;
+			byte current;
+			do {
+				current = buffer.get(this.position++);
+				value |= (current & 0x7F) << shift;
+				shift += 7;
+			} while (current < 0);
+
+			return value;
+		}
+
+		private void read(byte[] bytes, int offset, int length) {
+			final ByteBuffer view = buffer.duplicate();
+			view.position(this.position);
+			view.get(bytes, offset, length);
+			this.position += length;
+		}
+
+		private void skip(int length) {
+			if (length > 0) {
+				this.position += length;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,304 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * Streams {@link BurstImage}s into a compact binary catalogue, read back with
+ * {@link BurstCatalogReader}. Being a {@link GenericConsumer}, it can be handed
+ * to a crawler as the collector directly.
+ * 
+ * Author, author URL, license, license URL and tags are stored once in a
+ * dictionary and referenced by number. Home URLs are stored as the suffix that
+ * differs from the previous record's, restarting in full every
+ * {@value #RESTART_INTERVAL} records, and image URLs as the suffix that
+ * differs from their home URL. Numbers are written as variable length
+ * integers.
+ * 
+ * File layout:
+ * 
+ * <pre>
+ * header     : magic (int), version (byte)
+ * records    : homeUrl, url, title, description, author, authorUrl, license, licenseUrl, tags
+ * dictionary : count, strings
+ * restarts   : offset (int) of every RESTART_INTERVAL-th record
+ * footer     : dictionary offset (long), restarts offset (long), record count (int), magic (int)
+ * </pre>
+ * 
+ * Catalogues are limited to 2 GB. Instances are not thread-safe, except when
+ * used as a collector of a crawl, whose calls are serialized.
+ * 
+ * @author sangupta
+ *
+ */
+public class BurstCatalogWriter implements GenericConsumer<BurstImage>, Closeable {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(BurstCatalogWriter.class);
+
+	static final int MAGIC = 0x42435447;
+
+	static final byte VERSION = 1;
+
+	static final int RESTART_INTERVAL = 16;
+
+	static final int FOOTER_BYTES = 8 + 8 + 4 + 4;
+
+	private final DataOutputStream out;
+
+	/**
+	 * Dictionary number of each string
+	 */
+	private final Map<String, Integer> dictionary = new HashMap<>();
+
+	/**
+	 * Dictionary strings in order of number
+	 */
+	private final List<String> dictionaryEntries = new ArrayList<>();
+
+	/**
+	 * Offsets of records where home URLs are stored in full
+	 */
+	private final List<Integer> restarts = new ArrayList<>();
+
+	/**
+	 * Home URL of the previous record
+	 */
+	private byte[] previousHomeUrl = new byte[0];
+
+	/**
+	 * Number of records written
+	 */
+	private int count = 0;
+
+	/**
+	 * Error that made {@link #consume(BurstImage)} stop the crawl
+	 */
+	private IOException failure;
+
+	private boolean closed = false;
+
+	/**
+	 * Create a catalogue file, replacing any existing one.
+	 * 
+	 * @param file the file to write
+	 * 
+	 * @throws IOException if the file cannot be created
+	 */
+	public BurstCatalogWriter(File file) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 64 * 1024));
+		this.out.writeInt(MAGIC);
+		this.out.writeByte(VERSION);
+	}
+
+	/**
+	 * Append an image to the catalogue.
+	 * 
+	 * @param image the {@link BurstImage} to write
+	 * 
+	 * @throws IOException if writing fails
+	 */
+	public void write(BurstImage image) throws IOException {
+		if (this.closed) {
+			throw new IllegalStateException("Catalogue has been closed");
+		}
+
+		final byte[] homeUrl = bytes(image.homeUrl);
+		if (this.count % RESTART_INTERVAL == 0) {
+			this.restarts.add(this.out.size());
+			this.writePrefixed(homeUrl, null);
+		} else {
+			this.writePrefixed(homeUrl, this.previousHomeUrl);
+		}
+
+		this.previousHomeUrl = homeUrl == null ? new byte[0] : homeUrl;
+
+		this.writePrefixed(bytes(image.url), homeUrl);
+		this.writeString(bytes(image.title));
+		this.writeString(bytes(image.description));
+		this.writeVarint(this.reference(image.author));
+		this.writeVarint(this.reference(image.authorUrl));
+		this.writeVarint(this.reference(image.license));
+		this.writeVarint(this.reference(image.licenseUrl));
+
+		this.writeVarint(image.tags.size());
+		for (String tag : image.tags) {
+			this.writeVarint(this.reference(tag));
+		}
+
+		this.count++;
+	}
+
+	/**
+	 * Append an image, stopping the crawl if it cannot be written. The error is
+	 * thrown by {@link #close()}.
+	 */
+	@Override
+	public boolean consume(BurstImage image) {
+		try {
+			this.write(image);
+			return true;
+		} catch (IOException e) {
+			LOGGER.error("Unable to write image to catalogue: " + image.homeUrl, e);
+			this.failure = e;
+			return false;
+		}
+	}
+
+	/**
+	 * Return the number of images written.
+	 * 
+	 * @return the number of images
+	 */
+	public int size() {
+		return this.count;
+	}
+
+	/**
+	 * Write the dictionary and index, and close the file.
+	 * 
+	 * @throws IOException if writing fails, or an earlier write from
+	 *                     {@link #consume(BurstImage)} failed
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+
+		this.closed = true;
+		try {
+			final long dictionaryOffset = this.out.size();
+			this.writeVarint(this.dictionaryEntries.size());
+			for (String entry : this.dictionaryEntries) {
+				this.writeString(bytes(entry));
+			}
+
+			final long restartsOffset = this.out.size();
+			for (Integer offset : this.restarts) {
+				this.out.writeInt(offset);
+			}
+
+			this.out.writeLong(dictionaryOffset);
+			this.out.writeLong(restartsOffset);
+			this.out.writeInt(this.count);
+			this.out.writeInt(MAGIC);
+		} finally {
+			this.out.close();
+		}
+
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	/**
+	 * Return the dictionary reference of the value, adding it if new.
+	 * 
+	 * @return the number plus one, or <code>0</code> for <code>null</code>
+	 */
+	private int reference(String value) {
+		if (value == null) {
+			return 0;
+		}
+
+		Integer number = this.dictionary.get(value);
+		if (number == null) {
+			number = this.dictionaryEntries.size();
+			this.dictionary.put(value, number);
+			this.dictionaryEntries.add(value);
+		}
+
+		return number + 1;
+	}
+
+	/**
+	 * Write the bytes as the length of the prefix shared with
+	 * <code>base</code>, followed by the rest as a string.
+	 */
+	private void writePrefixed(byte[] value, byte[] base) throws IOException {
+		if (value == null) {
+			this.writeVarint(0);
+			this.writeVarint(0);
+			return;
+		}
+
+		int shared = 0;
+		if (base != null) {
+			final int max = Math.min(value.length, base.length);
+			while (shared < max && value[shared] == base[shared]) {
+				shared++;
+			}
+		}
+
+		this.writeVarint(shared);
+		this.writeVarint(value.length - shared + 1);
+		this.out.write(value, shared, value.length - shared);
+	}
+
+	/**
+	 * Write the bytes as their length plus one, <code>0</code> for
+	 * <code>null</code>, followed by the bytes.
+	 */
+	private void writeString(byte[] value) throws IOException {
+		if (value == null) {
+			this.writeVarint(0);
+			return;
+		}
+
+		this.writeVarint(value.length + 1);
+		this.out.write(value);
+	}
+
+	private void writeVarint(int value) throws IOException {
+		while ((value & ~0x7F) != 0) {
+			this.out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		this.out.writeByte(value);
+	}
+
+	private static byte[] bytes(String value) {
+		return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+	}
+
+}
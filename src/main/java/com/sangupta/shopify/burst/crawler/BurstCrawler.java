@@ -21,12 +21,17 @@
 
 package com.sangupta.shopify.burst.crawler;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -67,6 +72,21 @@ public class BurstCrawler extends AbstractBurstCrawler {
 	 */
 	private int totalCollected = 0;
 
+	/**
+	 * Listing pages completed in the current crawl
+	 */
+	private ListingProgress progress;
+
+	/**
+	 * Indicates if the current crawl saves checkpoints
+	 */
+	private boolean checkpointing;
+
+	/**
+	 * Set when the collector asks to stop crawling
+	 */
+	private volatile boolean collectorStopped;
+
 	/**
 	 * Create {@link BurstCrawler} instance with default
 	 * {@link BurstCrawlerOptions}.
@@ -89,58 +109,273 @@ public class BurstCrawler extends AbstractBurstCrawler {
 	}
 
 	/**
-	 * Start crawling using the given {@link GenericConsumer} collector.
+	 * Start crawling using the given {@link GenericConsumer} collector. If
+	 * {@link BurstCrawlerOptions#pipelined} is set, listing pages are prefetched
+	 * while photo pages of earlier ones are being fetched. If
+	 * {@link BurstCrawlerOptions#checkpointFile} is set, listing pages completed
+	 * when the crawl was last checkpointed are skipped.
 	 * 
 	 * @param collector the {@link GenericConsumer} that will consume the crawled
 	 *                  {@link BurstImage}s
 	 */
 	public void crawl(GenericConsumer<BurstImage> collector) {
-		int currentPage = this.options.startPage;
+		this.crawlRange(collector, this.options.startPage, this.options.endPage, this.options.maxPages, true);
+	}
+
+	/**
+	 * Crawl the given, inclusive, range of listing pages regardless of the page
+	 * limits set in {@link BurstCrawlerOptions}. Used to crawl a shard of a
+	 * larger crawl.
+	 * 
+	 * @param collector the {@link GenericConsumer} that will consume the crawled
+	 *                  {@link BurstImage}s
+	 * 
+	 * @param firstPage the first page to crawl
+	 * 
+	 * @param endPage   the last page to crawl
+	 * 
+	 * @return the number of listing pages that could not be fetched
+	 */
+	int crawlPages(GenericConsumer<BurstImage> collector, int firstPage, int endPage) {
+		return this.crawlRange(collector, firstPage, endPage, -1, false);
+	}
+
+	/**
+	 * Crawl from the first page till the end page, or the last page if not
+	 * set, crawling no more than given number of pages.
+	 * 
+	 * @param checkpoint whether to resume from, and save, checkpoints
+	 * 
+	 * @return the number of listing pages that could not be fetched
+	 */
+	private int crawlRange(GenericConsumer<BurstImage> collector, int firstPage, int endPage, int maxPages, boolean checkpoint) {
+		// resume from where the last crawl stopped, if checkpointed
+		final CrawlCheckpoint resumed = checkpoint ? this.resumeCheckpoint() : null;
+		this.checkpointing = checkpoint && this.options.checkpointFile != null;
+		this.collectorStopped = false;
+		if (resumed != null) {
+			this.progress = new ListingProgress(resumed.completedPages);
+			this.totalCollected = resumed.imagesCollected;
+			if (this.lastPage == 0) {
+				this.lastPage = resumed.lastPage;
+			}
+		} else {
+			this.progress = new ListingProgress(null);
+		}
+		
+		// load state of previous crawls, if incremental
+		this.beginCrawl();
+		
+		int failedPages = -1;
+		try {
+			if (this.options.pipelined) {
+				failedPages = this.crawlPipelined(collector, firstPage, getEndPage(firstPage, endPage, maxPages));
+			} else {
+				failedPages = this.crawlSequential(collector, firstPage, endPage, maxPages);
+			}
+		} finally {
+			try {
+				// keep the checkpoint while pages remain to be crawled
+				if (this.checkpointing && failedPages == 0 && !this.collectorStopped) {
+					this.clearCheckpoint();
+				} else if (this.checkpointing) {
+					this.saveCheckpoint();
+				}
+			} finally {
+				this.endCrawl();
+			}
+		}
+
+		LOGGER.debug("Total number of images crawled: {}", this.totalCollected);
+		return failedPages;
+	}
+
+	/**
+	 * Crawl one page at a time on the calling thread.
+	 * 
+	 * @return the number of listing pages that could not be fetched
+	 */
+	private int crawlSequential(GenericConsumer<BurstImage> collector, int firstPage, int endPage, int maxPages) {
+		int failedPages = 0;
+		int currentPage = firstPage;
 		int crawled = 1;
 		do {
-			doForPage(collector, currentPage);
+			final boolean skipped = this.progress.isCompleted(currentPage);
+			if (skipped) {
+				LOGGER.debug("Skipping page completed in an earlier crawl: {}", currentPage);
+			} else if (!doForPage(collector, currentPage)) {
+				failedPages++;
+			} else if (!this.progress.isCompleted(currentPage)) {
+				LOGGER.debug("Crawling stopped within page: {}", currentPage);
+				break;
+			}
+			
+			if (this.checkpointing && this.isCheckpointDue()) {
+				this.saveCheckpoint();
+			}
 
 			if (this.totalCollected == options.maxImages) {
 				LOGGER.debug("Max images reached, breaking from crawling more images");
 				break;
 			}
 
-			if (crawled == options.maxPages) {
+			if (crawled == maxPages) {
 				LOGGER.debug("Max pages reached, breaking from crawling more images");
 				break;
 			}
 
-			if (currentPage == options.endPage) {
+			if (currentPage == endPage) {
 				LOGGER.debug("Last page limit reached, breaking from crawling more images");
 				break;
 			}
 
-			if (options.delayBetweenPagesMillis > 0) {
+			if (!skipped && options.delayBetweenPagesMillis > 0) {
 				sleepQuietly(options.delayBetweenPagesMillis);
 			}
 
 			currentPage++;
 			crawled++;
-		} while (currentPage < this.lastPage);
+		} while (currentPage <= this.lastPage);
+		
+		return failedPages;
+	}
 
-		LOGGER.debug("Total number of images crawled: {}", this.totalCollected);
+	/**
+	 * Crawl with listing pages, and photo pages, fetched by separate workers.
+	 * The first page is fetched on the calling thread to discover the last
+	 * page, after which the remaining range is split across a
+	 * {@link ListingPrefetcher}, and photo URLs are handed to a
+	 * {@link PhotoFetchPool} as their pages arrive.
+	 * 
+	 * @return the number of listing pages that could not be fetched
+	 */
+	private int crawlPipelined(final GenericConsumer<BurstImage> collector, int firstPage, int endPage) {
+		final PolitenessLimiter pageLimiter = new PolitenessLimiter(this.politenessDelay(this.options.delayBetweenPagesMillis), this.metrics);
+		
+		// the first page is needed to find the last page, unless resumed
+		List<String> urls;
+		if (this.lastPage > 0 && this.progress.isCompleted(firstPage)) {
+			urls = new ArrayList<>();
+		} else {
+			pageLimiter.acquire();
+			urls = this.getPhotoUrlsOnPage(firstPage);
+			if (urls == null) {
+				return 1;
+			}
+		}
+		
+		// count images across workers, calls are serialized by the pool
+		final GenericConsumer<BurstImage> counting = new GenericConsumer<BurstImage>() {
+			
+			@Override
+			public boolean consume(BurstImage image) {
+				totalCollected++;
+				if (!collector.consume(image)) {
+					collectorStopped = true;
+					return false;
+				}
+				
+				return totalCollected != options.maxImages;
+			}
+			
+		};
+		
+		// the last page is known only once the first page is fetched
+		if (endPage <= 0 || endPage > this.lastPage) {
+			endPage = this.lastPage;
+		}
+		
+		final PhotoFetchPool pool = new PhotoFetchPool(this, this.options, new PolitenessLimiter(this.politenessDelay(this.options.delayBetweenImagesMillis), this.metrics), counting);
+		final ListingPrefetcher prefetcher = new ListingPrefetcher(this, this.options, pageLimiter, firstPage + 1, endPage, this.progress.getCompleted());
+		
+		pool.start();
+		prefetcher.start();
+		try {
+			int page = firstPage;
+			while (urls != null) {
+				this.progress.startPage(page);
+				for (String url : urls) {
+					// skip photos already crawled, if incremental
+					if (!this.isDue(url, null, null)) {
+						continue;
+					}
+					
+					if (!pool.submit(new SitemapEntry(url, null, null), this.progress.addPhoto(page))) {
+						return prefetcher.getFailedPages();
+					}
+				}
+				
+				this.progress.endPage(page);
+				if (this.checkpointing && this.isCheckpointDue()) {
+					this.saveCheckpoint();
+				}
+				
+				ListingPrefetcher.Page next = prefetcher.next();
+				if (next == null) {
+					break;
+				}
+				
+				page = next.number;
+				urls = next.urls;
+			}
+		} finally {
+			try {
+				prefetcher.stop();
+			} finally {
+				pool.finish();
+			}
+		}
+		
+		return prefetcher.getFailedPages();
 	}
 
 	/**
-	 * Make this thread sleep for a while.
+	 * Compute the last page to crawl, inclusive, given the first page and page
+	 * limits. Returns <code>-1</code> when there is no limit, in which case the
+	 * crawl runs till the last page.
+	 */
+	private static int getEndPage(int firstPage, int endPage, int maxPages) {
+		if (maxPages > 0) {
+			int maxEndPage = firstPage + maxPages - 1;
+			return endPage > 0 ? Math.min(endPage, maxEndPage) : maxEndPage;
+		}
+
+		return endPage;
+	}
+
+	/**
+	 * Fetch the first listing page to find the number of pages, unless already
+	 * known.
+	 * 
+	 * @return the last page, or <code>0</code> if it could not be detected
+	 */
+	public int discoverLastPage() {
+		if (this.lastPage == 0) {
+			this.getPhotoUrlsOnPage(1);
+		}
+
+		return this.lastPage;
+	}
+
+	/**
+	 * Make this thread sleep for a while, unless the adaptive rate limiter paces
+	 * fetches.
 	 * 
 	 * @param delay
 	 */
 	private void sleepQuietly(int delay) {
-		if (delay <= 0) {
+		if (this.politenessDelay(delay) <= 0) {
 			return;
 		}
 
+		final long start = System.nanoTime();
 		try {
 			Thread.sleep(delay);
 		} catch (InterruptedException e) {
 			// eat up
 		}
+		
+		this.metrics.recordPolitenessWait(System.nanoTime() - start);
 	}
 
 	/**
@@ -149,70 +384,131 @@ public class BurstCrawler extends AbstractBurstCrawler {
 	 * @param images
 	 */
 	public void populateImageData(List<BurstImage> images) {
+		this.populateImageData(images, null);
+	}
+
+	/**
+	 * Populate image details for given Burst images. Pages are fetched by
+	 * {@link BurstCrawlerOptions#numWorkers} workers, started at least
+	 * {@link BurstCrawlerOptions#delayBetweenImagesMillis} apart across all of
+	 * them, unless the adaptive rate limiter paces fetches.
+	 * 
+	 * Images whose home URL is in <code>enriched</code> are skipped, and images
+	 * populated are added to it. Using a persistent
+	 * {@link FingerprintUrlSeenSet} allows an interrupted batch to be resumed.
+	 * 
+	 * @param images   the images to populate
+	 * 
+	 * @param enriched the {@link UrlSeenSet} of images already populated, may be
+	 *                 <code>null</code>
+	 * 
+	 * @return the {@link EnrichmentReport} of each image
+	 */
+	public EnrichmentReport populateImageData(Collection<BurstImage> images, final UrlSeenSet enriched) {
+		final EnrichmentReport report = new EnrichmentReport();
 		if (AssertUtils.isEmpty(images)) {
-			return;
+			return report;
 		}
 
 		LOGGER.info("Request to populate image data for {} images", images.size());
 
-		for (int index = 0; index < images.size(); index++) {
-			BurstImage image = images.get(index);
-			LOGGER.debug("[{}] Populating image data for url: {}", index, image.homeUrl);
+		final PolitenessLimiter limiter = new PolitenessLimiter(this.politenessDelay(this.options.delayBetweenImagesMillis), this.metrics);
+		final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(this.options.numWorkers, images.size())), new ThreadFactory() {
 
-			Document doc = this.getHtmlDoc(image.homeUrl);
-			if (doc == null) {
-				continue;
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "burst-populate-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
 			}
 
-			this.populateImageDetails(image, doc);
+		});
+
+		try {
+			for (final BurstImage image : images) {
+				if (enriched != null && enriched.contains(image.homeUrl)) {
+					report.skipped();
+					continue;
+				}
+
+				executor.execute(new Runnable() {
 
-			this.sleepQuietly(this.options.delayBetweenImagesMillis);
+					@Override
+					public void run() {
+						populateImage(image, limiter, enriched, report);
+					}
+
+				});
+			}
+
+			executor.shutdown();
+			while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOGGER.info("Populating image data: {}", report);
+			}
+		} catch (InterruptedException e) {
+			executor.shutdownNow();
+			Thread.currentThread().interrupt();
 		}
+
+		LOGGER.info("Populating image data completed: {}", report);
+		return report;
 	}
 
 	/**
-	 * Populate image details from HTML selector onto object.
-	 * 
-	 * @param image
-	 * @param doc
+	 * Populate a single image of a batch, recording the outcome.
 	 */
-	private void populateImageDetails(BurstImage image, Document doc) {
-		Element mainNode = this.getMainNode(doc);
-		if (mainNode == null) {
+	private void populateImage(BurstImage image, PolitenessLimiter limiter, UrlSeenSet enriched, EnrichmentReport report) {
+		if (!limiter.acquire()) {
+			report.failed(image, "interrupted");
 			return;
 		}
 
-		// populate
-		image.title = mainNode.select("h1.heading--2").text();
-		image.description = mainNode.select("p.photo-info__description").text();
+		LOGGER.debug("Populating image data for url: {}", image.homeUrl);
+		try {
+			Document doc = this.getHtmlDoc(image.homeUrl);
+			if (doc == null) {
+				report.failed(image, "fetch-failed");
+				return;
+			}
 
-		// meta tags
-		Elements elements = mainNode.select(".photo__meta a");
-		if (elements != null && elements.size() > 0) {
-			for (int index = 0; index < elements.size(); index++) {
-				Element ele = elements.get(index);
-				String href = ele.absUrl("href");
+			if (!this.populateImageDetails(image, doc)) {
+				report.failed(image, "no-photo-details");
+				return;
+			}
+		} catch (RuntimeException e) {
+			LOGGER.error("Unable to populate image data for url: " + image.homeUrl, e);
+			report.failed(image, e.getClass().getSimpleName());
+			return;
+		}
 
-				if (href.contains("/@")) {
-					image.authorUrl = href;
-					image.author = ele.text();
-					continue;
-				}
+		if (enriched != null) {
+			enriched.add(image.homeUrl);
+		}
 
-				if (href.contains("/tags/")) {
-					image.tags.add(ele.text());
-					continue;
-				}
+		report.succeeded(image);
+	}
 
-				if (href.contains("/licenses/")) {
-					image.license = ele.text();
-					continue;
-				}
-			}
+	/**
+	 * Populate image details onto object using the extraction rules.
+	 * 
+	 * @param image
+	 * @param doc
+	 * @return <code>false</code> if the page has no photo details
+	 */
+	private boolean populateImageDetails(BurstImage image, Document doc) {
+		if (!this.extraction.populate(image, doc)) {
+			return false;
 		}
 
 		// download URL
-		image.url = image.homeUrl + "/download";
+		if (image.url == null) {
+			image.url = image.homeUrl + "/download";
+		}
+
+		this.internValues(image);
+		return true;
 	}
 
 	/**
@@ -222,24 +518,75 @@ public class BurstCrawler extends AbstractBurstCrawler {
 	 * @param options
 	 * 
 	 * @param page
+	 * @return <code>false</code> if the page could not be fetched
 	 */
-	private void doForPage(GenericConsumer<BurstImage> collector, int page) {
+	private boolean doForPage(GenericConsumer<BurstImage> collector, int page) {
 		LOGGER.debug("Crawling page: {}", page);
-		String url = BASE_URL;
-		if (page > 1) {
-			url = url + "&page=" + page;
+		Document doc = this.getHtmlDoc(getPageUrl(page));
+		if (doc == null) {
+			return false;
 		}
 
-		Document doc = this.getHtmlDoc(url);
+		if (this.lastPage == 0) {
+			extractLastPage(doc);
+		}
+
+		if (getPhotosFromPage(collector, options, doc)) {
+			this.progress.complete(page);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Save the position of the crawl.
+	 */
+	private void saveCheckpoint() {
+		CrawlCheckpoint checkpoint = new CrawlCheckpoint();
+		checkpoint.completedPages = this.progress.getCompletedPages();
+		checkpoint.lastPage = this.lastPage;
+		checkpoint.imagesCollected = this.totalCollected;
+		this.saveCheckpoint(checkpoint);
+	}
+
+	/**
+	 * Fetch the listing page and return the photo URLs on it. The last page is
+	 * extracted from the first page fetched.
+	 * 
+	 * @param page the page index
+	 * 
+	 * @return the photo URLs, or <code>null</code> if the page could not be
+	 *         fetched
+	 */
+	List<String> getPhotoUrlsOnPage(int page) {
+		LOGGER.debug("Crawling page: {}", page);
+		Document doc = this.getHtmlDoc(getPageUrl(page));
 		if (doc == null) {
-			return;
+			return null;
 		}
 
-		if (page == 1) {
-			extractLastPage(doc);
+		synchronized (this) {
+			if (this.lastPage == 0) {
+				extractLastPage(doc);
+			}
 		}
 
-		getPhotosFromPage(collector, options, doc);
+		return getPhotoUrls(doc);
+	}
+
+	/**
+	 * Get the URL of the listing page with given index.
+	 * 
+	 * @param page the page index
+	 * 
+	 * @return the URL
+	 */
+	static String getPageUrl(int page) {
+		if (page > 1) {
+			return BASE_URL + "&page=" + page;
+		}
+
+		return BASE_URL;
 	}
 
 	/**
@@ -249,31 +596,22 @@ public class BurstCrawler extends AbstractBurstCrawler {
 	 * @param options
 	 * 
 	 * @param doc
+	 * 
+	 * @return <code>true</code> if all photos on the page were crawled,
+	 *         <code>false</code> if crawling stopped before
 	 */
-	private void getPhotosFromPage(GenericConsumer<BurstImage> collector, BurstCrawlerOptions options, Document doc) {
-		// clear up noise
-		Element mainNode = getMainNode(doc);
-		if (mainNode == null) {
-			return;
-		}
-
-		// start selecting pics
-		Elements links = mainNode.select("a.photo-tile__image-wrapper");
-		if (links == null) {
-			LOGGER.debug("No images on page");
-			return;
-		}
+	boolean getPhotosFromPage(GenericConsumer<BurstImage> collector, BurstCrawlerOptions options, Document doc) {
+		List<String> urls = getPhotoUrls(doc);
 
 		// loop over
-		LOGGER.debug("Found num images in page: {}", links.size());
-		for (int index = 0; index < links.size(); index++) {
-			String url = links.get(index).absUrl("href");
-			if (AssertUtils.isEmpty(url)) {
+		for (String url : urls) {
+			// skip photos already crawled, if incremental
+			if (!this.isDue(url, null, null)) {
 				continue;
 			}
 			
-			final BurstImage image = this.getBurstImageFromURL(url);
-			if(image == null) {
+			final BurstImage image = this.fetchPhoto(url);
+			if(image == null || this.isUnchanged(url, null, image)) {
 				continue;
 			}
 			
@@ -281,32 +619,31 @@ public class BurstCrawler extends AbstractBurstCrawler {
 			this.totalCollected++;
 
 			// consume with collector
+			this.metrics.recordImageEmitted();
 			boolean continueCrawling = collector.consume(image);
+			this.recordPhoto(url, null, image);
 			if (!continueCrawling) {
-				return;
+				this.collectorStopped = true;
+				return false;
 			}
 
 			// check max images?
 			if (this.totalCollected == options.maxImages) {
-				return;
+				return false;
 			}
 		}
+
+		return true;
 	}
 
 	/**
-	 * Select the <code>main</code> tag from the HTML document.
+	 * Get the photo page URLs from the given page document
 	 * 
 	 * @param doc
-	 * @return
+	 * @return the URLs, empty if there are none
 	 */
-	private Element getMainNode(Document doc) {
-		Elements elements = doc.select("main");
-		if (elements == null) {
-			return null;
-		}
-
-		// get main node
-		return elements.first();
+	private List<String> getPhotoUrls(Document doc) {
+		return this.extraction.getPhotoUrls(doc);
 	}
 
 	/**
@@ -318,12 +655,11 @@ public class BurstCrawler extends AbstractBurstCrawler {
 		LOGGER.debug("Extracting last page from HTML");
 
 		// get last page URL so that we can run a loop
-		Elements elements = doc.select("span.last a");
-		if (elements == null || elements.isEmpty()) {
+		String href = this.extraction.getLastPageUrl(doc);
+		if (href == null) {
 			return;
 		}
 
-		String href = elements.first().absUrl("href");
 		AdvancedStringReader reader = new AdvancedStringReader(href);
 
 		String num = reader.readBetween("page=", "&");
@@ -346,7 +682,10 @@ public class BurstCrawler extends AbstractBurstCrawler {
 			return null;
 		}
 
-		return Jsoup.parse(html, url);
+		final long start = System.nanoTime();
+		final Document doc = Jsoup.parse(html, url);
+		this.metrics.recordHtmlParse(System.nanoTime() - start);
+		return doc;
 	}
 
 	/**
@@ -355,14 +694,27 @@ public class BurstCrawler extends AbstractBurstCrawler {
 	 * @param url
 	 * @return
 	 */
-	private String getHtml(String url) {
+	protected String getHtml(String url) {
 		LOGGER.debug("Fetching HTML response from URL: {}", url);
+		if (this.getFetchBackend() != null) {
+			return this.fetchText(url);
+		}
+		
+		final long start = System.nanoTime();
 		WebResponse response = this.httpService.getResponse(url);
-		if (response == null || !response.isSuccess()) {
+		if (response == null) {
+			this.metrics.recordError("fetch-failed");
+			return null;
+		}
+		
+		if (!response.isSuccess()) {
+			this.metrics.recordError("http-" + response.getResponseCode());
 			return null;
 		}
 
-		return response.getContent();
+		final String content = response.getContent();
+		this.metrics.recordFetch(System.nanoTime() - start, content == null ? 0 : Streams.utf8Length(content));
+		return content;
 	}
 
 	// Usual accessors follow
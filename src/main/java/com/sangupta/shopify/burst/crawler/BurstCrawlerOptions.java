@@ -21,8 +21,7 @@
 
 package com.sangupta.shopify.burst.crawler;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.io.File;
 
 /**
  * Options that can to be used for {@link BurstCrawler}.
@@ -68,11 +67,299 @@ public class BurstCrawlerOptions {
     public boolean populateDetails = true;
     
     /**
-     * URL {@link Set} of previously crawled images. It can be used
+     * Rules to extract image details and listing links with, or
+     * <code>null</code> for {@link ExtractionRules#defaults()}. With the
+     * defaults, the sitemap crawler scans photo pages in a single pass instead
+     * of building a DOM.
+     */
+    public ExtractionRules extractionRules = null;
+    
+    /**
+     * Indicates if photo pages should be read only till the end of their JSON
+     * linked data, populating title, description, author, license URL and
+     * download URL, but not tags, author URL or license name. The rest of the
+     * page is not downloaded, and no DOM is built. Photo pages are then fetched
+     * through the {@link #fetchBackend}, or a direct connection if none, never
+     * through the crawler's <code>HttpService</code>, which reads bodies whole.
+     */
+    public boolean metadataLite = false;
+    
+    /**
+     * Bytes of a photo page read at most in {@link #metadataLite} mode
+     */
+    public int metadataLiteMaxBytes = 256 * 1024;
+    
+    /**
+     * Indicates if author, license and tag values repeating across images
+     * should share a single instance each, to reduce memory held by collected
+     * images
+     */
+    public boolean internValues = true;
+    
+    /**
+     * Number of worker threads that fetch photo pages concurrently. A value of
+     * <code>1</code> or less keeps the sequential crawl on the calling thread.
+     */
+    public int numWorkers = 1;
+    
+    /**
+     * Maximum number of discovered photo URLs waiting to be fetched by the
+     * workers
+     */
+    public int workQueueSize = 1000;
+    
+    /**
+     * Stack size of each photo fetch worker, in bytes. Stack memory is committed
+     * as it is used, so this mostly lowers the address space reserved per
+     * worker, which matters with hundreds of workers or a limited address
+     * space, rather than the memory actually used. The JVM may round it, or
+     * ignore it on some platforms. A value of <code>0</code> uses the JVM
+     * default.
+     */
+    public long workerStackSizeBytes = 0;
+    
+    /**
+     * Backend to make fetches with. When <code>null</code>, fetches go through
+     * the <code>HttpService</code>, or a {@link UrlConnectionFetchBackend} when
+     * the HTTP cache or the adaptive rate limiter is configured, or
+     * {@link #directConnections} is set.
+     */
+    public FetchBackend fetchBackend = null;
+    
+    /**
+     * Indicates if fetches should be made over keep-alive connections owned by
+     * the crawler, configured by the options below, rather than through the
+     * <code>HttpService</code>
+     */
+    public boolean directConnections = false;
+    
+    /**
+     * Timeout to connect, for direct connections
+     */
+    public int connectTimeoutMillis = 30 * 1000;
+    
+    /**
+     * Timeout between reads of a response, for direct connections
+     */
+    public int readTimeoutMillis = 60 * 1000;
+    
+    /**
+     * Indicates if gzip compressed responses should be requested, for direct
+     * connections
+     */
+    public boolean requestCompression = true;
+    
+    /**
+     * Number of idle connections kept alive per host, for direct connections.
+     * This is a JVM-wide setting, applied only if the
+     * <code>http.maxConnections</code> system property has not been set, when
+     * the crawler makes its first direct request; crawls through an
+     * <code>HttpService</code> or another <code>FetchBackend</code> leave it
+     * untouched. It takes effect only if no connection has been made yet. A
+     * value of <code>0</code> keeps the JVM default of 5.
+     */
+    public int maxConnectionsPerHost = 0;
+    
+    /**
+     * Times a request is retried after a connection failure, timeout, or a
+     * <code>429</code> or <code>5xx</code> response
+     */
+    public int maxRetries = 2;
+    
+    /**
+     * Fraction of requests that may be retried across the crawl, beyond an
+     * initial burst of 10 retries
+     */
+    public double retryBudgetRatio = 0.1;
+    
+    /**
+     * Delay before the first retry, doubled for each further one. Not used
+     * when the adaptive rate limiter paces requests.
+     */
+    public long retryBackoffMillis = 500;
+    
+    /**
+     * Number of threads an {@link ImageDownloader} downloads images with
+     */
+    public int downloadWorkers = 4;
+    
+    /**
+     * Number of images that may wait to be downloaded by an
+     * {@link ImageDownloader}, after which the crawl waits for downloads
+     */
+    public int downloadQueueSize = 100;
+    
+    /**
+     * Indicates if an {@link ImageStore} may record a new photo as the stored
+     * binary whose strong <code>ETag</code> its response carries, without
+     * reading the body. Only safe when the server derives tags from the bytes
+     * alone, and not, say, from a modification time shared by distinct images.
+     */
+    public boolean imageStoreTrustEtags = false;
+    
+    /**
+     * Longest edge, in pixels, of each derivative a {@link ThumbnailGenerator}
+     * produces
+     */
+    public int[] thumbnailSizes = { 1024, 400, 160 };
+    
+    /**
+     * Image format of derivatives, as known to <code>ImageIO</code>
+     */
+    public String thumbnailFormat = "jpg";
+    
+    /**
+     * Number of threads a {@link ThumbnailGenerator} decodes and scales images
+     * with, <code>0</code> to use one per available processor
+     */
+    public int thumbnailWorkers = 0;
+    
+    /**
+     * Indicates if {@link CrawlMetrics} of the crawler should be registered
+     * with JMX while crawling
+     */
+    public boolean registerMetricsMBean = false;
+    
+    /**
+     * Reporter to hand {@link CrawlMetrics} to while crawling, and when a crawl
+     * ends
+     */
+    public MetricsReporter metricsReporter = null;
+    
+    /**
+     * Interval between reports to {@link #metricsReporter}
+     */
+    public long metricsReportIntervalMillis = 60 * 1000;
+    
+    /**
+     * Indicates if {@link BurstCrawler} should prefetch listing pages on
+     * separate threads while photo pages of earlier ones are fetched by
+     * {@link #numWorkers} workers. Images may be collected out of page order.
+     */
+    public boolean pipelined = false;
+    
+    /**
+     * Number of threads fetching listing pages in pipelined mode. The page range
+     * is split evenly between them.
+     */
+    public int numListingWorkers = 1;
+    
+    /**
+     * Number of fetched listing pages that may wait to be processed in pipelined
+     * mode
+     */
+    public int prefetchPages = 2;
+    
+    /**
+     * Number of listing pages in each shard of a {@link ShardedCrawlCoordinator}
+     * crawl
+     */
+    public int pagesPerShard = 10;
+    
+    /**
+     * Time a worker may hold a shard without reporting progress, after which
+     * the shard is leased to another worker
+     */
+    public long shardLeaseMillis = 10L * 60 * 1000;
+    
+    /**
+     * Number of times a shard is attempted before it is marked failed
+     */
+    public int maxShardAttempts = 3;
+    
+    /**
+     * URL {@link UrlSeenSet} of previously crawled images. It can be used
      * to prevent crawling of these again. Any URL added here will
-     * not be reported in the resulting set.
+     * not be reported in the resulting set. Defaults to a compact
+     * {@link FingerprintUrlSeenSet} on the heap; a memory-mapped one can be
+     * used to persist a large catalogue between runs.
+     */
+    public UrlSeenSet previouslyCrawled = new FingerprintUrlSeenSet();
+    
+    /**
+     * File to persist crawl state to. When set, crawls are incremental: only
+     * photo pages that are new, or whose sitemap <code>lastmod</code> has
+     * changed since the last run, are fetched, and only images whose details
+     * changed are reported.
+     */
+    public File crawlStateFile = null;
+    
+    /**
+     * File to checkpoint the position of a crawl to. When set, the position is
+     * saved periodically while crawling, and a crawl that did not complete is
+     * resumed from it. The file is removed once a crawl completes.
+     */
+    public File checkpointFile = null;
+    
+    /**
+     * Minimum time between two checkpoints
+     */
+    public long checkpointIntervalMillis = 30 * 1000;
+    
+    /**
+     * Indicates if a crawl should resume from the checkpoint file, if one
+     * exists, rather than start over
+     */
+    public boolean resumeFromCheckpoint = true;
+    
+    /**
+     * Time after which {@link BurstHybridCrawler} crawls all sitemaps again,
+     * rather than only the latest photos, to catch edited photos
+     */
+    public long sitemapSweepIntervalMillis = 24L * 60 * 60 * 1000;
+    
+    /**
+     * Number of latest listing pages {@link BurstHybridCrawler} walks looking
+     * for a known photo, before falling back to crawling all sitemaps
+     */
+    public int maxDeltaPages = 10;
+    
+    /**
+     * Folder to cache HTTP responses in. When set, pages and sitemaps are
+     * revalidated using <code>If-None-Match</code> and
+     * <code>If-Modified-Since</code>, and photo pages that are not modified are
+     * neither downloaded nor parsed again.
+     */
+    public File httpCacheFolder = null;
+    
+    /**
+     * Maximum size of the HTTP cache on disk, least recently used responses are
+     * evicted beyond this
+     */
+    public long httpCacheMaxBytes = 512L * 1024 * 1024;
+    
+    /**
+     * Indicates if fetches should be paced by an {@link AdaptiveRateLimiter}
+     * shared by all fetches, instead of the fixed delays between pages and
+     * images
      */
-    public final Set<String> previouslyCrawled = new HashSet<>();
+    public boolean adaptiveRateLimit = false;
+    
+    /**
+     * Requests per second the adaptive rate limiter starts at
+     */
+    public double ratePerSecond = 1;
+    
+    /**
+     * Lowest rate the adaptive rate limiter backs off to
+     */
+    public double minRatePerSecond = 0.1;
+    
+    /**
+     * Highest rate the adaptive rate limiter speeds up to
+     */
+    public double maxRatePerSecond = 10;
+    
+    /**
+     * Number of requests that may start at once when the adaptive rate limiter
+     * has been idle
+     */
+    public int rateLimitBurst = 4;
+    
+    /**
+     * Response latency above which the adaptive rate limiter backs off
+     */
+    public long targetLatencyMillis = 2000;
     
     public BurstCrawlerOptions setMaxPages(int pages) {
         this.maxPages = pages;
@@ -104,4 +391,234 @@ public class BurstCrawlerOptions {
         return this;
     }
     
+    public BurstCrawlerOptions setInternValues(boolean internValues) {
+        this.internValues = internValues;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setRegisterMetricsMBean(boolean register) {
+        this.registerMetricsMBean = register;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMetricsReporter(MetricsReporter reporter) {
+        this.metricsReporter = reporter;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMetricsReportIntervalMillis(long millis) {
+        this.metricsReportIntervalMillis = millis;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setPipelined(boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setNumListingWorkers(int workers) {
+        this.numListingWorkers = workers;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setPrefetchPages(int pages) {
+        this.prefetchPages = pages;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setPagesPerShard(int pages) {
+        this.pagesPerShard = pages;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setShardLeaseMillis(long millis) {
+        this.shardLeaseMillis = millis;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMaxShardAttempts(int attempts) {
+        this.maxShardAttempts = attempts;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setPreviouslyCrawled(UrlSeenSet previouslyCrawled) {
+        this.previouslyCrawled = previouslyCrawled;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setCrawlStateFile(File file) {
+        this.crawlStateFile = file;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setCheckpointFile(File file) {
+        this.checkpointFile = file;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setCheckpointIntervalMillis(long millis) {
+        this.checkpointIntervalMillis = millis;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setResumeFromCheckpoint(boolean resume) {
+        this.resumeFromCheckpoint = resume;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setSitemapSweepIntervalMillis(long millis) {
+        this.sitemapSweepIntervalMillis = millis;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMaxDeltaPages(int pages) {
+        this.maxDeltaPages = pages;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setHttpCacheFolder(File folder) {
+        this.httpCacheFolder = folder;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setHttpCacheMaxBytes(long bytes) {
+        this.httpCacheMaxBytes = bytes;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setAdaptiveRateLimit(boolean adaptiveRateLimit) {
+        this.adaptiveRateLimit = adaptiveRateLimit;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setRatePerSecond(double rate) {
+        this.ratePerSecond = rate;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMinRatePerSecond(double rate) {
+        this.minRatePerSecond = rate;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMaxRatePerSecond(double rate) {
+        this.maxRatePerSecond = rate;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setRateLimitBurst(int burst) {
+        this.rateLimitBurst = burst;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setTargetLatencyMillis(long millis) {
+        this.targetLatencyMillis = millis;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setNumWorkers(int workers) {
+        this.numWorkers = workers;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setWorkQueueSize(int size) {
+        this.workQueueSize = size;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setWorkerStackSizeBytes(long bytes) {
+        this.workerStackSizeBytes = bytes;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setFetchBackend(FetchBackend fetchBackend) {
+        this.fetchBackend = fetchBackend;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setDirectConnections(boolean directConnections) {
+        this.directConnections = directConnections;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setConnectTimeoutMillis(int millis) {
+        this.connectTimeoutMillis = millis;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setReadTimeoutMillis(int millis) {
+        this.readTimeoutMillis = millis;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setRequestCompression(boolean requestCompression) {
+        this.requestCompression = requestCompression;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMaxConnectionsPerHost(int connections) {
+        this.maxConnectionsPerHost = connections;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMaxRetries(int retries) {
+        this.maxRetries = retries;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setRetryBudgetRatio(double ratio) {
+        this.retryBudgetRatio = ratio;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setRetryBackoffMillis(long millis) {
+        this.retryBackoffMillis = millis;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setDownloadWorkers(int workers) {
+        this.downloadWorkers = workers;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setDownloadQueueSize(int size) {
+        this.downloadQueueSize = size;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setImageStoreTrustEtags(boolean trustEtags) {
+        this.imageStoreTrustEtags = trustEtags;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setExtractionRules(ExtractionRules rules) {
+        this.extractionRules = rules;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMetadataLite(boolean metadataLite) {
+        this.metadataLite = metadataLite;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setMetadataLiteMaxBytes(int maxBytes) {
+        this.metadataLiteMaxBytes = maxBytes;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setThumbnailSizes(int... sizes) {
+        this.thumbnailSizes = sizes;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setThumbnailFormat(String format) {
+        this.thumbnailFormat = format;
+        return this;
+    }
+    
+    public BurstCrawlerOptions setThumbnailWorkers(int workers) {
+        this.thumbnailWorkers = workers;
+        return this;
+    }
+    
 }
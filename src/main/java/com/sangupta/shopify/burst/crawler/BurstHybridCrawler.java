@@ -0,0 +1,225 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.List;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+import com.sangupta.jerry.util.AssertUtils;
+
+/**
+ * Crawler for repeated runs that only need photos added since the last run.
+ * The latest photos listing, as used by {@link BurstCrawler}, is walked page by
+ * page till a photo already known is reached, and only the new photos before
+ * it are fetched. All sitemaps are crawled instead, as by
+ * {@link BurstSitemapCrawler}, once
+ * {@link BurstCrawlerOptions#sitemapSweepIntervalMillis} has passed since they
+ * were last crawled, or when no known photo is found within
+ * {@link BurstCrawlerOptions#maxDeltaPages} pages.
+ * 
+ * Photos are known if recorded in the crawl state, or present in
+ * {@link BurstCrawlerOptions#previouslyCrawled}. With a
+ * {@link BurstCrawlerOptions#crawlStateFile}, the time of the last sweep is
+ * kept across runs, and sweeps report photos edited since they were crawled.
+ * Without one, all photos collected are added to the previously crawled set.
+ * 
+ * @author sangupta
+ *
+ */
+public class BurstHybridCrawler extends BurstSitemapCrawler {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(BurstHybridCrawler.class);
+
+	/**
+	 * Construct an instance of {@link BurstHybridCrawler} using default
+	 * {@link BurstCrawlerOptions}
+	 */
+	public BurstHybridCrawler() {
+		this(new BurstCrawlerOptions());
+	}
+
+	/**
+	 * Construct an instance of {@link BurstHybridCrawler} using provided
+	 * {@link BurstCrawlerOptions}
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to use
+	 */
+	public BurstHybridCrawler(BurstCrawlerOptions options) {
+		super(options);
+	}
+
+	/**
+	 * Crawl photos added since the last crawl from the latest photos listing,
+	 * or all sitemaps if a sweep is due.
+	 * 
+	 * @param collector the {@link GenericConsumer} to use
+	 */
+	@Override
+	public void crawl(final GenericConsumer<BurstImage> collector) {
+		GenericConsumer<BurstImage> consumer = collector;
+		if (this.options.crawlStateFile == null) {
+			// remember photos for the next run
+			consumer = new GenericConsumer<BurstImage>() {
+
+				@Override
+				public boolean consume(BurstImage image) {
+					options.previouslyCrawled.add(image.homeUrl);
+					return collector.consume(image);
+				}
+
+			};
+		}
+
+		// one crawl, whether or not a sweep follows the delta pass
+		this.beginCrawl();
+		try {
+			if (this.crawlLatest(consumer)) {
+				return;
+			}
+
+			LOGGER.info("Crawling all sitemaps of Shopify Burst site");
+			super.crawl(consumer);
+		} finally {
+			this.endCrawl();
+		}
+	}
+
+	/**
+	 * Walk the latest photos listing till a known photo is reached, collecting
+	 * the new photos before it.
+	 * 
+	 * @param collector the {@link GenericConsumer} to use
+	 * 
+	 * @return <code>true</code> if done, or if a listing page could not be
+	 *         fetched, <code>false</code> if all sitemaps need to be crawled
+	 */
+	boolean crawlLatest(GenericConsumer<BurstImage> collector) {
+		this.beginCrawl();
+		try {
+			if (System.currentTimeMillis() - this.getLastSweepMillis() >= this.options.sitemapSweepIntervalMillis) {
+				LOGGER.debug("Sitemap sweep is due");
+				return false;
+			}
+
+			final PolitenessLimiter pageLimiter = new PolitenessLimiter(this.politenessDelay(this.options.delayBetweenPagesMillis), this.metrics);
+			final PolitenessLimiter imageLimiter = new PolitenessLimiter(this.politenessDelay(this.options.delayBetweenImagesMillis), this.metrics);
+
+			int newPhotos = 0;
+			for (int page = 1; page <= this.options.maxDeltaPages; page++) {
+				if (!pageLimiter.acquire()) {
+					return true;
+				}
+
+				// a sweep would fail the same way, try again in the next crawl
+				List<String> urls = this.getPhotoUrlsOnPage(page);
+				if (urls == null) {
+					LOGGER.warn("Unable to fetch latest photos page, ending crawl: {}", page);
+					return true;
+				}
+
+				if (urls.isEmpty()) {
+					LOGGER.warn("No photos found on latest photos page: {}", page);
+					return false;
+				}
+
+				for (String url : urls) {
+					if (this.isKnown(url)) {
+						LOGGER.info("Reached known photo after {} new photos: {}", newPhotos, url);
+						return true;
+					}
+
+					newPhotos++;
+					if (!imageLimiter.acquire()) {
+						return true;
+					}
+
+					BurstImage image = this.fetchPhoto(url);
+					if (image == null || this.isUnchanged(url, null, image)) {
+						continue;
+					}
+
+					this.metrics.recordImageEmitted();
+					boolean continueCrawling = collector.consume(image);
+					this.recordPhoto(url, null, image);
+					if (!continueCrawling) {
+						LOGGER.debug("Collector returned false after collecting image: {}. Further collection stopped.", url);
+						return true;
+					}
+				}
+			}
+
+			LOGGER.info("No known photo within {} latest pages", this.options.maxDeltaPages);
+			return false;
+		} finally {
+			this.endCrawl();
+		}
+	}
+
+	/**
+	 * Check if the photo has been crawled before.
+	 * 
+	 * @param url the photo page URL
+	 * 
+	 * @return <code>true</code> if known
+	 */
+	private boolean isKnown(String url) {
+		if (this.options.previouslyCrawled.contains(url)) {
+			return true;
+		}
+
+		return this.crawlState != null && this.crawlState.contains(url);
+	}
+
+	/**
+	 * Fetch the listing page of latest photos and return the photo URLs on it.
+	 * 
+	 * @param page the page index
+	 * 
+	 * @return the photo URLs, or <code>null</code> if the page could not be
+	 *         fetched
+	 */
+	private List<String> getPhotoUrlsOnPage(int page) {
+		final String url = BurstCrawler.getPageUrl(page);
+		LOGGER.debug("Crawling latest photos page: {}", url);
+
+		String html = this.fetchText(url);
+		if (AssertUtils.isEmpty(html)) {
+			return null;
+		}
+
+		final long start = System.nanoTime();
+		final Document doc = Jsoup.parse(html, url);
+		this.metrics.recordHtmlParse(System.nanoTime() - start);
+
+		return this.extraction.getPhotoUrls(doc);
+	}
+
+}
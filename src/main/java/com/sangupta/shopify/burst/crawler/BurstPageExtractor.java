@@ -0,0 +1,748 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import org.jsoup.helper.StringUtil;
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Single pass extractor for a Shopify Burst photo page. The HTML is scanned
+ * once, left to right, without building a DOM. Links within
+ * <code>main .photo__meta</code> are used to populate author, license and tags
+ * while the first <code>application/ld+json</code> script is read using a
+ * streaming JSON reader into a {@link BurstJsonLinkedData}.
+ * 
+ * Scanning stops as soon as the <code>main</code> element has been closed and
+ * the JSON-LD block has been read.
+ * 
+ * The extractor is a hand compiled form of {@link ExtractionRules#defaults()},
+ * and tells the links apart by their URL in the same way; crawlers use it in
+ * place of the {@link ExtractionPlan} when no other rules are configured.
+ * 
+ * @author sangupta
+ *
+ */
+public class BurstPageExtractor {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(BurstPageExtractor.class);
+
+	/**
+	 * CSS class of the element that holds meta links for the photo
+	 */
+	private static final String PHOTO_META_CLASS = "photo__meta";
+
+	/**
+	 * The script type holding JSON linked data
+	 */
+	private static final String JSON_LD_TYPE = "application/ld+json";
+
+	/**
+	 * The HTML being scanned
+	 */
+	private final String html;
+
+	/**
+	 * Length of the HTML
+	 */
+	private final int length;
+
+	/**
+	 * Base URL to resolve relative links against
+	 */
+	private final String baseUrl;
+
+	/**
+	 * The image being populated
+	 */
+	private final BurstImage image;
+
+	/**
+	 * Current position within the HTML
+	 */
+	private int pos = 0;
+
+	/**
+	 * Nesting depth of <code>main</code> element, zero if outside
+	 */
+	private int mainDepth = 0;
+
+	/**
+	 * Whether the first <code>main</code> element has been closed
+	 */
+	private boolean mainDone = false;
+
+	/**
+	 * Tag name of the current <code>.photo__meta</code> element, if inside one
+	 */
+	private String metaTag = null;
+
+	/**
+	 * Nesting depth of {@link #metaTag} tags
+	 */
+	private int metaDepth = 0;
+
+	/**
+	 * <code>href</code> of the anchor being read, <code>null</code> if not in an
+	 * anchor
+	 */
+	private String anchorHref = null;
+
+	/**
+	 * Text of the anchor being read
+	 */
+	private final StringBuilder anchorText = new StringBuilder();
+
+	/**
+	 * Raw JSON-LD block if found
+	 */
+	private String jsonLinkedData = null;
+
+	/**
+	 * Attributes of the last tag read
+	 */
+	private String attrClass, attrHref, attrType;
+
+	private BurstPageExtractor(BurstImage image, String html) {
+		this.image = image;
+		this.html = html;
+		this.length = html.length();
+		this.baseUrl = image.homeUrl == null ? "" : image.homeUrl;
+	}
+
+	/**
+	 * Extract details from the photo page HTML. Author, author URL, license and
+	 * tags are populated on the given {@link BurstImage}, using
+	 * {@link BurstImage#homeUrl} to resolve relative links.
+	 * 
+	 * @param image the {@link BurstImage} to populate
+	 * 
+	 * @param html  the HTML of the photo page
+	 * 
+	 * @return the {@link BurstJsonLinkedData} read from the page, or
+	 *         <code>null</code> if none was found or it could not be read
+	 */
+	public static BurstJsonLinkedData extract(BurstImage image, String html) {
+		String json = scan(image, html);
+		if (json == null) {
+			return null;
+		}
+
+		return readLinkedDataQuietly(json, image.homeUrl);
+	}
+
+	/**
+	 * Scan the photo page HTML, populating the {@link BurstImage} like
+	 * {@link #extract(BurstImage, String)}, but without reading the JSON linked
+	 * data. Allows timing the two steps separately.
+	 * 
+	 * @param image the {@link BurstImage} to populate
+	 * 
+	 * @param html  the HTML of the photo page
+	 * 
+	 * @return the raw JSON linked data, or <code>null</code> if none was found
+	 */
+	static String scan(BurstImage image, String html) {
+		if (image == null || html == null) {
+			return null;
+		}
+
+		BurstPageExtractor extractor = new BurstPageExtractor(image, html);
+		extractor.scan();
+
+		return extractor.jsonLinkedData;
+	}
+
+	/**
+	 * Read the JSON linked data, logging any failure.
+	 * 
+	 * @param json the raw JSON
+	 * 
+	 * @param url  the photo page URL, for logging
+	 * 
+	 * @return the {@link BurstJsonLinkedData}, or <code>null</code> if it could
+	 *         not be read
+	 */
+	static BurstJsonLinkedData readLinkedDataQuietly(String json, String url) {
+		try {
+			return readLinkedData(json);
+		} catch (IOException | IllegalStateException e) {
+			LOGGER.debug("Unable to read JSON linked data for url: {}", url);
+			return null;
+		}
+	}
+
+	/**
+	 * Read the response body only till the end of the first
+	 * <code>application/ld+json</code> script, or till the given number of
+	 * bytes have been read, without looking at the markup otherwise. The caller
+	 * closes the stream, abandoning the rest of the response.
+	 * 
+	 * @param stream   the decompressed body
+	 * 
+	 * @param maxBytes the number of bytes to read at most
+	 * 
+	 * @return the raw JSON linked data, or <code>null</code> if not found
+	 *         within the bytes read
+	 * 
+	 * @throws IOException if the stream cannot be read
+	 */
+	static String readLinkedDataBlock(InputStream stream, int maxBytes) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(Math.min(maxBytes, 64 * 1024));
+
+		// markup is ASCII, so a lower-cased char per byte finds it in UTF-8 too
+		final StringBuilder chars = new StringBuilder();
+		final byte[] buffer = new byte[8 * 1024];
+
+		int from = 0;
+		int jsonStart = -1;
+		while (bytes.size() < maxBytes) {
+			final int read = stream.read(buffer, 0, Math.min(buffer.length, maxBytes - bytes.size()));
+			if (read < 0) {
+				break;
+			}
+
+			bytes.write(buffer, 0, read);
+			chars.append(new String(buffer, 0, read, StandardCharsets.ISO_8859_1).toLowerCase(Locale.ENGLISH));
+
+			while (true) {
+				if (jsonStart >= 0) {
+					final int close = chars.indexOf("</script", jsonStart);
+					if (close < 0) {
+						break;
+					}
+
+					return new String(bytes.toByteArray(), jsonStart, close - jsonStart, StandardCharsets.UTF_8);
+				}
+
+				final int open = chars.indexOf("<script", from);
+				final int gt = open < 0 ? -1 : chars.indexOf(">", open);
+				if (gt < 0) {
+					break;
+				}
+
+				if (chars.substring(open, gt).contains(JSON_LD_TYPE)) {
+					jsonStart = gt + 1;
+					continue;
+				}
+
+				// markup within other scripts is skipped
+				final int close = chars.indexOf("</script", gt);
+				if (close < 0) {
+					break;
+				}
+
+				from = close;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Scan the HTML once from start to end.
+	 */
+	private void scan() {
+		while (this.pos < this.length) {
+			if (this.mainDone && this.jsonLinkedData != null) {
+				return;
+			}
+
+			int lt = this.html.indexOf('<', this.pos);
+			if (lt < 0) {
+				this.appendText(this.pos, this.length);
+				this.pos = this.length;
+				break;
+			}
+
+			this.appendText(this.pos, lt);
+			this.pos = lt;
+
+			if (this.html.startsWith("<!--", lt)) {
+				int end = this.html.indexOf("-->", lt + 4);
+				this.pos = end < 0 ? this.length : end + 3;
+				continue;
+			}
+
+			char next = lt + 1 < this.length ? this.html.charAt(lt + 1) : ' ';
+			if (next == '/') {
+				this.readCloseTag();
+				continue;
+			}
+
+			if (Character.isLetter(next)) {
+				this.readOpenTag();
+				continue;
+			}
+
+			if (next == '!' || next == '?') {
+				int end = this.html.indexOf('>', lt);
+				this.pos = end < 0 ? this.length : end + 1;
+				continue;
+			}
+
+			// a stray less-than sign is plain text
+			this.appendText(lt, lt + 1);
+			this.pos = lt + 1;
+		}
+
+		if (this.anchorHref != null) {
+			this.finishAnchor();
+		}
+	}
+
+	/**
+	 * Read an opening tag starting at current position.
+	 */
+	private void readOpenTag() {
+		final String name = this.readTagName(this.pos + 1);
+		final boolean selfClosing = this.readAttributes();
+
+		if ("script".equals(name) || "style".equals(name)) {
+			final int start = this.pos;
+			int end = indexOfIgnoreCase(this.html, "</" + name, start);
+			if (end < 0) {
+				end = this.length;
+			}
+
+			if (this.jsonLinkedData == null && "script".equals(name) && JSON_LD_TYPE.equalsIgnoreCase(this.attrType)) {
+				this.jsonLinkedData = this.html.substring(start, end);
+			}
+
+			int gt = this.html.indexOf('>', end);
+			this.pos = gt < 0 ? this.length : gt + 1;
+			return;
+		}
+
+		if (selfClosing) {
+			return;
+		}
+
+		if ("main".equals(name)) {
+			if (this.mainDepth > 0) {
+				this.mainDepth++;
+			} else if (!this.mainDone) {
+				this.mainDepth = 1;
+			}
+
+			return;
+		}
+
+		if (this.mainDepth == 0) {
+			return;
+		}
+
+		if (this.metaTag == null) {
+			if (hasClass(this.attrClass, PHOTO_META_CLASS)) {
+				this.metaTag = name;
+				this.metaDepth = 1;
+			}
+
+			return;
+		}
+
+		if (name.equals(this.metaTag)) {
+			this.metaDepth++;
+		}
+
+		if ("a".equals(name)) {
+			if (this.anchorHref != null) {
+				this.finishAnchor();
+			}
+
+			this.anchorHref = this.attrHref == null ? "" : this.attrHref;
+			this.anchorText.setLength(0);
+		}
+	}
+
+	/**
+	 * Read a closing tag starting at current position.
+	 */
+	private void readCloseTag() {
+		final String name = this.readTagName(this.pos + 2);
+		int gt = this.html.indexOf('>', this.pos);
+		this.pos = gt < 0 ? this.length : gt + 1;
+
+		if (this.anchorHref != null && "a".equals(name)) {
+			this.finishAnchor();
+		}
+
+		if (this.metaTag != null && name.equals(this.metaTag)) {
+			this.metaDepth--;
+			if (this.metaDepth == 0) {
+				this.leaveMeta();
+			}
+		}
+
+		if (this.mainDepth > 0 && "main".equals(name)) {
+			this.mainDepth--;
+			if (this.mainDepth == 0) {
+				this.leaveMeta();
+				this.mainDone = true;
+			}
+		}
+	}
+
+	/**
+	 * Leave the current <code>.photo__meta</code> element.
+	 */
+	private void leaveMeta() {
+		if (this.anchorHref != null) {
+			this.finishAnchor();
+		}
+
+		this.metaTag = null;
+		this.metaDepth = 0;
+	}
+
+	/**
+	 * Read a lower-cased tag name beginning at given index.
+	 * 
+	 * @param start the index to start from
+	 * 
+	 * @return the tag name
+	 */
+	private String readTagName(int start) {
+		int end = start;
+		while (end < this.length) {
+			char ch = this.html.charAt(end);
+			if (Character.isWhitespace(ch) || ch == '>' || ch == '/') {
+				break;
+			}
+
+			end++;
+		}
+
+		this.pos = end;
+		return this.html.substring(start, end).toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Read attributes till the end of the current tag. Only <code>class</code>,
+	 * <code>href</code> and <code>type</code> values are retained.
+	 * 
+	 * @return <code>true</code> if the tag was self-closing
+	 */
+	private boolean readAttributes() {
+		this.attrClass = null;
+		this.attrHref = null;
+		this.attrType = null;
+
+		boolean selfClosing = false;
+		while (this.pos < this.length) {
+			char ch = this.html.charAt(this.pos);
+			if (ch == '>') {
+				this.pos++;
+				return selfClosing;
+			}
+
+			if (ch == '/') {
+				selfClosing = true;
+				this.pos++;
+				continue;
+			}
+
+			if (Character.isWhitespace(ch)) {
+				this.pos++;
+				continue;
+			}
+
+			selfClosing = false;
+
+			// attribute name
+			int start = this.pos;
+			while (this.pos < this.length) {
+				ch = this.html.charAt(this.pos);
+				if (Character.isWhitespace(ch) || ch == '=' || ch == '>' || ch == '/') {
+					break;
+				}
+
+				this.pos++;
+			}
+
+			final int nameStart = start;
+			final int nameEnd = this.pos;
+
+			while (this.pos < this.length && Character.isWhitespace(this.html.charAt(this.pos))) {
+				this.pos++;
+			}
+
+			if (this.pos >= this.length || this.html.charAt(this.pos) != '=') {
+				continue;
+			}
+
+			// attribute value
+			this.pos++;
+			while (this.pos < this.length && Character.isWhitespace(this.html.charAt(this.pos))) {
+				this.pos++;
+			}
+
+			if (this.pos >= this.length) {
+				break;
+			}
+
+			int valueStart;
+			int valueEnd;
+			ch = this.html.charAt(this.pos);
+			if (ch == '"' || ch == '\'') {
+				valueStart = this.pos + 1;
+				valueEnd = this.html.indexOf(ch, valueStart);
+				if (valueEnd < 0) {
+					valueEnd = this.length;
+				}
+
+				this.pos = Math.min(this.length, valueEnd + 1);
+			} else {
+				valueStart = this.pos;
+				while (this.pos < this.length) {
+					ch = this.html.charAt(this.pos);
+					if (Character.isWhitespace(ch) || ch == '>') {
+						break;
+					}
+
+					this.pos++;
+				}
+
+				valueEnd = this.pos;
+			}
+
+			this.retainAttribute(nameStart, nameEnd, valueStart, valueEnd);
+		}
+
+		return selfClosing;
+	}
+
+	/**
+	 * Keep the attribute value if it is one we are interested in.
+	 */
+	private void retainAttribute(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+		final int nameLength = nameEnd - nameStart;
+		if (nameLength == 5 && this.html.regionMatches(true, nameStart, "class", 0, 5)) {
+			this.attrClass = this.html.substring(valueStart, valueEnd);
+			return;
+		}
+
+		if (nameLength == 4 && this.html.regionMatches(true, nameStart, "href", 0, 4)) {
+			this.attrHref = unescape(this.html.substring(valueStart, valueEnd), true);
+			return;
+		}
+
+		if (nameLength == 4 && this.html.regionMatches(true, nameStart, "type", 0, 4)) {
+			this.attrType = this.html.substring(valueStart, valueEnd).trim();
+		}
+	}
+
+	/**
+	 * Append text to the current anchor, if reading one.
+	 */
+	private void appendText(int start, int end) {
+		if (this.anchorHref != null && end > start) {
+			this.anchorText.append(this.html, start, end);
+		}
+	}
+
+	/**
+	 * Complete the anchor being read and populate the image with it.
+	 */
+	private void finishAnchor() {
+		String href = this.anchorHref;
+		String text = StringUtil.normaliseWhitespace(unescape(this.anchorText.toString(), false)).trim();
+
+		this.anchorHref = null;
+		this.anchorText.setLength(0);
+
+		String absolute = StringUtil.resolve(this.baseUrl, href);
+		if (!absolute.isEmpty()) {
+			href = absolute;
+		}
+
+		// populate author url
+		if (href.contains("/@")) {
+			this.image.authorUrl = href;
+			this.image.author = text;
+			return;
+		}
+
+		// populate license and license url
+		if (href.contains("/licenses/")) {
+			this.image.license = text;
+			if (this.image.licenseUrl == null) {
+				this.image.licenseUrl = href;
+			}
+
+			return;
+		}
+
+		// populate tags
+		if (href.contains("/tags/")) {
+			this.image.tags.add(text);
+		}
+	}
+
+	/**
+	 * Read the JSON linked data using a streaming reader, picking only the fields
+	 * that are needed.
+	 * 
+	 * @param json the raw JSON
+	 * 
+	 * @return the {@link BurstJsonLinkedData}
+	 * 
+	 * @throws IOException if the JSON cannot be read
+	 */
+	static BurstJsonLinkedData readLinkedData(String json) throws IOException {
+		final BurstJsonLinkedData data = new BurstJsonLinkedData();
+
+		JsonReader reader = new JsonReader(new StringReader(json));
+		reader.setLenient(true);
+		try {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				return null;
+			}
+
+			reader.beginObject();
+			while (reader.hasNext()) {
+				String name = reader.nextName();
+				switch (name) {
+					case "name":
+						data.name = readString(reader);
+						break;
+
+					case "description":
+						data.description = readString(reader);
+						break;
+
+					case "author":
+						data.author = readString(reader);
+						break;
+
+					case "contentUrl":
+						data.contentUrl = readString(reader);
+						break;
+
+					case "license":
+						data.license = readString(reader);
+						break;
+
+					default:
+						reader.skipValue();
+						break;
+				}
+			}
+
+			return data;
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Read a string value, or the <code>name</code> within an object value.
+	 */
+	private static String readString(JsonReader reader) throws IOException {
+		JsonToken token = reader.peek();
+		if (token == JsonToken.STRING || token == JsonToken.NUMBER) {
+			return reader.nextString();
+		}
+
+		if (token != JsonToken.BEGIN_OBJECT) {
+			reader.skipValue();
+			return null;
+		}
+
+		String value = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			if ("name".equals(reader.nextName()) && reader.peek() == JsonToken.STRING) {
+				value = reader.nextString();
+				continue;
+			}
+
+			reader.skipValue();
+		}
+
+		reader.endObject();
+		return value;
+	}
+
+	/**
+	 * Check if the class attribute contains given class name.
+	 */
+	private static boolean hasClass(String classes, String name) {
+		if (classes == null) {
+			return false;
+		}
+
+		int index = classes.indexOf(name);
+		while (index >= 0) {
+			int end = index + name.length();
+			boolean startOk = index == 0 || Character.isWhitespace(classes.charAt(index - 1));
+			boolean endOk = end == classes.length() || Character.isWhitespace(classes.charAt(end));
+			if (startOk && endOk) {
+				return true;
+			}
+
+			index = classes.indexOf(name, index + 1);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Unescape HTML entities, only if any are present.
+	 */
+	private static String unescape(String value, boolean inAttribute) {
+		if (value.indexOf('&') < 0) {
+			return value;
+		}
+
+		return Parser.unescapeEntities(value, inAttribute);
+	}
+
+	/**
+	 * Case-insensitive {@link String#indexOf(String, int)}.
+	 */
+	private static int indexOfIgnoreCase(String source, String target, int from) {
+		final int max = source.length() - target.length();
+		for (int index = from; index <= max; index++) {
+			if (source.regionMatches(true, index, target, 0, target.length())) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+}
@@ -21,17 +21,15 @@
 
 package com.sangupta.shopify.burst.crawler;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.sangupta.jerry.consume.GenericConsumer;
-import com.sangupta.jerry.io.AdvancedStringReader;
 import com.sangupta.jerry.util.AssertUtils;
 
 /**
@@ -54,17 +52,21 @@ public class BurstSitemapCrawler extends AbstractBurstCrawler {
 	 */
 	private static final String MAIN_SITEMAP_FILE = "https://burst.shopify.com/sitemap.xml";
 
-	/**
-	 * Time last image was crawled - used to leave time gaps between
-	 * each fetch
-	 */
-	private volatile long lastCrawled = 0;
-	
 	/**
 	 * Number of images that we have found
 	 */
 	private int imagesFound = 0;
 
+	/**
+	 * Progress of the current crawl through its sitemaps
+	 */
+	private SitemapProgress progress;
+
+	/**
+	 * Time the last crawl of all sitemaps by this crawler completed
+	 */
+	private long lastSweepMillis = 0;
+
 	/**
 	 * Construct an instance of {@link BurstSitemapCrawler} using default
 	 * {@link BurstCrawlerOptions}
@@ -85,7 +87,10 @@ public class BurstSitemapCrawler extends AbstractBurstCrawler {
 
 	/**
 	 * Crawl using sitemaps, and collect {@link BurstImage}s using a
-	 * {@link GenericConsumer} collector.
+	 * {@link GenericConsumer} collector. If more than one worker is configured
+	 * via {@link BurstCrawlerOptions#numWorkers}, photo pages are fetched in
+	 * parallel. If {@link BurstCrawlerOptions#checkpointFile} is set, the crawl
+	 * resumes from the sitemap entry it had reached when last checkpointed.
 	 * 
 	 * @param collector the {@link GenericConsumer} to use
 	 */
@@ -95,20 +100,90 @@ public class BurstSitemapCrawler extends AbstractBurstCrawler {
 		// reset stats
 		this.imagesFound = 0;
 		
-		// read sitemap file
-		List<String> sitemaps = this.readMainSitemapFile();
+		// read sitemap file, or the sitemaps known when last checkpointed
+		final CrawlCheckpoint checkpoint = this.resumeCheckpoint();
+		List<String> sitemaps;
+		if (checkpoint != null && !AssertUtils.isEmpty(checkpoint.sitemaps)) {
+			sitemaps = new ArrayList<>(checkpoint.sitemaps);
+			this.imagesFound = checkpoint.imagesFound;
+		} else {
+			sitemaps = this.readMainSitemapFile();
+		}
+		
 		if (AssertUtils.isEmpty(sitemaps)) {
 			LOGGER.warn("No sitemaps were discovered from Shopfiy burst");
 			return;
 		}
 
-		// loop over
+		// load state of previous crawls, if incremental
+		this.beginCrawl();
+		
+		// one limiter for all fetches
+		final PolitenessLimiter limiter = new PolitenessLimiter(this.politenessDelay(this.options.delayBetweenImagesMillis), this.metrics);
+		
+		PhotoFetchPool pool = null;
+		if (this.options.numWorkers > 1) {
+			pool = new PhotoFetchPool(this, this.options, limiter, collector);
+			pool.start();
+		}
+		
+		// loop over - list grows as child sitemaps are discovered
 		LOGGER.info("Total number of child sitemaps found: {}", sitemaps.size());
-		Set<String> visited = new HashSet<>();
-		Iterator<String> iterator = sitemaps.iterator();
-		while (iterator.hasNext()) {
-			String sitemap = iterator.next();
-			this.doForSitemap(sitemap, sitemaps, visited, collector);
+		UrlSeenSet visited = new FingerprintUrlSeenSet();
+		
+		// sitemaps before the checkpointed one are done
+		int firstSitemap = 0;
+		long skipEntries = 0;
+		if (checkpoint != null && checkpoint.sitemapIndex < sitemaps.size()) {
+			firstSitemap = checkpoint.sitemapIndex;
+			skipEntries = checkpoint.sitemapOffset;
+			for (int index = 0; index < firstSitemap; index++) {
+				visited.add(sitemaps.get(index));
+			}
+		}
+		
+		this.progress = new SitemapProgress(firstSitemap);
+		boolean completed = false;
+		boolean finished = false;
+		try {
+			boolean allSitemaps = true;
+			for (int index = firstSitemap; index < sitemaps.size(); index++) {
+				String sitemap = sitemaps.get(index);
+				boolean continueCrawling = this.doForSitemap(sitemap, index, index == firstSitemap ? skipEntries : 0, sitemaps, visited, limiter, pool, collector);
+				if (!continueCrawling) {
+					allSitemaps = false;
+					break;
+				}
+			}
+			
+			// the sweep is complete only once every queued photo was handed over
+			if (pool != null) {
+				finished = true;
+				pool.finish();
+				allSitemaps = allSitemaps && !pool.isStopped();
+			}
+			
+			completed = allSitemaps;
+		} finally {
+			try {
+				if (pool != null && !finished) {
+					pool.finish();
+				}
+			} finally {
+				try {
+					if (completed) {
+						this.clearCheckpoint();
+						this.lastSweepMillis = System.currentTimeMillis();
+						if (this.crawlState != null) {
+							this.crawlState.recordSweep();
+						}
+					} else {
+						this.saveCheckpoint(sitemaps);
+					}
+				} finally {
+					this.endCrawl();
+				}
+			}
 		}
 		
 		LOGGER.info("Shopify Burst site crawling completed");
@@ -119,88 +194,160 @@ public class BurstSitemapCrawler extends AbstractBurstCrawler {
 	 * 
 	 * @param sitemap   the sitemap to work on now
 	 * 
+	 * @param index     the index of the sitemap in <code>sitemaps</code>
+	 * 
+	 * @param skip      the number of leading entries already completed in an
+	 *                  earlier crawl
+	 * 
 	 * @param sitemaps  the total list of sitemaps, to add to if needed
 	 * 
-	 * @param visited   a {@link Set} of visited sitemaps so that we don't crawl
+	 * @param visited   a {@link UrlSeenSet} of visited sitemaps so that we don't crawl
 	 *                  again and again
 	 * 
+	 * @param limiter   the {@link PolitenessLimiter} to use between fetches
+	 * 
+	 * @param pool      the {@link PhotoFetchPool} to submit photo URLs to, or
+	 *                  <code>null</code> to fetch on the calling thread
+	 * 
 	 * @param collector the {@link GenericConsumer} that can be used to collect
 	 *                  {@link BurstImage} objects
+	 * 
+	 * @return <code>true</code> if crawling should continue, <code>false</code>
+	 *         otherwise
 	 */
-	private void doForSitemap(String sitemap, List<String> sitemaps, Set<String> visited,
-			GenericConsumer<BurstImage> collector) {
+	private boolean doForSitemap(String sitemap, int index, long skip, List<String> sitemaps, UrlSeenSet visited, PolitenessLimiter limiter,
+			PhotoFetchPool pool, GenericConsumer<BurstImage> collector) {
 		if (visited.contains(sitemap)) {
 			LOGGER.debug("Shopify Burst sitemap XML already visited: {}", sitemap);
-			return;
+			return true;
 		}
 
 		// add to visited
 		visited.add(sitemap);
 
-		// download xml
-		LOGGER.debug("Downloading Shopify Burst sitemap XML: {}", sitemap);
+		// stream xml
+		LOGGER.debug("Streaming Shopify Burst sitemap XML: {}", sitemap);
 
-		String xml = this.httpService.getTextResponse(sitemap);
-		if (AssertUtils.isEmpty(xml)) {
+		SitemapReader reader = this.openSitemap(sitemap);
+		if (reader == null) {
 			LOGGER.debug("No content for shopify burst sitemap: {}", sitemap);
-			return;
+			return true;
 		}
 
-		LOGGER.debug("Extracting photo urls from xml length: {}", xml.length());
-		AdvancedStringReader reader = new AdvancedStringReader(xml);
-		do {
-			if (!reader.hasNext()) {
-				return;
-			}
-
-			String url = reader.readBetween("<loc>", "</loc>");
-			if (url == null) {
-				return;
-			}
+		this.progress.startSitemap(index);
+		try {
+			long position = 0;
+			while (reader.hasNext()) {
+				SitemapEntry entry = reader.next();
+				String url = entry.loc;
+				
+				final long sequence = this.progress.issue();
+				if (position++ < skip) {
+					this.progress.complete(sequence);
+					continue;
+				}
+				
+				if (this.isCheckpointDue()) {
+					this.saveCheckpoint(sitemaps);
+				}
 
-			// check if its a sitemap
-			if (url.endsWith(".xml")) {
-				if (!visited.contains(url)) {
-					LOGGER.debug("Adding Shopify Burst sitemap XML: {}", url);
-					sitemaps.add(url);
+				// check if its a sitemap
+				if (isSitemapUrl(url)) {
+					if (!visited.contains(url)) {
+						LOGGER.debug("Adding Shopify Burst sitemap XML: {}", url);
+						sitemaps.add(url);
+					}
 				}
-			}
 
-			// check if its a photo
-			if (url.startsWith("https://burst.shopify.com/photos/")) {
-				// increment stats
-				this.imagesFound++;
+				// check if its a photo
+				if (url.startsWith("https://burst.shopify.com/photos/")) {
+					// increment stats
+					this.imagesFound++;
 
-				// log message
-				LOGGER.debug("Found image [{}] url as: {}", this.imagesFound, url);
-				
-				// induce delay in crawling if desired
-				long elapsed = System.currentTimeMillis() - this.lastCrawled;
-				long remaining = this.options.delayBetweenImagesMillis - elapsed;
-				if(remaining > 0) {
-					try {
-						LOGGER.debug("Sleeping for {} millis between image fetches", remaining);
-						Thread.sleep(remaining);
-					} catch(InterruptedException e) {
+					// log message
+					LOGGER.debug("Found image [{}] url as: {}", this.imagesFound, url);
+					
+					// skip pages unchanged since last crawl
+					if (!this.isDue(url, entry.lastmod, entry.changefreq)) {
+						this.progress.complete(sequence);
+						continue;
+					}
+					
+					// hand over to workers if running concurrently
+					if (pool != null) {
+						if (!pool.submit(entry, this.progress.completion(sequence))) {
+							return false;
+						}
+						
+						continue;
+					}
+					
+					// induce delay in crawling if desired
+					if (!limiter.acquire()) {
 						// something wants to exit immediately
-						return;
+						return false;
 					}
-				}
-				
-				this.lastCrawled = System.currentTimeMillis();
-				BurstImage crawledImage = this.getBurstImageFromURL(url);
-				if (crawledImage != null) {
+					
+					// a failed fetch is left incomplete, to be retried on resume
+					BurstImage crawledImage = this.fetchPhoto(url);
+					if (crawledImage == null) {
+						continue;
+					}
+					
+					if (this.isUnchanged(url, entry.lastmod, crawledImage)) {
+						this.progress.complete(sequence);
+						continue;
+					}
+					
+					this.metrics.recordImageEmitted();
 					boolean continueCrawling = collector.consume(crawledImage);
+					this.recordPhoto(url, entry.lastmod, crawledImage);
+					this.progress.complete(sequence);
 					if (!continueCrawling) {
 						LOGGER.debug("Collector returned false after collecting image: {}. Further collection stopped.", url);
-						return;
+						return false;
 					}
+					
+					continue;
 				}
+
+				// its some other page url, like author or category
+				// we can skip it for now
+				this.progress.complete(sequence);
 			}
+		} finally {
+			Streams.closeQuietly(reader);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return the time the last crawl of all sitemaps completed, as recorded in
+	 * the crawl state if open, or by this crawler otherwise.
+	 * 
+	 * @return the time in millis, or <code>0</code> if none has completed
+	 */
+	long getLastSweepMillis() {
+		if (this.crawlState != null) {
+			return this.crawlState.getLastSweepMillis();
+		}
+
+		return this.lastSweepMillis;
+	}
 
-			// its some other page url, like author or category
-			// we can skip it for now
-		} while (true);
+	/**
+	 * Save the position of the crawl.
+	 * 
+	 * @param sitemaps the sitemaps discovered so far
+	 */
+	private void saveCheckpoint(List<String> sitemaps) {
+		CrawlCheckpoint checkpoint = new CrawlCheckpoint();
+		checkpoint.sitemaps = new ArrayList<>(sitemaps);
+		checkpoint.sitemapIndex = this.progress.getSitemapIndex();
+		checkpoint.sitemapOffset = this.progress.getSitemapOffset();
+		checkpoint.imagesFound = this.imagesFound;
+		this.saveCheckpoint(checkpoint);
 	}
 
 	/**
@@ -212,27 +359,58 @@ public class BurstSitemapCrawler extends AbstractBurstCrawler {
 	private List<String> readMainSitemapFile() {
 		LOGGER.debug("Downloading Shopify Burst main sitemap XML");
 		
-		String content = this.httpService.getTextResponse(MAIN_SITEMAP_FILE);
-		if (AssertUtils.isEmpty(content)) {
+		SitemapReader reader = this.openSitemap(MAIN_SITEMAP_FILE);
+		if (reader == null) {
 			LOGGER.debug("No content for shopify burst main sitemap");
 			return null;
 		}
 
 		List<String> maps = new ArrayList<>();
-		AdvancedStringReader reader = new AdvancedStringReader(content);
-		do {
-			if (!reader.hasNext()) {
-				return maps;
+		try {
+			while (reader.hasNext()) {
+				String url = reader.next().loc;
+				
+				LOGGER.debug("Discovered child sitemap as: {}", url);
+				maps.add(url);
 			}
+		} finally {
+			Streams.closeQuietly(reader);
+		}
+		
+		return maps;
+	}
 
-			String url = reader.readBetween("<loc>", "</loc>");
-			if (url == null) {
-				return maps;
+	/**
+	 * Open a streaming reader over the sitemap at given URL.
+	 * 
+	 * @param url the sitemap URL
+	 * 
+	 * @return the {@link SitemapReader}, or <code>null</code> if the sitemap could
+	 *         not be opened
+	 */
+	private SitemapReader openSitemap(String url) {
+		try {
+			InputStream stream = this.openStream(url);
+			if (stream == null) {
+				return null;
 			}
+			
+			return new SitemapReader(stream);
+		} catch (IOException e) {
+			LOGGER.error("Unable to open sitemap from url: " + url, e);
+			return null;
+		}
+	}
 
-			LOGGER.debug("Discovered child sitemap as: {}", url);
-			maps.add(url);
-		} while (true);
+	/**
+	 * Check if the URL points to a plain or gzipped sitemap.
+	 * 
+	 * @param url the URL to check
+	 * 
+	 * @return <code>true</code> if it is a sitemap
+	 */
+	private static boolean isSitemapUrl(String url) {
+		return url.endsWith(".xml") || url.endsWith(".xml.gz");
 	}
 
 }
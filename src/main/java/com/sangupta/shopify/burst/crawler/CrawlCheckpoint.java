@@ -0,0 +1,155 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonParseException;
+import com.sangupta.jerry.util.GsonUtils;
+
+/**
+ * Position of a crawl, saved periodically to
+ * {@link BurstCrawlerOptions#checkpointFile} so that a crawl that dies can be
+ * resumed close to where it stopped. Only work that has been completed is
+ * recorded: photos that were in flight are fetched again on resume.
+ * 
+ * The checkpoint is written as JSON to a temporary file that then replaces the
+ * previous checkpoint atomically, so a crash while saving leaves the previous
+ * checkpoint intact.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlCheckpoint {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(CrawlCheckpoint.class);
+
+	/**
+	 * Simple name of the crawler class that saved the checkpoint
+	 */
+	public String crawler;
+
+	/**
+	 * Time the checkpoint was saved, in millis
+	 */
+	public long savedAt;
+
+	/**
+	 * Sitemaps discovered so far, in crawl order
+	 */
+	public List<String> sitemaps;
+
+	/**
+	 * Index of the sitemap being crawled
+	 */
+	public int sitemapIndex;
+
+	/**
+	 * Number of entries of the current sitemap that have been completed
+	 */
+	public long sitemapOffset;
+
+	/**
+	 * Number of photo entries found in sitemaps so far
+	 */
+	public int imagesFound;
+
+	/**
+	 * Listing pages whose photos have all been crawled
+	 */
+	public List<Integer> completedPages;
+
+	/**
+	 * Last listing page as detected
+	 */
+	public int lastPage;
+
+	/**
+	 * Number of images collected so far from listing pages
+	 */
+	public int imagesCollected;
+
+	/**
+	 * Read the checkpoint from given file.
+	 * 
+	 * @param file the file to read from
+	 * 
+	 * @return the {@link CrawlCheckpoint}, or <code>null</code> if the file
+	 *         does not exist or cannot be read
+	 */
+	public static CrawlCheckpoint load(File file) {
+		if (!file.exists()) {
+			return null;
+		}
+
+		try {
+			Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+			try {
+				return GsonUtils.getGson().fromJson(reader, CrawlCheckpoint.class);
+			} finally {
+				reader.close();
+			}
+		} catch (IOException | JsonParseException e) {
+			LOGGER.warn("Ignoring unreadable crawl checkpoint: " + file, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Write the checkpoint to given file, replacing any existing checkpoint
+	 * atomically.
+	 * 
+	 * @param file the file to write to
+	 * 
+	 * @throws IOException if the checkpoint cannot be written
+	 */
+	public void save(File file) throws IOException {
+		File temp = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+		Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8);
+		try {
+			GsonUtils.getGson().toJson(this, writer);
+		} finally {
+			writer.close();
+		}
+
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+}
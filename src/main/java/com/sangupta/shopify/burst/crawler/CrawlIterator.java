@@ -0,0 +1,254 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.Closeable;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * Pull based view of a crawl. The crawl runs on a background thread and hands
+ * images over through a bounded buffer; when the buffer is full the crawl
+ * waits for the reader before delivering more, so a slow reader slows the
+ * fetchers down rather than having images pile up in memory. Fetches already
+ * in flight complete before the crawl waits.
+ * 
+ * The iterator must be closed if it is not read to the end, to stop the crawl.
+ * Images still in the buffer when it is closed are dropped, though the crawl
+ * has already recorded them as crawled in its crawl state and checkpoint. With
+ * a buffer size of <code>0</code> images are handed over only as they are
+ * read, so that closing loses none. Instances are meant to be read from a
+ * single thread.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlIterator implements Iterator<BurstImage>, Closeable {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(CrawlIterator.class);
+
+	/**
+	 * Marks the end of the crawl in the buffer
+	 */
+	private static final BurstImage END = new BurstImage();
+
+	/**
+	 * Thrown to the crawl when the iterator is closed, so that the image being
+	 * handed over is not recorded as crawled
+	 */
+	private static class ClosedException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+	}
+
+	/**
+	 * Interval at which a blocked crawl checks if the iterator was closed
+	 */
+	private static final long CLOSE_CHECK_MILLIS = 100;
+
+	/**
+	 * Images crawled but not yet read
+	 */
+	private final BlockingQueue<BurstImage> buffer;
+
+	/**
+	 * Thread running the crawl
+	 */
+	private final Thread thread;
+
+	/**
+	 * Set when the reader is no longer interested
+	 */
+	private volatile boolean closed = false;
+
+	/**
+	 * Exception that ended the crawl, if any
+	 */
+	private volatile RuntimeException failure;
+
+	/**
+	 * Next image to return, once taken from the buffer
+	 */
+	private BurstImage next;
+
+	/**
+	 * Set when the end of the crawl has been read
+	 */
+	private boolean done = false;
+
+	/**
+	 * Create an iterator over a crawl, not yet started.
+	 * 
+	 * @param crawler    the crawler to run
+	 * 
+	 * @param bufferSize the number of images that may wait to be read,
+	 *                   <code>0</code> to hand over each image as it is read
+	 */
+	CrawlIterator(final AbstractBurstCrawler crawler, int bufferSize) {
+		if (bufferSize > 0) {
+			this.buffer = new ArrayBlockingQueue<>(bufferSize);
+		} else {
+			this.buffer = new SynchronousQueue<>();
+		}
+
+		final GenericConsumer<BurstImage> collector = new GenericConsumer<BurstImage>() {
+
+			@Override
+			public boolean consume(BurstImage image) {
+				if (!offer(image)) {
+					throw new ClosedException();
+				}
+
+				return true;
+			}
+
+		};
+
+		this.thread = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					crawler.crawl(collector);
+				} catch (ClosedException e) {
+					LOGGER.debug("Crawl stopped as the iterator was closed");
+				} catch (RuntimeException e) {
+					LOGGER.error("Crawl failed", e);
+					failure = e;
+				} finally {
+					offer(END);
+				}
+			}
+
+		}, "burst-crawl-iterator");
+
+		this.thread.setDaemon(true);
+	}
+
+	/**
+	 * Start the crawl.
+	 */
+	void start() {
+		this.thread.start();
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.next != null) {
+			return true;
+		}
+
+		if (this.done) {
+			return false;
+		}
+
+		final BurstImage image;
+		try {
+			image = this.buffer.take();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.close();
+			return false;
+		}
+
+		if (image == END) {
+			this.done = true;
+			if (this.failure != null) {
+				throw this.failure;
+			}
+
+			return false;
+		}
+
+		this.next = image;
+		return true;
+	}
+
+	@Override
+	public BurstImage next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		final BurstImage image = this.next;
+		this.next = null;
+		return image;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Crawled images cannot be removed");
+	}
+
+	/**
+	 * Stop the crawl. It stops when it next hands over an image, which is
+	 * refused and so not recorded as crawled. Images in the buffer, already
+	 * recorded by the crawl, are dropped.
+	 */
+	@Override
+	public void close() {
+		if (this.closed) {
+			return;
+		}
+
+		this.closed = true;
+		this.done = true;
+		this.next = null;
+		this.buffer.clear();
+	}
+
+	/**
+	 * Hand an image to the reader, waiting while the buffer is full.
+	 * 
+	 * @return <code>false</code> if the iterator was closed
+	 */
+	private boolean offer(BurstImage image) {
+		while (!this.closed) {
+			try {
+				// space freed by close() does not count as a hand-over
+				if (this.buffer.offer(image, CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS)) {
+					return !this.closed;
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return false;
+			}
+		}
+
+		return false;
+	}
+
+}
@@ -0,0 +1,346 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Counters and timings of a crawler, to tell whether a crawl is bound by the
+ * network, by parsing or by politeness delays. Each crawler keeps one instance
+ * for its lifetime, available via {@link AbstractBurstCrawler#getMetrics()},
+ * and optionally registered with JMX.
+ * 
+ * Recording is lock-free and safe from any thread.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlMetrics implements CrawlMetricsMXBean {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(CrawlMetrics.class);
+
+	/**
+	 * JMX domain the metrics are registered under
+	 */
+	public static final String JMX_DOMAIN = "com.sangupta.shopify.burst.crawler";
+
+	private final AtomicLong pagesFetched = new AtomicLong();
+
+	private final AtomicLong bytesDownloaded = new AtomicLong();
+
+	private final AtomicLong imagesEmitted = new AtomicLong();
+
+	private final AtomicLong skippedPreviouslyCrawled = new AtomicLong();
+
+	/**
+	 * Time till a response is available: the full body for text responses,
+	 * the headers for streamed ones
+	 */
+	private final LatencyHistogram fetchLatency = new LatencyHistogram();
+
+	/**
+	 * Time spent parsing HTML, whether into a JSoup document or scanning it
+	 */
+	private final LatencyHistogram htmlParseTime = new LatencyHistogram();
+
+	private final LatencyHistogram jsonLdParseTime = new LatencyHistogram();
+
+	private final LatencyHistogram politenessWait = new LatencyHistogram();
+
+	private final ConcurrentMap<String, AtomicLong> errors = new ConcurrentHashMap<>();
+
+	/**
+	 * Name registered with JMX, if any
+	 */
+	private ObjectName objectName;
+
+	// recording
+
+	/**
+	 * Record a successful fetch.
+	 * 
+	 * @param nanos time taken
+	 * 
+	 * @param bytes bytes downloaded, if already known
+	 */
+	public void recordFetch(long nanos, long bytes) {
+		this.pagesFetched.incrementAndGet();
+		this.bytesDownloaded.addAndGet(bytes);
+		this.fetchLatency.record(nanos);
+	}
+
+	public void recordBytes(long bytes) {
+		this.bytesDownloaded.addAndGet(bytes);
+	}
+
+	public void recordHtmlParse(long nanos) {
+		this.htmlParseTime.record(nanos);
+	}
+
+	public void recordJsonLdParse(long nanos) {
+		this.jsonLdParseTime.record(nanos);
+	}
+
+	public void recordPolitenessWait(long nanos) {
+		this.politenessWait.record(nanos);
+	}
+
+	public void recordImageEmitted() {
+		this.imagesEmitted.incrementAndGet();
+	}
+
+	public void recordSkippedPreviouslyCrawled() {
+		this.skippedPreviouslyCrawled.incrementAndGet();
+	}
+
+	/**
+	 * Record an error.
+	 * 
+	 * @param type the type of error, such as <code>http-503</code> or an
+	 *             exception class name
+	 */
+	public void recordError(String type) {
+		AtomicLong counter = this.errors.get(type);
+		if (counter == null) {
+			AtomicLong created = new AtomicLong();
+			counter = this.errors.putIfAbsent(type, created);
+			if (counter == null) {
+				counter = created;
+			}
+		}
+
+		counter.incrementAndGet();
+	}
+
+	/**
+	 * Wrap a response body so that bytes are counted as they are read.
+	 * 
+	 * @param stream the body
+	 * 
+	 * @return the counting stream
+	 */
+	InputStream countBytes(InputStream stream) {
+		return new FilterInputStream(stream) {
+
+			@Override
+			public int read() throws IOException {
+				int value = super.read();
+				if (value >= 0) {
+					bytesDownloaded.incrementAndGet();
+				}
+
+				return value;
+			}
+
+			@Override
+			public int read(byte[] buffer, int offset, int length) throws IOException {
+				int read = super.read(buffer, offset, length);
+				if (read > 0) {
+					bytesDownloaded.addAndGet(read);
+				}
+
+				return read;
+			}
+
+		};
+	}
+
+	// JMX
+
+	/**
+	 * Register with the platform MBean server.
+	 * 
+	 * @param name the <code>name</code> key of the {@link ObjectName}
+	 */
+	synchronized void register(String name) {
+		if (this.objectName != null) {
+			return;
+		}
+
+		try {
+			ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=CrawlMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+			this.objectName = objectName;
+		} catch (JMException e) {
+			LOGGER.warn("Unable to register crawl metrics with JMX", e);
+		}
+	}
+
+	/**
+	 * Unregister from the platform MBean server, if registered.
+	 */
+	synchronized void unregister() {
+		if (this.objectName == null) {
+			return;
+		}
+
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if (server.isRegistered(this.objectName)) {
+				server.unregisterMBean(this.objectName);
+			}
+		} catch (JMException e) {
+			LOGGER.warn("Unable to unregister crawl metrics from JMX", e);
+		}
+
+		this.objectName = null;
+	}
+
+	/**
+	 * Return the name registered with JMX.
+	 * 
+	 * @return the {@link ObjectName}, or <code>null</code> if not registered
+	 */
+	public synchronized ObjectName getObjectName() {
+		return this.objectName;
+	}
+
+	// reading
+
+	public LatencyHistogram getFetchLatency() {
+		return this.fetchLatency;
+	}
+
+	public LatencyHistogram getHtmlParseTime() {
+		return this.htmlParseTime;
+	}
+
+	public LatencyHistogram getJsonLdParseTime() {
+		return this.jsonLdParseTime;
+	}
+
+	public LatencyHistogram getPolitenessWait() {
+		return this.politenessWait;
+	}
+
+	@Override
+	public long getPagesFetched() {
+		return this.pagesFetched.get();
+	}
+
+	@Override
+	public long getBytesDownloaded() {
+		return this.bytesDownloaded.get();
+	}
+
+	@Override
+	public long getImagesEmitted() {
+		return this.imagesEmitted.get();
+	}
+
+	@Override
+	public long getSkippedPreviouslyCrawled() {
+		return this.skippedPreviouslyCrawled.get();
+	}
+
+	@Override
+	public double getFetchTotalMillis() {
+		return this.fetchLatency.getTotalMillis();
+	}
+
+	@Override
+	public double getFetchMeanMillis() {
+		return this.fetchLatency.getMeanMillis();
+	}
+
+	@Override
+	public double getFetchP99Millis() {
+		return this.fetchLatency.getPercentileMillis(0.99);
+	}
+
+	@Override
+	public double getHtmlParseTotalMillis() {
+		return this.htmlParseTime.getTotalMillis();
+	}
+
+	@Override
+	public double getHtmlParseMeanMillis() {
+		return this.htmlParseTime.getMeanMillis();
+	}
+
+	@Override
+	public double getJsonLdParseTotalMillis() {
+		return this.jsonLdParseTime.getTotalMillis();
+	}
+
+	@Override
+	public double getJsonLdParseMeanMillis() {
+		return this.jsonLdParseTime.getMeanMillis();
+	}
+
+	@Override
+	public double getPolitenessWaitTotalMillis() {
+		return this.politenessWait.getTotalMillis();
+	}
+
+	@Override
+	public long getErrorCount() {
+		long total = 0;
+		for (AtomicLong counter : this.errors.values()) {
+			total += counter.get();
+		}
+
+		return total;
+	}
+
+	@Override
+	public Map<String, Long> getErrors() {
+		Map<String, Long> errors = new TreeMap<>();
+		for (Map.Entry<String, AtomicLong> entry : this.errors.entrySet()) {
+			errors.put(entry.getKey(), entry.getValue().get());
+		}
+
+		return errors;
+	}
+
+	@Override
+	public String toString() {
+		return String.format(Locale.ENGLISH,
+				"pages=%d bytes=%d images=%d skipped=%d fetch[total=%.0fms mean=%.1fms p99=%.1fms] "
+						+ "htmlParse[total=%.0fms mean=%.2fms] jsonLdParse[total=%.0fms mean=%.2fms] politenessWait=%.0fms errors=%s",
+				this.getPagesFetched(), this.getBytesDownloaded(), this.getImagesEmitted(), this.getSkippedPreviouslyCrawled(),
+				this.getFetchTotalMillis(), this.getFetchMeanMillis(), this.getFetchP99Millis(), this.getHtmlParseTotalMillis(),
+				this.getHtmlParseMeanMillis(), this.getJsonLdParseTotalMillis(), this.getJsonLdParseMeanMillis(),
+				this.getPolitenessWaitTotalMillis(), this.getErrors());
+	}
+
+}
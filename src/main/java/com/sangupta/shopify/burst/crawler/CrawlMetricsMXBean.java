@@ -0,0 +1,68 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link CrawlMetrics}. Times are in milliseconds.
+ * 
+ * @author sangupta
+ *
+ */
+public interface CrawlMetricsMXBean {
+
+	public long getPagesFetched();
+
+	public long getBytesDownloaded();
+
+	public long getImagesEmitted();
+
+	public long getSkippedPreviouslyCrawled();
+
+	public double getFetchTotalMillis();
+
+	public double getFetchMeanMillis();
+
+	public double getFetchP99Millis();
+
+	public double getHtmlParseTotalMillis();
+
+	public double getHtmlParseMeanMillis();
+
+	public double getJsonLdParseTotalMillis();
+
+	public double getJsonLdParseMeanMillis();
+
+	public double getPolitenessWaitTotalMillis();
+
+	public long getErrorCount();
+
+	/**
+	 * Errors by type, such as <code>http-503</code> or an exception class name
+	 * 
+	 * @return the count of errors of each type
+	 */
+	public Map<String, Long> getErrors();
+
+}
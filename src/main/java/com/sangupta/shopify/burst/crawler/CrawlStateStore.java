@@ -0,0 +1,452 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent store of what has been crawled, used for incremental crawls. Each
+ * photo URL is recorded along with the sitemap <code>lastmod</code> value, the
+ * time it was crawled and a hash of the extracted {@link BurstImage} details.
+ * 
+ * The store is an append-only, tab separated log file. It is read fully into
+ * memory when opened - later lines override earlier ones - and rewritten
+ * compactly on {@link #close()} once it holds too many superseded lines.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class CrawlStateStore implements Closeable {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(CrawlStateStore.class);
+
+	/**
+	 * First line of every state file
+	 */
+	private static final String HEADER = "# shopify-burst-crawler state v1";
+
+	/**
+	 * Written in place of missing values
+	 */
+	private static final String NONE = "-";
+
+	/**
+	 * Prefix of lines recording a completed sitemap sweep
+	 */
+	private static final String SWEPT = "# swept ";
+
+	private static final long HOUR_MILLIS = 60L * 60 * 1000;
+
+	private static final long DAY_MILLIS = 24 * HOUR_MILLIS;
+
+	/**
+	 * State of a single crawled URL
+	 */
+	static class Record {
+
+		final String lastmod;
+
+		final long hash;
+
+		final long crawledAt;
+
+		Record(String lastmod, long hash, long crawledAt) {
+			this.lastmod = lastmod;
+			this.hash = hash;
+			this.crawledAt = crawledAt;
+		}
+
+	}
+
+	/**
+	 * The log file
+	 */
+	private final File file;
+
+	/**
+	 * Latest record for each URL
+	 */
+	private final Map<String, Record> records = new HashMap<>();
+
+	/**
+	 * Total number of lines in the log, including superseded ones
+	 */
+	private int logLines = 0;
+
+	/**
+	 * Time the last full sitemap sweep completed, <code>0</code> if never
+	 */
+	private long lastSweepMillis = 0;
+
+	/**
+	 * Writer appending to the log
+	 */
+	private Writer writer;
+
+	/**
+	 * Open the store backed by given file, creating it if needed.
+	 * 
+	 * @param file the log file
+	 * 
+	 * @throws IOException if the file cannot be read or created
+	 */
+	public CrawlStateStore(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("Crawl state file cannot be null");
+		}
+
+		this.file = file;
+		this.load();
+
+		final boolean fresh = !file.exists() || file.length() == 0;
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+		if (fresh) {
+			this.writer.write(HEADER);
+			this.writer.write('\n');
+			this.writer.flush();
+		}
+
+		LOGGER.info("Loaded crawl state for {} urls from: {}", this.records.size(), file.getAbsolutePath());
+	}
+
+	/**
+	 * Check if the URL needs to be fetched. New URLs are always due. Known URLs
+	 * are due if the sitemap reports a different <code>lastmod</code>, or when no
+	 * <code>lastmod</code> is available, if the <code>changefreq</code> interval
+	 * has elapsed since the last crawl.
+	 * 
+	 * @param url        the photo page URL
+	 * 
+	 * @param lastmod    the <code>lastmod</code> value, may be <code>null</code>
+	 * 
+	 * @param changefreq the <code>changefreq</code> value, may be
+	 *                   <code>null</code>
+	 * 
+	 * @return <code>true</code> if the URL should be fetched
+	 */
+	public synchronized boolean isDue(String url, String lastmod, String changefreq) {
+		final Record record = this.records.get(url);
+		if (record == null) {
+			return true;
+		}
+
+		if (lastmod != null) {
+			return !lastmod.equals(record.lastmod);
+		}
+
+		final long interval = intervalOf(changefreq);
+		if (interval < 0) {
+			return false;
+		}
+
+		return System.currentTimeMillis() - record.crawledAt >= interval;
+	}
+
+	/**
+	 * Check if the image is new or its details changed since the URL was last
+	 * recorded. Does not record anything.
+	 * 
+	 * @param url   the photo page URL
+	 * 
+	 * @param image the {@link BurstImage} extracted from the page
+	 * 
+	 * @return <code>true</code> if the image is new or its details changed
+	 */
+	public synchronized boolean isChanged(String url, BurstImage image) {
+		final Record record = this.records.get(url);
+		return record == null || record.hash != hash(image);
+	}
+
+	/**
+	 * Record that the URL has been crawled.
+	 * 
+	 * @param url     the photo page URL
+	 * 
+	 * @param lastmod the <code>lastmod</code> value, may be <code>null</code>
+	 * 
+	 * @param image   the {@link BurstImage} extracted from the page
+	 * 
+	 * @return <code>true</code> if the image is new or its details changed since
+	 *         it was last recorded
+	 */
+	public synchronized boolean record(String url, String lastmod, BurstImage image) {
+		final long hash = hash(image);
+		final long now = System.currentTimeMillis();
+
+		final Record previous = this.records.put(url, new Record(lastmod, hash, now));
+		try {
+			this.writer.write(url);
+			this.writer.write('\t');
+			this.writer.write(lastmod == null ? NONE : lastmod);
+			this.writer.write('\t');
+			this.writer.write(Long.toHexString(hash));
+			this.writer.write('\t');
+			this.writer.write(Long.toString(now));
+			this.writer.write('\n');
+			this.writer.flush();
+			this.logLines++;
+		} catch (IOException e) {
+			LOGGER.error("Unable to append to crawl state file: " + this.file.getAbsolutePath(), e);
+		}
+
+		return previous == null || previous.hash != hash;
+	}
+
+	/**
+	 * Check if the URL has been recorded.
+	 * 
+	 * @param url the URL
+	 * 
+	 * @return <code>true</code> if known
+	 */
+	public synchronized boolean contains(String url) {
+		return this.records.containsKey(url);
+	}
+
+	/**
+	 * Record that a crawl of all sitemaps has completed.
+	 */
+	public synchronized void recordSweep() {
+		this.lastSweepMillis = System.currentTimeMillis();
+		try {
+			this.writer.write(SWEPT);
+			this.writer.write(Long.toString(this.lastSweepMillis));
+			this.writer.write('\n');
+			this.writer.flush();
+		} catch (IOException e) {
+			LOGGER.error("Unable to append to crawl state file: " + this.file.getAbsolutePath(), e);
+		}
+	}
+
+	/**
+	 * Return the time the last crawl of all sitemaps completed.
+	 * 
+	 * @return the time in millis, or <code>0</code> if none has completed
+	 */
+	public synchronized long getLastSweepMillis() {
+		return this.lastSweepMillis;
+	}
+
+	/**
+	 * Number of URLs recorded.
+	 * 
+	 * @return the number of URLs
+	 */
+	public synchronized int size() {
+		return this.records.size();
+	}
+
+	/**
+	 * Close the log, compacting it if more than half the lines are superseded.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.writer == null) {
+			return;
+		}
+
+		this.writer.close();
+		this.writer = null;
+
+		if (this.logLines > 2 * this.records.size()) {
+			this.compact();
+		}
+	}
+
+	/**
+	 * Read the log file, if present.
+	 */
+	private void load() throws IOException {
+		if (!this.file.exists()) {
+			return;
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(SWEPT)) {
+					try {
+						this.lastSweepMillis = Long.parseLong(line.substring(SWEPT.length()));
+					} catch (NumberFormatException e) {
+						LOGGER.warn("Skipping malformed crawl state line: {}", line);
+					}
+
+					continue;
+				}
+
+				if (line.isEmpty() || line.charAt(0) == '#') {
+					continue;
+				}
+
+				String[] tokens = line.split("\t");
+				if (tokens.length != 4) {
+					LOGGER.warn("Skipping malformed crawl state line: {}", line);
+					continue;
+				}
+
+				try {
+					String lastmod = NONE.equals(tokens[1]) ? null : tokens[1];
+					long hash = new BigInteger(tokens[2], 16).longValue();
+					long crawledAt = Long.parseLong(tokens[3]);
+
+					this.records.put(tokens[0], new Record(lastmod, hash, crawledAt));
+					this.logLines++;
+				} catch (NumberFormatException e) {
+					LOGGER.warn("Skipping malformed crawl state line: {}", line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Rewrite the log with only the latest record of each URL, replacing the
+	 * existing file atomically.
+	 */
+	private void compact() throws IOException {
+		File temp = new File(this.file.getAbsoluteFile().getParentFile(), this.file.getName() + ".tmp");
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+		try {
+			out.write(HEADER);
+			out.write('\n');
+			if (this.lastSweepMillis > 0) {
+				out.write(SWEPT);
+				out.write(Long.toString(this.lastSweepMillis));
+				out.write('\n');
+			}
+
+			for (Map.Entry<String, Record> entry : this.records.entrySet()) {
+				Record record = entry.getValue();
+				out.write(entry.getKey());
+				out.write('\t');
+				out.write(record.lastmod == null ? NONE : record.lastmod);
+				out.write('\t');
+				out.write(Long.toHexString(record.hash));
+				out.write('\t');
+				out.write(Long.toString(record.crawledAt));
+				out.write('\n');
+			}
+		} finally {
+			out.close();
+		}
+
+		Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOGGER.debug("Compacted crawl state from {} to {} lines", this.logLines, this.records.size());
+		this.logLines = this.records.size();
+	}
+
+	/**
+	 * Convert a sitemap <code>changefreq</code> value to millis.
+	 * 
+	 * @param changefreq the value
+	 * 
+	 * @return the interval, or <code>-1</code> if the page never needs a revisit
+	 */
+	static long intervalOf(String changefreq) {
+		if (changefreq == null) {
+			return -1;
+		}
+
+		switch (changefreq.toLowerCase(Locale.ENGLISH)) {
+			case "always":
+				return 0;
+			case "hourly":
+				return HOUR_MILLIS;
+			case "daily":
+				return DAY_MILLIS;
+			case "weekly":
+				return 7 * DAY_MILLIS;
+			case "monthly":
+				return 30 * DAY_MILLIS;
+			case "yearly":
+				return 365 * DAY_MILLIS;
+			default:
+				return -1;
+		}
+	}
+
+	/**
+	 * Compute a 64-bit FNV-1a hash over the extracted details of the image. The
+	 * raw HTML is not hashed as it changes between requests even when the photo
+	 * does not.
+	 * 
+	 * @param image the {@link BurstImage}
+	 * 
+	 * @return the hash
+	 */
+	static long hash(BurstImage image) {
+		long hash = 0xcbf29ce484222325L;
+		hash = hash(hash, image.url);
+		hash = hash(hash, image.title);
+		hash = hash(hash, image.description);
+		hash = hash(hash, image.author);
+		hash = hash(hash, image.authorUrl);
+		hash = hash(hash, image.license);
+		hash = hash(hash, image.licenseUrl);
+		for (String tag : image.tags) {
+			hash = hash(hash, tag);
+		}
+
+		return hash;
+	}
+
+	private static long hash(long hash, String value) {
+		if (value != null) {
+			for (int index = 0; index < value.length(); index++) {
+				hash ^= value.charAt(index);
+				hash *= 0x100000001b3L;
+			}
+		}
+
+		// field separator
+		hash ^= 0xff;
+		hash *= 0x100000001b3L;
+		return hash;
+	}
+
+}
@@ -0,0 +1,80 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+
+/**
+ * A {@link BurstImage} whose binary has been downloaded by the
+ * {@link ImageDownloader}, as handed over to the next stage.
+ * 
+ * @author sangupta
+ *
+ */
+public class DownloadedImage {
+
+	/**
+	 * The image downloaded
+	 */
+	public final BurstImage image;
+
+	/**
+	 * The file holding the image binary
+	 */
+	public final File file;
+
+	/**
+	 * Size of the file in bytes
+	 */
+	public final long size;
+
+	/**
+	 * Hex encoded SHA-256 of the file, or <code>null</code> if the file had been
+	 * downloaded earlier and was not read again
+	 */
+	public final String sha256;
+
+	/**
+	 * The <code>ETag</code> the server sent for the image, if any
+	 */
+	public final String etag;
+
+	/**
+	 * The <code>Last-Modified</code> date the server sent for the image, if any
+	 */
+	public final String lastModified;
+
+	public DownloadedImage(BurstImage image, File file, long size, String sha256, String etag) {
+		this(image, file, size, sha256, etag, null);
+	}
+
+	public DownloadedImage(BurstImage image, File file, long size, String sha256, String etag, String lastModified) {
+		this.image = image;
+		this.file = file;
+		this.size = size;
+		this.sha256 = sha256;
+		this.etag = etag;
+		this.lastModified = lastModified;
+	}
+
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Outcome of populating details for a batch of images via
+ * {@link BurstCrawler#populateImageData(java.util.Collection, UrlSeenSet)}.
+ * Images that were not processed, because the batch was interrupted, are
+ * neither reported as succeeded nor as failed.
+ * 
+ * @author sangupta
+ *
+ */
+public class EnrichmentReport {
+
+	/**
+	 * Images populated successfully
+	 */
+	private final List<BurstImage> succeeded = new ArrayList<>();
+
+	/**
+	 * Reason of failure by home URL of the image
+	 */
+	private final Map<String, String> failures = new LinkedHashMap<>();
+
+	/**
+	 * Number of images skipped as populated in an earlier run
+	 */
+	private int skipped = 0;
+
+	synchronized void succeeded(BurstImage image) {
+		this.succeeded.add(image);
+	}
+
+	synchronized void failed(BurstImage image, String reason) {
+		this.failures.put(image.homeUrl, reason);
+	}
+
+	synchronized void skipped() {
+		this.skipped++;
+	}
+
+	/**
+	 * Return the images that were populated.
+	 * 
+	 * @return a copy of the {@link List} of images
+	 */
+	public synchronized List<BurstImage> getSucceeded() {
+		return new ArrayList<>(this.succeeded);
+	}
+
+	/**
+	 * Return the images that could not be populated, such as
+	 * <code>fetch-failed</code> or an exception class name.
+	 * 
+	 * @return a copy of the {@link Map} of reason by home URL
+	 */
+	public synchronized Map<String, String> getFailures() {
+		return new LinkedHashMap<>(this.failures);
+	}
+
+	public synchronized int getSkipped() {
+		return this.skipped;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "EnrichmentReport [succeeded=" + this.succeeded.size() + ", failed=" + this.failures.size() + ", skipped=" + this.skipped + "]";
+	}
+
+}
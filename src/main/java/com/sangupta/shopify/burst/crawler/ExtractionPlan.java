@@ -0,0 +1,435 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.jsoup.select.Collector;
+import org.jsoup.select.Elements;
+import org.jsoup.select.Evaluator;
+import org.jsoup.select.QueryParser;
+import org.jsoup.select.Selector.SelectorParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.sangupta.jerry.util.AssertUtils;
+
+/**
+ * {@link ExtractionRules} compiled for evaluation: each CSS selector is parsed
+ * once into a JSoup {@link Evaluator}, and field names, JSON-LD paths and
+ * transforms are resolved up front, so that pages are evaluated without
+ * parsing any rule again.
+ * 
+ * Instances are immutable and thread-safe, and shared by all workers of a
+ * crawler.
+ * 
+ * @author sangupta
+ *
+ */
+public class ExtractionPlan {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExtractionPlan.class);
+
+	private static final List<String> FIELDS = Collections.unmodifiableList(
+			Arrays.asList("url", "title", "description", "author", "authorUrl", "license", "licenseUrl", "tags"));
+
+	private static final int URL = 0, TITLE = 1, DESCRIPTION = 2, AUTHOR = 3, AUTHOR_URL = 4, LICENSE = 5, LICENSE_URL = 6, TAGS = 7;
+
+	private static final int NO_TRANSFORM = 0, STRIP_QUERY = 1, LOWERCASE = 2;
+
+	/**
+	 * A compiled {@link ExtractionRules.FieldRule}
+	 */
+	private static class CompiledField {
+
+		final int target;
+
+		final Evaluator selector;
+
+		/**
+		 * Attribute to read, <code>null</code> for the text
+		 */
+		final String attribute;
+
+		final String[] jsonLdPath;
+
+		final int transform;
+
+		CompiledField(int target, Evaluator selector, String attribute, String[] jsonLdPath, int transform) {
+			this.target = target;
+			this.selector = selector;
+			this.attribute = attribute;
+			this.jsonLdPath = jsonLdPath;
+			this.transform = transform;
+		}
+
+	}
+
+	private final Evaluator scope;
+
+	private final Evaluator photoLinks;
+
+	private final Evaluator lastPageLink;
+
+	private final Evaluator jsonLdScript;
+
+	private final CompiledField[] fields;
+
+	/**
+	 * Whether any field reads the JSON linked data
+	 */
+	private final boolean needsJsonLd;
+
+	ExtractionPlan(ExtractionRules rules) {
+		this.scope = compileSelector(rules.scope, "scope");
+		this.photoLinks = compileSelector(rules.photoLinks, "photoLinks");
+		this.lastPageLink = compileSelector(rules.lastPageLink, "lastPageLink");
+		this.jsonLdScript = compileSelector(rules.jsonLdScript, "jsonLdScript");
+
+		final List<ExtractionRules.FieldRule> rulesList = rules.fields == null ? Collections.<ExtractionRules.FieldRule> emptyList() : rules.fields;
+		this.fields = new CompiledField[rulesList.size()];
+
+		boolean jsonLd = false;
+		for (int index = 0; index < this.fields.length; index++) {
+			final ExtractionRules.FieldRule rule = rulesList.get(index);
+			final int target = FIELDS.indexOf(rule.field);
+			if (target < 0) {
+				throw new IllegalArgumentException("Unknown field in extraction rule: " + rule.field);
+			}
+
+			final boolean hasSelector = !AssertUtils.isEmpty(rule.selector);
+			final boolean hasPath = !AssertUtils.isEmpty(rule.jsonLd);
+			if (hasSelector == hasPath) {
+				throw new IllegalArgumentException("Extraction rule for " + rule.field + " needs either a selector or a JSON-LD path");
+			}
+
+			final String attribute = AssertUtils.isEmpty(rule.attribute) || "text".equals(rule.attribute) ? null : rule.attribute;
+			this.fields[index] = new CompiledField(target, hasSelector ? compileSelector(rule.selector, rule.field) : null, attribute,
+					hasPath ? rule.jsonLd.split("\\.") : null, compileTransform(rule.transform));
+			jsonLd |= hasPath;
+		}
+
+		this.needsJsonLd = jsonLd;
+	}
+
+	/**
+	 * Populate the image from a photo page. Fields with a value on the page are
+	 * replaced; tags found are added.
+	 * 
+	 * @param image the {@link BurstImage} to populate
+	 * 
+	 * @param doc   the {@link Document} of the photo page, with its base URI set
+	 *              to resolve links
+	 * 
+	 * @return <code>false</code> if the page has no scope element
+	 */
+	public boolean populate(BurstImage image, Document doc) {
+		return this.populate(image, doc, false);
+	}
+
+	/**
+	 * Populate only the fields the image has no value for from a photo page,
+	 * leaving the others as they are.
+	 * 
+	 * @param image the {@link BurstImage} to populate
+	 * 
+	 * @param doc   the {@link Document} of the photo page, with its base URI set
+	 *              to resolve links
+	 * 
+	 * @return <code>false</code> if the page has no scope element
+	 */
+	public boolean populateMissing(BurstImage image, Document doc) {
+		return this.populate(image, doc, true);
+	}
+
+	private boolean populate(BurstImage image, Document doc, boolean onlyMissing) {
+		final Element root = this.getScope(doc);
+		if (root == null) {
+			return false;
+		}
+
+		final JsonElement linkedData = this.needsJsonLd ? this.readLinkedData(doc, image.homeUrl) : null;
+		final boolean[] assigned = new boolean[FIELDS.size()];
+		if (onlyMissing) {
+			for (int target = 0; target < assigned.length; target++) {
+				assigned[target] = hasValue(image, target);
+			}
+		}
+
+		final List<String> values = new ArrayList<>();
+		for (CompiledField field : this.fields) {
+			if (assigned[field.target]) {
+				continue;
+			}
+
+			values.clear();
+			if (field.selector != null) {
+				readElements(Collector.collect(field.selector, root), field.attribute, values);
+			} else if (linkedData != null) {
+				readPath(linkedData, field.jsonLdPath, values);
+			}
+
+			for (int index = 0; index < values.size(); index++) {
+				values.set(index, transform(values.get(index), field.transform));
+			}
+
+			if (values.isEmpty()) {
+				continue;
+			}
+
+			assigned[field.target] = true;
+			assign(image, field.target, values);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Return the absolute URLs of photo pages on a listing page.
+	 * 
+	 * @param doc the {@link Document} of the listing page
+	 * 
+	 * @return the URLs, empty if there are none
+	 */
+	public List<String> getPhotoUrls(Document doc) {
+		final List<String> urls = new ArrayList<>();
+		final Element root = this.getScope(doc);
+		if (root == null) {
+			return urls;
+		}
+
+		final Elements links = Collector.collect(this.photoLinks, root);
+		LOGGER.debug("Found num images in page: {}", links.size());
+		for (int index = 0; index < links.size(); index++) {
+			String url = links.get(index).absUrl("href");
+			if (!AssertUtils.isEmpty(url)) {
+				urls.add(url);
+			}
+		}
+
+		return urls;
+	}
+
+	/**
+	 * Return the URL of the last listing page, as linked from a listing page.
+	 * 
+	 * @param doc the {@link Document} of the listing page
+	 * 
+	 * @return the absolute URL, or <code>null</code> if not linked
+	 */
+	public String getLastPageUrl(Document doc) {
+		final Element link = Collector.collect(this.lastPageLink, doc).first();
+		if (link == null) {
+			return null;
+		}
+
+		return link.absUrl("href");
+	}
+
+	/**
+	 * Return the first element matching the scope selector.
+	 * 
+	 * @param doc the {@link Document}
+	 * 
+	 * @return the {@link Element}, or <code>null</code> if none matches
+	 */
+	public Element getScope(Document doc) {
+		return Collector.collect(this.scope, doc).first();
+	}
+
+	private JsonElement readLinkedData(Document doc, String url) {
+		final Element script = Collector.collect(this.jsonLdScript, doc).first();
+		if (script == null) {
+			return null;
+		}
+
+		try {
+			return new JsonParser().parse(script.data());
+		} catch (JsonParseException e) {
+			LOGGER.debug("Unable to read JSON linked data for url: {}", url);
+			return null;
+		}
+	}
+
+	private static void readElements(Elements elements, String attribute, List<String> values) {
+		for (int index = 0; index < elements.size(); index++) {
+			final Element element = elements.get(index);
+			final String value = attribute == null ? element.text() : element.attr(attribute);
+			if (!AssertUtils.isEmpty(value)) {
+				values.add(value);
+			}
+		}
+	}
+
+	/**
+	 * Read the values at the path. Arrays yield each of their values, and
+	 * objects their <code>name</code>.
+	 */
+	private static void readPath(JsonElement data, String[] path, List<String> values) {
+		JsonElement current = data;
+		for (String name : path) {
+			if (current == null || !current.isJsonObject()) {
+				return;
+			}
+
+			current = current.getAsJsonObject().get(name);
+		}
+
+		if (current != null && current.isJsonArray()) {
+			final JsonArray array = current.getAsJsonArray();
+			for (int index = 0; index < array.size(); index++) {
+				addValue(array.get(index), values);
+			}
+
+			return;
+		}
+
+		addValue(current, values);
+	}
+
+	private static void addValue(JsonElement element, List<String> values) {
+		JsonElement value = element;
+		if (value != null && value.isJsonObject()) {
+			value = value.getAsJsonObject().get("name");
+		}
+
+		if (value == null || !value.isJsonPrimitive()) {
+			return;
+		}
+
+		final String string = value.getAsString();
+		if (!AssertUtils.isEmpty(string)) {
+			values.add(string);
+		}
+	}
+
+	private static String transform(String value, int transform) {
+		switch (transform) {
+			case STRIP_QUERY:
+				int questionMark = value.indexOf('?');
+				return questionMark > 0 ? value.substring(0, questionMark) : value;
+
+			case LOWERCASE:
+				return value.toLowerCase(Locale.ENGLISH);
+
+			default:
+				return value;
+		}
+	}
+
+	private static boolean hasValue(BurstImage image, int target) {
+		switch (target) {
+			case URL:
+				return image.url != null;
+			case TITLE:
+				return image.title != null;
+			case DESCRIPTION:
+				return image.description != null;
+			case AUTHOR:
+				return image.author != null;
+			case AUTHOR_URL:
+				return image.authorUrl != null;
+			case LICENSE:
+				return image.license != null;
+			case LICENSE_URL:
+				return image.licenseUrl != null;
+			case TAGS:
+				return !image.tags.isEmpty();
+			default:
+				throw new IllegalStateException("Unknown field: " + target);
+		}
+	}
+
+	private static void assign(BurstImage image, int target, List<String> values) {
+		final String value = values.get(0);
+		switch (target) {
+			case URL:
+				image.url = value;
+				break;
+			case TITLE:
+				image.title = value;
+				break;
+			case DESCRIPTION:
+				image.description = value;
+				break;
+			case AUTHOR:
+				image.author = value;
+				break;
+			case AUTHOR_URL:
+				image.authorUrl = value;
+				break;
+			case LICENSE:
+				image.license = value;
+				break;
+			case LICENSE_URL:
+				image.licenseUrl = value;
+				break;
+			case TAGS:
+				image.tags.addAll(values);
+				break;
+			default:
+				throw new IllegalStateException("Unknown field: " + target);
+		}
+	}
+
+	private static Evaluator compileSelector(String selector, String name) {
+		if (AssertUtils.isEmpty(selector)) {
+			throw new IllegalArgumentException("Extraction rule selector cannot be empty: " + name);
+		}
+
+		try {
+			return QueryParser.parse(selector);
+		} catch (SelectorParseException e) {
+			throw new IllegalArgumentException("Invalid selector for " + name + ": " + selector, e);
+		}
+	}
+
+	private static int compileTransform(String transform) {
+		if (AssertUtils.isEmpty(transform)) {
+			return NO_TRANSFORM;
+		}
+
+		switch (transform) {
+			case "stripQuery":
+				return STRIP_QUERY;
+			case "lowercase":
+				return LOWERCASE;
+			default:
+				throw new IllegalArgumentException("Unknown transform in extraction rule: " + transform);
+		}
+	}
+
+}
@@ -0,0 +1,268 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gson.JsonParseException;
+import com.sangupta.jerry.util.GsonUtils;
+
+/**
+ * Declarative rules to extract {@link BurstImage} details and listing links
+ * from Shopify Burst pages. Each {@link FieldRule} reads a field either from
+ * the elements matching a CSS selector within the {@link #scope} element, or
+ * from a path in the JSON linked data of the page. The first rule that yields
+ * a value for a field wins, so later rules act as fallbacks.
+ * 
+ * Rules can be read from JSON, so that changes to the site markup need no code
+ * changes:
+ * 
+ * <pre>
+ * {
+ *   "scope": "main",
+ *   "photoLinks": "a.photo-tile__image-wrapper",
+ *   "lastPageLink": "span.last a",
+ *   "fields": [
+ *     { "field": "title", "jsonLd": "name" },
+ *     { "field": "title", "selector": "h1.heading--2" },
+ *     { "field": "tags", "selector": ".photo__meta a[href*=/tags/]" }
+ *   ]
+ * }
+ * </pre>
+ * 
+ * Rules are compiled once, via {@link #compile()}, into an
+ * {@link ExtractionPlan} that all crawlers share.
+ * 
+ * @author sangupta
+ *
+ */
+public class ExtractionRules {
+
+	/**
+	 * A rule to extract a single field of {@link BurstImage}.
+	 */
+	public static class FieldRule {
+
+		/**
+		 * Name of the {@link BurstImage} field to populate: <code>url</code>,
+		 * <code>title</code>, <code>description</code>, <code>author</code>,
+		 * <code>authorUrl</code>, <code>license</code>, <code>licenseUrl</code> or
+		 * <code>tags</code>
+		 */
+		public String field;
+
+		/**
+		 * CSS selector of the elements to read, within the scope element
+		 */
+		public String selector;
+
+		/**
+		 * Attribute of the elements to read, such as <code>abs:href</code>;
+		 * <code>text</code> or <code>null</code> for the normalized text
+		 */
+		public String attribute;
+
+		/**
+		 * Dot separated path of the value within the JSON linked data, such as
+		 * <code>author.name</code>, used instead of a selector. An object value
+		 * yields its <code>name</code>.
+		 */
+		public String jsonLd;
+
+		/**
+		 * Transform to apply to values: <code>stripQuery</code> or
+		 * <code>lowercase</code>, may be <code>null</code>
+		 */
+		public String transform;
+
+		public static FieldRule css(String field, String selector, String attribute) {
+			FieldRule rule = new FieldRule();
+			rule.field = field;
+			rule.selector = selector;
+			rule.attribute = attribute;
+			return rule;
+		}
+
+		public static FieldRule jsonLd(String field, String path) {
+			FieldRule rule = new FieldRule();
+			rule.field = field;
+			rule.jsonLd = path;
+			return rule;
+		}
+
+		public FieldRule setTransform(String transform) {
+			this.transform = transform;
+			return this;
+		}
+
+	}
+
+	/**
+	 * CSS selector of the element photo page fields and listing links are
+	 * selected within
+	 */
+	public String scope = "main";
+
+	/**
+	 * CSS selector of links to photo pages on a listing page
+	 */
+	public String photoLinks = "a.photo-tile__image-wrapper";
+
+	/**
+	 * CSS selector of the link to the last listing page
+	 */
+	public String lastPageLink = "span.last a";
+
+	/**
+	 * CSS selector of the script holding JSON linked data, searched in the
+	 * whole page
+	 */
+	public String jsonLdScript = "script[type=application/ld+json]";
+
+	/**
+	 * The field rules, in order of precedence
+	 */
+	public List<FieldRule> fields = new ArrayList<>();
+
+	/**
+	 * Return the rules matching the current Shopify Burst markup. Fields are
+	 * read from JSON linked data where present, falling back to the HTML, and
+	 * the links in <code>.photo__meta</code> are told apart by their URL.
+	 * 
+	 * @return a new {@link ExtractionRules} instance
+	 */
+	public static ExtractionRules defaults() {
+		ExtractionRules rules = new ExtractionRules();
+
+		rules.addField(FieldRule.jsonLd("url", "contentUrl").setTransform("stripQuery"));
+		rules.addField(FieldRule.css("url", "a.js-download-photo", "abs:href"));
+		rules.addField(FieldRule.jsonLd("title", "name"));
+		rules.addField(FieldRule.css("title", "h1.heading--2", null));
+		rules.addField(FieldRule.jsonLd("description", "description"));
+		rules.addField(FieldRule.css("description", "p.photo-info__description", null));
+		rules.addField(FieldRule.jsonLd("author", "author"));
+		rules.addField(FieldRule.css("author", ".photo__meta a[href*=/@]", null));
+		rules.addField(FieldRule.css("authorUrl", ".photo__meta a[href*=/@]", "abs:href"));
+		rules.addField(FieldRule.css("license", ".photo__meta a[href*=/licenses/]", null));
+		rules.addField(FieldRule.jsonLd("licenseUrl", "license"));
+		rules.addField(FieldRule.css("licenseUrl", ".photo__meta a[href*=/licenses/]", "abs:href"));
+		rules.addField(FieldRule.css("tags", ".photo__meta a[href*=/tags/]", null));
+
+		return rules;
+	}
+
+	/**
+	 * Read rules from JSON.
+	 * 
+	 * @param json the JSON
+	 * 
+	 * @return the {@link ExtractionRules}
+	 * 
+	 * @throws IllegalArgumentException if the JSON cannot be read
+	 */
+	public static ExtractionRules fromJson(String json) {
+		try {
+			ExtractionRules rules = GsonUtils.getGson().fromJson(json, ExtractionRules.class);
+			if (rules == null) {
+				throw new IllegalArgumentException("Extraction rules are empty");
+			}
+
+			return rules;
+		} catch (JsonParseException e) {
+			throw new IllegalArgumentException("Unable to read extraction rules", e);
+		}
+	}
+
+	/**
+	 * Read rules from a JSON file.
+	 * 
+	 * @param file the file to read
+	 * 
+	 * @return the {@link ExtractionRules}
+	 * 
+	 * @throws IOException if the file cannot be read
+	 */
+	public static ExtractionRules load(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+		try {
+			ExtractionRules rules = GsonUtils.getGson().fromJson(reader, ExtractionRules.class);
+			if (rules == null) {
+				throw new IOException("Extraction rules file is empty: " + file);
+			}
+
+			return rules;
+		} catch (JsonParseException e) {
+			throw new IOException("Unable to read extraction rules from: " + file, e);
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Add a field rule, with lower precedence than those added before.
+	 * 
+	 * @param rule the {@link FieldRule}
+	 * 
+	 * @return this instance
+	 */
+	public ExtractionRules addField(FieldRule rule) {
+		this.fields.add(rule);
+		return this;
+	}
+
+	public ExtractionRules setScope(String scope) {
+		this.scope = scope;
+		return this;
+	}
+
+	public ExtractionRules setPhotoLinks(String photoLinks) {
+		this.photoLinks = photoLinks;
+		return this;
+	}
+
+	public ExtractionRules setLastPageLink(String lastPageLink) {
+		this.lastPageLink = lastPageLink;
+		return this;
+	}
+
+	/**
+	 * Compile the rules into an {@link ExtractionPlan}, parsing each selector
+	 * once.
+	 * 
+	 * @return the {@link ExtractionPlan}
+	 * 
+	 * @throws IllegalArgumentException if a rule names an unknown field or
+	 *                                  transform, or a selector is invalid
+	 */
+	public ExtractionPlan compile() {
+		return new ExtractionPlan(this);
+	}
+
+}
@@ -0,0 +1,57 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Makes the HTTP requests of a crawler. A backend is used when one is set via
+ * {@link BurstCrawlerOptions#fetchBackend}, or when the HTTP cache or the
+ * adaptive rate limiter need request and response headers; otherwise fetches
+ * go through the jerry <code>HttpService</code>. Bundled backends are
+ * {@link UrlConnectionFetchBackend}, over direct connections, and
+ * {@link HttpServiceFetchBackend}, over an <code>HttpService</code>.
+ * 
+ * Implementations must be thread-safe, as workers fetch concurrently.
+ * 
+ * @author sangupta
+ *
+ */
+public interface FetchBackend {
+
+	/**
+	 * Fetch the URL using a <code>GET</code> request. Redirects are followed, and
+	 * gzip encoding may be requested from the server.
+	 * 
+	 * @param url     the URL to fetch
+	 * 
+	 * @param headers request headers to send, may be empty
+	 * 
+	 * @return the {@link FetchResponse}, which the caller must close
+	 * 
+	 * @throws IOException if no response could be read
+	 */
+	public FetchResponse fetch(String url, Map<String, String> headers) throws IOException;
+
+}
@@ -0,0 +1,229 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Response returned by a {@link FetchBackend}. A response made over an
+ * {@link HttpURLConnection} disconnects it when the body is closed before its
+ * end, so that the rest of the body is not downloaded just to keep the
+ * connection alive.
+ * 
+ * @author sangupta
+ *
+ */
+public class FetchResponse implements Closeable {
+
+	/**
+	 * Most bytes read from an unfinished body on close, to keep its connection
+	 */
+	private static final int DRAIN_BYTES = 8 * 1024;
+
+	/**
+	 * The HTTP status code
+	 */
+	private final int statusCode;
+
+	/**
+	 * Response headers, keyed by lower-case name
+	 */
+	private final Map<String, String> headers;
+
+	/**
+	 * The raw body, possibly gzipped, may be <code>null</code>
+	 */
+	private final InputStream body;
+
+	/**
+	 * Create a response.
+	 * 
+	 * @param statusCode the HTTP status code
+	 * 
+	 * @param headers    response headers, keyed by lower-case name, may be
+	 *                   <code>null</code>
+	 * 
+	 * @param body       the raw body, possibly gzipped, may be
+	 *                   <code>null</code>
+	 */
+	public FetchResponse(int statusCode, Map<String, String> headers, InputStream body) {
+		this(statusCode, headers, body, null);
+	}
+
+	/**
+	 * Create a response read from a connection, which is disconnected if the
+	 * body is closed before its end.
+	 * 
+	 * @param statusCode the HTTP status code
+	 * 
+	 * @param headers    response headers, keyed by lower-case name, may be
+	 *                   <code>null</code>
+	 * 
+	 * @param body       the raw body, possibly gzipped, may be
+	 *                   <code>null</code>
+	 * 
+	 * @param connection the {@link HttpURLConnection} the body is read from, may
+	 *                   be <code>null</code>
+	 */
+	public FetchResponse(int statusCode, Map<String, String> headers, InputStream body, HttpURLConnection connection) {
+		this.statusCode = statusCode;
+		this.headers = headers == null ? Collections.<String, String> emptyMap() : headers;
+		this.body = body == null || connection == null ? body : new ConnectionBody(body, connection, this.getContentLength());
+	}
+
+	/**
+	 * Check if the status code is a <code>2xx</code> one.
+	 * 
+	 * @return <code>true</code> if the request succeeded
+	 */
+	public boolean isSuccess() {
+		return this.statusCode >= 200 && this.statusCode < 300;
+	}
+
+	/**
+	 * Return the value of a response header.
+	 * 
+	 * @param name the header name, in any case
+	 * 
+	 * @return the value, or <code>null</code> if not present
+	 */
+	public String getHeader(String name) {
+		return this.headers.get(name.toLowerCase(Locale.ENGLISH));
+	}
+
+	/**
+	 * Return the <code>Content-Length</code> of the body.
+	 * 
+	 * @return the length, or <code>-1</code> if unknown
+	 */
+	public long getContentLength() {
+		final String length = this.getHeader("Content-Length");
+		if (length == null) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(length.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Close the body, releasing the connection.
+	 */
+	@Override
+	public void close() {
+		Streams.closeQuietly(this.body);
+	}
+
+	// Usual accessors follow
+
+	public int getStatusCode() {
+		return this.statusCode;
+	}
+
+	public InputStream getBody() {
+		return this.body;
+	}
+
+	/**
+	 * Body read from a connection, that disconnects the connection when closed
+	 * before its end. {@link HttpURLConnection} would otherwise read the rest of
+	 * the body in the background to reuse the connection. A small remainder is
+	 * drained first, as a gzip reader stops at the gzip trailer without reading
+	 * the end of a chunked body, and small error bodies are left unread.
+	 */
+	private static class ConnectionBody extends FilterInputStream {
+
+		private final HttpURLConnection connection;
+
+		/**
+		 * Length of the body, <code>-1</code> if unknown
+		 */
+		private final long length;
+
+		private long read;
+
+		private boolean ended;
+
+		ConnectionBody(InputStream body, HttpURLConnection connection, long length) {
+			super(body);
+			this.connection = connection;
+			this.length = length;
+			this.ended = length == 0;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final int value = super.read();
+			this.count(value < 0 ? -1 : 1);
+			return value;
+		}
+
+		@Override
+		public int read(byte[] bytes, int offset, int count) throws IOException {
+			final int value = super.read(bytes, offset, count);
+			this.count(value);
+			return value;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (!this.ended && !this.drainRemainder()) {
+				this.connection.disconnect();
+			}
+
+			super.close();
+		}
+
+		private boolean drainRemainder() {
+			try {
+				return Streams.drain(this, DRAIN_BYTES);
+			} catch (IOException e) {
+				return false;
+			}
+		}
+
+		private void count(int bytes) {
+			if (bytes < 0) {
+				this.ended = true;
+				return;
+			}
+
+			this.read += bytes;
+			if (this.length >= 0 && this.read >= this.length) {
+				this.ended = true;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+/**
+ * A Bloom filter over 64-bit fingerprints, as computed by
+ * {@link FingerprintUrlSeenSet#fingerprint(String)}. Bit positions are derived
+ * from the fingerprint itself using double hashing, so no further hashing of
+ * the URL is needed.
+ * 
+ * Instances are not thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+class FingerprintBloomFilter {
+
+	/**
+	 * The bits
+	 */
+	private final long[] bits;
+
+	/**
+	 * Number of bits, a power of two
+	 */
+	private final long numBits;
+
+	/**
+	 * Number of bits set per fingerprint
+	 */
+	private final int numHashes;
+
+	/**
+	 * Create a filter sized for given number of fingerprints at given false
+	 * positive rate.
+	 * 
+	 * @param expectedInsertions the number of fingerprints expected
+	 * 
+	 * @param falsePositiveRate  the desired false positive rate
+	 */
+	FingerprintBloomFilter(int expectedInsertions, double falsePositiveRate) {
+		final int insertions = Math.max(expectedInsertions, 1);
+		final double optimalBits = -insertions * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+
+		long bitCount = 64;
+		while (bitCount < optimalBits) {
+			bitCount <<= 1;
+		}
+
+		this.numBits = bitCount;
+		this.bits = new long[(int) (bitCount >>> 6)];
+		this.numHashes = Math.max(1, (int) Math.round((double) bitCount / insertions * Math.log(2)));
+	}
+
+	void put(long fingerprint) {
+		final long mask = this.numBits - 1;
+		final long step = (fingerprint >>> 32) | 1;
+
+		long position = fingerprint;
+		for (int index = 0; index < this.numHashes; index++) {
+			long bit = position & mask;
+			this.bits[(int) (bit >>> 6)] |= 1L << bit;
+			position += step;
+		}
+	}
+
+	boolean mightContain(long fingerprint) {
+		final long mask = this.numBits - 1;
+		final long step = (fingerprint >>> 32) | 1;
+
+		long position = fingerprint;
+		for (int index = 0; index < this.numHashes; index++) {
+			long bit = position & mask;
+			if ((this.bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+				return false;
+			}
+
+			position += step;
+		}
+
+		return true;
+	}
+
+}
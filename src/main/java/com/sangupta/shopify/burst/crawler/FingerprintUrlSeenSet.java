@@ -0,0 +1,495 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * A compact {@link UrlSeenSet} that stores a 64-bit fingerprint of each URL in
+ * an open-addressing table of primitive <code>long</code>s, using about 16 bytes
+ * per URL instead of the few hundred a {@link java.util.HashSet} of
+ * {@link String}s needs.
+ * 
+ * The table can live on the heap, off-heap in a direct buffer, or in a
+ * memory-mapped file so that it is persisted as it is updated and can be
+ * reloaded instantly. An optional Bloom filter in front of the table answers
+ * most lookups for unseen URLs without probing the table, which helps when the
+ * table is mapped and mostly not resident in memory.
+ * 
+ * Two different URLs sharing a fingerprint are treated as the same URL. With
+ * 64-bit fingerprints the chance of any such collision among <i>n</i> URLs is
+ * about <i>n</i>&sup2; / 2<sup>65</sup>, or 1 in 37 million for a million URLs.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class FingerprintUrlSeenSet implements UrlSeenSet, Closeable {
+
+	/**
+	 * Identifies a mapped table file
+	 */
+	private static final long MAGIC = 0x4255525354534554L;
+
+	/**
+	 * Header slots in a mapped file: magic, size and capacity
+	 */
+	private static final int HEADER_SLOTS = 3;
+
+	/**
+	 * Marks an empty slot; no URL gets this fingerprint
+	 */
+	private static final long EMPTY = 0L;
+
+	private static final int DEFAULT_CAPACITY = 1024;
+
+	/**
+	 * Where the table is kept
+	 */
+	private enum Storage {
+		HEAP, DIRECT, MAPPED
+	}
+
+	private final Storage storage;
+
+	/**
+	 * The file backing a {@link Storage#MAPPED} table
+	 */
+	private final File file;
+
+	private RandomAccessFile randomAccessFile;
+
+	/**
+	 * The mapped buffer, kept to force updates to disk
+	 */
+	private MappedByteBuffer mapped;
+
+	/**
+	 * The table slots; for mapped files the header comes first
+	 */
+	private LongBuffer table;
+
+	/**
+	 * Number of slots in the table, always a power of two
+	 */
+	private int capacity;
+
+	private int size;
+
+	/**
+	 * Optional filter in front of the table
+	 */
+	private FingerprintBloomFilter bloomFilter;
+
+	/**
+	 * False positive rate of the Bloom filter, kept to rebuild it on resize
+	 */
+	private double bloomFalsePositiveRate;
+
+	/**
+	 * Create a set on the heap.
+	 */
+	public FingerprintUrlSeenSet() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Create a set on the heap sized for given number of URLs.
+	 * 
+	 * @param expectedSize the number of URLs expected
+	 */
+	public FingerprintUrlSeenSet(int expectedSize) {
+		this(Storage.HEAP, null, expectedSize);
+	}
+
+	private FingerprintUrlSeenSet(Storage storage, File file, int expectedSize) {
+		this.storage = storage;
+		this.file = file;
+		this.capacity = capacityFor(expectedSize);
+	}
+
+	/**
+	 * Create a set whose table lives outside the Java heap.
+	 * 
+	 * @param expectedSize the number of URLs expected
+	 * 
+	 * @return the set
+	 */
+	public static FingerprintUrlSeenSet offHeap(int expectedSize) {
+		FingerprintUrlSeenSet set = new FingerprintUrlSeenSet(Storage.DIRECT, null, expectedSize);
+		set.table = ByteBuffer.allocateDirect(set.capacity * 8).asLongBuffer();
+		return set;
+	}
+
+	/**
+	 * Create a set backed by a memory-mapped file. If the file exists the set
+	 * previously saved there is loaded, otherwise a new file is created. Updates
+	 * are written to the file as they happen, and forced to disk on
+	 * {@link #flush()} and {@link #close()}. When the set grows, it is rebuilt
+	 * in a <code>.tmp</code> file next to it which then replaces the file.
+	 * 
+	 * @param file         the file to map
+	 * 
+	 * @param expectedSize the number of URLs expected
+	 * 
+	 * @return the set
+	 * 
+	 * @throws IOException if the file cannot be mapped, or is not a set file
+	 */
+	public static FingerprintUrlSeenSet mapped(File file, int expectedSize) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("File cannot be null");
+		}
+
+		FingerprintUrlSeenSet set = new FingerprintUrlSeenSet(Storage.MAPPED, file, expectedSize);
+		set.randomAccessFile = new RandomAccessFile(file, "rw");
+
+		try {
+			if (set.randomAccessFile.length() == 0) {
+				set.map(set.capacity);
+				set.writeHeader();
+				return set;
+			}
+
+			set.map((int) (set.randomAccessFile.length() / 8 - HEADER_SLOTS));
+			if (set.table.get(0) != MAGIC) {
+				throw new IOException("Not a URL set file: " + file);
+			}
+
+			set.size = (int) set.table.get(1);
+			set.capacity = (int) set.table.get(2);
+			return set;
+		} catch (IOException e) {
+			set.randomAccessFile.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Put a Bloom filter in front of the table, so that most lookups of URLs not
+	 * in the set are answered without probing it. The filter is sized for the
+	 * table capacity and costs about 10 bits per URL at a 1% rate.
+	 * 
+	 * @param falsePositiveRate the rate at which the filter lets unseen URLs
+	 *                          through to the table, such as <code>0.01</code>
+	 * 
+	 * @return this instance
+	 */
+	public synchronized FingerprintUrlSeenSet withBloomFilter(double falsePositiveRate) {
+		if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+			throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+		}
+
+		this.bloomFalsePositiveRate = falsePositiveRate;
+		this.rebuildBloomFilter();
+		return this;
+	}
+
+	@Override
+	public boolean add(String url) {
+		return this.addFingerprint(fingerprint(url));
+	}
+
+	@Override
+	public boolean contains(String url) {
+		return this.containsFingerprint(fingerprint(url));
+	}
+
+	@Override
+	public synchronized int size() {
+		return this.size;
+	}
+
+	synchronized boolean addFingerprint(long fingerprint) {
+		this.ensureTable();
+
+		int slot = this.slotOf(fingerprint);
+		if (this.slotAt(slot) == fingerprint) {
+			return false;
+		}
+
+		// keep load under a half so probe sequences stay short
+		if ((this.size + 1) * 2 > this.capacity) {
+			this.resize(this.capacity * 2);
+			slot = this.slotOf(fingerprint);
+		}
+
+		this.setSlot(slot, fingerprint);
+		this.size++;
+
+		if (this.bloomFilter != null) {
+			this.bloomFilter.put(fingerprint);
+		}
+
+		if (this.storage == Storage.MAPPED) {
+			this.table.put(1, this.size);
+		}
+
+		return true;
+	}
+
+	synchronized boolean containsFingerprint(long fingerprint) {
+		if (this.table == null) {
+			return false;
+		}
+
+		if (this.bloomFilter != null && !this.bloomFilter.mightContain(fingerprint)) {
+			return false;
+		}
+
+		return this.slotAt(this.slotOf(fingerprint)) == fingerprint;
+	}
+
+	/**
+	 * Force updates of a mapped set to disk. Does nothing for other sets.
+	 */
+	public synchronized void flush() {
+		if (this.mapped != null) {
+			this.mapped.force();
+		}
+	}
+
+	/**
+	 * Flush and release the mapped file, if any. The set must not be used after
+	 * this.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if (this.randomAccessFile == null) {
+			return;
+		}
+
+		this.flush();
+		this.mapped = null;
+		this.table = null;
+
+		this.randomAccessFile.close();
+		this.randomAccessFile = null;
+	}
+
+	/**
+	 * Find the slot holding the fingerprint, or the empty slot where it would be
+	 * added.
+	 */
+	private int slotOf(long fingerprint) {
+		final int mask = this.capacity - 1;
+
+		int slot = (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+		while (true) {
+			long current = this.slotAt(slot);
+			if (current == EMPTY || current == fingerprint) {
+				return slot;
+			}
+
+			slot = (slot + 1) & mask;
+		}
+	}
+
+	private long slotAt(int slot) {
+		return this.table.get(this.offset() + slot);
+	}
+
+	private void setSlot(int slot, long fingerprint) {
+		this.table.put(this.offset() + slot, fingerprint);
+	}
+
+	private int offset() {
+		return this.storage == Storage.MAPPED ? HEADER_SLOTS : 0;
+	}
+
+	/**
+	 * Allocate the heap table lazily so that unused sets cost nothing.
+	 */
+	private void ensureTable() {
+		if (this.table != null) {
+			return;
+		}
+
+		if (this.storage != Storage.HEAP) {
+			throw new IllegalStateException("URL set has been closed");
+		}
+
+		this.table = LongBuffer.allocate(this.capacity);
+	}
+
+	/**
+	 * Grow the table and re-insert all fingerprints. A mapped table is rebuilt
+	 * in a temporary file that then replaces the set file atomically, so that a
+	 * crash while resizing leaves the previous set on disk.
+	 */
+	private void resize(int newCapacity) {
+		final long[] fingerprints = this.fingerprints();
+		final File temp = this.file == null ? null : new File(this.file.getParentFile(), this.file.getName() + ".tmp");
+		RandomAccessFile previous = null;
+
+		switch (this.storage) {
+			case HEAP:
+				this.table = LongBuffer.allocate(newCapacity);
+				break;
+
+			case DIRECT:
+				this.table = ByteBuffer.allocateDirect(newCapacity * 8).asLongBuffer();
+				break;
+
+			case MAPPED:
+				previous = this.randomAccessFile;
+				try {
+					this.randomAccessFile = new RandomAccessFile(temp, "rw");
+					this.randomAccessFile.setLength(0);
+					this.map(newCapacity);
+				} catch (IOException e) {
+					Streams.closeQuietly(this.randomAccessFile);
+					this.randomAccessFile = previous;
+					throw new IllegalStateException("Unable to grow URL set file: " + this.file, e);
+				}
+
+				break;
+		}
+
+		this.capacity = newCapacity;
+		for (long fingerprint : fingerprints) {
+			this.setSlot(this.slotOf(fingerprint), fingerprint);
+		}
+
+		if (this.storage == Storage.MAPPED) {
+			this.writeHeader();
+			this.mapped.force();
+			try {
+				Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+				previous.close();
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to replace URL set file: " + this.file, e);
+			}
+		}
+
+		if (this.bloomFilter != null) {
+			this.rebuildBloomFilter();
+		}
+	}
+
+	/**
+	 * Read all fingerprints out of the table.
+	 */
+	private long[] fingerprints() {
+		final long[] fingerprints = new long[this.size];
+		if (this.table == null) {
+			return fingerprints;
+		}
+
+		int index = 0;
+		for (int slot = 0; slot < this.capacity; slot++) {
+			long fingerprint = this.slotAt(slot);
+			if (fingerprint != EMPTY) {
+				fingerprints[index++] = fingerprint;
+			}
+		}
+
+		return fingerprints;
+	}
+
+	private void rebuildBloomFilter() {
+		this.bloomFilter = new FingerprintBloomFilter(this.capacity / 2, this.bloomFalsePositiveRate);
+		for (long fingerprint : this.fingerprints()) {
+			this.bloomFilter.put(fingerprint);
+		}
+	}
+
+	/**
+	 * Map the file with room for given number of slots after the header.
+	 */
+	private void map(int slots) throws IOException {
+		final long bytes = (HEADER_SLOTS + (long) slots) * 8;
+		if (this.randomAccessFile.length() < bytes) {
+			this.randomAccessFile.setLength(bytes);
+		}
+
+		this.mapped = this.randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		this.table = this.mapped.asLongBuffer();
+	}
+
+	private void writeHeader() {
+		this.table.put(0, MAGIC);
+		this.table.put(1, this.size);
+		this.table.put(2, this.capacity);
+	}
+
+	/**
+	 * Smallest power of two table that holds given number of URLs at half load.
+	 */
+	private static int capacityFor(int expectedSize) {
+		int capacity = 16;
+		while (capacity < 2L * expectedSize) {
+			capacity <<= 1;
+		}
+
+		return capacity;
+	}
+
+	/**
+	 * Compute the 64-bit fingerprint of a URL: FNV-1a style multiply over four
+	 * characters at a time, followed by a finalizer to spread the bits for table
+	 * and filter indices.
+	 * 
+	 * @param url the URL
+	 * 
+	 * @return the fingerprint, never {@value #EMPTY}
+	 */
+	static long fingerprint(String url) {
+		final int length = url.length();
+
+		long hash = 0xcbf29ce484222325L ^ length;
+		int index = 0;
+		for (; index + 4 <= length; index += 4) {
+			long chunk = url.charAt(index) | ((long) url.charAt(index + 1) << 16) | ((long) url.charAt(index + 2) << 32)
+					| ((long) url.charAt(index + 3) << 48);
+
+			hash ^= chunk;
+			hash *= 0x100000001b3L;
+			hash ^= hash >>> 29;
+		}
+
+		for (; index < length; index++) {
+			hash ^= url.charAt(index);
+			hash *= 0x100000001b3L;
+		}
+
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+
+		return hash == EMPTY ? 1 : hash;
+	}
+
+}
@@ -0,0 +1,600 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.JsonParseException;
+import com.sangupta.jerry.util.GsonUtils;
+
+/**
+ * A disk-backed HTTP response cache used to revalidate pages with
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code>. For every URL
+ * the cache keeps the <code>ETag</code> and <code>Last-Modified</code>
+ * validators, the raw response body and, for photo pages, the
+ * {@link BurstImage} parsed from it, so that a <code>304 Not Modified</code>
+ * needs neither a download nor a parse.
+ * 
+ * Each entry is stored as two files named after the SHA-1 of its URL. Total
+ * size is bounded: least recently used entries are evicted once
+ * <code>maxBytes</code> is exceeded. File modification times record use, so
+ * recency survives restarts. Responses without any validator are not cached.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class HttpCache {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(HttpCache.class);
+
+	/**
+	 * Extension of entry metadata files
+	 */
+	private static final String META_SUFFIX = ".meta";
+
+	/**
+	 * Extension of entry body files
+	 */
+	private static final String BODY_SUFFIX = ".body";
+
+	/**
+	 * Most bytes read past what the reader consumed to find the end of a body
+	 */
+	private static final int DRAIN_BYTES = 8 * 1024;
+
+	/**
+	 * Metadata of a cached response.
+	 */
+	public static class Entry {
+
+		/**
+		 * The URL of the response
+		 */
+		public String url;
+
+		/**
+		 * The <code>ETag</code> header, if any
+		 */
+		public String etag;
+
+		/**
+		 * The <code>Last-Modified</code> header, if any
+		 */
+		public String lastModified;
+
+		/**
+		 * The image parsed from the body, only for photo pages
+		 */
+		public BurstImage image;
+
+		/**
+		 * Return a copy of the image parsed from the body, that callers may
+		 * modify without changing the entry.
+		 * 
+		 * @return the copy, or <code>null</code> if no image is attached
+		 */
+		public BurstImage copyOfImage() {
+			if (this.image == null) {
+				return null;
+			}
+
+			return GsonUtils.getGson().fromJson(GsonUtils.getGson().toJsonTree(this.image), BurstImage.class);
+		}
+
+	}
+
+	/**
+	 * Folder holding the cache files
+	 */
+	private final File folder;
+
+	/**
+	 * Maximum bytes on disk
+	 */
+	private final long maxBytes;
+
+	/**
+	 * Entry key to size on disk, in least recently used order
+	 */
+	private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(1024, 0.75f, true);
+
+	/**
+	 * Bytes used on disk
+	 */
+	private long totalBytes = 0;
+
+	/**
+	 * Open the cache in given folder, creating it if needed.
+	 * 
+	 * @param folder   the folder to store entries in
+	 * 
+	 * @param maxBytes the maximum size on disk
+	 * 
+	 * @throws IOException if the folder cannot be created
+	 */
+	public HttpCache(File folder, long maxBytes) throws IOException {
+		if (folder == null) {
+			throw new IllegalArgumentException("Cache folder cannot be null");
+		}
+
+		if (!folder.isDirectory() && !folder.mkdirs()) {
+			throw new IOException("Unable to create cache folder: " + folder.getAbsolutePath());
+		}
+
+		this.folder = folder;
+		this.maxBytes = maxBytes;
+		this.load();
+	}
+
+	/**
+	 * Get the cached entry for the URL, marking it as recently used.
+	 * 
+	 * @param url the URL
+	 * 
+	 * @return the {@link Entry}, or <code>null</code> if not cached
+	 */
+	public Entry get(String url) {
+		final String key = keyOf(url);
+		synchronized (this) {
+			if (this.index.get(key) == null) {
+				return null;
+			}
+		}
+
+		File meta = this.fileOf(key, META_SUFFIX);
+		try {
+			Entry entry;
+			Reader reader = new InputStreamReader(new FileInputStream(meta), StandardCharsets.UTF_8);
+			try {
+				entry = GsonUtils.getGson().fromJson(reader, Entry.class);
+			} finally {
+				reader.close();
+			}
+
+			if (entry == null || !url.equals(entry.url)) {
+				return null;
+			}
+
+			meta.setLastModified(System.currentTimeMillis());
+			return entry;
+		} catch (IOException | JsonParseException e) {
+			LOGGER.debug("Dropping unreadable cache entry for url: {}", url);
+			this.remove(key);
+			return null;
+		}
+	}
+
+	/**
+	 * Open the cached body of the URL.
+	 * 
+	 * @param url the URL
+	 * 
+	 * @return the body as stored, or <code>null</code> if not cached
+	 */
+	public InputStream openBody(String url) {
+		try {
+			return new FileInputStream(this.fileOf(keyOf(url), BODY_SUFFIX));
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Store a response body, replacing any previous entry for the URL.
+	 * 
+	 * @param url          the URL
+	 * 
+	 * @param etag         the <code>ETag</code> header, may be <code>null</code>
+	 * 
+	 * @param lastModified the <code>Last-Modified</code> header, may be
+	 *                     <code>null</code>
+	 * 
+	 * @param body         the raw body
+	 */
+	public void put(String url, String etag, String lastModified, byte[] body) {
+		if (etag == null && lastModified == null) {
+			return;
+		}
+
+		final String key = keyOf(url);
+		try {
+			File temp = this.tempFile(key);
+			OutputStream out = new FileOutputStream(temp);
+			try {
+				out.write(body);
+			} finally {
+				out.close();
+			}
+
+			this.commit(key, temp, newEntry(url, etag, lastModified));
+		} catch (IOException e) {
+			LOGGER.warn("Unable to cache response for url: {}", url);
+		}
+	}
+
+	/**
+	 * Wrap a response stream so that the body is cached as it is read. The entry
+	 * is only stored once the stream has been read to its end; a stream closed
+	 * early leaves the cache untouched.
+	 * 
+	 * @param url          the URL
+	 * 
+	 * @param etag         the <code>ETag</code> header, may be <code>null</code>
+	 * 
+	 * @param lastModified the <code>Last-Modified</code> header, may be
+	 *                     <code>null</code>
+	 * 
+	 * @param stream       the response stream
+	 * 
+	 * @return the stream to read from
+	 */
+	public InputStream cacheWhileReading(String url, String etag, String lastModified, InputStream stream) {
+		if (etag == null && lastModified == null) {
+			return stream;
+		}
+
+		final String key = keyOf(url);
+		try {
+			File temp = this.tempFile(key);
+			return new CachingInputStream(stream, temp, key, newEntry(url, etag, lastModified));
+		} catch (IOException e) {
+			LOGGER.warn("Unable to cache response for url: {}", url);
+			return stream;
+		}
+	}
+
+	/**
+	 * Attach the parsed image to an existing entry. The metadata is rewritten
+	 * and accounted for under the cache lock, so that it cannot race a
+	 * replacement or eviction of the entry.
+	 * 
+	 * @param url   the URL
+	 * 
+	 * @param image the {@link BurstImage} parsed from the cached body
+	 */
+	public synchronized void putImage(String url, BurstImage image) {
+		Entry entry = this.get(url);
+		if (entry == null) {
+			return;
+		}
+
+		entry.image = image;
+		try {
+			String key = keyOf(url);
+			File meta = this.fileOf(key, META_SUFFIX);
+			long before = meta.length();
+			this.writeMeta(meta, entry);
+
+			long delta = meta.length() - before;
+			this.index.put(key, this.index.get(key) + delta);
+			this.totalBytes += delta;
+			this.evict();
+		} catch (IOException e) {
+			LOGGER.warn("Unable to cache image for url: {}", url);
+		}
+	}
+
+	/**
+	 * Bytes currently used on disk.
+	 * 
+	 * @return the number of bytes
+	 */
+	public synchronized long size() {
+		return this.totalBytes;
+	}
+
+	/**
+	 * Number of entries cached.
+	 * 
+	 * @return the number of entries
+	 */
+	public synchronized int count() {
+		return this.index.size();
+	}
+
+	/**
+	 * Move a completely written body in place and write the metadata.
+	 */
+	private void commit(String key, File temp, Entry entry) throws IOException {
+		File body = this.fileOf(key, BODY_SUFFIX);
+		File meta = this.fileOf(key, META_SUFFIX);
+
+		synchronized (this) {
+			this.remove(key);
+
+			Files.move(temp.toPath(), body.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			this.writeMeta(meta, entry);
+
+			long size = body.length() + meta.length();
+			this.index.put(key, size);
+			this.totalBytes += size;
+
+			this.evict();
+		}
+	}
+
+	/**
+	 * Remove least recently used entries till the cache fits its budget.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, Long>> iterator = this.index.entrySet().iterator();
+		while (this.totalBytes > this.maxBytes && iterator.hasNext()) {
+			Map.Entry<String, Long> eldest = iterator.next();
+			iterator.remove();
+
+			this.totalBytes -= eldest.getValue();
+			this.fileOf(eldest.getKey(), META_SUFFIX).delete();
+			this.fileOf(eldest.getKey(), BODY_SUFFIX).delete();
+		}
+	}
+
+	/**
+	 * Remove an entry from index and disk.
+	 */
+	private synchronized void remove(String key) {
+		Long size = this.index.remove(key);
+		if (size != null) {
+			this.totalBytes -= size;
+		}
+
+		this.fileOf(key, META_SUFFIX).delete();
+		this.fileOf(key, BODY_SUFFIX).delete();
+	}
+
+	/**
+	 * Build the index from files on disk, oldest use first.
+	 */
+	private void load() {
+		File[] metas = this.folder.listFiles();
+		if (metas == null) {
+			return;
+		}
+
+		Arrays.sort(metas, new Comparator<File>() {
+
+			@Override
+			public int compare(File first, File second) {
+				return Long.compare(first.lastModified(), second.lastModified());
+			}
+
+		});
+
+		for (File meta : metas) {
+			String name = meta.getName();
+			if (name.endsWith(".tmp")) {
+				meta.delete();
+				continue;
+			}
+
+			if (!name.endsWith(META_SUFFIX)) {
+				continue;
+			}
+
+			String key = name.substring(0, name.length() - META_SUFFIX.length());
+			File body = this.fileOf(key, BODY_SUFFIX);
+			if (!body.exists()) {
+				meta.delete();
+				continue;
+			}
+
+			long size = meta.length() + body.length();
+			this.index.put(key, size);
+			this.totalBytes += size;
+		}
+
+		synchronized (this) {
+			this.evict();
+		}
+
+		LOGGER.debug("Loaded {} cached responses using {} bytes", this.index.size(), this.totalBytes);
+	}
+
+	/**
+	 * Write the metadata to a temporary file and move it in place, so that
+	 * readers never see it half written.
+	 */
+	private void writeMeta(File meta, Entry entry) throws IOException {
+		File temp = File.createTempFile(meta.getName(), ".tmp", this.folder);
+		Writer writer = new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8);
+		try {
+			GsonUtils.getGson().toJson(entry, writer);
+		} finally {
+			writer.close();
+		}
+
+		Files.move(temp.toPath(), meta.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private File fileOf(String key, String suffix) {
+		return new File(this.folder, key + suffix);
+	}
+
+	private File tempFile(String key) throws IOException {
+		return File.createTempFile(key, ".tmp", this.folder);
+	}
+
+	private static Entry newEntry(String url, String etag, String lastModified) {
+		Entry entry = new Entry();
+		entry.url = url;
+		entry.etag = etag;
+		entry.lastModified = lastModified;
+		return entry;
+	}
+
+	/**
+	 * SHA-1 of the URL in hex.
+	 */
+	static String keyOf(String url) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-1").digest(url.getBytes(StandardCharsets.UTF_8));
+			StringBuilder builder = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				builder.append(Character.forDigit((b >> 4) & 0xf, 16));
+				builder.append(Character.forDigit(b & 0xf, 16));
+			}
+
+			return builder.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is not available", e);
+		}
+	}
+
+	/**
+	 * Copies everything read to a temporary file, committing it to the cache
+	 * when the end of stream is reached. A small remainder is drained on close,
+	 * as a gzip reader stops at the gzip trailer without reading the end of
+	 * stream.
+	 */
+	private class CachingInputStream extends FilterInputStream {
+
+		private final File temp;
+
+		private final String key;
+
+		private final Entry entry;
+
+		private OutputStream copy;
+
+		private boolean complete = false;
+
+		CachingInputStream(InputStream stream, File temp, String key, Entry entry) throws IOException {
+			super(stream);
+
+			this.temp = temp;
+			this.key = key;
+			this.entry = entry;
+			this.copy = new FileOutputStream(temp);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if (b == -1) {
+				this.complete = true;
+			} else {
+				this.write(new byte[] { (byte) b }, 0, 1);
+			}
+
+			return b;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = super.read(buffer, offset, length);
+			if (read == -1) {
+				this.complete = true;
+			} else {
+				this.write(buffer, offset, read);
+			}
+
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			// skipped bytes would be missing from the copy
+			this.abandon();
+			return super.skip(n);
+		}
+
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+
+		@Override
+		public void close() throws IOException {
+			try {
+				if (this.copy != null && !this.complete && Streams.drain(this, DRAIN_BYTES)) {
+					this.complete = true;
+				}
+			} catch (IOException e) {
+				this.abandon();
+			}
+
+			try {
+				super.close();
+			} finally {
+				if (this.copy != null) {
+					this.copy.close();
+					this.copy = null;
+
+					if (this.complete) {
+						commit(this.key, this.temp, this.entry);
+					} else {
+						this.temp.delete();
+					}
+				}
+			}
+		}
+
+		private void write(byte[] buffer, int offset, int length) {
+			if (this.copy == null) {
+				return;
+			}
+
+			try {
+				this.copy.write(buffer, offset, length);
+			} catch (IOException e) {
+				this.abandon();
+			}
+		}
+
+		private void abandon() {
+			if (this.copy != null) {
+				Streams.closeQuietly(this.copy);
+				this.copy = null;
+				this.temp.delete();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import com.sangupta.jerry.http.WebRequest;
+import com.sangupta.jerry.http.WebResponse;
+import com.sangupta.jerry.http.service.HttpService;
+
+/**
+ * {@link FetchBackend} over a jerry {@link HttpService}, so that the HTTP
+ * cache, the adaptive rate limiter and conditional requests can be used with
+ * an injected service. The service reads each response whole before returning
+ * it, so bodies are buffered in memory rather than streamed, and cannot be
+ * abandoned midway.
+ * 
+ * @author sangupta
+ *
+ */
+public class HttpServiceFetchBackend implements FetchBackend {
+
+	/**
+	 * The {@link HttpService} to make requests with
+	 */
+	private final HttpService httpService;
+
+	/**
+	 * Create a backend making its requests with the given {@link HttpService}.
+	 * 
+	 * @param httpService the {@link HttpService} to use
+	 */
+	public HttpServiceFetchBackend(HttpService httpService) {
+		if (httpService == null) {
+			throw new IllegalArgumentException("HttpService cannot be null");
+		}
+
+		this.httpService = httpService;
+	}
+
+	@Override
+	public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+		final WebRequest request = WebRequest.get(url);
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			request.addHeader(header.getKey(), header.getValue());
+		}
+
+		final WebResponse response = this.httpService.executeSilently(request);
+		if (response == null) {
+			throw new IOException("No response received for url: " + url);
+		}
+
+		final Map<String, String> responseHeaders = new HashMap<>();
+		if (response.getHeaders() != null) {
+			for (Map.Entry<String, String> header : response.getHeaders().entrySet()) {
+				responseHeaders.put(header.getKey().toLowerCase(Locale.ENGLISH), header.getValue());
+			}
+		}
+
+		final byte[] body = response.getBytes();
+		return new FetchResponse(response.getResponseCode(), responseHeaders, new ByteArrayInputStream(body == null ? new byte[0] : body));
+	}
+
+}
@@ -0,0 +1,766 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+import com.sangupta.jerry.util.AssertUtils;
+
+/**
+ * Downloads the full size binary of each {@link BurstImage} collected, from
+ * {@link BurstImage#url}, into a folder. Being a collector, it can be handed
+ * to a crawl directly, with downloads running on a pool of
+ * {@link BurstCrawlerOptions#downloadWorkers} threads. At most
+ * {@link BurstCrawlerOptions#downloadQueueSize} images wait to be downloaded;
+ * beyond that the crawl waits for the downloads.
+ * 
+ * Bodies are transferred to a <code>.part</code> file through a
+ * {@link FileChannel} in small chunks, and never held in memory. If a download
+ * fails midway, the next attempt, or the next run, resumes the partial file
+ * using an HTTP <code>Range</code> request. Once the size matches the one the
+ * server reported, the file is renamed to its final name. Images whose file
+ * already exists are skipped; subclasses may skip images on other grounds, or
+ * make conditional requests.
+ * 
+ * Each image downloaded, or skipped, can be handed over to a next stage,
+ * along with the SHA-256 of its bytes. Calls to the next stage are serialized. The downloader
+ * must be closed to wait for pending downloads.
+ * 
+ * @author sangupta
+ *
+ */
+public class ImageDownloader implements GenericConsumer<BurstImage>, Closeable {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageDownloader.class);
+
+	/**
+	 * Suffix of files being downloaded
+	 */
+	static final String PART_SUFFIX = ".part";
+
+	/**
+	 * Maximum bytes transferred to the file per call
+	 */
+	private static final long TRANSFER_CHUNK = 1024 * 1024;
+
+	/**
+	 * Buffer used to hash the existing part of a resumed file
+	 */
+	private static final int HASH_BUFFER = 64 * 1024;
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Why a download failed, and whether it may succeed if tried again
+	 */
+	private static class DownloadFailure extends IOException {
+
+		private static final long serialVersionUID = 1L;
+
+		final boolean retryable;
+
+		DownloadFailure(String reason, boolean retryable) {
+			super(reason);
+			this.retryable = retryable;
+		}
+
+	}
+
+	/**
+	 * The folder to download to
+	 */
+	private final File folder;
+
+	/**
+	 * The backend to make requests with
+	 */
+	private final FetchBackend backend;
+
+	/**
+	 * Times a failed download is tried again
+	 */
+	private final int maxRetries;
+
+	/**
+	 * Delay before the first retry, doubled for each further one
+	 */
+	private final long retryBackoffMillis;
+
+	/**
+	 * The stage to hand downloaded images to, may be <code>null</code>
+	 */
+	private final GenericConsumer<DownloadedImage> next;
+
+	/**
+	 * Runs the downloads
+	 */
+	private final ExecutorService executor;
+
+	/**
+	 * Bounds the number of images waiting or being downloaded
+	 */
+	private final Semaphore slots;
+
+	/**
+	 * Set once the next stage asks to stop
+	 */
+	private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+	/**
+	 * Set once the downloader is closed, after which no images are accepted
+	 */
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	private final AtomicInteger downloaded = new AtomicInteger();
+
+	private final AtomicInteger skipped = new AtomicInteger();
+
+	private final AtomicLong bytes = new AtomicLong();
+
+	/**
+	 * Reason of failure by home URL of the image
+	 */
+	private final Map<String, String> failures = new LinkedHashMap<>();
+
+	/**
+	 * Create a downloader into given folder.
+	 * 
+	 * @param folder  the folder to download to, created if needed
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to read settings from
+	 */
+	public ImageDownloader(File folder, BurstCrawlerOptions options) {
+		this(folder, options, null);
+	}
+
+	/**
+	 * Create a downloader into given folder, handing downloaded images to the
+	 * next stage.
+	 * 
+	 * @param folder  the folder to download to, created if needed
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to read settings from
+	 * 
+	 * @param next    the stage to hand downloaded images to, may be
+	 *                <code>null</code>
+	 */
+	public ImageDownloader(File folder, BurstCrawlerOptions options, GenericConsumer<DownloadedImage> next) {
+		if (folder == null) {
+			throw new IllegalArgumentException("Download folder cannot be null");
+		}
+
+		folder.mkdirs();
+		if (!folder.isDirectory()) {
+			throw new IllegalArgumentException("Download folder is not a directory: " + folder);
+		}
+
+		this.folder = folder;
+		this.next = next;
+		this.maxRetries = Math.max(0, options.maxRetries);
+		this.retryBackoffMillis = options.retryBackoffMillis;
+
+		// images are already compressed, and ranges apply to the encoded body
+		this.backend = options.fetchBackend != null ? options.fetchBackend
+				: new UrlConnectionFetchBackend(options.connectTimeoutMillis, options.readTimeoutMillis, false);
+
+		final int workers = Math.max(1, options.downloadWorkers);
+		this.slots = new Semaphore(workers + Math.max(0, options.downloadQueueSize));
+		this.executor = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "burst-download-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+	}
+
+	/**
+	 * Queue the image for download, waiting while the queue is full.
+	 * 
+	 * @return <code>false</code> once the next stage has asked to stop, or the
+	 *         downloader has been closed
+	 */
+	@Override
+	public boolean consume(final BurstImage image) {
+		if (this.stopped.get() || this.closed.get()) {
+			return false;
+		}
+
+		if (AssertUtils.isEmpty(image.url)) {
+			this.failed(image, "no-url");
+			return true;
+		}
+
+		try {
+			this.slots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		try {
+			this.executor.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						download(image);
+					} finally {
+						slots.release();
+					}
+				}
+
+			});
+		} catch (RejectedExecutionException e) {
+			// closed while waiting for a slot
+			this.slots.release();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Refuse further images and wait for all queued images to be downloaded.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.closed.set(true);
+		this.executor.shutdown();
+		try {
+			while (!this.executor.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOGGER.info("Downloading images: {}", this);
+			}
+		} catch (InterruptedException e) {
+			this.executor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+		LOGGER.info("Downloading images completed: {}", this);
+	}
+
+	/**
+	 * Return the number of images downloaded.
+	 * 
+	 * @return the number of images
+	 */
+	public int getDownloaded() {
+		return this.downloaded.get();
+	}
+
+	/**
+	 * Return the number of images skipped as downloaded in an earlier run.
+	 * 
+	 * @return the number of images
+	 */
+	public int getSkipped() {
+		return this.skipped.get();
+	}
+
+	/**
+	 * Return the number of bytes downloaded, including those of resumed files
+	 * downloaded in an earlier run.
+	 * 
+	 * @return the number of bytes
+	 */
+	public long getBytes() {
+		return this.bytes.get();
+	}
+
+	/**
+	 * Return the images that could not be downloaded, such as
+	 * <code>http-404</code>, <code>size-mismatch</code> or an exception class
+	 * name.
+	 * 
+	 * @return a copy of the reason of failure by home URL of the image
+	 */
+	public Map<String, String> getFailures() {
+		synchronized (this.failures) {
+			return new LinkedHashMap<>(this.failures);
+		}
+	}
+
+	/**
+	 * Return the file the image is, or will be, downloaded to: the last path
+	 * segment of its home URL, with the extension of its image URL.
+	 * 
+	 * @param image the {@link BurstImage}
+	 * 
+	 * @return the {@link File}
+	 */
+	public File getFile(BurstImage image) {
+		String name = lastSegment(image.url);
+		String extension = ".jpg";
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			extension = name.substring(dot);
+			name = name.substring(0, dot);
+		}
+
+		if (!AssertUtils.isEmpty(image.homeUrl)) {
+			name = lastSegment(image.homeUrl);
+		}
+
+		return new File(this.folder, sanitize(name + extension));
+	}
+
+	@Override
+	public String toString() {
+		return "[downloaded=" + this.downloaded.get() + ", skipped=" + this.skipped.get() + ", failed=" + this.getFailures().size()
+				+ ", bytes=" + this.bytes.get() + "]";
+	}
+
+	/**
+	 * Download a single image, trying again on failures that may pass.
+	 */
+	private void download(BurstImage image) {
+		if (this.stopped.get()) {
+			return;
+		}
+
+		final DownloadedImage existing = this.getExisting(image);
+		if (existing != null) {
+			LOGGER.debug("Image already downloaded: {}", existing.file);
+			this.skipped(existing);
+			return;
+		}
+
+		final File file = this.getFile(image);
+		final File part = new File(this.folder, file.getName() + PART_SUFFIX);
+		for (int attempt = 0;; attempt++) {
+			try {
+				DownloadedImage result = this.transfer(image, part, file);
+				if (result != null) {
+					this.downloaded.incrementAndGet();
+					this.handOver(result);
+				}
+
+				return;
+			} catch (IOException e) {
+				final boolean retryable = !(e instanceof DownloadFailure) || ((DownloadFailure) e).retryable;
+				final String reason = e instanceof DownloadFailure ? e.getMessage() : e.getClass().getSimpleName();
+				if (!retryable || attempt >= this.maxRetries || !this.backOff(attempt)) {
+					LOGGER.debug("Unable to download image from url: {}", image.url, e);
+					this.failed(image, reason);
+					return;
+				}
+
+				LOGGER.debug("Download failed with {}, retrying url: {}", reason, image.url);
+			} catch (RuntimeException e) {
+				LOGGER.error("Unable to download image from url: " + image.url, e);
+				this.failed(image, e.getClass().getSimpleName());
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Return the image as already downloaded, to skip downloading it. By
+	 * default, images whose file exists are skipped. Called concurrently by
+	 * the download threads.
+	 * 
+	 * @param image the {@link BurstImage} to download
+	 * 
+	 * @return the {@link DownloadedImage} to hand over instead, or
+	 *         <code>null</code> to download the image
+	 */
+	protected DownloadedImage getExisting(BurstImage image) {
+		final File file = this.getFile(image);
+		if (!file.exists()) {
+			return null;
+		}
+
+		return new DownloadedImage(image, file, file.length(), null, null);
+	}
+
+	/**
+	 * Add headers to the request for an image, such as
+	 * <code>If-None-Match</code> or <code>If-Modified-Since</code> to make a
+	 * conditional request. Not called for requests resuming a partial file.
+	 * 
+	 * @param image   the {@link BurstImage} to download
+	 * 
+	 * @param headers the request headers to add to
+	 */
+	protected void addHeaders(BurstImage image, Map<String, String> headers) {
+		// nothing by default
+	}
+
+	/**
+	 * Return the image as already downloaded given the response headers, to
+	 * skip reading the body. Called for <code>200</code> and <code>304</code>
+	 * responses to requests that do not resume a partial file; other
+	 * <code>304</code> responses fail the download.
+	 * 
+	 * @param image    the {@link BurstImage} to download
+	 * 
+	 * @param response the {@link FetchResponse}, whose body has not been read
+	 * 
+	 * @return the {@link DownloadedImage} to hand over instead, or
+	 *         <code>null</code> to read the body
+	 */
+	protected DownloadedImage getExisting(BurstImage image, FetchResponse response) {
+		return null;
+	}
+
+	/**
+	 * Download the image to the part file, resuming it if it exists, and
+	 * rename it to the final file once complete.
+	 * 
+	 * @return the {@link DownloadedImage}, or <code>null</code> if skipped
+	 *         given the response headers
+	 */
+	private DownloadedImage transfer(BurstImage image, File part, File file) throws IOException {
+		final long offset = part.length();
+		final Map<String, String> headers = new HashMap<>();
+		if (offset > 0) {
+			headers.put("Range", "bytes=" + offset + "-");
+		} else {
+			this.addHeaders(image, headers);
+		}
+
+		final FetchResponse response = this.backend.fetch(image.url, headers);
+		try {
+			final int code = response.getStatusCode();
+			if (offset == 0 && (code == HttpURLConnection.HTTP_OK || code == HttpURLConnection.HTTP_NOT_MODIFIED)) {
+				final DownloadedImage existing = this.getExisting(image, response);
+				if (existing != null) {
+					LOGGER.debug("Image already downloaded: {}", existing.file);
+					this.skipped(existing);
+					return null;
+				}
+			}
+
+			if (code == 416 && offset > 0) {
+				// the part is stale, start over
+				part.delete();
+				throw new DownloadFailure("range-not-satisfiable", true);
+			}
+
+			if (code != HttpURLConnection.HTTP_OK && code != HttpURLConnection.HTTP_PARTIAL) {
+				throw new DownloadFailure("http-" + code, code == 429 || code >= 500);
+			}
+
+			if (response.getBody() == null) {
+				throw new DownloadFailure("no-body", true);
+			}
+
+			// a server ignoring the range sends the whole body
+			long start = 0;
+			long expected = parseLong(response.getHeader("Content-Length"));
+			if (code == HttpURLConnection.HTTP_PARTIAL) {
+				final String range = response.getHeader("Content-Range");
+				if (rangeStart(range) != offset) {
+					part.delete();
+					throw new DownloadFailure("bad-range", true);
+				}
+
+				start = offset;
+				expected = rangeTotal(range);
+			}
+
+			final MessageDigest digest = newDigest();
+			final long size;
+			final FileChannel out = FileChannel.open(part.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE);
+			try {
+				out.truncate(start);
+				hash(out, start, digest);
+
+				final ReadableByteChannel in = new DigestChannel(Channels.newChannel(response.getBody()), digest);
+				long position = start;
+				long transferred;
+				while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK)) > 0) {
+					position += transferred;
+					this.bytes.addAndGet(transferred);
+				}
+
+				size = position;
+			} finally {
+				out.close();
+			}
+
+			if (expected >= 0 && size != expected) {
+				// a short file is resumed, a longer one is of no use
+				if (size > expected) {
+					part.delete();
+				}
+
+				throw new DownloadFailure("size-mismatch", size < expected);
+			}
+
+			Files.move(part.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			LOGGER.debug("Downloaded {} bytes to file: {}", size, file);
+			return new DownloadedImage(image, file, size, toHex(digest.digest()), response.getHeader("ETag"), response.getHeader("Last-Modified"));
+		} finally {
+			response.close();
+		}
+	}
+
+	private void skipped(DownloadedImage image) {
+		this.skipped.incrementAndGet();
+		this.handOver(image);
+	}
+
+	/**
+	 * Hand over an image to the next stage, one at a time.
+	 */
+	private void handOver(DownloadedImage image) {
+		if (this.next == null) {
+			return;
+		}
+
+		synchronized (this.next) {
+			if (this.stopped.get()) {
+				return;
+			}
+
+			if (!this.next.consume(image)) {
+				LOGGER.debug("Next stage returned false, further downloads stopped");
+				this.stopped.set(true);
+			}
+		}
+	}
+
+	private void failed(BurstImage image, String reason) {
+		synchronized (this.failures) {
+			this.failures.put(image.homeUrl != null ? image.homeUrl : image.url, reason);
+		}
+	}
+
+	/**
+	 * Wait before trying again.
+	 * 
+	 * @return <code>false</code> if interrupted
+	 */
+	private boolean backOff(int attempt) {
+		final long delay = this.retryBackoffMillis << Math.min(attempt, 16);
+		if (delay <= 0) {
+			return true;
+		}
+
+		try {
+			Thread.sleep(delay);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Compute the SHA-256 of a file.
+	 * 
+	 * @param file the {@link File} to read
+	 * 
+	 * @return the hex encoded hash
+	 * 
+	 * @throws IOException if the file cannot be read
+	 */
+	static String sha256(File file) throws IOException {
+		final MessageDigest digest = newDigest();
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			hash(channel, channel.size(), digest);
+		}
+
+		return toHex(digest.digest());
+	}
+
+	/**
+	 * Hash the first bytes of the file, written in an earlier attempt.
+	 */
+	private static void hash(FileChannel channel, long length, MessageDigest digest) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER);
+		long position = 0;
+		while (position < length) {
+			buffer.clear();
+			buffer.limit((int) Math.min(HASH_BUFFER, length - position));
+			int read = channel.read(buffer, position);
+			if (read < 0) {
+				break;
+			}
+
+			buffer.flip();
+			digest.update(buffer);
+			position += read;
+		}
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-256 is not available", e);
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		final char[] chars = new char[bytes.length * 2];
+		for (int index = 0; index < bytes.length; index++) {
+			chars[index * 2] = HEX[(bytes[index] >> 4) & 0xf];
+			chars[index * 2 + 1] = HEX[bytes[index] & 0xf];
+		}
+
+		return new String(chars);
+	}
+
+	/**
+	 * Parse the first byte position of a <code>bytes start-end/total</code>
+	 * range, or <code>-1</code>.
+	 */
+	private static long rangeStart(String range) {
+		if (range == null || !range.startsWith("bytes ")) {
+			return -1;
+		}
+
+		final int dash = range.indexOf('-');
+		return dash < 0 ? -1 : parseLong(range.substring(6, dash).trim());
+	}
+
+	/**
+	 * Parse the total size of a <code>bytes start-end/total</code> range, or
+	 * <code>-1</code> if unknown.
+	 */
+	private static long rangeTotal(String range) {
+		final int slash = range.indexOf('/');
+		return slash < 0 ? -1 : parseLong(range.substring(slash + 1).trim());
+	}
+
+	private static long parseLong(String value) {
+		if (value == null) {
+			return -1;
+		}
+
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	private static String lastSegment(String url) {
+		String path = url;
+		int query = path.indexOf('?');
+		if (query >= 0) {
+			path = path.substring(0, query);
+		}
+
+		while (path.endsWith("/")) {
+			path = path.substring(0, path.length() - 1);
+		}
+
+		// photo pages link the binary as <home url>/download
+		if (path.endsWith("/download")) {
+			path = path.substring(0, path.length() - "/download".length());
+		}
+
+		return path.substring(path.lastIndexOf('/') + 1);
+	}
+
+	private static String sanitize(String name) {
+		final StringBuilder builder = new StringBuilder(name.length());
+		for (int index = 0; index < name.length(); index++) {
+			char c = name.charAt(index);
+			builder.append(Character.isLetterOrDigit(c) || c == '.' || c == '-' || c == '_' ? c : '_');
+		}
+
+		return builder.toString();
+	}
+
+	/**
+	 * Channel over a stream that hashes all bytes read.
+	 */
+	private static class DigestChannel implements ReadableByteChannel {
+
+		private final ReadableByteChannel channel;
+
+		private final MessageDigest digest;
+
+		DigestChannel(ReadableByteChannel channel, MessageDigest digest) {
+			this.channel = channel;
+			this.digest = digest;
+		}
+
+		@Override
+		public int read(ByteBuffer buffer) throws IOException {
+			final int start = buffer.position();
+			final int read = this.channel.read(buffer);
+			if (read > 0) {
+				final ByteBuffer view = buffer.duplicate();
+				view.position(start);
+				view.limit(start + read);
+				this.digest.update(view);
+			}
+
+			return read;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return this.channel.isOpen();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.channel.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,418 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * In-memory inverted index over crawled images, by tag, by author and by the
+ * words of title and description. Being a {@link GenericConsumer}, it can be
+ * handed to a crawler as the collector and queried while the crawl runs; it
+ * can also be filled from a {@link BurstCatalogReader}.
+ * 
+ * Matching ignores case. An image added again with the same home URL replaces
+ * the earlier one.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class ImageIndex implements GenericConsumer<BurstImage> {
+
+	/**
+	 * Words shorter than this are not indexed
+	 */
+	private static final int MIN_WORD_LENGTH = 2;
+
+	/**
+	 * Images by id, including replaced ones
+	 */
+	private final List<BurstImage> images = new ArrayList<>();
+
+	/**
+	 * Current id of each home URL
+	 */
+	private final Map<String, Integer> idsByUrl = new HashMap<>();
+
+	/**
+	 * Ids of images that have been replaced
+	 */
+	private final BitSet replaced = new BitSet();
+
+	private final Map<String, Postings> tags = new HashMap<>();
+
+	private final Map<String, Postings> authors = new HashMap<>();
+
+	private final Map<String, Postings> words = new HashMap<>();
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	/**
+	 * Add the image to the index.
+	 * 
+	 * @return always <code>true</code>, to continue crawling
+	 */
+	@Override
+	public boolean consume(BurstImage image) {
+		this.add(image);
+		return true;
+	}
+
+	/**
+	 * Add all images to the index.
+	 * 
+	 * @param images the images to add
+	 */
+	public void addAll(Iterable<BurstImage> images) {
+		for (BurstImage image : images) {
+			this.add(image);
+		}
+	}
+
+	/**
+	 * Add the image to the index, replacing any image with the same home URL.
+	 * 
+	 * @param image the {@link BurstImage} to add
+	 */
+	public void add(BurstImage image) {
+		this.lock.writeLock().lock();
+		try {
+			final int id = this.images.size();
+			this.images.add(image);
+
+			if (image.homeUrl != null) {
+				final Integer previous = this.idsByUrl.put(image.homeUrl, id);
+				if (previous != null) {
+					this.replaced.set(previous);
+				}
+			}
+
+			for (String tag : image.tags) {
+				post(this.tags, normalize(tag), id);
+			}
+
+			post(this.authors, normalize(image.author), id);
+
+			for (String word : tokenize(image.title)) {
+				post(this.words, word, id);
+			}
+
+			for (String word : tokenize(image.description)) {
+				post(this.words, word, id);
+			}
+		} finally {
+			this.lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Return the number of images in the index, not counting replaced ones.
+	 * 
+	 * @return the number of images
+	 */
+	public int size() {
+		this.lock.readLock().lock();
+		try {
+			return this.images.size() - this.replaced.cardinality();
+		} finally {
+			this.lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Start a query. All conditions added must match.
+	 * 
+	 * @return a new {@link Query}
+	 */
+	public Query query() {
+		return new Query();
+	}
+
+	/**
+	 * Find images with given tag.
+	 * 
+	 * @param tag the tag
+	 * 
+	 * @return the matching images, in order of addition
+	 */
+	public List<BurstImage> findByTag(String tag) {
+		return this.query().tag(tag).find();
+	}
+
+	/**
+	 * Find images by given author.
+	 * 
+	 * @param author the author name
+	 * 
+	 * @return the matching images, in order of addition
+	 */
+	public List<BurstImage> findByAuthor(String author) {
+		return this.query().author(author).find();
+	}
+
+	/**
+	 * Find images whose title or description contain all given words.
+	 * 
+	 * @param text the words to search for
+	 * 
+	 * @return the matching images, in order of addition
+	 */
+	public List<BurstImage> search(String text) {
+		return this.query().words(text).find();
+	}
+
+	/**
+	 * Conditions on images, all of which must match.
+	 */
+	public class Query {
+
+		/**
+		 * Index of each condition
+		 */
+		private final List<Map<String, Postings>> fields = new ArrayList<>();
+
+		/**
+		 * Key looked up in the index of each condition
+		 */
+		private final List<String> keys = new ArrayList<>();
+
+		private int limit = Integer.MAX_VALUE;
+
+		Query() {
+			// created by the index
+		}
+
+		/**
+		 * Match images with given tag.
+		 * 
+		 * @param tag the tag
+		 * 
+		 * @return this query
+		 */
+		public Query tag(String tag) {
+			return this.add(tags, normalize(tag));
+		}
+
+		/**
+		 * Match images by given author.
+		 * 
+		 * @param author the author name
+		 * 
+		 * @return this query
+		 */
+		public Query author(String author) {
+			return this.add(authors, normalize(author));
+		}
+
+		/**
+		 * Match images whose title or description contain all given words.
+		 * 
+		 * @param text the words
+		 * 
+		 * @return this query
+		 */
+		public Query words(String text) {
+			for (String word : tokenize(text)) {
+				this.add(words, word);
+			}
+
+			return this;
+		}
+
+		/**
+		 * Return at most given number of images.
+		 * 
+		 * @param limit the maximum number of images
+		 * 
+		 * @return this query
+		 */
+		public Query limit(int limit) {
+			this.limit = limit;
+			return this;
+		}
+
+		/**
+		 * Run the query.
+		 * 
+		 * @return the matching images, in order of addition; empty if no
+		 *         condition was added
+		 */
+		public List<BurstImage> find() {
+			if (this.keys.isEmpty()) {
+				return Collections.emptyList();
+			}
+
+			lock.readLock().lock();
+			try {
+				final List<Postings> postings = new ArrayList<>(this.keys.size());
+				for (int index = 0; index < this.keys.size(); index++) {
+					final Postings list = this.fields.get(index).get(this.keys.get(index));
+					if (list == null) {
+						return Collections.emptyList();
+					}
+
+					postings.add(list);
+				}
+
+				return this.intersect(postings);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		private Query add(Map<String, Postings> field, String key) {
+			this.fields.add(field);
+			this.keys.add(key == null ? "" : key);
+			return this;
+		}
+
+		/**
+		 * Walk the shortest list, looking each id up in the others.
+		 */
+		private List<BurstImage> intersect(List<Postings> postings) {
+			Collections.sort(postings, new Comparator<Postings>() {
+
+				@Override
+				public int compare(Postings first, Postings second) {
+					return Integer.compare(first.size, second.size);
+				}
+
+			});
+
+			final Postings shortest = postings.get(0);
+			final int[] from = new int[postings.size()];
+			final List<BurstImage> matches = new ArrayList<>();
+
+			candidates: for (int index = 0; index < shortest.size && matches.size() < this.limit; index++) {
+				final int id = shortest.ids[index];
+				if (replaced.get(id)) {
+					continue;
+				}
+
+				for (int other = 1; other < postings.size(); other++) {
+					final Postings list = postings.get(other);
+					final int found = Arrays.binarySearch(list.ids, from[other], list.size, id);
+					if (found < 0) {
+						// later ids are larger, start there next time
+						from[other] = -found - 1;
+						continue candidates;
+					}
+
+					from[other] = found + 1;
+				}
+
+				matches.add(images.get(id));
+			}
+
+			return matches;
+		}
+
+	}
+
+	private static void post(Map<String, Postings> index, String key, int id) {
+		if (key == null || key.isEmpty()) {
+			return;
+		}
+
+		Postings postings = index.get(key);
+		if (postings == null) {
+			postings = new Postings();
+			index.put(key, postings);
+		}
+
+		postings.add(id);
+	}
+
+	private static String normalize(String value) {
+		if (value == null) {
+			return null;
+		}
+
+		return value.trim().toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * Split text into lower case words of letters and digits.
+	 */
+	static List<String> tokenize(String text) {
+		if (text == null) {
+			return Collections.emptyList();
+		}
+
+		final List<String> tokens = new ArrayList<>();
+		final int length = text.length();
+		int start = -1;
+		for (int index = 0; index <= length; index++) {
+			final boolean wordChar = index < length && Character.isLetterOrDigit(text.charAt(index));
+			if (wordChar && start < 0) {
+				start = index;
+			} else if (!wordChar && start >= 0) {
+				if (index - start >= MIN_WORD_LENGTH) {
+					tokens.add(text.substring(start, index).toLowerCase(Locale.ENGLISH));
+				}
+
+				start = -1;
+			}
+		}
+
+		return tokens;
+	}
+
+	/**
+	 * Ascending image ids of a term
+	 */
+	private static class Postings {
+
+		private int[] ids = new int[2];
+
+		private int size = 0;
+
+		void add(int id) {
+			// a word may appear more than once in an image
+			if (this.size > 0 && this.ids[this.size - 1] == id) {
+				return;
+			}
+
+			if (this.size == this.ids.length) {
+				this.ids = Arrays.copyOf(this.ids, this.size * 2);
+			}
+
+			this.ids[this.size++] = id;
+		}
+
+	}
+
+}
@@ -0,0 +1,670 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+import com.sangupta.jerry.util.AssertUtils;
+
+/**
+ * Content-addressed store of image binaries. Each distinct binary is kept once,
+ * under the SHA-256 of its bytes, however many photos share it. A manifest maps
+ * the home URL of each photo to the hash, size and dimensions of its binary,
+ * along with the <code>ETag</code> and <code>Last-Modified</code> date the
+ * server sent for it.
+ * 
+ * The store is a collector: images are downloaded by an {@link ImageDownloader}
+ * into an <code>incoming</code> folder, and moved into the store, or dropped
+ * if their bytes are already stored. On later runs, photos in the manifest are
+ * revalidated with a conditional request using their <code>ETag</code> and
+ * <code>Last-Modified</code> date, or the time their binary was stored when
+ * the server sent neither, and not downloaded again unless changed. With
+ * {@link BurstCrawlerOptions#imageStoreTrustEtags}, new photos whose response
+ * carries the strong <code>ETag</code> of a stored binary are recorded without
+ * their body being read.
+ * 
+ * Layout of the store folder:
+ * 
+ * <pre>
+ * manifest            tab separated log: url, sha256, size, width, height, etag, last-modified
+ * objects/ab/ab12...  binaries by their hash
+ * incoming/           downloads in progress
+ * </pre>
+ * 
+ * The manifest is an append-only log, read fully into memory when opened and
+ * rewritten compactly on {@link #close()} once it holds too many superseded
+ * lines. The store must be closed to wait for pending downloads.
+ * 
+ * @author sangupta
+ *
+ */
+public class ImageStore implements GenericConsumer<BurstImage>, Closeable {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ImageStore.class);
+
+	/**
+	 * First line of every manifest
+	 */
+	private static final String HEADER = "# shopify-burst-crawler image store v1";
+
+	/**
+	 * Written in place of missing values
+	 */
+	private static final String NONE = "-";
+
+	/**
+	 * A binary in the store, as recorded in the manifest
+	 */
+	public static class Entry {
+
+		/**
+		 * Hex encoded SHA-256 of the binary
+		 */
+		public final String sha256;
+
+		/**
+		 * Size of the binary in bytes
+		 */
+		public final long size;
+
+		/**
+		 * Width in pixels, or <code>-1</code> if the image could not be read
+		 */
+		public final int width;
+
+		/**
+		 * Height in pixels, or <code>-1</code> if the image could not be read
+		 */
+		public final int height;
+
+		/**
+		 * The <code>ETag</code> the server sent, may be <code>null</code>
+		 */
+		public final String etag;
+
+		/**
+		 * The <code>Last-Modified</code> date the server sent, may be
+		 * <code>null</code>
+		 */
+		public final String lastModified;
+
+		Entry(String sha256, long size, int width, int height, String etag, String lastModified) {
+			this.sha256 = sha256;
+			this.size = size;
+			this.width = width;
+			this.height = height;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+
+		boolean sameAs(Entry other) {
+			return other != null && this.sha256.equals(other.sha256) && equal(this.etag, other.etag) && equal(this.lastModified, other.lastModified);
+		}
+
+		private static boolean equal(String first, String second) {
+			return first == null ? second == null : first.equals(second);
+		}
+
+	}
+
+	/**
+	 * The store folder
+	 */
+	private final File folder;
+
+	/**
+	 * The manifest file
+	 */
+	private final File manifest;
+
+	/**
+	 * Latest entry for each home URL
+	 */
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	/**
+	 * An entry for each stored binary, by hash
+	 */
+	private final Map<String, Entry> byHash = new HashMap<>();
+
+	/**
+	 * Hash of the stored binary for each known <code>ETag</code>
+	 */
+	private final Map<String, String> byEtag = new HashMap<>();
+
+	/**
+	 * Downloads images into the incoming folder
+	 */
+	private final ImageDownloader downloader;
+
+	/**
+	 * The stage to hand stored images to, may be <code>null</code>
+	 */
+	private final GenericConsumer<DownloadedImage> next;
+
+	/**
+	 * Indicates if new photos may be matched to stored binaries by their
+	 * <code>ETag</code>
+	 */
+	private final boolean trustEtags;
+
+	/**
+	 * Total number of lines in the manifest, including superseded ones
+	 */
+	private int logLines = 0;
+
+	/**
+	 * Binaries added to the store
+	 */
+	private int stored = 0;
+
+	/**
+	 * Binaries downloaded that were already stored
+	 */
+	private int duplicates = 0;
+
+	/**
+	 * Writer appending to the manifest
+	 */
+	private Writer writer;
+
+	/**
+	 * Open the store in given folder, creating it if needed.
+	 * 
+	 * @param folder  the store folder
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to download with
+	 * 
+	 * @throws IOException if the manifest cannot be read or created
+	 */
+	public ImageStore(File folder, BurstCrawlerOptions options) throws IOException {
+		this(folder, options, null);
+	}
+
+	/**
+	 * Open the store in given folder, creating it if needed, and handing each
+	 * image stored, or found stored, to the next stage.
+	 * 
+	 * @param folder  the store folder
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to download with
+	 * 
+	 * @param next    the stage to hand images to, with their file in the store,
+	 *                may be <code>null</code>
+	 * 
+	 * @throws IOException if the manifest cannot be read or created
+	 */
+	public ImageStore(File folder, BurstCrawlerOptions options, GenericConsumer<DownloadedImage> next) throws IOException {
+		if (folder == null) {
+			throw new IllegalArgumentException("Image store folder cannot be null");
+		}
+
+		folder.mkdirs();
+		this.folder = folder;
+		this.next = next;
+		this.trustEtags = options.imageStoreTrustEtags;
+		this.manifest = new File(folder, "manifest");
+		this.load();
+
+		final boolean fresh = !this.manifest.exists() || this.manifest.length() == 0;
+		this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(this.manifest, true), StandardCharsets.UTF_8));
+		if (fresh) {
+			this.writer.write(HEADER);
+			this.writer.write('\n');
+			this.writer.flush();
+		}
+
+		this.downloader = new ImageDownloader(new File(folder, "incoming"), options, new GenericConsumer<DownloadedImage>() {
+
+			@Override
+			public boolean consume(DownloadedImage image) {
+				return ingest(image);
+			}
+
+		}) {
+
+			@Override
+			protected void addHeaders(BurstImage image, Map<String, String> headers) {
+				addValidators(image, headers);
+			}
+
+			@Override
+			protected DownloadedImage getExisting(BurstImage image, FetchResponse response) {
+				return getStored(image, response);
+			}
+
+		};
+
+		LOGGER.info("Loaded image store manifest for {} urls from: {}", this.entries.size(), folder.getAbsolutePath());
+	}
+
+	/**
+	 * Queue the image to be stored, waiting while the download queue is full.
+	 */
+	@Override
+	public boolean consume(BurstImage image) {
+		if (AssertUtils.isEmpty(image.homeUrl)) {
+			return true;
+		}
+
+		return this.downloader.consume(image);
+	}
+
+	/**
+	 * Return the manifest entry of a photo.
+	 * 
+	 * @param homeUrl the home URL of the photo
+	 * 
+	 * @return the {@link Entry}, or <code>null</code> if not stored
+	 */
+	public synchronized Entry get(String homeUrl) {
+		return this.entries.get(homeUrl);
+	}
+
+	/**
+	 * Return the file holding the binary of a photo.
+	 * 
+	 * @param homeUrl the home URL of the photo
+	 * 
+	 * @return the {@link File}, or <code>null</code> if not stored
+	 */
+	public File getFile(String homeUrl) {
+		final Entry entry = this.get(homeUrl);
+		if (entry == null) {
+			return null;
+		}
+
+		return this.getObject(entry.sha256);
+	}
+
+	/**
+	 * Number of photos in the manifest.
+	 * 
+	 * @return the number of photos
+	 */
+	public synchronized int size() {
+		return this.entries.size();
+	}
+
+	/**
+	 * Number of distinct binaries in the store.
+	 * 
+	 * @return the number of binaries
+	 */
+	public synchronized int getObjectCount() {
+		return this.byHash.size();
+	}
+
+	/**
+	 * Number of binaries added to the store since it was opened.
+	 * 
+	 * @return the number of binaries
+	 */
+	public synchronized int getStored() {
+		return this.stored;
+	}
+
+	/**
+	 * Number of binaries downloaded since the store was opened that turned out
+	 * to be stored already.
+	 * 
+	 * @return the number of binaries
+	 */
+	public synchronized int getDuplicates() {
+		return this.duplicates;
+	}
+
+	/**
+	 * Return the downloader, for its counts of images downloaded and skipped,
+	 * bytes and failures.
+	 * 
+	 * @return the {@link ImageDownloader}
+	 */
+	public ImageDownloader getDownloader() {
+		return this.downloader;
+	}
+
+	/**
+	 * Wait for pending downloads and close the manifest, compacting it if more
+	 * than half the lines are superseded.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.downloader.close();
+
+		synchronized (this) {
+			if (this.writer == null) {
+				return;
+			}
+
+			this.writer.close();
+			this.writer = null;
+
+			if (this.logLines > 2 * this.entries.size()) {
+				this.compact();
+			}
+		}
+
+		LOGGER.info("Image store has {} binaries for {} urls, {} added and {} duplicates dropped", this.getObjectCount(), this.size(),
+				this.getStored(), this.getDuplicates());
+	}
+
+	/**
+	 * Add the validators of a stored photo to its request: its
+	 * <code>ETag</code> and <code>Last-Modified</code> date, or the time its
+	 * binary was stored if the server sent neither.
+	 */
+	private void addValidators(BurstImage image, Map<String, String> headers) {
+		final Entry entry = this.get(image.homeUrl);
+		if (entry == null) {
+			return;
+		}
+
+		final File object = this.getObject(entry.sha256);
+		final long storedMillis = object.lastModified();
+		if (storedMillis == 0) {
+			// not in the store anymore
+			return;
+		}
+
+		if (entry.etag != null) {
+			headers.put("If-None-Match", entry.etag);
+		}
+
+		if (entry.lastModified != null) {
+			headers.put("If-Modified-Since", entry.lastModified);
+		} else if (entry.etag == null) {
+			headers.put("If-Modified-Since", formatHttpDate(storedMillis));
+		}
+	}
+
+	/**
+	 * Return the stored binary of a photo if the server reports it unchanged,
+	 * or, when trusted, sends the <code>ETag</code> of a stored binary.
+	 */
+	private synchronized DownloadedImage getStored(BurstImage image, FetchResponse response) {
+		final String etag = response.getHeader("ETag");
+		final String lastModified = response.getHeader("Last-Modified");
+		if (response.getStatusCode() == 304) {
+			final Entry entry = this.entries.get(image.homeUrl);
+			if (entry == null) {
+				return null;
+			}
+
+			return this.toStored(image, entry, etag != null ? etag : entry.etag, lastModified != null ? lastModified : entry.lastModified);
+		}
+
+		if (!this.trustEtags || etag == null || !this.byEtag.containsKey(etag)) {
+			return null;
+		}
+
+		return this.toStored(image, this.byHash.get(this.byEtag.get(etag)), etag, lastModified);
+	}
+
+	private DownloadedImage toStored(BurstImage image, Entry entry, String etag, String lastModified) {
+		final File object = this.getObject(entry.sha256);
+		if (!object.exists()) {
+			return null;
+		}
+
+		return new DownloadedImage(image, object, entry.size, entry.sha256, etag, lastModified);
+	}
+
+	/**
+	 * Move a downloaded image into the store, or drop it if stored already,
+	 * and record it in the manifest. Called by the downloader one image at a
+	 * time.
+	 */
+	private boolean ingest(DownloadedImage image) {
+		DownloadedImage result = image;
+		try {
+			String sha256 = image.sha256;
+			if (sha256 == null) {
+				sha256 = ImageDownloader.sha256(image.file);
+			}
+
+			final File object = this.getObject(sha256);
+			if (!image.file.equals(object)) {
+				synchronized (this) {
+					if (object.exists()) {
+						Files.delete(image.file.toPath());
+						this.duplicates++;
+					} else {
+						object.getParentFile().mkdirs();
+						Files.move(image.file.toPath(), object.toPath(), StandardCopyOption.ATOMIC_MOVE);
+						this.stored++;
+					}
+				}
+
+				result = new DownloadedImage(image.image, object, image.size, sha256, image.etag, image.lastModified);
+			}
+
+			this.record(image.image.homeUrl, result);
+		} catch (IOException e) {
+			LOGGER.error("Unable to store image: " + image.file.getAbsolutePath(), e);
+			return true;
+		}
+
+		if (this.next == null) {
+			return true;
+		}
+
+		return this.next.consume(result);
+	}
+
+	/**
+	 * Record the binary of a photo in the manifest, unless unchanged.
+	 */
+	private void record(String homeUrl, DownloadedImage image) {
+		Entry entry;
+		synchronized (this) {
+			entry = this.byHash.get(image.sha256);
+		}
+
+		// dimensions are read once per binary, outside the lock
+		if (entry == null) {
+			final int[] dimensions = readDimensions(image.file);
+			entry = new Entry(image.sha256, image.size, dimensions[0], dimensions[1], image.etag, image.lastModified);
+		} else {
+			entry = new Entry(entry.sha256, entry.size, entry.width, entry.height, image.etag, image.lastModified);
+		}
+
+		synchronized (this) {
+			if (entry.sameAs(this.entries.get(homeUrl))) {
+				return;
+			}
+
+			this.put(homeUrl, entry);
+			try {
+				this.writeEntry(this.writer, homeUrl, entry);
+				this.writer.flush();
+				this.logLines++;
+			} catch (IOException e) {
+				LOGGER.error("Unable to append to image store manifest: " + this.manifest.getAbsolutePath(), e);
+			}
+		}
+	}
+
+	private void put(String homeUrl, Entry entry) {
+		this.entries.put(homeUrl, entry);
+		this.byHash.put(entry.sha256, entry);
+		// weak tags are not unique enough to match other URLs by
+		if (entry.etag != null && !entry.etag.startsWith("W/")) {
+			this.byEtag.put(entry.etag, entry.sha256);
+		}
+	}
+
+	private File getObject(String sha256) {
+		return new File(new File(new File(this.folder, "objects"), sha256.substring(0, 2)), sha256);
+	}
+
+	private static String formatHttpDate(long millis) {
+		final SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+		format.setTimeZone(TimeZone.getTimeZone("GMT"));
+		return format.format(new Date(millis));
+	}
+
+	/**
+	 * Read the width and height of an image from its header, without decoding
+	 * it.
+	 * 
+	 * @return the width and height, or <code>-1</code> if the image cannot be
+	 *         read
+	 */
+	static int[] readDimensions(File file) {
+		final int[] dimensions = { -1, -1 };
+		try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+			if (stream == null) {
+				return dimensions;
+			}
+
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext()) {
+				return dimensions;
+			}
+
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, true, true);
+				dimensions[0] = reader.getWidth(0);
+				dimensions[1] = reader.getHeight(0);
+			} finally {
+				reader.dispose();
+			}
+		} catch (IOException e) {
+			LOGGER.debug("Unable to read image dimensions: {}", file.getAbsolutePath(), e);
+		}
+
+		return dimensions;
+	}
+
+	/**
+	 * Read the manifest, if present.
+	 */
+	private void load() throws IOException {
+		if (!this.manifest.exists()) {
+			return;
+		}
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.manifest), StandardCharsets.UTF_8));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.isEmpty() || line.charAt(0) == '#') {
+					continue;
+				}
+
+				String[] tokens = line.split("\t");
+				if (tokens.length != 7) {
+					LOGGER.warn("Skipping malformed image store manifest line: {}", line);
+					continue;
+				}
+
+				try {
+					long size = Long.parseLong(tokens[2]);
+					int width = NONE.equals(tokens[3]) ? -1 : Integer.parseInt(tokens[3]);
+					int height = NONE.equals(tokens[4]) ? -1 : Integer.parseInt(tokens[4]);
+					String etag = NONE.equals(tokens[5]) ? null : tokens[5];
+					String lastModified = NONE.equals(tokens[6]) ? null : tokens[6];
+
+					this.put(tokens[0], new Entry(tokens[1], size, width, height, etag, lastModified));
+					this.logLines++;
+				} catch (NumberFormatException e) {
+					LOGGER.warn("Skipping malformed image store manifest line: {}", line);
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Rewrite the manifest with only the latest entry of each URL, replacing
+	 * the existing file atomically.
+	 */
+	private void compact() throws IOException {
+		File temp = new File(this.folder, this.manifest.getName() + ".tmp");
+		Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+		try {
+			out.write(HEADER);
+			out.write('\n');
+			for (Map.Entry<String, Entry> entry : this.entries.entrySet()) {
+				this.writeEntry(out, entry.getKey(), entry.getValue());
+			}
+		} finally {
+			out.close();
+		}
+
+		Files.move(temp.toPath(), this.manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		LOGGER.debug("Compacted image store manifest from {} to {} lines", this.logLines, this.entries.size());
+		this.logLines = this.entries.size();
+	}
+
+	private void writeEntry(Writer out, String homeUrl, Entry entry) throws IOException {
+		out.write(homeUrl);
+		out.write('\t');
+		out.write(entry.sha256);
+		out.write('\t');
+		out.write(Long.toString(entry.size));
+		out.write('\t');
+		out.write(entry.width < 0 ? NONE : Integer.toString(entry.width));
+		out.write('\t');
+		out.write(entry.height < 0 ? NONE : Integer.toString(entry.height));
+		out.write('\t');
+		out.write(entry.etag == null ? NONE : entry.etag);
+		out.write('\t');
+		out.write(entry.lastModified == null ? NONE : entry.lastModified);
+		out.write('\n');
+	}
+
+}
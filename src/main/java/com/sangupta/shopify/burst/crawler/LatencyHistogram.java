@@ -0,0 +1,122 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free histogram of durations. Durations are counted in power-of-two
+ * buckets of microseconds, so percentiles are approximate: the value returned
+ * is the upper bound of the bucket the percentile falls in, at most twice the
+ * actual value. Count, total and maximum are exact.
+ * 
+ * @author sangupta
+ *
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Bucket <code>i</code> counts durations below <code>2^i</code> micros
+	 */
+	private final AtomicLongArray buckets = new AtomicLongArray(64);
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong totalNanos = new AtomicLong();
+
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Record a duration.
+	 * 
+	 * @param nanos the duration in nanoseconds
+	 */
+	public void record(long nanos) {
+		if (nanos < 0) {
+			nanos = 0;
+		}
+
+		final long micros = TimeUnit.NANOSECONDS.toMicros(nanos);
+		this.buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(micros));
+		this.count.incrementAndGet();
+		this.totalNanos.addAndGet(nanos);
+
+		long max = this.maxNanos.get();
+		while (nanos > max && !this.maxNanos.compareAndSet(max, nanos)) {
+			max = this.maxNanos.get();
+		}
+	}
+
+	public long getCount() {
+		return this.count.get();
+	}
+
+	public double getTotalMillis() {
+		return this.totalNanos.get() / 1e6;
+	}
+
+	public double getMeanMillis() {
+		final long count = this.count.get();
+		if (count == 0) {
+			return 0;
+		}
+
+		return this.totalNanos.get() / 1e6 / count;
+	}
+
+	public double getMaxMillis() {
+		return this.maxNanos.get() / 1e6;
+	}
+
+	/**
+	 * Return the approximate duration below which given fraction of durations
+	 * fall.
+	 * 
+	 * @param percentile the fraction, such as <code>0.99</code>
+	 * 
+	 * @return the duration in millis, <code>0</code> if nothing was recorded
+	 */
+	public double getPercentileMillis(double percentile) {
+		final long count = this.count.get();
+		if (count == 0) {
+			return 0;
+		}
+
+		final long rank = (long) Math.ceil(percentile * count);
+
+		long seen = 0;
+		for (int index = 0; index < 64; index++) {
+			seen += this.buckets.get(index);
+			if (seen >= rank) {
+				// upper bound of the bucket, capped by the exact maximum
+				double upperMillis = index == 0 ? 0.001 : Math.pow(2, index) / 1000;
+				return Math.min(upperMillis, this.getMaxMillis());
+			}
+		}
+
+		return this.getMaxMillis();
+	}
+
+}
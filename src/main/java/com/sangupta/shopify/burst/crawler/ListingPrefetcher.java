@@ -0,0 +1,281 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches listing pages ahead of the crawl in {@link BurstCrawler}'s pipelined
+ * mode. The page range is split into contiguous chunks, one per listing worker,
+ * and each worker fetches and parses its pages in order, handing the photo URLs
+ * found to a bounded queue. Workers block once the queue is full, so at most
+ * {@link BurstCrawlerOptions#prefetchPages} pages are held ahead of the
+ * consumer.
+ * 
+ * With more than one listing worker, pages are handed over in the order they
+ * complete and not in page order.
+ * 
+ * @author sangupta
+ *
+ */
+class ListingPrefetcher {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ListingPrefetcher.class);
+
+	/**
+	 * How long workers and the consumer wait on the queue before checking flags
+	 */
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * Photo URLs found on a listing page
+	 */
+	static class Page {
+
+		final int number;
+
+		final List<String> urls;
+
+		Page(int number, List<String> urls) {
+			this.number = number;
+			this.urls = urls;
+		}
+
+	}
+
+	/**
+	 * The crawler used to fetch listing pages
+	 */
+	private final BurstCrawler crawler;
+
+	/**
+	 * Spaces listing page requests across all workers
+	 */
+	private final PolitenessLimiter limiter;
+
+	/**
+	 * Fetched pages, waiting to be consumed
+	 */
+	private final BlockingQueue<Page> queue;
+
+	/**
+	 * The worker threads
+	 */
+	private final Thread[] workers;
+
+	/**
+	 * First page to fetch
+	 */
+	private final int firstPage;
+
+	/**
+	 * Last page to fetch, inclusive
+	 */
+	private final int lastPage;
+
+	/**
+	 * Pages not to fetch, may be <code>null</code>
+	 */
+	private final BitSet skipPages;
+
+	/**
+	 * Number of workers still fetching
+	 */
+	private final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * Number of pages that could not be fetched
+	 */
+	private final AtomicInteger failedPages = new AtomicInteger();
+
+	/**
+	 * Set when fetching needs to stop immediately
+	 */
+	private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+	/**
+	 * Create a prefetcher for given, inclusive, page range.
+	 * 
+	 * @param crawler   the crawler to fetch pages with
+	 * 
+	 * @param options   the {@link BurstCrawlerOptions} to read sizes from
+	 * 
+	 * @param limiter   the {@link PolitenessLimiter} for listing pages
+	 * 
+	 * @param firstPage the first page to fetch
+	 * 
+	 * @param lastPage  the last page to fetch
+	 * 
+	 * @param skipPages pages within the range not to fetch, may be
+	 *                  <code>null</code>
+	 */
+	ListingPrefetcher(BurstCrawler crawler, BurstCrawlerOptions options, PolitenessLimiter limiter, int firstPage, int lastPage, BitSet skipPages) {
+		this.crawler = crawler;
+		this.limiter = limiter;
+		this.firstPage = firstPage;
+		this.lastPage = lastPage;
+		this.skipPages = skipPages;
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, options.prefetchPages));
+
+		final int pages = Math.max(0, lastPage - firstPage + 1);
+		this.workers = new Thread[Math.min(pages, Math.max(1, options.numListingWorkers))];
+	}
+
+	/**
+	 * Split the page range across workers and start them.
+	 */
+	void start() {
+		final int pages = this.lastPage - this.firstPage + 1;
+		LOGGER.debug("Prefetching pages {} to {} using {} workers", this.firstPage, this.lastPage, this.workers.length);
+
+		this.running.set(this.workers.length);
+
+		int from = this.firstPage;
+		for (int index = 0; index < this.workers.length; index++) {
+			// spread the remainder over the first few workers
+			final int count = pages / this.workers.length + (index < pages % this.workers.length ? 1 : 0);
+			final int start = from;
+			final int end = from + count - 1;
+			from = end + 1;
+
+			Thread thread = new Thread(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						work(start, end);
+					} finally {
+						running.decrementAndGet();
+					}
+				}
+
+			}, "burst-listing-fetch-" + index);
+
+			thread.setDaemon(true);
+			thread.start();
+			this.workers[index] = thread;
+		}
+	}
+
+	/**
+	 * Wait for the next fetched page.
+	 * 
+	 * @return the {@link Page}, or <code>null</code> if all pages have been
+	 *         consumed or fetching was stopped
+	 */
+	Page next() {
+		try {
+			while (!this.stopped.get()) {
+				Page page = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if (page != null) {
+					return page;
+				}
+
+				// workers put before they exit, so an empty queue now stays empty
+				if (this.running.get() == 0 && this.queue.isEmpty()) {
+					return null;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.stop();
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stop all workers, drop any fetched pages and wait for workers to exit.
+	 */
+	void stop() {
+		this.stopped.set(true);
+		this.queue.clear();
+
+		for (Thread thread : this.workers) {
+			if (thread == null) {
+				continue;
+			}
+
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				break;
+			}
+		}
+	}
+
+	/**
+	 * Return the number of pages that could not be fetched.
+	 * 
+	 * @return the number of failed pages
+	 */
+	int getFailedPages() {
+		return this.failedPages.get();
+	}
+
+	/**
+	 * The worker loop over an inclusive range of pages.
+	 */
+	private void work(int start, int end) {
+		for (int page = start; page <= end; page++) {
+			if (this.skipPages != null && this.skipPages.get(page)) {
+				continue;
+			}
+
+			if (this.stopped.get() || !this.limiter.acquire()) {
+				return;
+			}
+
+			List<String> urls = this.crawler.getPhotoUrlsOnPage(page);
+			if (urls == null) {
+				this.failedPages.incrementAndGet();
+				continue;
+			}
+
+			try {
+				final Page fetched = new Page(page, urls);
+				while (!this.queue.offer(fetched, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					if (this.stopped.get()) {
+						return;
+					}
+				}
+			} catch (InterruptedException e) {
+				return;
+			}
+		}
+	}
+
+}
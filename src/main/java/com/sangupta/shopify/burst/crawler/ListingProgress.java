@@ -0,0 +1,160 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tracks which listing pages {@link BurstCrawler} has completed. A page is
+ * complete once all the photos found on it are done, which in pipelined mode
+ * happens on photo fetch workers, in any order.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+class ListingProgress {
+
+	/**
+	 * Pages completed so far
+	 */
+	private final BitSet completed = new BitSet();
+
+	/**
+	 * Number of photos not yet done for each page being crawled, plus one
+	 * while photos are still being added
+	 */
+	private final Map<Integer, Integer> pending = new HashMap<>();
+
+	/**
+	 * Create progress holding given completed pages.
+	 * 
+	 * @param completedPages the pages completed in an earlier crawl, may be
+	 *                       <code>null</code>
+	 */
+	ListingProgress(List<Integer> completedPages) {
+		if (completedPages != null) {
+			for (Integer page : completedPages) {
+				this.completed.set(page);
+			}
+		}
+	}
+
+	/**
+	 * Check if given page has been completed.
+	 * 
+	 * @param page the page
+	 * 
+	 * @return <code>true</code> if completed
+	 */
+	synchronized boolean isCompleted(int page) {
+		return this.completed.get(page);
+	}
+
+	/**
+	 * Return a copy of the pages completed so far.
+	 * 
+	 * @return the completed pages
+	 */
+	synchronized BitSet getCompleted() {
+		return (BitSet) this.completed.clone();
+	}
+
+	/**
+	 * Return the pages completed so far, in order.
+	 * 
+	 * @return the completed pages
+	 */
+	synchronized List<Integer> getCompletedPages() {
+		List<Integer> pages = new ArrayList<>(this.completed.cardinality());
+		for (int page = this.completed.nextSetBit(0); page >= 0; page = this.completed.nextSetBit(page + 1)) {
+			pages.add(page);
+		}
+
+		return pages;
+	}
+
+	/**
+	 * Mark given page as completed.
+	 * 
+	 * @param page the page
+	 */
+	synchronized void complete(int page) {
+		this.pending.remove(page);
+		this.completed.set(page);
+	}
+
+	/**
+	 * Start adding photos of given page. The page completes once
+	 * {@link #endPage(int)} has been called, and all photos added are done.
+	 * 
+	 * @param page the page
+	 */
+	synchronized void startPage(int page) {
+		this.pending.put(page, 1);
+	}
+
+	/**
+	 * Add a photo of given page.
+	 * 
+	 * @param page the page
+	 * 
+	 * @return a {@link Runnable} to run once the photo is done
+	 */
+	synchronized Runnable addPhoto(final int page) {
+		this.pending.put(page, this.pending.get(page) + 1);
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				done(page);
+			}
+
+		};
+	}
+
+	/**
+	 * Record that all photos of given page have been added.
+	 * 
+	 * @param page the page
+	 */
+	void endPage(int page) {
+		this.done(page);
+	}
+
+	private synchronized void done(int page) {
+		final int remaining = this.pending.get(page) - 1;
+		if (remaining > 0) {
+			this.pending.put(page, remaining);
+			return;
+		}
+
+		this.complete(page);
+	}
+
+}
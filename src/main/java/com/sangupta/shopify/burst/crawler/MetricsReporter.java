@@ -0,0 +1,42 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+/**
+ * Receives {@link CrawlMetrics} periodically while a crawl runs, and once when
+ * it ends, as configured via {@link BurstCrawlerOptions#metricsReporter}.
+ * 
+ * @author sangupta
+ *
+ */
+public interface MetricsReporter {
+
+	/**
+	 * Report the current metrics. Called from a reporting thread, so
+	 * implementations must not block for long.
+	 * 
+	 * @param metrics the {@link CrawlMetrics} of the crawler
+	 */
+	public void report(CrawlMetrics metrics);
+
+}
@@ -0,0 +1,333 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * A bounded pool of worker threads that fetch and parse photo pages in
+ * parallel. Photo entries are submitted to a bounded queue, and each worker picks
+ * them up, waits on the shared {@link PolitenessLimiter} and then converts the
+ * page into a {@link BurstImage}.
+ * 
+ * Calls to the {@link GenericConsumer} are serialized, so collectors need not
+ * be thread-safe. As soon as the collector returns <code>false</code> the pool
+ * stops, the queue is drained and further submissions are refused.
+ * 
+ * @author sangupta
+ *
+ */
+class PhotoFetchPool {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(PhotoFetchPool.class);
+
+	/**
+	 * How long workers and producers wait on the queue before checking flags
+	 */
+	private static final long POLL_MILLIS = 100;
+
+	/**
+	 * A photo entry along with what to run once it is done
+	 */
+	private static class Task {
+
+		final SitemapEntry entry;
+
+		final Runnable onComplete;
+
+		Task(SitemapEntry entry, Runnable onComplete) {
+			this.entry = entry;
+			this.onComplete = onComplete;
+		}
+
+	}
+
+	/**
+	 * The crawler used to convert URLs to images
+	 */
+	private final AbstractBurstCrawler crawler;
+
+	/**
+	 * The limiter shared by all workers
+	 */
+	private final PolitenessLimiter limiter;
+
+	/**
+	 * The collector to hand over images to
+	 */
+	private final GenericConsumer<BurstImage> collector;
+
+	/**
+	 * Photo entries waiting to be fetched
+	 */
+	private final BlockingQueue<Task> queue;
+
+	/**
+	 * The worker threads
+	 */
+	private final Thread[] workers;
+
+	/**
+	 * Stack size of each worker, <code>0</code> for the JVM default
+	 */
+	private final long stackSize;
+
+	/**
+	 * Set when the crawl needs to stop immediately
+	 */
+	private final AtomicBoolean stopped = new AtomicBoolean(false);
+
+	/**
+	 * Set when no more URLs will be submitted
+	 */
+	private volatile boolean inputComplete = false;
+
+	/**
+	 * First exception thrown by the collector, if any
+	 */
+	private volatile RuntimeException failure;
+
+	/**
+	 * Create a new pool.
+	 * 
+	 * @param crawler   the crawler to use for fetching photo pages
+	 * 
+	 * @param options   the {@link BurstCrawlerOptions} to read pool sizes from
+	 * 
+	 * @param limiter   the shared {@link PolitenessLimiter}
+	 * 
+	 * @param collector the {@link GenericConsumer} to hand images to
+	 */
+	PhotoFetchPool(AbstractBurstCrawler crawler, BurstCrawlerOptions options, PolitenessLimiter limiter, GenericConsumer<BurstImage> collector) {
+		this.crawler = crawler;
+		this.limiter = limiter;
+		this.collector = collector;
+		this.queue = new ArrayBlockingQueue<>(Math.max(1, options.workQueueSize));
+		this.workers = new Thread[Math.max(1, options.numWorkers)];
+		this.stackSize = Math.max(0, options.workerStackSizeBytes);
+	}
+
+	/**
+	 * Start all worker threads.
+	 */
+	void start() {
+		LOGGER.debug("Starting {} photo fetch workers", this.workers.length);
+
+		for (int index = 0; index < this.workers.length; index++) {
+			Thread thread = new Thread(null, new Runnable() {
+
+				@Override
+				public void run() {
+					work();
+				}
+
+			}, "burst-photo-fetch-" + index, this.stackSize);
+
+			thread.setDaemon(true);
+			thread.start();
+			this.workers[index] = thread;
+		}
+	}
+
+	/**
+	 * Submit a photo for fetching. Blocks while the queue is full.
+	 * 
+	 * @param entry the {@link SitemapEntry} of the photo page
+	 * 
+	 * @return <code>true</code> if the entry was queued, <code>false</code> if
+	 *         the pool has been stopped and crawling should end
+	 */
+	boolean submit(SitemapEntry entry) {
+		return this.submit(entry, null);
+	}
+
+	/**
+	 * Submit a photo for fetching. Blocks while the queue is full. Once the
+	 * photo has been fetched and handed over to the collector, or found
+	 * unchanged since the last crawl, <code>onComplete</code> is run on the
+	 * worker thread. It is not run for photos that could not be fetched, nor for
+	 * photos dropped when the pool stops.
+	 * 
+	 * @param entry      the {@link SitemapEntry} of the photo page
+	 * 
+	 * @param onComplete run once the photo is done, may be <code>null</code>
+	 * 
+	 * @return <code>true</code> if the entry was queued, <code>false</code> if
+	 *         the pool has been stopped and crawling should end
+	 */
+	boolean submit(SitemapEntry entry, Runnable onComplete) {
+		final Task task = new Task(entry, onComplete);
+		try {
+			while (!this.stopped.get()) {
+				if (this.queue.offer(task, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.stop();
+		}
+
+		return false;
+	}
+
+	/**
+	 * Signal that no more URLs will be submitted and wait for the workers to
+	 * finish the queued ones.
+	 * 
+	 * @throws RuntimeException if the collector threw an exception
+	 */
+	void finish() {
+		this.inputComplete = true;
+
+		for (Thread thread : this.workers) {
+			if (thread == null) {
+				continue;
+			}
+
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				this.stop();
+				break;
+			}
+		}
+
+		if (this.failure != null) {
+			throw this.failure;
+		}
+	}
+
+	/**
+	 * Stop all workers as soon as possible and drop any queued URLs.
+	 */
+	void stop() {
+		if (this.stopped.compareAndSet(false, true)) {
+			LOGGER.debug("Stopping photo fetch workers, dropping {} queued urls", this.queue.size());
+		}
+
+		this.queue.clear();
+	}
+
+	/**
+	 * Check if the pool has been stopped.
+	 * 
+	 * @return <code>true</code> if stopped
+	 */
+	boolean isStopped() {
+		return this.stopped.get();
+	}
+
+	/**
+	 * The worker loop.
+	 */
+	private void work() {
+		while (!this.stopped.get()) {
+			Task task;
+			try {
+				task = this.queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+			} catch (InterruptedException e) {
+				this.stop();
+				return;
+			}
+
+			if (task == null) {
+				if (this.inputComplete) {
+					return;
+				}
+
+				continue;
+			}
+
+			if (!this.limiter.acquire()) {
+				this.stop();
+				return;
+			}
+
+			if (this.stopped.get()) {
+				return;
+			}
+
+			// a failed fetch is left incomplete, to be retried on resume
+			final SitemapEntry entry = task.entry;
+			BurstImage image = this.crawler.fetchPhoto(entry.loc);
+			if (image == null) {
+				continue;
+			}
+
+			if (!this.crawler.isUnchanged(entry.loc, entry.lastmod, image) && !this.collect(image, entry)) {
+				continue;
+			}
+
+			if (task.onComplete != null) {
+				task.onComplete.run();
+			}
+		}
+	}
+
+	/**
+	 * Hand over an image to the collector, one at a time.
+	 * 
+	 * @param image the {@link BurstImage} to collect
+	 * 
+	 * @param entry the {@link SitemapEntry} it was fetched from
+	 * 
+	 * @return <code>true</code> if the image was handed over,
+	 *         <code>false</code> if the pool had stopped or the collector threw
+	 */
+	private boolean collect(BurstImage image, SitemapEntry entry) {
+		synchronized (this.collector) {
+			if (this.stopped.get()) {
+				return false;
+			}
+
+			try {
+				this.crawler.metrics.recordImageEmitted();
+				boolean continueCrawling = this.collector.consume(image);
+				this.crawler.recordPhoto(entry.loc, entry.lastmod, image);
+				if (!continueCrawling) {
+					LOGGER.debug("Collector returned false after collecting image: {}. Further collection stopped.", entry.loc);
+					this.stop();
+				}
+			} catch (RuntimeException e) {
+				this.failure = e;
+				this.stop();
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+}
@@ -0,0 +1,113 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A politeness limiter shared by all threads of a crawl. Each call to
+ * {@link #acquire()} reserves the next free time slot, so that no matter how
+ * many workers are fetching, requests are started at least
+ * <code>intervalMillis</code> apart.
+ * 
+ * @author sangupta
+ *
+ */
+public class PolitenessLimiter {
+
+	/**
+	 * Minimum gap between two consecutive requests
+	 */
+	private final long intervalMillis;
+
+	/**
+	 * Metrics to record waits in, may be <code>null</code>
+	 */
+	private final CrawlMetrics metrics;
+
+	/**
+	 * Time at which the next request is allowed to start
+	 */
+	private long nextSlot = 0;
+
+	/**
+	 * Create a limiter that spaces requests by given interval.
+	 * 
+	 * @param intervalMillis the gap in millis, values of zero or less disable
+	 *                       limiting
+	 */
+	public PolitenessLimiter(long intervalMillis) {
+		this(intervalMillis, null);
+	}
+
+	/**
+	 * Create a limiter that spaces requests by given interval, recording time
+	 * spent waiting in given {@link CrawlMetrics}.
+	 * 
+	 * @param intervalMillis the gap in millis, values of zero or less disable
+	 *                       limiting
+	 * 
+	 * @param metrics        the {@link CrawlMetrics} to record waits in
+	 */
+	public PolitenessLimiter(long intervalMillis, CrawlMetrics metrics) {
+		this.intervalMillis = intervalMillis;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Wait till the calling thread is allowed to make a request.
+	 * 
+	 * @return <code>true</code> if the request may proceed, <code>false</code> if
+	 *         the thread was interrupted while waiting
+	 */
+	public boolean acquire() {
+		if (this.intervalMillis <= 0) {
+			return !Thread.currentThread().isInterrupted();
+		}
+
+		final long wait;
+		synchronized (this) {
+			final long now = System.currentTimeMillis();
+			final long slot = Math.max(now, this.nextSlot);
+
+			this.nextSlot = slot + this.intervalMillis;
+			wait = slot - now;
+		}
+
+		if (wait <= 0) {
+			return true;
+		}
+
+		try {
+			Thread.sleep(wait);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} finally {
+			if (this.metrics != null) {
+				this.metrics.recordPolitenessWait(TimeUnit.MILLISECONDS.toNanos(wait));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,88 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+/**
+ * Limits retries to a fraction of all requests, so that retries cannot
+ * multiply the load on a server that is failing. Every request adds
+ * <code>ratio</code> of a token, up to a small burst, and every retry takes a
+ * whole token; retries are refused while less than a token is left.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class RetryBudget {
+
+	/**
+	 * Number of retries that may be made at once, and the budget starts with
+	 */
+	private static final double MAX_TOKENS = 10;
+
+	/**
+	 * Tokens added per request
+	 */
+	private final double ratio;
+
+	/**
+	 * Tokens available
+	 */
+	private double tokens = MAX_TOKENS;
+
+	/**
+	 * Create a budget allowing retries for given fraction of requests.
+	 * 
+	 * @param ratio the fraction, such as <code>0.1</code> for one retry in ten
+	 *              requests
+	 */
+	public RetryBudget(double ratio) {
+		if (ratio < 0) {
+			throw new IllegalArgumentException("Retry ratio cannot be negative");
+		}
+
+		this.ratio = ratio;
+	}
+
+	/**
+	 * Record a request, other than a retry.
+	 */
+	public synchronized void onRequest() {
+		this.tokens = Math.min(MAX_TOKENS, this.tokens + this.ratio);
+	}
+
+	/**
+	 * Take a token for a retry, if one is left.
+	 * 
+	 * @return <code>true</code> if the retry may be made
+	 */
+	public synchronized boolean tryRetry() {
+		if (this.tokens < 1) {
+			return false;
+		}
+
+		this.tokens -= 1;
+		return true;
+	}
+
+}
@@ -0,0 +1,450 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A file of page range shards that crawler processes lease work from. A lock
+ * file next to it is locked for every operation, so any number of processes on
+ * the same machine, or on machines sharing the file system, can lease from it.
+ * Each change replaces the file atomically.
+ * 
+ * A leased shard must be completed or renewed before its lease expires. Shards
+ * whose lease expired, because the worker died or hung, and shards that failed
+ * are leased again until they have been attempted
+ * {@link BurstCrawlerOptions#maxShardAttempts} times.
+ * 
+ * The file is plain text with one tab separated line per shard.
+ * 
+ * @author sangupta
+ *
+ */
+public class ShardLeaseFile {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShardLeaseFile.class);
+
+	/**
+	 * First line of every lease file
+	 */
+	private static final String HEADER = "# shopify-burst-crawler shards v1";
+
+	/**
+	 * Written in place of missing values
+	 */
+	private static final String NONE = "-";
+
+	/**
+	 * File locks are held per JVM, so threads of one process take turns here
+	 * before locking the file
+	 */
+	private static final Object PROCESS_LOCK = new Object();
+
+	/**
+	 * State of a shard
+	 */
+	public enum State {
+		PENDING, LEASED, DONE, FAILED
+	}
+
+	/**
+	 * A range of listing pages, inclusive on both ends
+	 */
+	public static class Shard {
+
+		public int id;
+
+		public int startPage;
+
+		public int endPage;
+
+		public State state = State.PENDING;
+
+		/**
+		 * The worker holding the lease
+		 */
+		public String owner;
+
+		/**
+		 * Time at which the lease expires
+		 */
+		public long leaseExpiresAt;
+
+		/**
+		 * Number of times the shard has been leased
+		 */
+		public int attempts;
+
+	}
+
+	/**
+	 * The lease file
+	 */
+	private final File file;
+
+	/**
+	 * The file locked while the lease file is read and replaced
+	 */
+	private final File lockFile;
+
+	/**
+	 * Create an instance over given file. The file is created by
+	 * {@link #create(int, int, int)}.
+	 * 
+	 * @param file the lease file
+	 */
+	public ShardLeaseFile(File file) {
+		if (file == null) {
+			throw new IllegalArgumentException("Lease file cannot be null");
+		}
+
+		this.file = file;
+		this.lockFile = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".lock");
+	}
+
+	/**
+	 * Split the page range into shards and write them to the file, unless it
+	 * already holds shards from an earlier run.
+	 * 
+	 * @param firstPage     the first page to crawl
+	 * 
+	 * @param lastPage      the last page to crawl, inclusive
+	 * 
+	 * @param pagesPerShard the number of pages in each shard
+	 * 
+	 * @return <code>true</code> if the shards were written, <code>false</code> if
+	 *         the file already existed
+	 * 
+	 * @throws IOException if the file cannot be written
+	 */
+	public boolean create(final int firstPage, final int lastPage, final int pagesPerShard) throws IOException {
+		final int size = Math.max(1, pagesPerShard);
+
+		return this.update(new Update<Boolean>() {
+
+			@Override
+			public Boolean apply(List<Shard> shards) {
+				if (!shards.isEmpty()) {
+					return false;
+				}
+
+				int id = 0;
+				for (int page = firstPage; page <= lastPage; page += size) {
+					Shard shard = new Shard();
+					shard.id = id++;
+					shard.startPage = page;
+					shard.endPage = Math.min(lastPage, page + size - 1);
+					shards.add(shard);
+				}
+
+				LOGGER.info("Created {} shards for pages {} to {}", shards.size(), firstPage, lastPage);
+				return true;
+			}
+
+		});
+	}
+
+	/**
+	 * Lease the next pending shard, or one whose lease has expired.
+	 * 
+	 * @param owner       the worker taking the lease
+	 * 
+	 * @param leaseMillis how long the lease is valid for
+	 * 
+	 * @param maxAttempts the number of attempts after which a shard is marked
+	 *                    failed instead of leased again
+	 * 
+	 * @return the leased {@link Shard}, or <code>null</code> if none is
+	 *         available right now
+	 * 
+	 * @throws IOException if the file cannot be updated
+	 */
+	public Shard acquire(final String owner, final long leaseMillis, final int maxAttempts) throws IOException {
+		return this.update(new Update<Shard>() {
+
+			@Override
+			public Shard apply(List<Shard> shards) {
+				final long now = System.currentTimeMillis();
+
+				for (Shard shard : shards) {
+					boolean available = shard.state == State.PENDING || (shard.state == State.LEASED && shard.leaseExpiresAt < now);
+					if (!available) {
+						continue;
+					}
+
+					if (shard.attempts >= maxAttempts) {
+						LOGGER.warn("Shard {} failed {} times, giving up on pages {} to {}", shard.id, shard.attempts, shard.startPage, shard.endPage);
+						shard.state = State.FAILED;
+						continue;
+					}
+
+					if (shard.state == State.LEASED) {
+						LOGGER.info("Lease of {} on shard {} expired, leasing again", shard.owner, shard.id);
+					}
+
+					shard.state = State.LEASED;
+					shard.owner = owner;
+					shard.leaseExpiresAt = now + leaseMillis;
+					shard.attempts++;
+					return shard;
+				}
+
+				return null;
+			}
+
+		});
+	}
+
+	/**
+	 * Extend the lease on a shard.
+	 * 
+	 * @param shard       the leased {@link Shard}
+	 * 
+	 * @param leaseMillis how long from now the lease is valid for
+	 * 
+	 * @return <code>true</code> if renewed, <code>false</code> if the lease has
+	 *         been lost to another worker
+	 * 
+	 * @throws IOException if the file cannot be updated
+	 */
+	public boolean renew(final Shard shard, final long leaseMillis) throws IOException {
+		return this.transition(shard, State.LEASED, System.currentTimeMillis() + leaseMillis);
+	}
+
+	/**
+	 * Mark a leased shard as done.
+	 * 
+	 * @param shard the leased {@link Shard}
+	 * 
+	 * @return <code>true</code> if marked, <code>false</code> if the lease has
+	 *         been lost to another worker
+	 * 
+	 * @throws IOException if the file cannot be updated
+	 */
+	public boolean complete(Shard shard) throws IOException {
+		return this.transition(shard, State.DONE, 0);
+	}
+
+	/**
+	 * Release a leased shard after a failure, so that it can be leased again.
+	 * 
+	 * @param shard the leased {@link Shard}
+	 * 
+	 * @return <code>true</code> if released, <code>false</code> if the lease has
+	 *         been lost to another worker
+	 * 
+	 * @throws IOException if the file cannot be updated
+	 */
+	public boolean release(Shard shard) throws IOException {
+		return this.transition(shard, State.PENDING, 0);
+	}
+
+	/**
+	 * Check if every shard is either done or has failed.
+	 * 
+	 * @return <code>true</code> if no shard is pending or leased
+	 * 
+	 * @throws IOException if the file cannot be read
+	 */
+	public boolean isFinished() throws IOException {
+		for (Shard shard : this.list()) {
+			if (shard.state == State.PENDING || shard.state == State.LEASED) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Read all shards.
+	 * 
+	 * @return the shards
+	 * 
+	 * @throws IOException if the file cannot be read
+	 */
+	public List<Shard> list() throws IOException {
+		return this.update(new Update<List<Shard>>() {
+
+			@Override
+			public List<Shard> apply(List<Shard> shards) {
+				return new ArrayList<>(shards);
+			}
+
+		});
+	}
+
+	/**
+	 * Move a shard out of the leased state, if still held by the same owner.
+	 */
+	private boolean transition(final Shard shard, final State state, final long leaseExpiresAt) throws IOException {
+		return this.update(new Update<Boolean>() {
+
+			@Override
+			public Boolean apply(List<Shard> shards) {
+				for (Shard current : shards) {
+					if (current.id != shard.id) {
+						continue;
+					}
+
+					if (current.state != State.LEASED || !current.owner.equals(shard.owner)) {
+						return false;
+					}
+
+					current.state = state;
+					current.leaseExpiresAt = leaseExpiresAt;
+					if (state != State.LEASED) {
+						current.owner = null;
+					}
+
+					return true;
+				}
+
+				return false;
+			}
+
+		});
+	}
+
+	/**
+	 * An update applied to the shards while the file is locked
+	 */
+	private interface Update<T> {
+
+		T apply(List<Shard> shards);
+
+	}
+
+	/**
+	 * Lock the file, read the shards, apply the update and write them back. The
+	 * lock is taken on a separate lock file, as the lease file is replaced
+	 * atomically on every write so that a crash never leaves it half written.
+	 */
+	private <T> T update(Update<T> update) throws IOException {
+		synchronized (PROCESS_LOCK) {
+			RandomAccessFile raf = new RandomAccessFile(this.lockFile, "rw");
+			try {
+				FileLock lock = raf.getChannel().lock();
+				try {
+					List<Shard> shards = this.read();
+					String before = write(shards);
+
+					T result = update.apply(shards);
+
+					String after = write(shards);
+					if (!after.equals(before)) {
+						this.replace(after.getBytes(StandardCharsets.UTF_8));
+					}
+
+					return result;
+				} finally {
+					lock.release();
+				}
+			} finally {
+				raf.close();
+			}
+		}
+	}
+
+	/**
+	 * Write the contents to a temporary file and move it over the lease file.
+	 */
+	private void replace(byte[] bytes) throws IOException {
+		File temp = new File(this.file.getAbsoluteFile().getParentFile(), this.file.getName() + ".tmp");
+		FileOutputStream stream = new FileOutputStream(temp);
+		try {
+			stream.write(bytes);
+			stream.getFD().sync();
+		} finally {
+			stream.close();
+		}
+
+		Files.move(temp.toPath(), this.file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private List<Shard> read() throws IOException {
+		List<Shard> shards = new ArrayList<>();
+		if (!this.file.exists()) {
+			return shards;
+		}
+
+		byte[] bytes = Files.readAllBytes(this.file.toPath());
+		for (String line : new String(bytes, StandardCharsets.UTF_8).split("\n")) {
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+
+			String[] tokens = line.split("\t");
+			if (tokens.length != 7) {
+				throw new IOException("Malformed shard line: " + line);
+			}
+
+			Shard shard = new Shard();
+			shard.id = Integer.parseInt(tokens[0]);
+			shard.startPage = Integer.parseInt(tokens[1]);
+			shard.endPage = Integer.parseInt(tokens[2]);
+			shard.state = State.valueOf(tokens[3]);
+			shard.owner = NONE.equals(tokens[4]) ? null : tokens[4];
+			shard.leaseExpiresAt = Long.parseLong(tokens[5]);
+			shard.attempts = Integer.parseInt(tokens[6]);
+			shards.add(shard);
+		}
+
+		return shards;
+	}
+
+	private static String write(List<Shard> shards) {
+		if (shards.isEmpty()) {
+			return "";
+		}
+
+		StringBuilder builder = new StringBuilder(HEADER).append('\n');
+		for (Shard shard : shards) {
+			builder.append(shard.id).append('\t');
+			builder.append(shard.startPage).append('\t');
+			builder.append(shard.endPage).append('\t');
+			builder.append(shard.state.name()).append('\t');
+			builder.append(shard.owner == null ? NONE : shard.owner).append('\t');
+			builder.append(shard.leaseExpiresAt).append('\t');
+			builder.append(shard.attempts).append('\n');
+		}
+
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,471 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.gson.Gson;
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * Coordinates a listing page crawl split across several worker processes,
+ * possibly on different machines, through a shared folder.
+ * 
+ * {@link #prepare()} discovers the number of listing pages once and splits
+ * them into shards of {@link BurstCrawlerOptions#pagesPerShard} pages in a
+ * {@link ShardLeaseFile}. Each worker then calls {@link #work(String)}, which
+ * leases shards one at a time, crawls them with a {@link BurstCrawler} and
+ * writes the images found to a result file per shard. Shards are re-leased if
+ * their worker fails or stops renewing the lease. Finally {@link #merge()}
+ * reads all result files, dropping duplicate images by
+ * {@link BurstImage#homeUrl}, as photos shift between pages while the site is
+ * crawled.
+ * 
+ * The folder layout is:
+ * 
+ * <pre>
+ * shards.lease      the shard lease file
+ * shard-N.json      images of shard N, one JSON object per line
+ * </pre>
+ * 
+ * Workers should not share a {@link BurstCrawlerOptions#crawlStateFile}.
+ * 
+ * @author sangupta
+ *
+ */
+public class ShardedCrawlCoordinator {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShardedCrawlCoordinator.class);
+
+	/**
+	 * Name of the lease file in the folder
+	 */
+	private static final String LEASE_FILE = "shards.lease";
+
+	private static final String RESULT_PREFIX = "shard-";
+
+	private static final String RESULT_SUFFIX = ".json";
+
+	/**
+	 * Writes results one image per line
+	 */
+	private static final Gson GSON = new Gson();
+
+	/**
+	 * Longest a worker waits before checking for shards again
+	 */
+	private static final long MAX_POLL_MILLIS = 1000;
+
+	/**
+	 * The shared folder
+	 */
+	private final File folder;
+
+	/**
+	 * Options used to crawl each shard
+	 */
+	private final BurstCrawlerOptions options;
+
+	/**
+	 * The shards
+	 */
+	private final ShardLeaseFile leases;
+
+	/**
+	 * Create a coordinator over given shared folder.
+	 * 
+	 * @param folder  the folder shared by all workers
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to crawl shards with
+	 */
+	public ShardedCrawlCoordinator(File folder, BurstCrawlerOptions options) {
+		if (folder == null) {
+			throw new IllegalArgumentException("Folder cannot be null");
+		}
+
+		if (options == null) {
+			throw new IllegalArgumentException("Options cannot be null");
+		}
+
+		this.folder = folder;
+		this.options = options;
+		this.leases = new ShardLeaseFile(new File(folder, LEASE_FILE));
+	}
+
+	/**
+	 * Discover the number of listing pages and create the shards, unless they
+	 * exist from an earlier run. Page limits in {@link BurstCrawlerOptions} are
+	 * honoured.
+	 * 
+	 * @return the number of shards
+	 * 
+	 * @throws IOException if the lease file cannot be written
+	 */
+	public int prepare() throws IOException {
+		this.folder.mkdirs();
+
+		int lastPage = this.newCrawler(this.options).discoverLastPage();
+		if (lastPage <= 0) {
+			throw new IllegalStateException("Unable to discover the number of listing pages");
+		}
+
+		if (this.options.endPage > 0) {
+			lastPage = Math.min(lastPage, this.options.endPage);
+		}
+
+		if (this.options.maxPages > 0) {
+			lastPage = Math.min(lastPage, this.options.startPage + this.options.maxPages - 1);
+		}
+
+		this.leases.create(this.options.startPage, lastPage, this.options.pagesPerShard);
+		return this.leases.list().size();
+	}
+
+	/**
+	 * Lease and crawl shards till none are left. Returns once every shard is
+	 * done or has failed, waiting meanwhile for shards leased by other workers
+	 * in case their lease expires.
+	 * 
+	 * @param workerId a name for this worker unique across all workers, such as
+	 *                 <code>host:pid</code>
+	 * 
+	 * @return the number of shards this worker completed
+	 * 
+	 * @throws IOException if the lease file cannot be read or updated
+	 */
+	public int work(String workerId) throws IOException {
+		final String owner = workerId.replaceAll("\\s", "_");
+		final BurstCrawler crawler = this.newCrawler(this.options);
+		final long pollMillis = Math.max(1, Math.min(MAX_POLL_MILLIS, this.options.shardLeaseMillis / 2));
+
+		int completed = 0;
+		while (true) {
+			ShardLeaseFile.Shard shard = this.leases.acquire(owner, this.options.shardLeaseMillis, this.options.maxShardAttempts);
+			if (shard == null) {
+				if (this.leases.isFinished()) {
+					break;
+				}
+
+				try {
+					Thread.sleep(pollMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					break;
+				}
+
+				continue;
+			}
+
+			LOGGER.info("Worker {} crawling shard {} with pages {} to {}", owner, shard.id, shard.startPage, shard.endPage);
+			if (this.crawlShard(crawler, shard)) {
+				completed++;
+			}
+		}
+
+		LOGGER.info("Worker {} completed {} shards", owner, completed);
+		return completed;
+	}
+
+	/**
+	 * Merge the images of all completed shards, dropping duplicates.
+	 * 
+	 * @return the images
+	 * 
+	 * @throws IOException if a result file cannot be read
+	 */
+	public List<BurstImage> merge() throws IOException {
+		final List<BurstImage> images = new ArrayList<>();
+		this.merge(new GenericConsumer<BurstImage>() {
+
+			@Override
+			public boolean consume(BurstImage image) {
+				images.add(image);
+				return true;
+			}
+
+		});
+
+		return images;
+	}
+
+	/**
+	 * Merge the images of all completed shards, dropping duplicates, into the
+	 * collector.
+	 * 
+	 * @param collector the {@link GenericConsumer} to hand images to
+	 * 
+	 * @throws IOException if a result file cannot be read
+	 */
+	public void merge(GenericConsumer<BurstImage> collector) throws IOException {
+		final UrlSeenSet seen = new FingerprintUrlSeenSet();
+
+		for (ShardLeaseFile.Shard shard : this.leases.list()) {
+			if (shard.state != ShardLeaseFile.State.DONE) {
+				LOGGER.warn("Shard {} with pages {} to {} is {}, its images are missing", shard.id, shard.startPage, shard.endPage, shard.state);
+				continue;
+			}
+
+			BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(this.resultFile(shard)), StandardCharsets.UTF_8));
+			try {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					if (line.isEmpty()) {
+						continue;
+					}
+
+					BurstImage image = GSON.fromJson(line, BurstImage.class);
+					if (image.homeUrl != null && !seen.add(image.homeUrl)) {
+						continue;
+					}
+
+					if (!collector.consume(image)) {
+						return;
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+
+	/**
+	 * Return the {@link ShardLeaseFile} of this crawl, to inspect progress.
+	 * 
+	 * @return the lease file
+	 */
+	public ShardLeaseFile getLeases() {
+		return this.leases;
+	}
+
+	/**
+	 * Create the crawler used to discover pages and crawl shards. Override to
+	 * configure it.
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to use
+	 * 
+	 * @return the crawler
+	 */
+	protected BurstCrawler newCrawler(BurstCrawlerOptions options) {
+		return new BurstCrawler(options);
+	}
+
+	/**
+	 * Crawl a leased shard into its result file, renewing the lease on a timer
+	 * while the crawl runs.
+	 * 
+	 * @return <code>true</code> if the shard was completed
+	 */
+	private boolean crawlShard(BurstCrawler crawler, final ShardLeaseFile.Shard shard) throws IOException {
+		final String suffix = "." + shard.owner.replaceAll("[^A-Za-z0-9._-]", "_") + ".tmp";
+		final File temp = new File(this.folder, RESULT_PREFIX + shard.id + RESULT_SUFFIX + suffix);
+		final Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(temp), StandardCharsets.UTF_8));
+
+		final AtomicBoolean leaseLost = new AtomicBoolean(false);
+		final ScheduledExecutorService renewal = this.startRenewal(shard, leaseLost);
+		int failedPages;
+		try {
+			failedPages = crawler.crawlPages(new GenericConsumer<BurstImage>() {
+
+				@Override
+				public boolean consume(BurstImage image) {
+					if (leaseLost.get()) {
+						return false;
+					}
+
+					try {
+						GSON.toJson(image, writer);
+						writer.write('\n');
+					} catch (IOException e) {
+						throw new IllegalStateException("Unable to write results of shard " + shard.id, e);
+					}
+
+					return true;
+				}
+
+			}, shard.startPage, shard.endPage);
+
+			writer.close();
+		} catch (RuntimeException e) {
+			LOGGER.error("Crawl of shard " + shard.id + " failed, releasing it", e);
+			Streams.closeQuietly(writer);
+			temp.delete();
+			this.leases.release(shard);
+			return false;
+		} finally {
+			stopRenewal(renewal);
+		}
+
+		// the lease must still be held before the result file is replaced
+		if (leaseLost.get() || !this.leases.renew(shard, this.options.shardLeaseMillis)) {
+			LOGGER.warn("Lease on shard {} was lost to another worker", shard.id);
+			temp.delete();
+			return false;
+		}
+
+		if (failedPages > 0) {
+			LOGGER.warn("{} pages of shard {} could not be fetched, releasing it", failedPages, shard.id);
+			temp.delete();
+			this.leases.release(shard);
+			return false;
+		}
+
+		Files.move(temp.toPath(), this.resultFile(shard).toPath(), StandardCopyOption.REPLACE_EXISTING);
+		return this.leases.complete(shard);
+	}
+
+	/**
+	 * Renew the lease on the shard every half lease, flagging when it has been
+	 * lost to another worker.
+	 */
+	private ScheduledExecutorService startRenewal(final ShardLeaseFile.Shard shard, final AtomicBoolean leaseLost) {
+		final ScheduledExecutorService renewal = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+			@Override
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "burst-lease-renewal");
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		});
+
+		final long interval = Math.max(1, this.options.shardLeaseMillis / 2);
+		renewal.scheduleAtFixedRate(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					if (!leases.renew(shard, options.shardLeaseMillis)) {
+						leaseLost.set(true);
+						throw new IllegalStateException("Lease lost, renewal stopped");
+					}
+				} catch (IOException e) {
+					LOGGER.warn("Unable to renew lease on shard " + shard.id + ", trying again", e);
+				}
+			}
+
+		}, interval, interval, TimeUnit.MILLISECONDS);
+
+		return renewal;
+	}
+
+	/**
+	 * Stop renewing, waiting for a renewal in progress to finish.
+	 */
+	private static void stopRenewal(ScheduledExecutorService renewal) {
+		renewal.shutdownNow();
+		try {
+			renewal.awaitTermination(MAX_POLL_MILLIS, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private File resultFile(ShardLeaseFile.Shard shard) {
+		return new File(this.folder, RESULT_PREFIX + shard.id + RESULT_SUFFIX);
+	}
+
+	/**
+	 * Options for crawls run from the command line. No <code>HttpService</code>
+	 * is injected there, so fetches are made over direct connections.
+	 * 
+	 * @return the {@link BurstCrawlerOptions}
+	 */
+	static BurstCrawlerOptions commandLineOptions() {
+		return new BurstCrawlerOptions().setDirectConnections(true);
+	}
+
+	/**
+	 * Run a step of a sharded crawl from the command line. Usage:
+	 * 
+	 * <pre>
+	 * ShardedCrawlCoordinator prepare|work|merge &lt;folder&gt;
+	 * </pre>
+	 * 
+	 * <code>merge</code> prints the merged images as JSON, one per line.
+	 * 
+	 * @param args the command line arguments
+	 * 
+	 * @throws IOException if the folder cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			System.err.println("Usage: ShardedCrawlCoordinator prepare|work|merge <folder>");
+			System.exit(1);
+		}
+
+		ShardedCrawlCoordinator coordinator = new ShardedCrawlCoordinator(new File(args[1]), commandLineOptions());
+		switch (args[0]) {
+			case "prepare":
+				System.out.println("Shards: " + coordinator.prepare());
+				break;
+
+			case "work":
+				// e.g. 1234@hostname, unique across machines
+				coordinator.work(ManagementFactory.getRuntimeMXBean().getName());
+				break;
+
+			case "merge":
+				coordinator.merge(new GenericConsumer<BurstImage>() {
+
+					@Override
+					public boolean consume(BurstImage image) {
+						System.out.println(GSON.toJson(image));
+						return true;
+					}
+
+				});
+				break;
+
+			default:
+				System.err.println("Unknown command: " + args[0]);
+				System.exit(1);
+		}
+	}
+
+}
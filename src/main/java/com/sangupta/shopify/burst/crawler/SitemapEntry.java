@@ -0,0 +1,61 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+/**
+ * A single entry read from a sitemap, either a page URL within a
+ * <code>&lt;urlset&gt;</code> or a child sitemap within a
+ * <code>&lt;sitemapindex&gt;</code>.
+ * 
+ * @author sangupta
+ *
+ */
+public class SitemapEntry {
+
+	/**
+	 * The URL of the entry
+	 */
+	public final String loc;
+
+	/**
+	 * Last modification time as published in the sitemap, may be
+	 * <code>null</code>
+	 */
+	public final String lastmod;
+
+	/**
+	 * Change frequency as published in the sitemap, may be <code>null</code>
+	 */
+	public final String changefreq;
+
+	public SitemapEntry(String loc, String lastmod, String changefreq) {
+		this.loc = loc;
+		this.lastmod = lastmod;
+		this.changefreq = changefreq;
+	}
+
+	@Override
+	public String toString() {
+		return "[SitemapEntry: " + this.loc + "]";
+	}
+
+}
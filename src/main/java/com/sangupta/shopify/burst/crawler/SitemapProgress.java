@@ -0,0 +1,179 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Tracks how far {@link BurstSitemapCrawler} has completed its sitemaps when
+ * photo pages are fetched out of order by a {@link PhotoFetchPool}. Every
+ * sitemap entry read is issued a sequence number, and the position saved is
+ * that of the first entry not yet completed: all entries before it are done,
+ * some after it may be too.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+class SitemapProgress {
+
+	/**
+	 * Index of the sitemap the crawl started, or resumed, at
+	 */
+	private final int firstSitemap;
+
+	/**
+	 * Index of each sitemap that has been started
+	 */
+	private final List<Integer> sitemaps = new ArrayList<>();
+
+	/**
+	 * Sequence number of the first entry of each started sitemap
+	 */
+	private final List<Long> starts = new ArrayList<>();
+
+	/**
+	 * Entries completed after the first entry still pending, by their distance
+	 * from it
+	 */
+	private final BitSet completed = new BitSet();
+
+	/**
+	 * Sequence number of the next entry to be issued
+	 */
+	private long next;
+
+	/**
+	 * Sequence number of the first entry not yet completed
+	 */
+	private long pending;
+
+	/**
+	 * Create progress for a crawl starting at given sitemap.
+	 * 
+	 * @param firstSitemap the index of the first sitemap
+	 */
+	SitemapProgress(int firstSitemap) {
+		this.firstSitemap = firstSitemap;
+	}
+
+	/**
+	 * Record that entries of given sitemap are to be issued next.
+	 * 
+	 * @param index the index of the sitemap
+	 */
+	synchronized void startSitemap(int index) {
+		this.sitemaps.add(index);
+		this.starts.add(this.next);
+	}
+
+	/**
+	 * Issue a sequence number to the next entry read.
+	 * 
+	 * @return the sequence number
+	 */
+	synchronized long issue() {
+		return this.next++;
+	}
+
+	/**
+	 * Record that the entry with given sequence number is done.
+	 * 
+	 * @param sequence the sequence number
+	 */
+	synchronized void complete(long sequence) {
+		if (sequence < this.pending) {
+			return;
+		}
+
+		this.completed.set((int) (sequence - this.pending));
+
+		// slide past all entries done in a row
+		int done = this.completed.nextClearBit(0);
+		if (done > 0) {
+			this.pending += done;
+			final BitSet remaining = this.completed.get(done, Math.max(done, this.completed.length()));
+			this.completed.clear();
+			this.completed.or(remaining);
+		}
+	}
+
+	/**
+	 * Return a {@link Runnable} that completes the entry with given sequence
+	 * number.
+	 * 
+	 * @param sequence the sequence number
+	 * 
+	 * @return the {@link Runnable}
+	 */
+	Runnable completion(final long sequence) {
+		return new Runnable() {
+
+			@Override
+			public void run() {
+				complete(sequence);
+			}
+
+		};
+	}
+
+	/**
+	 * Return the index of the sitemap holding the first entry not yet
+	 * completed.
+	 * 
+	 * @return the sitemap index
+	 */
+	synchronized int getSitemapIndex() {
+		final int started = this.startedAt();
+		return started < 0 ? this.firstSitemap : this.sitemaps.get(started);
+	}
+
+	/**
+	 * Return the number of entries of the sitemap from
+	 * {@link #getSitemapIndex()} that are all completed.
+	 * 
+	 * @return the offset within the sitemap
+	 */
+	synchronized long getSitemapOffset() {
+		final int started = this.startedAt();
+		return started < 0 ? 0 : this.pending - this.starts.get(started);
+	}
+
+	/**
+	 * Find the last started sitemap whose first entry is not after the first
+	 * pending one.
+	 */
+	private int startedAt() {
+		for (int index = this.starts.size() - 1; index >= 0; index--) {
+			if (this.starts.get(index) <= this.pending) {
+				return index;
+			}
+		}
+
+		return -1;
+	}
+
+}
@@ -0,0 +1,579 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Streaming reader for sitemap XML files. Entries are pulled lazily off the
+ * underlying byte stream one at a time using a small fixed buffer, so memory
+ * use does not depend on the size of the sitemap. Markup is matched on raw
+ * bytes and only the text of wanted elements is decoded as UTF-8. Gzip compressed sitemaps
+ * (<code>.xml.gz</code>) are detected from their magic bytes and decompressed
+ * on the fly.
+ * 
+ * This is not a general XML parser: it only understands the flat structure of
+ * sitemaps. Unprefixed <code>&lt;loc&gt;</code>, <code>&lt;lastmod&gt;</code>
+ * and <code>&lt;changefreq&gt;</code> elements within <code>&lt;url&gt;</code> or
+ * <code>&lt;sitemap&gt;</code> are read, while extensions such as
+ * <code>&lt;image:loc&gt;</code> are ignored. DTDs and entities other than the
+ * predefined and numeric ones are never resolved.
+ * 
+ * @author sangupta
+ *
+ */
+public class SitemapReader implements Iterator<SitemapEntry>, Closeable {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(SitemapReader.class);
+
+	/**
+	 * Size of the read buffer
+	 */
+	private static final int BUFFER_SIZE = Streams.BUFFER_SIZE;
+
+	private static final byte[] TAG_URL = ascii("url");
+
+	private static final byte[] TAG_SITEMAP = ascii("sitemap");
+
+	private static final byte[] TAG_LOC = ascii("loc");
+
+	private static final byte[] TAG_LASTMOD = ascii("lastmod");
+
+	private static final byte[] TAG_CHANGEFREQ = ascii("changefreq");
+
+	/**
+	 * The sitemap byte stream
+	 */
+	private final InputStream stream;
+
+	/**
+	 * Read buffer
+	 */
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	/**
+	 * Number of valid bytes in buffer
+	 */
+	private int limit = 0;
+
+	/**
+	 * Current position in buffer
+	 */
+	private int pos = 0;
+
+	/**
+	 * Reusable holder for tag names and text
+	 */
+	private byte[] scratch = new byte[256];
+
+	/**
+	 * Number of valid bytes in {@link #scratch}
+	 */
+	private int scratchLength = 0;
+
+	/**
+	 * Entry read ahead by {@link #hasNext()}
+	 */
+	private SitemapEntry nextEntry;
+
+	/**
+	 * Set once the end of the sitemap, or an error, has been reached
+	 */
+	private boolean done = false;
+
+	/**
+	 * Create a reader over the given stream. The stream is closed when the
+	 * reader is closed.
+	 * 
+	 * @param stream the {@link InputStream} containing plain or gzipped XML
+	 * 
+	 * @throws IOException if the stream cannot be read
+	 */
+	public SitemapReader(InputStream stream) throws IOException {
+		this.stream = Streams.decompressIfNeeded(stream);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (this.nextEntry != null) {
+			return true;
+		}
+
+		if (this.done) {
+			return false;
+		}
+
+		try {
+			this.nextEntry = this.readEntry();
+		} catch (IOException e) {
+			LOGGER.warn("Error reading sitemap XML, stopping at this point", e);
+			this.nextEntry = null;
+		}
+
+		if (this.nextEntry == null) {
+			this.done = true;
+			return false;
+		}
+
+		return true;
+	}
+
+	@Override
+	public SitemapEntry next() {
+		if (!this.hasNext()) {
+			throw new NoSuchElementException();
+		}
+
+		SitemapEntry entry = this.nextEntry;
+		this.nextEntry = null;
+		return entry;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException("Sitemap entries cannot be removed");
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.done = true;
+		this.stream.close();
+	}
+
+	/**
+	 * Read till the next complete <code>url</code> or <code>sitemap</code>
+	 * element.
+	 * 
+	 * @return the entry read, or <code>null</code> if the document has ended
+	 * 
+	 * @throws IOException if the stream cannot be read
+	 */
+	private SitemapEntry readEntry() throws IOException {
+		boolean inEntry = false;
+		String loc = null;
+		String lastmod = null;
+		String changefreq = null;
+
+		while (this.skipTo('<')) {
+			int ch = this.read();
+			if (ch == '?') {
+				this.skipPast("?>");
+				continue;
+			}
+
+			if (ch == '!') {
+				this.skipDeclaration();
+				continue;
+			}
+
+			final boolean closing = ch == '/';
+			if (!closing) {
+				this.pos--;
+			}
+
+			if (!this.readTagName()) {
+				return null;
+			}
+
+			final boolean entryTag = this.scratchIs(TAG_URL) || this.scratchIs(TAG_SITEMAP);
+			if (closing) {
+				if (inEntry && entryTag) {
+					inEntry = false;
+					if (loc != null && !loc.isEmpty()) {
+						return new SitemapEntry(loc, lastmod, changefreq);
+					}
+				}
+
+				continue;
+			}
+
+			if (entryTag) {
+				inEntry = true;
+				loc = null;
+				lastmod = null;
+				changefreq = null;
+				continue;
+			}
+
+			if (!inEntry) {
+				continue;
+			}
+
+			if (this.scratchIs(TAG_LOC)) {
+				loc = this.readText();
+				continue;
+			}
+
+			if (this.scratchIs(TAG_LASTMOD)) {
+				lastmod = this.readText();
+				continue;
+			}
+
+			if (this.scratchIs(TAG_CHANGEFREQ)) {
+				changefreq = this.readText();
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Read a tag name into scratch and skip the rest of the tag including any
+	 * attributes.
+	 * 
+	 * @return <code>false</code> at end of stream
+	 * 
+	 * @throws IOException if the stream cannot be read
+	 */
+	private boolean readTagName() throws IOException {
+		this.scratchLength = 0;
+
+		int ch;
+		while ((ch = this.read()) != -1) {
+			if (ch == '>' || ch == '/' || isWhitespace(ch)) {
+				break;
+			}
+
+			this.append(ch);
+		}
+
+		// skip attributes, respecting quotes
+		int quote = 0;
+		while (ch != '>' || quote != 0) {
+			if (ch == -1) {
+				return false;
+			}
+
+			if (ch == '"' || ch == '\'') {
+				if (quote == 0) {
+					quote = ch;
+				} else if (quote == ch) {
+					quote = 0;
+				}
+			}
+
+			ch = this.read();
+		}
+
+		return true;
+	}
+
+	/**
+	 * Read text content till the next tag, decoding entities and CDATA sections.
+	 * 
+	 * @return the trimmed text
+	 * 
+	 * @throws IOException if the stream cannot be read
+	 */
+	private String readText() throws IOException {
+		this.scratchLength = 0;
+
+		int ch;
+		while ((ch = this.read()) != -1) {
+			if (ch == '<') {
+				if (this.peekMatches("![CDATA[")) {
+					this.pos += 8;
+					this.readCData();
+					continue;
+				}
+
+				// leave the tag to be read by caller
+				this.pos--;
+				break;
+			}
+
+			if (ch == '&') {
+				this.readEntity();
+				continue;
+			}
+
+			this.append(ch);
+		}
+
+		return new String(this.scratch, 0, this.scratchLength, StandardCharsets.UTF_8).trim();
+	}
+
+	/**
+	 * Append contents of a CDATA section to scratch.
+	 */
+	private void readCData() throws IOException {
+		int ch;
+		while ((ch = this.read()) != -1) {
+			if (ch == ']' && this.peekMatches("]>")) {
+				this.pos += 2;
+				return;
+			}
+
+			this.append(ch);
+		}
+	}
+
+	/**
+	 * Decode an entity reference and append it to scratch. Unknown entities are
+	 * kept as is.
+	 */
+	private void readEntity() throws IOException {
+		final int start = this.scratchLength;
+		this.append('&');
+
+		int ch;
+		while ((ch = this.read()) != -1 && ch != ';' && this.scratchLength - start < 10) {
+			if (ch == '<') {
+				this.pos--;
+				return;
+			}
+
+			this.append(ch);
+		}
+
+		final String entity = new String(this.scratch, start + 1, this.scratchLength - start - 1, StandardCharsets.US_ASCII);
+		final String decoded = ch == ';' ? decodeEntity(entity) : null;
+		if (decoded == null) {
+			if (ch != -1) {
+				this.append(ch);
+			}
+
+			return;
+		}
+
+		this.scratchLength = start;
+		for (byte b : decoded.getBytes(StandardCharsets.UTF_8)) {
+			this.append(b);
+		}
+	}
+
+	/**
+	 * Decode predefined and numeric XML entities.
+	 * 
+	 * @param entity the entity name without <code>&amp;</code> and
+	 *               <code>;</code>
+	 * 
+	 * @return the decoded value, or <code>null</code> if unknown
+	 */
+	private static String decodeEntity(String entity) {
+		switch (entity) {
+			case "amp":
+				return "&";
+			case "lt":
+				return "<";
+			case "gt":
+				return ">";
+			case "quot":
+				return "\"";
+			case "apos":
+				return "'";
+		}
+
+		if (entity.length() > 1 && entity.charAt(0) == '#') {
+			try {
+				int code;
+				if (entity.charAt(1) == 'x' || entity.charAt(1) == 'X') {
+					code = Integer.parseInt(entity.substring(2), 16);
+				} else {
+					code = Integer.parseInt(entity.substring(1));
+				}
+
+				return new String(Character.toChars(code));
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Skip a comment, CDATA section or DOCTYPE declaration.
+	 */
+	private void skipDeclaration() throws IOException {
+		if (this.peekMatches("--")) {
+			this.skipPast("-->");
+			return;
+		}
+
+		if (this.peekMatches("[CDATA[")) {
+			this.skipPast("]]>");
+			return;
+		}
+
+		// DOCTYPE may contain an internal subset in brackets
+		int depth = 0;
+		int ch;
+		while ((ch = this.read()) != -1) {
+			if (ch == '[') {
+				depth++;
+			} else if (ch == ']') {
+				depth--;
+			} else if (ch == '>' && depth <= 0) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Advance past the given character.
+	 * 
+	 * @return <code>true</code> if found, <code>false</code> at end of stream
+	 */
+	private boolean skipTo(char target) throws IOException {
+		while (true) {
+			for (int index = this.pos; index < this.limit; index++) {
+				if (this.buffer[index] == target) {
+					this.pos = index + 1;
+					return true;
+				}
+			}
+
+			this.pos = this.limit;
+			if (!this.fill()) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Advance past the given marker.
+	 */
+	private void skipPast(String marker) throws IOException {
+		final char first = marker.charAt(0);
+		final String rest = marker.substring(1);
+		while (this.skipTo(first)) {
+			if (this.peekMatches(rest)) {
+				this.pos += rest.length();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Check if the bytes at current position match the given ASCII string,
+	 * without consuming them.
+	 */
+	private boolean peekMatches(String expected) throws IOException {
+		if (this.limit - this.pos < expected.length()) {
+			this.compact();
+			while (this.limit - this.pos < expected.length()) {
+				int read = this.stream.read(this.buffer, this.limit, this.buffer.length - this.limit);
+				if (read == -1) {
+					return false;
+				}
+
+				this.limit += read;
+			}
+		}
+
+		for (int index = 0; index < expected.length(); index++) {
+			if (this.buffer[this.pos + index] != expected.charAt(index)) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Check if scratch holds exactly the given bytes.
+	 */
+	private boolean scratchIs(byte[] expected) {
+		if (this.scratchLength != expected.length) {
+			return false;
+		}
+
+		for (int index = 0; index < expected.length; index++) {
+			if (this.scratch[index] != expected[index]) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Append a byte to scratch, growing it if needed.
+	 */
+	private void append(int b) {
+		if (this.scratchLength == this.scratch.length) {
+			this.scratch = Arrays.copyOf(this.scratch, this.scratch.length * 2);
+		}
+
+		this.scratch[this.scratchLength++] = (byte) b;
+	}
+
+	/**
+	 * Read a single byte.
+	 * 
+	 * @return the byte, or <code>-1</code> at end of stream
+	 */
+	private int read() throws IOException {
+		if (this.pos >= this.limit && !this.fill()) {
+			return -1;
+		}
+
+		return this.buffer[this.pos++] & 0xff;
+	}
+
+	/**
+	 * Refill the buffer once all of it has been consumed.
+	 * 
+	 * @return <code>false</code> at end of stream
+	 */
+	private boolean fill() throws IOException {
+		int read = this.stream.read(this.buffer, 0, this.buffer.length);
+
+		this.pos = 0;
+		this.limit = Math.max(0, read);
+		return read >= 0;
+	}
+
+	/**
+	 * Move unread bytes to the start of the buffer, along with the byte just
+	 * read, so that callers may still step back over it.
+	 */
+	private void compact() {
+		final int start = Math.max(0, this.pos - 1);
+		final int remaining = this.limit - start;
+		System.arraycopy(this.buffer, start, this.buffer, 0, remaining);
+		this.pos -= start;
+		this.limit = remaining;
+	}
+
+	private static boolean isWhitespace(int ch) {
+		return ch == ' ' || ch == '\n' || ch == '\r' || ch == '\t';
+	}
+
+	private static byte[] ascii(String value) {
+		return value.getBytes(StandardCharsets.US_ASCII);
+	}
+
+}
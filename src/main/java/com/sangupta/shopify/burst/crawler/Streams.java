@@ -0,0 +1,169 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Stream helpers shared by the crawler internals.
+ * 
+ * @author sangupta
+ *
+ */
+final class Streams {
+
+	/**
+	 * Default buffer size
+	 */
+	static final int BUFFER_SIZE = 16 * 1024;
+
+	private Streams() {
+		throw new InstantiationError("Instances of this class cannot be created");
+	}
+
+	/**
+	 * Wrap the stream with a {@link GZIPInputStream} if it starts with the gzip
+	 * magic bytes.
+	 * 
+	 * @param stream the raw stream
+	 * 
+	 * @return the stream to read content from
+	 * 
+	 * @throws IOException if the stream cannot be read
+	 */
+	static InputStream decompressIfNeeded(InputStream stream) throws IOException {
+		BufferedInputStream buffered = new BufferedInputStream(stream, 2);
+		buffered.mark(2);
+		int first = buffered.read();
+		int second = buffered.read();
+		buffered.reset();
+
+		if (first == 0x1f && second == 0x8b) {
+			return new GZIPInputStream(buffered, BUFFER_SIZE);
+		}
+
+		return buffered;
+	}
+
+	/**
+	 * Read the stream fully and close it.
+	 * 
+	 * @param stream the stream to read
+	 * 
+	 * @return all bytes read
+	 * 
+	 * @throws IOException if the stream cannot be read
+	 */
+	static byte[] readFully(InputStream stream) throws IOException {
+		try {
+			ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				out.write(buffer, 0, read);
+			}
+
+			return out.toByteArray();
+		} finally {
+			stream.close();
+		}
+	}
+
+	/**
+	 * Read and discard what is left of the stream, up to the given number of
+	 * bytes. Decompressing readers stop at the end of their data without
+	 * reading the end of the stream beneath, which this finds.
+	 * 
+	 * @param stream   the stream to drain
+	 * 
+	 * @param maxBytes the most bytes to discard
+	 * 
+	 * @return <code>true</code> if the end of stream was reached
+	 * 
+	 * @throws IOException if the stream cannot be read
+	 */
+	static boolean drain(InputStream stream, int maxBytes) throws IOException {
+		final byte[] buffer = new byte[Math.min(maxBytes, BUFFER_SIZE)];
+		int remaining = maxBytes;
+		while (true) {
+			int read = stream.read(buffer, 0, Math.min(buffer.length, remaining + 1));
+			if (read == -1) {
+				return true;
+			}
+
+			remaining -= read;
+			if (remaining < 0) {
+				return false;
+			}
+		}
+	}
+
+	/**
+	 * Close ignoring any errors.
+	 * 
+	 * @param closeable the {@link Closeable} to close, may be <code>null</code>
+	 */
+	static void closeQuietly(Closeable closeable) {
+		if (closeable == null) {
+			return;
+		}
+
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			// eat up
+		}
+	}
+
+	/**
+	 * Compute the number of bytes the text takes when encoded as UTF-8,
+	 * without encoding it.
+	 * 
+	 * @param text the text
+	 * 
+	 * @return the number of bytes
+	 */
+	static long utf8Length(String text) {
+		long bytes = 0;
+		for (int index = 0; index < text.length(); index++) {
+			char ch = text.charAt(index);
+			if (ch < 0x80) {
+				bytes++;
+			} else if (ch < 0x800) {
+				bytes += 2;
+			} else if (Character.isHighSurrogate(ch)) {
+				bytes += 4;
+				index++;
+			} else {
+				bytes += 3;
+			}
+		}
+
+		return bytes;
+	}
+
+}
@@ -0,0 +1,128 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Deduplicates the values that repeat across images of a crawl, such as
+ * authors, licenses and tags, so that each distinct value is held once in
+ * memory however many images refer to it. Unlike {@link String#intern()},
+ * values are released along with the interner.
+ * 
+ * Once <code>maxSize</code> distinct values are held, new values are returned
+ * as they are, so that a run of unexpected values cannot grow the interner
+ * without bound.
+ * 
+ * Instances are thread-safe.
+ * 
+ * @author sangupta
+ *
+ */
+public class StringInterner {
+
+	/**
+	 * Default maximum number of distinct values held
+	 */
+	public static final int DEFAULT_MAX_SIZE = 100000;
+
+	private final ConcurrentMap<String, String> values = new ConcurrentHashMap<>();
+
+	private final int maxSize;
+
+	/**
+	 * Create an interner holding up to {@value #DEFAULT_MAX_SIZE} values.
+	 */
+	public StringInterner() {
+		this(DEFAULT_MAX_SIZE);
+	}
+
+	/**
+	 * Create an interner holding up to given number of values.
+	 * 
+	 * @param maxSize the maximum number of distinct values held
+	 */
+	public StringInterner(int maxSize) {
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Return the held instance equal to the value, holding the value if none.
+	 * 
+	 * @param value the value, may be <code>null</code>
+	 * 
+	 * @return the held instance, or the value itself
+	 */
+	public String intern(String value) {
+		if (value == null) {
+			return null;
+		}
+
+		final String existing = this.values.get(value);
+		if (existing != null) {
+			return existing;
+		}
+
+		if (this.values.size() >= this.maxSize) {
+			return value;
+		}
+
+		final String raced = this.values.putIfAbsent(value, value);
+		return raced == null ? value : raced;
+	}
+
+	/**
+	 * Intern the author, author URL, license, license URL and tags of the
+	 * image, and trim its tag list to size.
+	 * 
+	 * @param image the {@link BurstImage} to update
+	 */
+	public void intern(BurstImage image) {
+		image.author = this.intern(image.author);
+		image.authorUrl = this.intern(image.authorUrl);
+		image.license = this.intern(image.license);
+		image.licenseUrl = this.intern(image.licenseUrl);
+
+		final List<String> tags = image.tags;
+		for (int index = 0; index < tags.size(); index++) {
+			tags.set(index, this.intern(tags.get(index)));
+		}
+
+		if (tags instanceof ArrayList) {
+			((ArrayList<String>) tags).trimToSize();
+		}
+	}
+
+	/**
+	 * Return the number of distinct values held.
+	 * 
+	 * @return the number of values
+	 */
+	public int size() {
+		return this.values.size();
+	}
+
+}
@@ -0,0 +1,420 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.IIOException;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+/**
+ * Generates derivatives of downloaded images, one per size in
+ * {@link BurstCrawlerOptions#thumbnailSizes}, to be used as the next stage of
+ * an {@link ImageDownloader} or an {@link ImageStore}. Each derivative fits
+ * its size along the longest edge; images are never scaled up.
+ * 
+ * Each image is decoded once, on a {@link ForkJoinPool} of
+ * {@link BurstCrawlerOptions#thumbnailWorkers} threads, one per processor by
+ * default. Large originals are subsampled while decoding, reading only every
+ * n-th pixel such that the image is still no smaller than the largest
+ * derivative, which bounds the memory held per image. Derivatives are then
+ * scaled from the largest to the smallest, each from the previous one. At most
+ * twice as many images as threads wait to be processed, after which the stage
+ * before waits.
+ * 
+ * Derivatives are written to a folder per size, named after the file of the
+ * image, and images whose derivatives all exist are skipped. Only
+ * <code>ImageIO</code> and <code>java.awt</code> image classes are used, which
+ * need no display and run in headless mode.
+ * 
+ * @author sangupta
+ *
+ */
+public class ThumbnailGenerator implements GenericConsumer<DownloadedImage>, Closeable {
+
+	/**
+	 * My private logger
+	 */
+	private static final Logger LOGGER = LoggerFactory.getLogger(ThumbnailGenerator.class);
+
+	/**
+	 * The folder to write derivatives to
+	 */
+	private final File folder;
+
+	/**
+	 * Derivative sizes, smallest first
+	 */
+	private final int[] sizes;
+
+	/**
+	 * Image format to write derivatives in
+	 */
+	private final String format;
+
+	/**
+	 * Runs decoding and scaling
+	 */
+	private final ForkJoinPool pool;
+
+	/**
+	 * Bounds the number of images waiting or being processed
+	 */
+	private final Semaphore slots;
+
+	/**
+	 * Set once the generator is closed
+	 */
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+
+	private final AtomicInteger generated = new AtomicInteger();
+
+	private final AtomicInteger skipped = new AtomicInteger();
+
+	/**
+	 * Reason of failure by image file path
+	 */
+	private final Map<String, String> failures = new LinkedHashMap<>();
+
+	/**
+	 * Create a generator writing into given folder.
+	 * 
+	 * @param folder  the folder to write derivatives to, created if needed
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to read settings from
+	 */
+	public ThumbnailGenerator(File folder, BurstCrawlerOptions options) {
+		if (folder == null) {
+			throw new IllegalArgumentException("Thumbnail folder cannot be null");
+		}
+
+		if (options.thumbnailSizes == null || options.thumbnailSizes.length == 0) {
+			throw new IllegalArgumentException("At least one thumbnail size is needed");
+		}
+
+		if (!ImageIO.getImageWritersByFormatName(options.thumbnailFormat).hasNext()) {
+			throw new IllegalArgumentException("No image writer for format: " + options.thumbnailFormat);
+		}
+
+		this.sizes = options.thumbnailSizes.clone();
+		Arrays.sort(this.sizes);
+		if (this.sizes[0] <= 0) {
+			throw new IllegalArgumentException("Thumbnail sizes must be positive");
+		}
+
+		for (int size : this.sizes) {
+			new File(folder, String.valueOf(size)).mkdirs();
+		}
+
+		this.folder = folder;
+		this.format = options.thumbnailFormat;
+
+		final int workers = options.thumbnailWorkers > 0 ? options.thumbnailWorkers : Runtime.getRuntime().availableProcessors();
+		this.slots = new Semaphore(2 * workers);
+		this.pool = new ForkJoinPool(workers, new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+				ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("burst-thumbnail-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+
+		}, null, false);
+	}
+
+	/**
+	 * Queue the image for processing, waiting while the queue is full.
+	 */
+	@Override
+	public boolean consume(final DownloadedImage image) {
+		if (this.closed.get()) {
+			return false;
+		}
+
+		try {
+			this.slots.acquire();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+
+		try {
+			this.pool.execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						process(image.file);
+					} finally {
+						slots.release();
+					}
+				}
+
+			});
+		} catch (RejectedExecutionException e) {
+			// closed while waiting for a slot
+			this.slots.release();
+			return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Wait for all queued images to be processed.
+	 */
+	@Override
+	public void close() throws IOException {
+		this.closed.set(true);
+		this.pool.shutdown();
+		try {
+			while (!this.pool.awaitTermination(1, TimeUnit.MINUTES)) {
+				LOGGER.info("Generating thumbnails: {}", this);
+			}
+		} catch (InterruptedException e) {
+			this.pool.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+
+		LOGGER.info("Generating thumbnails completed: {}", this);
+	}
+
+	/**
+	 * Return the file a derivative of an image is, or will be, written to.
+	 * 
+	 * @param image the image {@link File}
+	 * 
+	 * @param size  the derivative size
+	 * 
+	 * @return the {@link File}
+	 */
+	public File getFile(File image, int size) {
+		String name = image.getName();
+		int dot = name.lastIndexOf('.');
+		if (dot > 0) {
+			name = name.substring(0, dot);
+		}
+
+		return new File(new File(this.folder, String.valueOf(size)), name + "." + this.format);
+	}
+
+	/**
+	 * Return the number of images derivatives were generated for.
+	 * 
+	 * @return the number of images
+	 */
+	public int getGenerated() {
+		return this.generated.get();
+	}
+
+	/**
+	 * Return the number of images skipped as their derivatives existed.
+	 * 
+	 * @return the number of images
+	 */
+	public int getSkipped() {
+		return this.skipped.get();
+	}
+
+	/**
+	 * Return the images that could not be processed.
+	 * 
+	 * @return a copy of the reason of failure by image file path
+	 */
+	public Map<String, String> getFailures() {
+		synchronized (this.failures) {
+			return new LinkedHashMap<>(this.failures);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return "[generated=" + this.generated.get() + ", skipped=" + this.skipped.get() + ", failed=" + this.getFailures().size() + "]";
+	}
+
+	/**
+	 * Generate the derivatives of a single image.
+	 */
+	private void process(File file) {
+		if (this.exists(file)) {
+			this.skipped.incrementAndGet();
+			return;
+		}
+
+		try {
+			BufferedImage image = this.decode(file, this.sizes[this.sizes.length - 1]);
+			if (image == null) {
+				this.failed(file, "unsupported-format");
+				return;
+			}
+
+			for (int index = this.sizes.length - 1; index >= 0; index--) {
+				image = scale(image, this.sizes[index]);
+				this.write(image, this.getFile(file, this.sizes[index]));
+			}
+
+			this.generated.incrementAndGet();
+		} catch (IIOException e) {
+			LOGGER.debug("Unable to decode image: {}", file.getAbsolutePath(), e);
+			this.failed(file, "decode-error");
+		} catch (IOException e) {
+			LOGGER.error("Unable to generate thumbnails for image: " + file.getAbsolutePath(), e);
+			this.failed(file, e.getClass().getSimpleName());
+		} catch (RuntimeException e) {
+			LOGGER.error("Unable to generate thumbnails for image: " + file.getAbsolutePath(), e);
+			this.failed(file, e.getClass().getSimpleName());
+		}
+	}
+
+	private boolean exists(File file) {
+		for (int size : this.sizes) {
+			if (!this.getFile(file, size).exists()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Decode the image, subsampled such that its longest edge is no smaller
+	 * than the given size.
+	 * 
+	 * @return the decoded image, or <code>null</code> if no reader supports it
+	 */
+	private BufferedImage decode(File file, int size) throws IOException {
+		try (ImageInputStream stream = ImageIO.createImageInputStream(file)) {
+			if (stream == null) {
+				return null;
+			}
+
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(stream);
+			if (!readers.hasNext()) {
+				return null;
+			}
+
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(stream, true, true);
+				final int longest = Math.max(reader.getWidth(0), reader.getHeight(0));
+
+				final ImageReadParam param = reader.getDefaultReadParam();
+				final int subsampling = Math.max(1, longest / size);
+				if (subsampling > 1) {
+					param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+				}
+
+				return reader.read(0, param);
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Write a derivative to a temporary file, renamed once complete.
+	 */
+	private void write(BufferedImage image, File file) throws IOException {
+		final File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+		if (!ImageIO.write(image, this.format, temp)) {
+			throw new IOException("No image writer for format: " + this.format);
+		}
+
+		if (!temp.renameTo(file)) {
+			temp.delete();
+			throw new IOException("Unable to rename thumbnail to: " + file.getAbsolutePath());
+		}
+	}
+
+	private void failed(File file, String reason) {
+		synchronized (this.failures) {
+			this.failures.put(file.getAbsolutePath(), reason);
+		}
+	}
+
+	/**
+	 * Scale the image to fit the size along its longest edge, halving it first
+	 * while more than twice as large, so that bilinear scaling keeps detail.
+	 * Images that fit are returned as RGB, dropping any alpha channel.
+	 */
+	static BufferedImage scale(BufferedImage image, int size) {
+		final int longest = Math.max(image.getWidth(), image.getHeight());
+		final double ratio = longest <= size ? 1 : (double) size / longest;
+		final int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+		final int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+		BufferedImage current = image;
+		while (current.getWidth() / 2 >= width && current.getHeight() / 2 >= height) {
+			current = draw(current, current.getWidth() / 2, current.getHeight() / 2);
+		}
+
+		if (current.getWidth() == width && current.getHeight() == height && current.getType() == BufferedImage.TYPE_INT_RGB) {
+			return current;
+		}
+
+		return draw(current, width, height);
+	}
+
+	private static BufferedImage draw(BufferedImage image, int width, int height) {
+		final BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D graphics = scaled.createGraphics();
+		try {
+			graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			graphics.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			graphics.dispose();
+		}
+
+		return scaled;
+	}
+
+}
@@ -0,0 +1,196 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * {@link FetchBackend} over {@link HttpURLConnection}. Connections are kept
+ * alive and reused by the JDK between requests to the same host, as long as
+ * responses are read to the end or closed. TLS sessions are resumed on new
+ * connections to a host, saving a full handshake.
+ * 
+ * @author sangupta
+ *
+ */
+public class UrlConnectionFetchBackend implements FetchBackend {
+
+	/**
+	 * System property read by the JDK for the idle connections kept per host
+	 */
+	private static final String MAX_CONNECTIONS_PROPERTY = "http.maxConnections";
+
+	/**
+	 * Timeout to connect
+	 */
+	private final int connectTimeoutMillis;
+
+	/**
+	 * Timeout between reads
+	 */
+	private final int readTimeoutMillis;
+
+	/**
+	 * Indicates if gzip encoding is requested
+	 */
+	private final boolean compression;
+
+	/**
+	 * Idle connections to keep per host, applied on the first fetch
+	 */
+	private final int maxConnectionsPerHost;
+
+	/**
+	 * Indicates if {@link #maxConnectionsPerHost} has been applied
+	 */
+	private volatile boolean maxConnectionsApplied;
+
+	/**
+	 * Create a backend with a connect timeout of 30 seconds and a read timeout of
+	 * 60 seconds.
+	 */
+	public UrlConnectionFetchBackend() {
+		this(30 * 1000, 60 * 1000);
+	}
+
+	/**
+	 * Create a backend configured by the direct connection settings of given
+	 * {@link BurstCrawlerOptions}. The JVM-wide number of idle connections per
+	 * host is set only when this backend makes its first request.
+	 * 
+	 * @param options the {@link BurstCrawlerOptions} to read settings from
+	 */
+	public UrlConnectionFetchBackend(BurstCrawlerOptions options) {
+		this(options.connectTimeoutMillis, options.readTimeoutMillis, options.requestCompression, options.maxConnectionsPerHost);
+	}
+
+	/**
+	 * Create a backend with given timeouts.
+	 * 
+	 * @param connectTimeoutMillis timeout to connect
+	 * 
+	 * @param readTimeoutMillis    timeout between reads
+	 */
+	public UrlConnectionFetchBackend(int connectTimeoutMillis, int readTimeoutMillis) {
+		this(connectTimeoutMillis, readTimeoutMillis, true);
+	}
+
+	/**
+	 * Create a backend with given timeouts.
+	 * 
+	 * @param connectTimeoutMillis timeout to connect
+	 * 
+	 * @param readTimeoutMillis    timeout between reads
+	 * 
+	 * @param compression          whether to request gzip encoding
+	 */
+	public UrlConnectionFetchBackend(int connectTimeoutMillis, int readTimeoutMillis, boolean compression) {
+		this(connectTimeoutMillis, readTimeoutMillis, compression, 0);
+	}
+
+	/**
+	 * Create a backend with given timeouts, setting the idle connections per
+	 * host on its first request.
+	 */
+	private UrlConnectionFetchBackend(int connectTimeoutMillis, int readTimeoutMillis, boolean compression, int maxConnectionsPerHost) {
+		this.connectTimeoutMillis = connectTimeoutMillis;
+		this.readTimeoutMillis = readTimeoutMillis;
+		this.compression = compression;
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Set the number of idle connections the JDK keeps alive per host, unless
+	 * already set via the <code>http.maxConnections</code> system property. The
+	 * setting is JVM-wide, and is read when the first connection is made.
+	 * 
+	 * @param connections the number of connections, ignored if not positive
+	 */
+	public static void setMaxConnectionsPerHost(int connections) {
+		if (connections <= 0) {
+			return;
+		}
+
+		synchronized (UrlConnectionFetchBackend.class) {
+			if (System.getProperty(MAX_CONNECTIONS_PROPERTY) == null) {
+				System.setProperty(MAX_CONNECTIONS_PROPERTY, Integer.toString(connections));
+			}
+		}
+	}
+
+	@Override
+	public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+		if (!this.maxConnectionsApplied) {
+			setMaxConnectionsPerHost(this.maxConnectionsPerHost);
+			this.maxConnectionsApplied = true;
+		}
+
+		final HttpURLConnection connection = this.openConnection(url);
+		for (Map.Entry<String, String> header : headers.entrySet()) {
+			connection.setRequestProperty(header.getKey(), header.getValue());
+		}
+
+		final int code = connection.getResponseCode();
+
+		final Map<String, String> responseHeaders = new HashMap<>();
+		for (Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+			// the status line has no name
+			if (header.getKey() != null && !header.getValue().isEmpty()) {
+				responseHeaders.put(header.getKey().toLowerCase(Locale.ENGLISH), header.getValue().get(0));
+			}
+		}
+
+		final InputStream body = code >= 400 ? connection.getErrorStream() : connection.getInputStream();
+		return new FetchResponse(code, responseHeaders, body, connection);
+	}
+
+	/**
+	 * Open a connection to the given URL. Unless disabled, gzip encoding is
+	 * requested from the server, so the body may need to be decompressed.
+	 * Override to customize how connections are made.
+	 * 
+	 * @param url the URL to connect to
+	 * 
+	 * @return the {@link HttpURLConnection}, not yet connected
+	 * 
+	 * @throws IOException if the URL cannot be opened
+	 */
+	protected HttpURLConnection openConnection(String url) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+		connection.setConnectTimeout(this.connectTimeoutMillis);
+		connection.setReadTimeout(this.readTimeoutMillis);
+		if (this.compression) {
+			connection.setRequestProperty("Accept-Encoding", "gzip");
+		}
+
+		return connection;
+	}
+
+}
@@ -0,0 +1,60 @@
+/**
+ *
+ * shopify-burst-crawler: Java Client for burst.shopify.com API
+ * Copyright (c) 2017-2019, Sandeep Gupta
+ * 
+ * https://sangupta.com/projects/shopify-burst-crawler
+ *  
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+
+
+package com.sangupta.shopify.burst.crawler;
+
+/**
+ * A set of URLs that only answers membership, used to track URLs that have
+ * been seen or crawled. Implementations need not hold the URLs themselves, and
+ * may report false positives at a very low, documented rate.
+ * 
+ * @author sangupta
+ *
+ */
+public interface UrlSeenSet {
+
+	/**
+	 * Add the URL to the set.
+	 * 
+	 * @param url the URL to add
+	 * 
+	 * @return <code>true</code> if the URL was not already present
+	 */
+	public boolean add(String url);
+
+	/**
+	 * Check if the URL is present in the set.
+	 * 
+	 * @param url the URL to check
+	 * 
+	 * @return <code>true</code> if the URL has been added
+	 */
+	public boolean contains(String url);
+
+	/**
+	 * Return the number of URLs added to the set.
+	 * 
+	 * @return the number of URLs
+	 */
+	public int size();
+
+}
@@ -0,0 +1,203 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestAdaptiveRateLimiter {
+    
+    @Test
+    public void testBurstThenRate() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(options().setRatePerSecond(10).setRateLimitBurst(3), null);
+        
+        long start = System.nanoTime();
+        for (int index = 0; index < 3; index++) {
+            Assert.assertTrue(limiter.acquire());
+        }
+        Assert.assertTrue(elapsedMillis(start) < 50);
+        
+        // beyond the burst requests are admitted at 10 per second
+        Assert.assertTrue(limiter.acquire());
+        Assert.assertTrue(limiter.acquire());
+        Assert.assertTrue(elapsedMillis(start) >= 150);
+    }
+    
+    @Test
+    public void testAdaptsToResponses() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(options().setRatePerSecond(2).setMaxRatePerSecond(2.5), null);
+        
+        // healthy responses speed up, up to the maximum
+        for (int index = 0; index < 20; index++) {
+            limiter.onResponse(200, TimeUnit.MILLISECONDS.toNanos(10), 0);
+        }
+        Assert.assertEquals(2.5, limiter.getRatePerSecond(), 0.001);
+        
+        limiter.onResponse(429, TimeUnit.MILLISECONDS.toNanos(10), 0);
+        Assert.assertEquals(1.25, limiter.getRatePerSecond(), 0.001);
+        
+        limiter.onFailure();
+        Assert.assertEquals(1.0, limiter.getRatePerSecond(), 0.001);
+        
+        // slow responses back off, down to the minimum
+        for (int index = 0; index < 100; index++) {
+            limiter.onResponse(200, TimeUnit.SECONDS.toNanos(5), 0);
+        }
+        Assert.assertEquals(0.1, limiter.getRatePerSecond(), 0.001);
+    }
+    
+    @Test
+    public void testRetryAfterPauses() {
+        AdaptiveRateLimiter limiter = new AdaptiveRateLimiter(options().setRatePerSecond(10).setMaxRatePerSecond(10), null);
+        limiter.onResponse(503, 0, 300);
+        
+        long start = System.nanoTime();
+        Assert.assertTrue(limiter.acquire());
+        Assert.assertTrue(elapsedMillis(start) >= 250);
+    }
+    
+    @Test
+    public void testParseRetryAfter() {
+        Assert.assertEquals(0, AdaptiveRateLimiter.parseRetryAfter(null));
+        Assert.assertEquals(0, AdaptiveRateLimiter.parseRetryAfter("soon"));
+        Assert.assertEquals(120000, AdaptiveRateLimiter.parseRetryAfter("120"));
+        Assert.assertEquals(0, AdaptiveRateLimiter.parseRetryAfter("Wed, 21 Oct 2015 07:28:00 GMT"));
+    }
+    
+    @Test
+    public void testCrawlerRetriesWhenOverloaded() {
+        final AtomicInteger requests = new AtomicInteger();
+        BurstCrawler crawler = new BurstCrawler(options().setRatePerSecond(100).setMaxRatePerSecond(100)) {
+            
+            @Override
+            protected HttpURLConnection openConnection(String url) throws IOException {
+                if (requests.incrementAndGet() == 1) {
+                    return new FakeConnection(url, 429, "0", "busy");
+                }
+                
+                return new FakeConnection(url, 200, null, "<html></html>");
+            }
+            
+        };
+        
+        Assert.assertEquals("<html></html>", crawler.getHtml("https://burst.shopify.com/photos"));
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(50, crawler.getRateLimiter().getRatePerSecond(), 0.001);
+        Assert.assertEquals(1, crawler.getMetrics().getErrors().get("http-429").longValue());
+    }
+    
+    @Test
+    public void testBackendRetriesWhenOverloaded() {
+        final AtomicInteger requests = new AtomicInteger();
+        FetchBackend backend = new FetchBackend() {
+            
+            @Override
+            public FetchResponse fetch(String url, Map<String, String> headers) {
+                if (requests.incrementAndGet() == 1) {
+                    return response(429, Collections.singletonMap("retry-after", "0"), "busy");
+                }
+                
+                return response(200, null, "<html></html>");
+            }
+            
+        };
+        
+        BurstCrawler crawler = new BurstCrawler(options().setRatePerSecond(100).setMaxRatePerSecond(100).setFetchBackend(backend));
+        
+        Assert.assertEquals("<html></html>", crawler.getHtml("https://burst.shopify.com/photos"));
+        Assert.assertEquals(2, requests.get());
+        Assert.assertEquals(50, crawler.getRateLimiter().getRatePerSecond(), 0.001);
+        Assert.assertEquals(1, crawler.getMetrics().getErrors().get("http-429").longValue());
+    }
+    
+    private static BurstCrawlerOptions options() {
+        return new BurstCrawlerOptions().setAdaptiveRateLimit(true);
+    }
+    
+    private static long elapsedMillis(long start) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+    
+    private static FetchResponse response(int code, Map<String, String> headers, String body) {
+        return new FetchResponse(code, headers, new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Connection returning a canned response
+     */
+    private static class FakeConnection extends HttpURLConnection {
+        
+        private final int code;
+        
+        private final String retryAfter;
+        
+        private final byte[] body;
+        
+        FakeConnection(String url, int code, String retryAfter, String body) throws IOException {
+            super(new URL(url));
+            this.code = code;
+            this.retryAfter = retryAfter;
+            this.body = body.getBytes(StandardCharsets.UTF_8);
+        }
+        
+        @Override
+        public int getResponseCode() {
+            return this.code;
+        }
+        
+        @Override
+        public String getHeaderField(String name) {
+            return "Retry-After".equals(name) ? this.retryAfter : null;
+        }
+        
+        @Override
+        public Map<String, List<String>> getHeaderFields() {
+            if (this.retryAfter == null) {
+                return Collections.emptyMap();
+            }
+            
+            return Collections.singletonMap("Retry-After", Collections.singletonList(this.retryAfter));
+        }
+        
+        @Override
+        public InputStream getInputStream() throws IOException {
+            if (this.code >= 400) {
+                throw new IOException("Server returned " + this.code);
+            }
+            
+            return new ByteArrayInputStream(this.body);
+        }
+        
+        @Override
+        public InputStream getErrorStream() {
+            return this.code >= 400 ? new ByteArrayInputStream(this.body) : null;
+        }
+        
+        @Override
+        public void connect() {
+            // nothing to connect to
+        }
+        
+        @Override
+        public void disconnect() {
+            // nothing to disconnect
+        }
+        
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+        
+    }
+    
+}
@@ -0,0 +1,111 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.google.gson.Gson;
+
+public class TestBurstCatalog {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testRoundTrip() throws IOException {
+        List<BurstImage> images = images(100);
+        
+        // nulls and non-ascii text survive
+        images.get(7).url = null;
+        images.get(7).author = null;
+        images.get(8).homeUrl = null;
+        images.get(9).title = "Café au lait";
+        
+        File file = this.folder.newFile("catalog.bin");
+        try (BurstCatalogWriter writer = new BurstCatalogWriter(file)) {
+            for (BurstImage image : images) {
+                writer.write(image);
+            }
+        }
+        
+        BurstCatalogReader reader = new BurstCatalogReader(file);
+        Assert.assertEquals(100, reader.size());
+        
+        List<BurstImage> read = reader.readAll();
+        for (int index = 0; index < images.size(); index++) {
+            assertSame(images.get(index), read.get(index));
+        }
+        
+        // random access across restart points
+        assertSame(images.get(37), reader.get(37));
+        assertSame(images.get(99), reader.get(99));
+        
+        // cursor decodes single fields
+        BurstCatalogReader.Cursor cursor = reader.cursor();
+        Assert.assertTrue(cursor.next());
+        Assert.assertTrue(cursor.next());
+        Assert.assertEquals("https://burst.shopify.com/photos/photo-1", cursor.getHomeUrl());
+        Assert.assertEquals(Arrays.asList("tag-1", "nature"), cursor.getTags());
+        Assert.assertEquals("author-1", cursor.getAuthor());
+    }
+    
+    @Test
+    public void testSmallerThanJson() throws IOException {
+        List<BurstImage> images = images(1000);
+        
+        File file = this.folder.newFile("catalog.bin");
+        BurstCatalogWriter writer = new BurstCatalogWriter(file);
+        for (BurstImage image : images) {
+            Assert.assertTrue(writer.consume(image));
+        }
+        writer.close();
+        
+        int json = new Gson().toJson(images).length();
+        Assert.assertTrue(file.length() * 3 < json);
+    }
+    
+    @Test(expected = IOException.class)
+    public void testRejectsOtherFiles() throws IOException {
+        new BurstCatalogReader(this.folder.newFile("empty.bin"));
+    }
+    
+    private static List<BurstImage> images(int count) {
+        List<BurstImage> images = new ArrayList<>();
+        for (int index = 0; index < count; index++) {
+            BurstImage image = new BurstImage();
+            image.homeUrl = "https://burst.shopify.com/photos/photo-" + index;
+            image.url = image.homeUrl + "/download";
+            image.title = "Photo " + index;
+            image.description = "A photo numbered " + index;
+            image.author = "author-" + (index % 10);
+            image.authorUrl = "https://burst.shopify.com/@author-" + (index % 10);
+            image.license = "Shopify Burst License";
+            image.licenseUrl = "https://burst.shopify.com/licenses/shopify-some-rights-reserved";
+            image.tags.add("tag-" + (index % 20));
+            image.tags.add("nature");
+            images.add(image);
+        }
+        
+        return images;
+    }
+    
+    private static void assertSame(BurstImage expected, BurstImage actual) {
+        Assert.assertEquals(expected.homeUrl, actual.homeUrl);
+        Assert.assertEquals(expected.url, actual.url);
+        Assert.assertEquals(expected.title, actual.title);
+        Assert.assertEquals(expected.description, actual.description);
+        Assert.assertEquals(expected.author, actual.author);
+        Assert.assertEquals(expected.authorUrl, actual.authorUrl);
+        Assert.assertEquals(expected.license, actual.license);
+        Assert.assertEquals(expected.licenseUrl, actual.licenseUrl);
+        Assert.assertEquals(expected.tags, actual.tags);
+    }
+    
+}
@@ -1,7 +1,12 @@
 package com.sangupta.shopify.burst.crawler;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import org.junit.Assert;
 import org.junit.Test;
@@ -37,5 +42,93 @@ public class TestBurstCrawler {
         Assert.assertNotNull(image.tags);
         Assert.assertTrue(image.tags.size() > 0);        
     }
+    
+    @Test
+    public void testLastPageIsCrawled() throws IOException {
+        List<String> pages = Collections.synchronizedList(new ArrayList<String>());
+        BurstCrawler crawler = newCrawler(new BurstCrawlerOptions().setDelayBetweenPagesMillis(0), 3, pages);
+        
+        Assert.assertEquals(150, crawler.crawl().size());
+        Assert.assertEquals(3, pages.size());
+    }
+    
+    @Test
+    public void testPipelinedCrawl() throws IOException {
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setPipelined(true).setNumListingWorkers(2).setNumWorkers(4)
+                .setDelayBetweenPagesMillis(0).setDelayBetweenImagesMillis(0).setEndPage(5);
+        
+        List<String> pages = Collections.synchronizedList(new ArrayList<String>());
+        BurstCrawler crawler = newCrawler(options, 642, pages);
+        
+        Assert.assertEquals(250, crawler.crawl().size());
+        Assert.assertEquals(5, pages.size());
+        Assert.assertEquals(5, new HashSet<>(pages).size());
+    }
+    
+    @Test
+    public void testPipelinedCrawlStopsAtMaxImages() throws IOException {
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setPipelined(true).setNumWorkers(4)
+                .setDelayBetweenPagesMillis(0).setDelayBetweenImagesMillis(0).setMaxImages(7);
+        
+        BurstCrawler crawler = newCrawler(options, 642, Collections.synchronizedList(new ArrayList<String>()));
+        Assert.assertEquals(7, crawler.crawl().size());
+    }
+    
+    @Test
+    public void testPopulateImageDataResumes() {
+        final Set<String> broken = Collections.synchronizedSet(new HashSet<String>(Arrays.asList("https://burst.shopify.com/photos/photo-3")));
+        BurstCrawler crawler = new BurstCrawler(new BurstCrawlerOptions().setNumWorkers(4).setDelayBetweenImagesMillis(0)) {
+            
+            @Override
+            protected String getHtml(String url) {
+                if (broken.contains(url)) {
+                    return null;
+                }
+                
+                return "<html><body><main><h1 class='heading--2'>" + url + "</h1></main></body></html>";
+            }
+        };
+        
+        List<BurstImage> images = new ArrayList<>();
+        for (int index = 0; index < 10; index++) {
+            BurstImage image = new BurstImage();
+            image.homeUrl = "https://burst.shopify.com/photos/photo-" + index;
+            images.add(image);
+        }
+        
+        UrlSeenSet enriched = new FingerprintUrlSeenSet();
+        EnrichmentReport report = crawler.populateImageData(images, enriched);
+        Assert.assertEquals(9, report.getSucceeded().size());
+        Assert.assertEquals("fetch-failed", report.getFailures().get("https://burst.shopify.com/photos/photo-3"));
+        Assert.assertEquals("https://burst.shopify.com/photos/photo-5", images.get(5).title);
+        
+        // only the failed image is fetched again
+        broken.clear();
+        report = crawler.populateImageData(images, enriched);
+        Assert.assertEquals(9, report.getSkipped());
+        Assert.assertEquals(1, report.getSucceeded().size());
+        Assert.assertTrue(report.getFailures().isEmpty());
+    }
+    
+    /**
+     * Create a crawler serving the listing fixture for every page, with given last
+     * page, and minimal photo pages. Fetched listing URLs are added to given list.
+     */
+    static BurstCrawler newCrawler(BurstCrawlerOptions options, int lastPage, final List<String> pages) throws IOException {
+        final String listing = TestBurstPageExtractor.readFixture("fixtures/listing-page.html").replace("page=642", "page=" + lastPage);
+        
+        BurstCrawler crawler = new BurstCrawler(options) {
+            
+            @Override
+            protected String getHtml(String url) {
+                pages.add(url);
+                return listing;
+            }
+        };
+        
+        crawler.setHttpService(new TestBurstSitemapCrawler.FakeSitemapHttpService());
+        return crawler;
+    }
+
 
 }
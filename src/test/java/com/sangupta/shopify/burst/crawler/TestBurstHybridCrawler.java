@@ -0,0 +1,194 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestBurstHybridCrawler {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDeltaCrawl() {
+        FakeLatestHttpService httpService = new FakeLatestHttpService();
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenPagesMillis(0).setDelayBetweenImagesMillis(0)
+                .setCrawlStateFile(new File(this.folder.getRoot(), "state.log"));
+
+        // never swept, so all sitemaps are crawled
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS, newCrawler(options, httpService).crawl().size());
+        Assert.assertEquals(0, httpService.listingFetches.get());
+
+        // new photos only, from the first latest page
+        httpService.addPhotos(3);
+        httpService.sitemapFetches.set(0);
+        List<BurstImage> images = newCrawler(options, httpService).crawl();
+        Assert.assertEquals(3, images.size());
+        Assert.assertEquals("https://burst.shopify.com/photos/new-2", images.get(0).homeUrl);
+        Assert.assertEquals(1, httpService.listingFetches.get());
+        Assert.assertEquals(0, httpService.sitemapFetches.get());
+
+        // nothing new
+        Assert.assertEquals(0, newCrawler(options, httpService).crawl().size());
+
+        // a due sweep reads all sitemaps, reporting no unchanged photo
+        options.setSitemapSweepIntervalMillis(0);
+        Assert.assertEquals(0, newCrawler(options, httpService).crawl().size());
+        Assert.assertEquals(2, httpService.sitemapFetches.get());
+    }
+
+    @Test
+    public void testFallsBackToSweep() {
+        FakeLatestHttpService httpService = new FakeLatestHttpService();
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenPagesMillis(0).setDelayBetweenImagesMillis(0)
+                .setCrawlStateFile(new File(this.folder.getRoot(), "state.log")).setMaxDeltaPages(1);
+
+        newCrawler(options, httpService).crawl();
+
+        // more new photos than the pages walked hold
+        httpService.addPhotos(12);
+        httpService.sitemapFetches.set(0);
+        List<BurstImage> images = newCrawler(options, httpService).crawl();
+        Assert.assertEquals(12, images.size());
+        Assert.assertEquals(2, httpService.sitemapFetches.get());
+    }
+
+    @Test
+    public void testListingFailureEndsCrawl() {
+        FakeLatestHttpService httpService = new FakeLatestHttpService();
+        final AtomicInteger reports = new AtomicInteger();
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenPagesMillis(0).setDelayBetweenImagesMillis(0)
+                .setCrawlStateFile(new File(this.folder.getRoot(), "state.log")).setMetricsReportIntervalMillis(0)
+                .setMetricsReporter(new MetricsReporter() {
+
+                    @Override
+                    public void report(CrawlMetrics metrics) {
+                        reports.incrementAndGet();
+                    }
+
+                });
+
+        // a sweep following the delta pass is still one crawl
+        newCrawler(options, httpService).crawl();
+        Assert.assertEquals(1, reports.get());
+
+        // no sweep when the listing could not be fetched
+        httpService.addPhotos(3);
+        httpService.failListing = true;
+        httpService.sitemapFetches.set(0);
+        Assert.assertEquals(0, newCrawler(options, httpService).crawl().size());
+        Assert.assertEquals(0, httpService.sitemapFetches.get());
+
+        httpService.failListing = false;
+        Assert.assertEquals(3, newCrawler(options, httpService).crawl().size());
+    }
+
+    @Test
+    public void testDeltaCrawlWithoutState() {
+        FakeLatestHttpService httpService = new FakeLatestHttpService();
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenPagesMillis(0).setDelayBetweenImagesMillis(0);
+        BurstHybridCrawler crawler = newCrawler(options, httpService);
+
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS, crawler.crawl().size());
+
+        httpService.addPhotos(3);
+        Assert.assertEquals(3, crawler.crawl().size());
+        Assert.assertEquals(0, crawler.crawl().size());
+    }
+
+    private static BurstHybridCrawler newCrawler(BurstCrawlerOptions options, final FakeLatestHttpService httpService) {
+        BurstHybridCrawler crawler = new BurstHybridCrawler(options) {
+
+            @Override
+            protected InputStream openStream(String url) throws IOException {
+                String content = httpService.getTextResponse(url);
+                if (content == null) {
+                    return null;
+                }
+
+                return new ByteArrayInputStream(content.getBytes("UTF-8"));
+            }
+        };
+
+        crawler.httpService = httpService;
+        return crawler;
+    }
+
+    /**
+     * Serves the sitemap photos, along with photos added later, and the latest
+     * photos listing with the newest first.
+     */
+    static class FakeLatestHttpService extends TestBurstSitemapCrawler.FakeSitemapHttpService {
+
+        final List<String> added = new ArrayList<>();
+
+        final AtomicInteger listingFetches = new AtomicInteger();
+
+        final AtomicInteger sitemapFetches = new AtomicInteger();
+
+        volatile boolean failListing;
+
+        void addPhotos(int count) {
+            for (int index = 0; index < count; index++) {
+                this.added.add("new-" + index);
+            }
+        }
+
+        @Override
+        public String getTextResponse(String uri) {
+            if (uri.startsWith("https://burst.shopify.com/photos?sort=latest")) {
+                this.listingFetches.incrementAndGet();
+                if (this.failListing) {
+                    return null;
+                }
+
+                return this.listing(uri.contains("&page=") ? Integer.parseInt(uri.substring(uri.indexOf("&page=") + 6)) : 1);
+            }
+
+            if (uri.endsWith(".xml")) {
+                this.sitemapFetches.incrementAndGet();
+            }
+
+            String content = super.getTextResponse(uri);
+            if (content != null && uri.endsWith("sitemap-photos.xml")) {
+                StringBuilder builder = new StringBuilder();
+                for (String name : this.added) {
+                    builder.append("<url><loc>https://burst.shopify.com/photos/").append(name).append("</loc></url>");
+                }
+
+                content = content.replace("</urlset>", builder + "</urlset>");
+            }
+
+            return content;
+        }
+
+        private String listing(int page) {
+            List<String> latest = new ArrayList<>();
+            for (int index = this.added.size() - 1; index >= 0; index--) {
+                latest.add(this.added.get(index));
+            }
+
+            for (int index = TestBurstSitemapCrawler.NUM_PHOTOS - 1; index >= 0; index--) {
+                latest.add("photo-" + index);
+            }
+
+            StringBuilder builder = new StringBuilder("<html><body><main>");
+            for (int index = (page - 1) * 10; index < Math.min(page * 10, latest.size()); index++) {
+                builder.append("<a class=\"photo-tile__image-wrapper\" href=\"/photos/").append(latest.get(index)).append("\"></a>");
+            }
+
+            return builder.append("</main></body></html>").toString();
+        }
+
+    }
+
+}
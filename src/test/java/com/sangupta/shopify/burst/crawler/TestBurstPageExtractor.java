@@ -0,0 +1,92 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.sangupta.jerry.io.AdvancedStringReader;
+import com.sangupta.jerry.util.GsonUtils;
+
+public class TestBurstPageExtractor {
+    
+    private static final String PAGE_URL = "https://burst.shopify.com/photos/pouring-hot-coffee";
+    
+    @Test
+    public void testExtract() throws IOException {
+        BurstImage image = new BurstImage();
+        image.homeUrl = PAGE_URL;
+        
+        BurstJsonLinkedData data = BurstPageExtractor.extract(image, readFixture("fixtures/photo-page.html"));
+        
+        Assert.assertNotNull(data);
+        Assert.assertEquals("Pouring Hot Coffee", data.name);
+        Assert.assertEquals("Matthew Henry", data.author);
+        Assert.assertEquals("https://burst.shopify.com/licenses/shopify-some-rights-reserved", data.license);
+        Assert.assertTrue(data.contentUrl.startsWith("https://burst.shopifycdn.com/photos/pouring-hot-coffee.jpg?"));
+        
+        Assert.assertEquals("https://burst.shopify.com/@matthew_henry", image.authorUrl);
+        Assert.assertEquals("Matthew Henry", image.author);
+        Assert.assertEquals("Shopify Some Rights Reserved", image.license);
+        Assert.assertEquals(5, image.tags.size());
+        Assert.assertEquals("coffee", image.tags.get(0));
+        Assert.assertEquals("Food & Drink", image.tags.get(4));
+    }
+    
+    @Test
+    public void testSameAsDocumentParse() throws IOException {
+        final String html = readFixture("fixtures/photo-page.html");
+        final BurstSitemapCrawler crawler = new BurstSitemapCrawler();
+        
+        // existing multi-pass path
+        BurstImage expected = new BurstImage();
+        expected.homeUrl = PAGE_URL;
+        crawler.populateFromHTML(expected, html);
+        String json = new AdvancedStringReader(html).readBetween("<script type=\"application/ld+json\">", "</script>");
+        crawler.populateFromLinkedData(expected, GsonUtils.getGson().fromJson(json, BurstJsonLinkedData.class));
+        
+        // single pass
+        BurstImage actual = new BurstImage();
+        actual.homeUrl = PAGE_URL;
+        crawler.populateFromLinkedData(actual, BurstPageExtractor.extract(actual, html));
+        
+        Assert.assertEquals(expected.url, actual.url);
+        Assert.assertEquals(expected.title, actual.title);
+        Assert.assertEquals(expected.description, actual.description);
+        Assert.assertEquals(expected.author, actual.author);
+        Assert.assertEquals(expected.authorUrl, actual.authorUrl);
+        Assert.assertEquals(expected.license, actual.license);
+        Assert.assertEquals(expected.licenseUrl, actual.licenseUrl);
+        Assert.assertEquals(expected.tags, actual.tags);
+    }
+    
+    @Test
+    public void testNoMetadata() {
+        BurstImage image = new BurstImage();
+        image.homeUrl = PAGE_URL;
+        
+        Assert.assertNull(BurstPageExtractor.extract(image, "<html><body><main><p>nothing</p></main></body></html>"));
+        Assert.assertNull(image.author);
+        Assert.assertTrue(image.tags.isEmpty());
+    }
+    
+    static String readFixture(String name) throws IOException {
+        InputStream stream = TestBurstPageExtractor.class.getClassLoader().getResourceAsStream(name);
+        Assert.assertNotNull("Missing fixture: " + name, stream);
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            
+            return out.toString("UTF-8");
+        } finally {
+            stream.close();
+        }
+    }
+
+}
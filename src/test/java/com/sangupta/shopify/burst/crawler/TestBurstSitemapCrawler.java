@@ -0,0 +1,163 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+import com.sangupta.jerry.http.service.impl.DefaultHttpServiceImpl;
+
+public class TestBurstSitemapCrawler {
+    
+    static final int NUM_PHOTOS = 50;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testConcurrentCrawl() {
+        BurstSitemapCrawler crawler = newCrawler(new BurstCrawlerOptions().setNumWorkers(4).setDelayBetweenImagesMillis(0));
+        
+        List<BurstImage> images = crawler.crawl();
+        Assert.assertEquals(NUM_PHOTOS, images.size());
+    }
+    
+    @Test
+    public void testConcurrentCrawlStopsOnCollector() {
+        BurstSitemapCrawler crawler = newCrawler(new BurstCrawlerOptions().setNumWorkers(4).setWorkQueueSize(5).setDelayBetweenImagesMillis(0));
+        
+        final List<BurstImage> images = Collections.synchronizedList(new ArrayList<BurstImage>());
+        crawler.crawl(new GenericConsumer<BurstImage>() {
+            
+            @Override
+            public boolean consume(BurstImage image) {
+                images.add(image);
+                return images.size() < 5;
+            }
+        });
+        
+        Assert.assertEquals(5, images.size());
+    }
+    
+    @Test
+    public void testCrawlThroughFetchBackend() {
+        final FakeSitemapHttpService httpService = new FakeSitemapHttpService();
+        final AtomicInteger fetches = new AtomicInteger();
+        FetchBackend backend = new FetchBackend() {
+            
+            @Override
+            public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+                fetches.incrementAndGet();
+                String content = httpService.getTextResponse(url);
+                if (content == null) {
+                    return new FetchResponse(404, null, null);
+                }
+                
+                return new FetchResponse(200, null, new ByteArrayInputStream(content.getBytes("UTF-8")));
+            }
+            
+        };
+        
+        BurstSitemapCrawler crawler = new BurstSitemapCrawler(new BurstCrawlerOptions().setNumWorkers(4).setDelayBetweenImagesMillis(0).setFetchBackend(backend));
+        
+        List<BurstImage> images = crawler.crawl();
+        Assert.assertEquals(NUM_PHOTOS, images.size());
+        
+        // both sitemaps and every photo page
+        Assert.assertEquals(NUM_PHOTOS + 2, fetches.get());
+    }
+    
+    @Test
+    public void testImageLostByCollectorIsCrawledAgain() throws IOException {
+        File stateFile = this.folder.newFile("state.log");
+        stateFile.delete();
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenImagesMillis(0).setCrawlStateFile(stateFile);
+        
+        final List<BurstImage> images = new ArrayList<>();
+        try {
+            newCrawler(options).crawl(new GenericConsumer<BurstImage>() {
+                
+                @Override
+                public boolean consume(BurstImage image) {
+                    if (images.size() == 2) {
+                        throw new IllegalStateException("collector failed");
+                    }
+                    
+                    images.add(image);
+                    return true;
+                }
+            });
+            Assert.fail("collector failure not thrown");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        
+        // the photo the collector failed on is not recorded as crawled
+        List<BurstImage> remaining = newCrawler(options).crawl();
+        Assert.assertEquals(NUM_PHOTOS - 2, remaining.size());
+        Assert.assertEquals("https://burst.shopify.com/photos/photo-2", remaining.get(0).homeUrl);
+    }
+    
+    /**
+     * Create a crawler that reads sitemaps and photo pages from {@link FakeSitemapHttpService}.
+     */
+    static BurstSitemapCrawler newCrawler(BurstCrawlerOptions options) {
+        final FakeSitemapHttpService httpService = new FakeSitemapHttpService();
+        BurstSitemapCrawler crawler = new BurstSitemapCrawler(options) {
+            
+            @Override
+            protected InputStream openStream(String url) throws IOException {
+                String content = httpService.getTextResponse(url);
+                if (content == null) {
+                    return null;
+                }
+                
+                return new ByteArrayInputStream(content.getBytes("UTF-8"));
+            }
+        };
+        
+        crawler.httpService = httpService;
+        return crawler;
+    }
+    
+    /**
+     * Serves a main sitemap, one child sitemap and minimal photo pages.
+     */
+    static class FakeSitemapHttpService extends DefaultHttpServiceImpl {
+        
+        @Override
+        public String getTextResponse(String uri) {
+            if ("https://burst.shopify.com/sitemap.xml".equals(uri)) {
+                return "<sitemapindex><sitemap><loc>https://burst.shopify.com/sitemap-photos.xml</loc></sitemap></sitemapindex>";
+            }
+            
+            if ("https://burst.shopify.com/sitemap-photos.xml".equals(uri)) {
+                StringBuilder builder = new StringBuilder("<urlset>");
+                for (int index = 0; index < NUM_PHOTOS; index++) {
+                    builder.append("<url><loc>https://burst.shopify.com/photos/photo-").append(index).append("</loc></url>");
+                }
+                
+                return builder.append("</urlset>").toString();
+            }
+            
+            if (uri.startsWith("https://burst.shopify.com/photos/")) {
+                return "<html><body><main></main></body></html>";
+            }
+            
+            return null;
+        }
+        
+    }
+
+}
@@ -0,0 +1,167 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+public class TestCrawlCheckpoint {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testSitemapProgress() {
+        SitemapProgress progress = new SitemapProgress(2);
+        Assert.assertEquals(2, progress.getSitemapIndex());
+        Assert.assertEquals(0, progress.getSitemapOffset());
+
+        progress.startSitemap(2);
+        long first = progress.issue();
+        long second = progress.issue();
+        progress.startSitemap(3);
+        long third = progress.issue();
+
+        // done out of order, the position stays at the first pending entry
+        progress.complete(second);
+        progress.complete(third);
+        Assert.assertEquals(2, progress.getSitemapIndex());
+        Assert.assertEquals(0, progress.getSitemapOffset());
+
+        progress.complete(first);
+        Assert.assertEquals(3, progress.getSitemapIndex());
+        Assert.assertEquals(1, progress.getSitemapOffset());
+    }
+
+    @Test
+    public void testSitemapCrawlResumes() {
+        File file = new File(this.folder.getRoot(), "checkpoint.json");
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenImagesMillis(0).setCheckpointFile(file).setCheckpointIntervalMillis(0);
+
+        List<BurstImage> first = crawlUntil(TestBurstSitemapCrawler.newCrawler(options), 20);
+        Assert.assertEquals(20, first.size());
+
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(file);
+        Assert.assertNotNull(checkpoint);
+        Assert.assertEquals("BurstSitemapCrawler", checkpoint.crawler);
+        Assert.assertEquals(0, checkpoint.sitemapIndex);
+        Assert.assertEquals(20, checkpoint.sitemapOffset);
+
+        // only the remaining photos are crawled, and the checkpoint removed
+        List<BurstImage> second = TestBurstSitemapCrawler.newCrawler(options).crawl();
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS - 20, second.size());
+        Assert.assertEquals("https://burst.shopify.com/photos/photo-20", second.get(0).homeUrl);
+        Assert.assertFalse(file.exists());
+
+        // a completed crawl starts over
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS, TestBurstSitemapCrawler.newCrawler(options).crawl().size());
+    }
+
+    @Test
+    public void testConcurrentSitemapCrawlResumes() {
+        File file = new File(this.folder.getRoot(), "checkpoint.json");
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setNumWorkers(4).setWorkQueueSize(5).setDelayBetweenImagesMillis(0)
+                .setCheckpointFile(file).setCheckpointIntervalMillis(0);
+
+        List<BurstImage> first = crawlUntil(TestBurstSitemapCrawler.newCrawler(options), 20);
+        Assert.assertTrue(file.exists());
+
+        // photos in flight when stopped may be crawled again, none are missed
+        List<BurstImage> second = TestBurstSitemapCrawler.newCrawler(options).crawl();
+        Assert.assertTrue(second.size() < TestBurstSitemapCrawler.NUM_PHOTOS);
+
+        Set<String> urls = new HashSet<>();
+        for (BurstImage image : first) {
+            urls.add(image.homeUrl);
+        }
+
+        for (BurstImage image : second) {
+            urls.add(image.homeUrl);
+        }
+
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS, urls.size());
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testStoppedConcurrentSitemapCrawlIsNotComplete() {
+        File file = new File(this.folder.getRoot(), "checkpoint.json");
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setNumWorkers(4).setDelayBetweenImagesMillis(0)
+                .setCheckpointFile(file).setCheckpointIntervalMillis(60000);
+
+        // the collector stops on the last photo, after all have been submitted
+        crawlUntil(TestBurstSitemapCrawler.newCrawler(options), TestBurstSitemapCrawler.NUM_PHOTOS);
+        Assert.assertTrue(file.exists());
+    }
+
+    @Test
+    public void testListingCrawlResumes() throws IOException {
+        File file = new File(this.folder.getRoot(), "checkpoint.json");
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenPagesMillis(0).setDelayBetweenImagesMillis(0)
+                .setCheckpointFile(file).setCheckpointIntervalMillis(0);
+
+        // stop within the second page
+        List<String> pages = Collections.synchronizedList(new ArrayList<String>());
+        crawlUntil(TestBurstCrawler.newCrawler(options, 3, pages), 60);
+
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(file);
+        Assert.assertEquals(Collections.singletonList(1), checkpoint.completedPages);
+        Assert.assertEquals(3, checkpoint.lastPage);
+
+        pages.clear();
+        List<BurstImage> images = TestBurstCrawler.newCrawler(options, 3, pages).crawl();
+        Assert.assertEquals(100, images.size());
+        Assert.assertEquals(2, pages.size());
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testPipelinedListingCrawlResumes() throws IOException {
+        File file = new File(this.folder.getRoot(), "checkpoint.json");
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setPipelined(true).setNumListingWorkers(2).setNumWorkers(4)
+                .setDelayBetweenPagesMillis(0).setDelayBetweenImagesMillis(0).setEndPage(5)
+                .setCheckpointFile(file).setCheckpointIntervalMillis(0);
+
+        List<String> pages = Collections.synchronizedList(new ArrayList<String>());
+        crawlUntil(TestBurstCrawler.newCrawler(options, 642, pages), 120);
+
+        CrawlCheckpoint checkpoint = CrawlCheckpoint.load(file);
+        Assert.assertNotNull(checkpoint);
+        final int completed = checkpoint.completedPages.size();
+
+        // pages completed are neither fetched nor crawled again
+        pages.clear();
+        List<BurstImage> images = TestBurstCrawler.newCrawler(options, 642, pages).crawl();
+        Assert.assertEquals(50 * (5 - completed), images.size());
+        Assert.assertEquals(5 - completed, new HashSet<>(pages).size());
+        Assert.assertFalse(file.exists());
+    }
+
+    /**
+     * Crawl till the given number of images have been collected.
+     */
+    private static List<BurstImage> crawlUntil(AbstractBurstCrawler crawler, final int count) {
+        final List<BurstImage> images = Collections.synchronizedList(new ArrayList<BurstImage>());
+        crawler.crawl(new GenericConsumer<BurstImage>() {
+
+            @Override
+            public boolean consume(BurstImage image) {
+                images.add(image);
+                return images.size() < count;
+            }
+        });
+
+        return images;
+    }
+
+}
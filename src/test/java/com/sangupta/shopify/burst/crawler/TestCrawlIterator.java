@@ -0,0 +1,93 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCrawlIterator {
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testReadsAllImages() {
+        BurstSitemapCrawler crawler = TestBurstSitemapCrawler.newCrawler(new BurstCrawlerOptions().setNumWorkers(4).setDelayBetweenImagesMillis(0));
+        
+        Set<String> urls = new HashSet<>();
+        CrawlIterator iterator = crawler.crawlIterator(5);
+        while (iterator.hasNext()) {
+            urls.add(iterator.next().homeUrl);
+        }
+        
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS, urls.size());
+        Assert.assertFalse(iterator.hasNext());
+    }
+    
+    @Test
+    public void testSlowReaderSlowsCrawl() throws InterruptedException {
+        BurstSitemapCrawler crawler = TestBurstSitemapCrawler.newCrawler(new BurstCrawlerOptions().setDelayBetweenImagesMillis(0));
+        
+        CrawlIterator iterator = crawler.crawlIterator(2);
+        Assert.assertTrue(iterator.hasNext());
+        Assert.assertNotNull(iterator.next());
+        
+        Thread.sleep(300);
+        
+        // one read, two buffered, and one waiting to be handed over
+        Assert.assertTrue(crawler.getMetrics().getImagesEmitted() <= 4);
+        
+        iterator.close();
+        Assert.assertFalse(iterator.hasNext());
+        
+        Thread.sleep(300);
+        Assert.assertTrue(crawler.getMetrics().getImagesEmitted() <= 5);
+    }
+    
+    @Test
+    public void testCloseWithoutBufferLosesNoImage() throws InterruptedException {
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenImagesMillis(0)
+                .setCrawlStateFile(new File(this.folder.getRoot(), "state.log"));
+        
+        readAndClose(TestBurstSitemapCrawler.newCrawler(options).crawlIterator(0), 3);
+        
+        // the photo refused on close is crawled again
+        List<BurstImage> images = TestBurstSitemapCrawler.newCrawler(options).crawl();
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS - 3, images.size());
+        Assert.assertEquals("https://burst.shopify.com/photos/photo-3", images.get(0).homeUrl);
+    }
+    
+    @Test
+    public void testCloseDropsBufferedImages() throws InterruptedException {
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenImagesMillis(0)
+                .setCrawlStateFile(new File(this.folder.getRoot(), "state.log"));
+        
+        readAndClose(TestBurstSitemapCrawler.newCrawler(options).crawlIterator(5), 3);
+        
+        // the five buffered photos count as crawled, the one refused does not
+        List<BurstImage> images = TestBurstSitemapCrawler.newCrawler(options).crawl();
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS - 8, images.size());
+        Assert.assertEquals("https://burst.shopify.com/photos/photo-8", images.get(0).homeUrl);
+    }
+    
+    /**
+     * Read the given number of images, let the crawl fill the buffer, then
+     * close and wait for the crawl to stop.
+     */
+    private static void readAndClose(CrawlIterator iterator, int count) throws InterruptedException {
+        for (int index = 0; index < count; index++) {
+            Assert.assertTrue(iterator.hasNext());
+            Assert.assertNotNull(iterator.next());
+        }
+        
+        Thread.sleep(300);
+        iterator.close();
+        Thread.sleep(300);
+    }
+    
+}
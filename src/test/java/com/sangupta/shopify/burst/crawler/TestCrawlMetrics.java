@@ -0,0 +1,75 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestCrawlMetrics {
+    
+    @Test
+    public void testHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int index = 1; index <= 100; index++) {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(index));
+        }
+        
+        Assert.assertEquals(100, histogram.getCount());
+        Assert.assertEquals(5050, histogram.getTotalMillis(), 0.001);
+        Assert.assertEquals(100, histogram.getMaxMillis(), 0.001);
+        
+        // buckets are powers of two, so within twice the actual value
+        double p50 = histogram.getPercentileMillis(0.5);
+        Assert.assertTrue(p50 >= 50 && p50 <= 100);
+        Assert.assertEquals(100, histogram.getPercentileMillis(0.99), 0.001);
+    }
+    
+    @Test
+    public void testCrawlMetrics() {
+        final Object[] reported = new Object[1];
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenImagesMillis(0).setRegisterMetricsMBean(true)
+                .setMetricsReporter(new MetricsReporter() {
+                    
+                    @Override
+                    public void report(CrawlMetrics metrics) {
+                        try {
+                            reported[0] = ManagementFactory.getPlatformMBeanServer().getAttribute(metrics.getObjectName(), "ImagesEmitted");
+                        } catch (Exception e) {
+                            throw new IllegalStateException(e);
+                        }
+                    }
+                });
+        
+        for (int index = 0; index < 5; index++) {
+            options.previouslyCrawled.add("https://burst.shopify.com/photos/photo-" + index);
+        }
+        
+        BurstSitemapCrawler crawler = TestBurstSitemapCrawler.newCrawler(options);
+        Assert.assertEquals(45, crawler.crawl().size());
+        
+        CrawlMetrics metrics = crawler.getMetrics();
+        Assert.assertEquals(45, metrics.getPagesFetched());
+        Assert.assertEquals(45, metrics.getImagesEmitted());
+        Assert.assertEquals(5, metrics.getSkippedPreviouslyCrawled());
+        Assert.assertEquals(45, metrics.getHtmlParseTime().getCount());
+        Assert.assertTrue(metrics.getBytesDownloaded() > 0);
+        Assert.assertEquals(0, metrics.getErrorCount());
+        
+        // read over JMX while registered, unregistered after the crawl
+        Assert.assertEquals(45L, reported[0]);
+        Assert.assertNull(metrics.getObjectName());
+    }
+    
+    @Test
+    public void testErrors() {
+        CrawlMetrics metrics = new CrawlMetrics();
+        metrics.recordError("http-503");
+        metrics.recordError("http-503");
+        metrics.recordError("SocketTimeoutException");
+        
+        Assert.assertEquals(3, metrics.getErrorCount());
+        Assert.assertEquals(Long.valueOf(2), metrics.getErrors().get("http-503"));
+    }
+
+}
@@ -0,0 +1,76 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestCrawlStateStore {
+    
+    private static final String URL = "https://burst.shopify.com/photos/pouring-hot-coffee";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testIncremental() throws IOException {
+        File file = new File(this.folder.getRoot(), "state.log");
+        
+        CrawlStateStore store = new CrawlStateStore(file);
+        Assert.assertTrue(store.isDue(URL, "2019-03-10", null));
+        Assert.assertTrue(store.record(URL, "2019-03-10", image("Pouring Hot Coffee")));
+        store.close();
+        
+        // reopen and check state survived
+        store = new CrawlStateStore(file);
+        Assert.assertEquals(1, store.size());
+        Assert.assertFalse(store.isDue(URL, "2019-03-10", null));
+        Assert.assertTrue(store.isDue(URL, "2019-04-01", null));
+        
+        // same details under new lastmod are not a change
+        Assert.assertFalse(store.record(URL, "2019-04-01", image("Pouring Hot Coffee")));
+        Assert.assertTrue(store.record(URL, "2019-04-02", image("Pouring Coffee")));
+        store.close();
+    }
+    
+    @Test
+    public void testChangeFrequency() throws IOException {
+        CrawlStateStore store = new CrawlStateStore(new File(this.folder.getRoot(), "state.log"));
+        store.record(URL, null, image("Pouring Hot Coffee"));
+        
+        Assert.assertFalse(store.isDue(URL, null, null));
+        Assert.assertFalse(store.isDue(URL, null, "monthly"));
+        Assert.assertTrue(store.isDue(URL, null, "always"));
+        store.close();
+    }
+    
+    @Test
+    public void testCompaction() throws IOException {
+        File file = new File(this.folder.getRoot(), "state.log");
+        
+        CrawlStateStore store = new CrawlStateStore(file);
+        for (int index = 0; index < 10; index++) {
+            store.record(URL, "2019-03-" + index, image("Pouring Hot Coffee"));
+        }
+        store.close();
+        
+        store = new CrawlStateStore(file);
+        Assert.assertEquals(1, store.size());
+        Assert.assertFalse(store.isDue(URL, "2019-03-9", null));
+        store.close();
+        
+        // header and a single record
+        Assert.assertTrue(file.length() < 200);
+    }
+    
+    private static BurstImage image(String title) {
+        BurstImage image = new BurstImage();
+        image.homeUrl = URL;
+        image.title = title;
+        return image;
+    }
+
+}
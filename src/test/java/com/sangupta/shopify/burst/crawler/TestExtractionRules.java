@@ -0,0 +1,133 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestExtractionRules {
+
+    private static final String PAGE_URL = "https://burst.shopify.com/photos/pouring-hot-coffee";
+
+    @Test
+    public void testDefaultRules() throws IOException {
+        ExtractionPlan plan = ExtractionRules.defaults().compile();
+        BurstImage image = new BurstImage();
+        image.homeUrl = PAGE_URL;
+
+        Assert.assertTrue(plan.populate(image, photoPage()));
+        Assert.assertEquals("https://burst.shopifycdn.com/photos/pouring-hot-coffee.jpg", image.url);
+        Assert.assertEquals("Pouring Hot Coffee", image.title);
+        Assert.assertEquals("Matthew Henry", image.author);
+        Assert.assertEquals("https://burst.shopify.com/@matthew_henry", image.authorUrl);
+        Assert.assertEquals("Shopify Some Rights Reserved", image.license);
+        Assert.assertEquals("https://burst.shopify.com/licenses/shopify-some-rights-reserved", image.licenseUrl);
+        Assert.assertEquals(Arrays.asList("coffee", "cafe", "barista", "pour", "Food & Drink"), image.tags);
+
+        // the scanner agrees with the rules
+        BurstImage scanned = new BurstImage();
+        scanned.homeUrl = PAGE_URL;
+        BurstPageExtractor.extract(scanned, TestBurstPageExtractor.readFixture("fixtures/photo-page.html"));
+        Assert.assertEquals(image.authorUrl, scanned.authorUrl);
+        Assert.assertEquals(image.license, scanned.license);
+        Assert.assertEquals(image.tags, scanned.tags);
+
+        Assert.assertFalse(plan.populate(new BurstImage(), Jsoup.parse("<html><body><p>no main</p></body></html>")));
+    }
+
+    @Test
+    public void testScannerMatchesRulesWithoutLinkedData() throws IOException {
+        final String html = TestBurstPageExtractor.readFixture("fixtures/photo-page.html").replaceAll("<script type=\"application/ld\\+json\">[^<]*</script>", "");
+        Assert.assertFalse(html.contains("ld+json"));
+
+        // the scanner, with the rules filling in what it lacks
+        BurstImage scanned = crawlerServing(html, null).getBurstImageFromURL(PAGE_URL);
+
+        // the rules alone, on a DOM
+        BurstImage planned = crawlerServing(html, ExtractionRules.defaults()).getBurstImageFromURL(PAGE_URL);
+
+        Assert.assertEquals(PAGE_URL + "/download", planned.url);
+        Assert.assertEquals("Pouring Hot Coffee", planned.title);
+        Assert.assertEquals(planned.url, scanned.url);
+        Assert.assertEquals(planned.title, scanned.title);
+        Assert.assertEquals(planned.description, scanned.description);
+        Assert.assertEquals(planned.author, scanned.author);
+        Assert.assertEquals(planned.authorUrl, scanned.authorUrl);
+        Assert.assertEquals(planned.license, scanned.license);
+        Assert.assertEquals(planned.licenseUrl, scanned.licenseUrl);
+        Assert.assertEquals(planned.tags, scanned.tags);
+    }
+
+    @Test
+    public void testListingPage() throws IOException {
+        ExtractionPlan plan = ExtractionRules.defaults().compile();
+        Document doc = Jsoup.parse(TestBurstPageExtractor.readFixture("fixtures/listing-page.html"), "https://burst.shopify.com/photos");
+
+        List<String> urls = plan.getPhotoUrls(doc);
+        Assert.assertEquals(50, urls.size());
+        Assert.assertEquals("https://burst.shopify.com/photos/coffee-coffee-0", urls.get(0));
+        Assert.assertTrue(plan.getLastPageUrl(doc).contains("page=642"));
+    }
+
+    @Test
+    public void testRulesFromJson() throws IOException {
+        ExtractionRules rules = ExtractionRules.fromJson("{ \"fields\": ["
+                + "{ \"field\": \"title\", \"selector\": \"h2.missing\" },"
+                + "{ \"field\": \"title\", \"selector\": \"h1.heading--2\" },"
+                + "{ \"field\": \"author\", \"jsonLd\": \"author\", \"transform\": \"lowercase\" },"
+                + "{ \"field\": \"tags\", \"selector\": \"li a.tag\", \"transform\": \"lowercase\" },"
+                + "{ \"field\": \"url\", \"selector\": \"a.js-download-photo\", \"attribute\": \"abs:href\" }"
+                + "] }");
+
+        BurstImage image = new BurstImage();
+        image.homeUrl = PAGE_URL;
+        Assert.assertTrue(rules.compile().populate(image, photoPage()));
+
+        Assert.assertEquals("Pouring Hot Coffee", image.title);
+        Assert.assertEquals("matthew henry", image.author);
+        Assert.assertEquals("food & drink", image.tags.get(4));
+        Assert.assertEquals(PAGE_URL + "/download", image.url);
+        Assert.assertNull(image.description);
+    }
+
+    @Test
+    public void testInvalidRules() {
+        assertInvalid(new ExtractionRules().addField(ExtractionRules.FieldRule.css("caption", "p", null)));
+        assertInvalid(new ExtractionRules().addField(ExtractionRules.FieldRule.css("title", "h1", null).setTransform("reverse")));
+        assertInvalid(new ExtractionRules().addField(ExtractionRules.FieldRule.css("title", "h1[", null)));
+        assertInvalid(new ExtractionRules().addField(new ExtractionRules.FieldRule()));
+    }
+
+    private static void assertInvalid(ExtractionRules rules) {
+        try {
+            rules.compile();
+            Assert.fail("Expected invalid rules to be rejected");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    private static BurstCrawler crawlerServing(final String html, ExtractionRules rules) {
+        FetchBackend backend = new FetchBackend() {
+
+            @Override
+            public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+                return new FetchResponse(200, null, new ByteArrayInputStream(html.getBytes("UTF-8")));
+            }
+
+        };
+
+        return new BurstCrawler(new BurstCrawlerOptions().setFetchBackend(backend).setExtractionRules(rules));
+    }
+
+    private static Document photoPage() throws IOException {
+        return Jsoup.parse(TestBurstPageExtractor.readFixture("fixtures/photo-page.html"), PAGE_URL);
+    }
+
+}
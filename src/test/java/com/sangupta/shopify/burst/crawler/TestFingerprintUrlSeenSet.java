@@ -0,0 +1,83 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestFingerprintUrlSeenSet {
+    
+    private static final int COUNT = 10000;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testHeap() {
+        assertSet(new FingerprintUrlSeenSet());
+    }
+    
+    @Test
+    public void testOffHeap() {
+        assertSet(FingerprintUrlSeenSet.offHeap(100));
+    }
+    
+    @Test
+    public void testBloomFilter() {
+        assertSet(new FingerprintUrlSeenSet(100).withBloomFilter(0.01));
+    }
+    
+    @Test
+    public void testMapped() throws IOException {
+        File file = new File(this.folder.getRoot(), "seen.bin");
+        
+        FingerprintUrlSeenSet set = FingerprintUrlSeenSet.mapped(file, 100);
+        assertSet(set);
+        set.close();
+        
+        // reload with a bloom filter in front
+        set = FingerprintUrlSeenSet.mapped(file, 100).withBloomFilter(0.01);
+        Assert.assertEquals(COUNT, set.size());
+        for (int index = 0; index < COUNT; index++) {
+            Assert.assertTrue(set.contains(url(index)));
+        }
+        
+        Assert.assertFalse(set.contains(url(COUNT)));
+        Assert.assertTrue(set.add(url(COUNT)));
+        set.close();
+        
+        // grown by replacing the file, leaving no temporary file behind
+        Assert.assertArrayEquals(new String[] { "seen.bin" }, this.folder.getRoot().list());
+    }
+    
+    @Test(expected = IOException.class)
+    public void testMappedInvalidFile() throws IOException {
+        File file = this.folder.newFile("seen.bin");
+        Files.write(file.toPath(), new byte[64]);
+        
+        FingerprintUrlSeenSet.mapped(file, 100);
+    }
+    
+    private static void assertSet(FingerprintUrlSeenSet set) {
+        for (int index = 0; index < COUNT; index++) {
+            Assert.assertTrue(set.add(url(index)));
+        }
+        
+        Assert.assertFalse(set.add(url(0)));
+        Assert.assertEquals(COUNT, set.size());
+        
+        for (int index = 0; index < COUNT; index++) {
+            Assert.assertTrue(set.contains(url(index)));
+            Assert.assertFalse(set.contains(url(index + COUNT)));
+        }
+    }
+    
+    private static String url(int index) {
+        return "https://burst.shopify.com/photos/photo-" + index;
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestHttpCache {
+    
+    private static final String URL = "https://burst.shopify.com/photos/pouring-hot-coffee";
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testPutAndReload() throws IOException {
+        HttpCache cache = new HttpCache(this.folder.getRoot(), 1024 * 1024);
+        Assert.assertNull(cache.get(URL));
+        
+        // no validators, nothing to revalidate with
+        cache.put(URL, null, null, bytes("hello"));
+        Assert.assertNull(cache.get(URL));
+        
+        cache.put(URL, "\"abc\"", null, bytes("hello"));
+        
+        BurstImage image = new BurstImage();
+        image.title = "Pouring Hot Coffee";
+        cache.putImage(URL, image);
+        
+        // survives a restart
+        cache = new HttpCache(this.folder.getRoot(), 1024 * 1024);
+        HttpCache.Entry entry = cache.get(URL);
+        Assert.assertNotNull(entry);
+        Assert.assertEquals("\"abc\"", entry.etag);
+        Assert.assertEquals("Pouring Hot Coffee", entry.image.title);
+        Assert.assertEquals("hello", read(cache.openBody(URL)));
+        
+        // copies can be changed without touching the entry
+        BurstImage copy = entry.copyOfImage();
+        copy.title = "Pouring Coffee";
+        Assert.assertEquals("Pouring Hot Coffee", entry.image.title);
+        
+        // the metadata rewrite is accounted for
+        long size = cache.size();
+        copy.description = "A longer description of the photo";
+        cache.putImage(URL, copy);
+        Assert.assertTrue(cache.size() > size);
+        Assert.assertEquals(new HttpCache(this.folder.getRoot(), 1024 * 1024).size(), cache.size());
+    }
+    
+    @Test
+    public void testEviction() throws IOException {
+        HttpCache cache = new HttpCache(this.folder.getRoot(), 3000);
+        cache.put(URL + "/1", "1", null, new byte[1000]);
+        cache.put(URL + "/2", "2", null, new byte[1000]);
+        
+        // touch the first so that second is least recently used
+        Assert.assertNotNull(cache.get(URL + "/1"));
+        cache.put(URL + "/3", "3", null, new byte[1000]);
+        
+        Assert.assertTrue(cache.size() <= 3000);
+        Assert.assertNotNull(cache.get(URL + "/1"));
+        Assert.assertNull(cache.get(URL + "/2"));
+        Assert.assertNotNull(cache.get(URL + "/3"));
+    }
+    
+    @Test
+    public void testCacheWhileReading() throws IOException {
+        HttpCache cache = new HttpCache(this.folder.getRoot(), 1024 * 1024);
+        
+        // responses abandoned well before their end are not cached
+        InputStream stream = cache.cacheWhileReading(URL, "1", null, new ByteArrayInputStream(new byte[64 * 1024]));
+        Assert.assertEquals(0, stream.read());
+        stream.close();
+        Assert.assertNull(cache.get(URL));
+        
+        stream = cache.cacheWhileReading(URL, "1", null, new ByteArrayInputStream(bytes("hello world")));
+        Assert.assertEquals("hello world", read(stream));
+        Assert.assertEquals("hello world", read(cache.openBody(URL)));
+    }
+    
+    @Test
+    public void testCacheWhileReadingGzip() throws IOException {
+        HttpCache cache = new HttpCache(this.folder.getRoot(), 1024 * 1024);
+        
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(gzipped);
+        gzip.write(bytes("hello world"));
+        gzip.close();
+        
+        // the gzip reader stops at the trailer, before the end of stream
+        InputStream stream = Streams.decompressIfNeeded(cache.cacheWhileReading(URL, "1", null, new ByteArrayInputStream(gzipped.toByteArray())));
+        Assert.assertEquals("hello world", read(stream));
+        Assert.assertNotNull(cache.get(URL));
+        Assert.assertEquals("hello world", read(Streams.decompressIfNeeded(cache.openBody(URL))));
+    }
+    
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    private static String read(InputStream stream) throws IOException {
+        return new String(Streams.readFully(stream), StandardCharsets.UTF_8);
+    }
+
+}
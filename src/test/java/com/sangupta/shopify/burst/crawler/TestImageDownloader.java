@@ -0,0 +1,218 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sangupta.jerry.consume.GenericConsumer;
+
+public class TestImageDownloader {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDownload() throws Exception {
+        FakeImageBackend backend = new FakeImageBackend();
+        final List<DownloadedImage> downloaded = Collections.synchronizedList(new ArrayList<DownloadedImage>());
+
+        ImageDownloader downloader = new ImageDownloader(this.folder.getRoot(), options(backend), new GenericConsumer<DownloadedImage>() {
+
+            @Override
+            public boolean consume(DownloadedImage image) {
+                downloaded.add(image);
+                return true;
+            }
+        });
+
+        for (int index = 0; index < 10; index++) {
+            Assert.assertTrue(downloader.consume(image("photo-" + index)));
+        }
+
+        downloader.close();
+
+        Assert.assertEquals(10, downloader.getDownloaded());
+        Assert.assertEquals(10, downloaded.size());
+        Assert.assertEquals(10L * FakeImageBackend.SIZE, downloader.getBytes());
+        for (DownloadedImage image : downloaded) {
+            Assert.assertEquals(FakeImageBackend.SIZE, image.size);
+            Assert.assertArrayEquals(backend.content, Files.readAllBytes(image.file.toPath()));
+            Assert.assertEquals(backend.sha256(), image.sha256);
+        }
+
+        Assert.assertEquals("photo-3.jpg", downloader.getFile(image("photo-3")).getName());
+    }
+
+    @Test
+    public void testResumesPartialFile() throws Exception {
+        FakeImageBackend backend = new FakeImageBackend();
+        ImageDownloader downloader = new ImageDownloader(this.folder.getRoot(), options(backend));
+        BurstImage image = image("photo-1");
+
+        File part = new File(this.folder.getRoot(), "photo-1.jpg" + ImageDownloader.PART_SUFFIX);
+        try (FileOutputStream stream = new FileOutputStream(part)) {
+            stream.write(backend.content, 0, 1000);
+        }
+
+        downloader.consume(image);
+        downloader.close();
+
+        Assert.assertEquals(Arrays.asList("bytes=1000-"), backend.ranges);
+        Assert.assertEquals(FakeImageBackend.SIZE - 1000, downloader.getBytes());
+        Assert.assertArrayEquals(backend.content, Files.readAllBytes(downloader.getFile(image).toPath()));
+        Assert.assertFalse(part.exists());
+    }
+
+    @Test
+    public void testRestartsWhenRangeIgnored() throws Exception {
+        FakeImageBackend backend = new FakeImageBackend();
+        backend.ignoreRange = true;
+        ImageDownloader downloader = new ImageDownloader(this.folder.getRoot(), options(backend));
+        BurstImage image = image("photo-1");
+
+        // a stale part file, which the full body must replace
+        File part = new File(this.folder.getRoot(), "photo-1.jpg" + ImageDownloader.PART_SUFFIX);
+        try (FileOutputStream stream = new FileOutputStream(part)) {
+            stream.write(new byte[1000]);
+        }
+
+        downloader.consume(image);
+        downloader.close();
+
+        Assert.assertEquals(Arrays.asList("bytes=1000-"), backend.ranges);
+        Assert.assertEquals(FakeImageBackend.SIZE, downloader.getBytes());
+        Assert.assertArrayEquals(backend.content, Files.readAllBytes(downloader.getFile(image).toPath()));
+        Assert.assertTrue(downloader.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testRefusesImagesAfterClose() throws Exception {
+        ImageDownloader downloader = new ImageDownloader(this.folder.getRoot(), options(new FakeImageBackend()));
+        downloader.close();
+
+        Assert.assertFalse(downloader.consume(image("photo-1")));
+        Assert.assertEquals(0, downloader.getDownloaded());
+    }
+
+    @Test
+    public void testResumesTruncatedBody() throws Exception {
+        FakeImageBackend backend = new FakeImageBackend();
+        backend.truncateFirst = true;
+
+        final List<DownloadedImage> downloaded = new ArrayList<>();
+        ImageDownloader downloader = new ImageDownloader(this.folder.getRoot(), options(backend), new GenericConsumer<DownloadedImage>() {
+
+            @Override
+            public boolean consume(DownloadedImage image) {
+                downloaded.add(image);
+                return true;
+            }
+        });
+
+        downloader.consume(image("photo-1"));
+        downloader.close();
+
+        // the retry asks only for the missing bytes
+        Assert.assertEquals(Arrays.asList(null, "bytes=" + (FakeImageBackend.SIZE / 2) + "-"), backend.ranges);
+        Assert.assertEquals(1, downloaded.size());
+        Assert.assertEquals(backend.sha256(), downloaded.get(0).sha256);
+        Assert.assertTrue(downloader.getFailures().isEmpty());
+    }
+
+    @Test
+    public void testSkipsExistingAndReportsFailures() throws Exception {
+        FakeImageBackend backend = new FakeImageBackend();
+        ImageDownloader downloader = new ImageDownloader(this.folder.getRoot(), options(backend));
+
+        Files.write(downloader.getFile(image("photo-1")).toPath(), backend.content);
+        downloader.consume(image("photo-1"));
+        downloader.consume(image("missing"));
+        downloader.close();
+
+        Assert.assertEquals(1, downloader.getSkipped());
+        Assert.assertEquals(0, downloader.getDownloaded());
+        Assert.assertEquals("http-404", downloader.getFailures().get("https://burst.shopify.com/photos/missing"));
+
+        // a 404 is not retried
+        Assert.assertEquals(1, backend.ranges.size());
+    }
+
+    private static BurstCrawlerOptions options(FetchBackend backend) {
+        return new BurstCrawlerOptions().setFetchBackend(backend).setDownloadWorkers(2).setDownloadQueueSize(2).setRetryBackoffMillis(0);
+    }
+
+    private static BurstImage image(String name) {
+        BurstImage image = new BurstImage();
+        image.homeUrl = "https://burst.shopify.com/photos/" + name;
+        image.url = image.homeUrl + "/download";
+        return image;
+    }
+
+    /**
+     * Serves the same image for every URL but <code>missing</code>, honouring
+     * ranges, and recording the range asked for by every request.
+     */
+    static class FakeImageBackend implements FetchBackend {
+
+        static final int SIZE = 200 * 1024;
+
+        final byte[] content = new byte[SIZE];
+
+        final List<String> ranges = Collections.synchronizedList(new ArrayList<String>());
+
+        volatile boolean truncateFirst;
+
+        volatile boolean ignoreRange;
+
+        FakeImageBackend() {
+            new Random(42).nextBytes(this.content);
+        }
+
+        String sha256() throws Exception {
+            return ImageDownloader.toHex(MessageDigest.getInstance("SHA-256").digest(this.content));
+        }
+
+        @Override
+        public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+            final String range = headers.get("Range");
+            this.ranges.add(range);
+            if (url.contains("/missing/")) {
+                return new FetchResponse(404, null, null);
+            }
+
+            Map<String, String> responseHeaders = new HashMap<>();
+            responseHeaders.put("content-length", String.valueOf(SIZE));
+            if (range == null || this.ignoreRange) {
+                int length = SIZE;
+                if (this.truncateFirst) {
+                    this.truncateFirst = false;
+                    length = SIZE / 2;
+                }
+
+                return new FetchResponse(200, responseHeaders, new ByteArrayInputStream(this.content, 0, length));
+            }
+
+            int start = Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+            responseHeaders.put("content-length", String.valueOf(SIZE - start));
+            responseHeaders.put("content-range", "bytes " + start + "-" + (SIZE - 1) + "/" + SIZE);
+            return new FetchResponse(206, responseHeaders, new ByteArrayInputStream(this.content, start, SIZE - start));
+        }
+
+    }
+
+}
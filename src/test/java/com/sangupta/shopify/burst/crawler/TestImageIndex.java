@@ -0,0 +1,64 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestImageIndex {
+    
+    @Test
+    public void testQueries() {
+        ImageIndex index = new ImageIndex();
+        index.consume(image("coffee", "Pouring Hot Coffee", "Sarah Pflug", "coffee", "morning"));
+        index.consume(image("tea", "Hot tea in a cup", "Matthew Henry", "tea", "morning"));
+        index.consume(image("beach", "Sunny beach", "Sarah Pflug", "summer"));
+        
+        Assert.assertEquals(Arrays.asList("coffee", "tea"), names(index.findByTag("Morning")));
+        Assert.assertEquals(Arrays.asList("coffee", "beach"), names(index.findByAuthor("sarah pflug")));
+        Assert.assertEquals(Arrays.asList("coffee", "tea"), names(index.search("HOT")));
+        Assert.assertEquals(Arrays.asList("tea"), names(index.search("hot cup")));
+        Assert.assertTrue(index.search("cold").isEmpty());
+        
+        Assert.assertEquals(Arrays.asList("coffee"), names(index.query().tag("morning").author("Sarah Pflug").find()));
+        Assert.assertEquals(Arrays.asList("coffee"), names(index.query().tag("morning").limit(1).find()));
+        Assert.assertTrue(index.query().find().isEmpty());
+    }
+    
+    @Test
+    public void testReplacesImages() {
+        ImageIndex index = new ImageIndex();
+        index.add(image("coffee", "Pouring Hot Coffee", "Sarah Pflug", "coffee"));
+        index.add(image("coffee", "Pouring Coffee", "Sarah Pflug", "drink"));
+        
+        Assert.assertEquals(1, index.size());
+        Assert.assertTrue(index.findByTag("coffee").isEmpty());
+        Assert.assertEquals(1, index.findByTag("drink").size());
+        Assert.assertTrue(index.search("hot").isEmpty());
+    }
+    
+    @Test
+    public void testTokenize() {
+        Assert.assertEquals(Arrays.asList("hot", "coffee", "in", "café"), ImageIndex.tokenize("Hot coffee, in a café!"));
+    }
+    
+    private static BurstImage image(String name, String title, String author, String... tags) {
+        BurstImage image = new BurstImage();
+        image.homeUrl = "https://burst.shopify.com/photos/" + name;
+        image.title = title;
+        image.author = author;
+        image.tags.addAll(Arrays.asList(tags));
+        return image;
+    }
+    
+    private static List<String> names(List<BurstImage> images) {
+        String[] names = new String[images.size()];
+        for (int index = 0; index < names.length; index++) {
+            names[index] = images.get(index).homeUrl.substring("https://burst.shopify.com/photos/".length());
+        }
+        
+        return Arrays.asList(names);
+    }
+    
+}
@@ -0,0 +1,237 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.awt.Color;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestImageStore {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testDeduplicates() throws IOException {
+        FakeStoreBackend backend = new FakeStoreBackend(false);
+        ImageStore store = store(backend);
+        for (int index = 0; index < 4; index++) {
+            store.consume(image(index));
+        }
+
+        store.close();
+
+        Assert.assertEquals(4, store.size());
+        Assert.assertEquals(2, store.getObjectCount());
+        Assert.assertEquals(2, store.getStored());
+        Assert.assertEquals(2, store.getDuplicates());
+        Assert.assertEquals(store.get(image(0).homeUrl).sha256, store.get(image(2).homeUrl).sha256);
+        Assert.assertEquals(40, store.get(image(1).homeUrl).width);
+        Assert.assertEquals(30, store.get(image(1).homeUrl).height);
+        Assert.assertEquals(backend.content.get("a").length, store.getFile(image(0).homeUrl).length());
+        Assert.assertEquals(0, new File(this.folder.getRoot(), "incoming").list().length);
+
+        // without validators, stored photos are revalidated by the time they were stored
+        backend.modifiedSince.clear();
+        store = store(backend);
+        Assert.assertEquals(4, store.size());
+        for (int index = 0; index < 4; index++) {
+            store.consume(image(index));
+        }
+
+        store.close();
+        Assert.assertEquals(4, backend.modifiedSince.size());
+        Assert.assertFalse(backend.modifiedSince.contains(null));
+        Assert.assertEquals(4, store.getDownloader().getSkipped());
+        Assert.assertEquals(0, store.getDownloader().getBytes());
+    }
+
+    @Test
+    public void testRefetchesWhenModified() throws IOException {
+        FakeStoreBackend backend = new FakeStoreBackend(false);
+        ImageStore store = store(backend);
+        store.consume(image(0));
+        store.close();
+
+        backend.modifiedMillis = System.currentTimeMillis() + 60 * 60 * 1000;
+        store = store(backend);
+        store.consume(image(0));
+        store.close();
+
+        Assert.assertEquals(0, store.getDownloader().getSkipped());
+        Assert.assertEquals(1, store.getDuplicates());
+    }
+
+    @Test
+    public void testRevalidatesWithLastModified() throws IOException {
+        FakeStoreBackend backend = new FakeStoreBackend(false);
+        backend.lastModified = true;
+        ImageStore store = store(backend);
+        store.consume(image(0));
+        store.close();
+
+        backend.modifiedSince.clear();
+        store = store(backend);
+        Assert.assertEquals(FakeStoreBackend.LAST_MODIFIED, store.get(image(0).homeUrl).lastModified);
+        store.consume(image(0));
+        store.close();
+
+        Assert.assertEquals(Collections.singletonList(FakeStoreBackend.LAST_MODIFIED), backend.modifiedSince);
+        Assert.assertEquals(1, store.getDownloader().getSkipped());
+    }
+
+    @Test
+    public void testRevalidatesWithEtag() throws IOException {
+        FakeStoreBackend backend = new FakeStoreBackend(true);
+        ImageStore store = store(backend);
+        store.consume(image(0));
+        store.close();
+
+        backend.requests.clear();
+        store = store(backend);
+        store.consume(image(0));
+        store.close();
+
+        Assert.assertEquals(Collections.singletonList("\"a\""), backend.requests);
+        Assert.assertEquals(1, store.getDownloader().getSkipped());
+        Assert.assertEquals(0, store.getDownloader().getBytes());
+    }
+
+    @Test
+    public void testMatchesEtagOfStoredBinary() throws IOException {
+        FakeStoreBackend backend = new FakeStoreBackend(true);
+        ImageStore store = store(backend);
+        store.consume(image(0));
+        store.close();
+
+        // same binary under another URL, downloaded unless etags are trusted
+        store = store(backend);
+        store.consume(image(2));
+        store.close();
+
+        Assert.assertTrue(store.getDownloader().getBytes() > 0);
+        Assert.assertEquals(1, store.getDuplicates());
+
+        store = store(backend, new BurstCrawlerOptions().setImageStoreTrustEtags(true));
+        store.consume(image(4));
+        store.close();
+
+        Assert.assertEquals(0, store.getDownloader().getBytes());
+        Assert.assertEquals(1, store.getDownloader().getSkipped());
+        Assert.assertEquals(store.get(image(0).homeUrl).sha256, store.get(image(4).homeUrl).sha256);
+        Assert.assertEquals(1, store.getObjectCount());
+    }
+
+    private ImageStore store(FetchBackend backend) throws IOException {
+        return store(backend, new BurstCrawlerOptions());
+    }
+
+    private ImageStore store(FetchBackend backend, BurstCrawlerOptions options) throws IOException {
+        return new ImageStore(this.folder.getRoot(), options.setFetchBackend(backend).setDownloadWorkers(2).setRetryBackoffMillis(0));
+    }
+
+    private static BurstImage image(int index) {
+        BurstImage image = new BurstImage();
+        image.homeUrl = "https://burst.shopify.com/photos/photo-" + index;
+        image.url = image.homeUrl + "/download";
+        return image;
+    }
+
+    /**
+     * Serves two distinct images, one for even photos and another for odd ones,
+     * recording the <code>If-None-Match</code> and <code>If-Modified-Since</code>
+     * headers of each request. Images are not modified since
+     * <code>modifiedMillis</code>.
+     */
+    static class FakeStoreBackend implements FetchBackend {
+
+        static final String LAST_MODIFIED = "Tue, 01 Jan 2019 00:00:00 GMT";
+
+        final Map<String, byte[]> content = new HashMap<>();
+
+        final List<String> requests = Collections.synchronizedList(new ArrayList<String>());
+
+        final List<String> modifiedSince = Collections.synchronizedList(new ArrayList<String>());
+
+        final boolean etags;
+
+        volatile boolean lastModified;
+
+        volatile long modifiedMillis = 1546300800000L;
+
+        FakeStoreBackend(boolean etags) throws IOException {
+            this.etags = etags;
+            this.content.put("a", png(Color.RED));
+            this.content.put("b", png(Color.BLUE));
+        }
+
+        @Override
+        public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+            this.requests.add(headers.get("If-None-Match"));
+            this.modifiedSince.add(headers.get("If-Modified-Since"));
+
+            int index = Integer.parseInt(url.substring(url.indexOf("photo-") + 6, url.indexOf("/download")));
+            String key = index % 2 == 0 ? "a" : "b";
+
+            Map<String, String> responseHeaders = new HashMap<>();
+            if (this.etags) {
+                String etag = "\"" + key + "\"";
+                responseHeaders.put("etag", etag);
+                if (etag.equals(headers.get("If-None-Match"))) {
+                    return new FetchResponse(304, responseHeaders, null);
+                }
+            }
+
+            if (this.lastModified) {
+                responseHeaders.put("last-modified", LAST_MODIFIED);
+            }
+
+            String since = headers.get("If-Modified-Since");
+            if (since != null && !this.etags && parseDate(since) >= this.modifiedMillis) {
+                return new FetchResponse(304, responseHeaders, null);
+            }
+
+            byte[] bytes = this.content.get(key);
+            responseHeaders.put("content-length", String.valueOf(bytes.length));
+            return new FetchResponse(200, responseHeaders, new ByteArrayInputStream(bytes));
+        }
+
+        private static long parseDate(String value) throws IOException {
+            SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.ENGLISH);
+            format.setTimeZone(TimeZone.getTimeZone("GMT"));
+            try {
+                return format.parse(value).getTime();
+            } catch (ParseException e) {
+                throw new IOException(e);
+            }
+        }
+
+        private static byte[] png(Color color) throws IOException {
+            BufferedImage image = new BufferedImage(40, 30, BufferedImage.TYPE_INT_RGB);
+            image.setRGB(0, 0, color.getRGB());
+
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            ImageIO.write(image, "png", stream);
+            return stream.toByteArray();
+        }
+
+    }
+
+}
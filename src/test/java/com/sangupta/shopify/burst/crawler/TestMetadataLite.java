@@ -0,0 +1,190 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestMetadataLite {
+
+    private static final String JSON = "{\"name\":\"Pouring Hot Coffee\",\"author\":{\"name\":\"Matthew Henry\"},"
+            + "\"contentUrl\":\"https://burst.shopifycdn.com/photos/pouring-hot-coffee.jpg?width=4460\"}";
+
+    @Test
+    public void testReadLinkedDataBlock() throws IOException {
+        String html = TestBurstPageExtractor.readFixture("fixtures/photo-page.html");
+        String json = BurstPageExtractor.readLinkedDataBlock(new ByteArrayInputStream(html.getBytes("UTF-8")), 1024 * 1024);
+        Assert.assertNotNull(json);
+        Assert.assertTrue(json.startsWith("{\"@context\":\"http://schema.org\""));
+        Assert.assertEquals("Pouring Hot Coffee", BurstPageExtractor.readLinkedData(json).name);
+
+        // reading stops at the end of the block
+        CountingStream stream = new CountingStream(page(100 * 1024));
+        Assert.assertEquals(JSON, BurstPageExtractor.readLinkedDataBlock(stream, 1024 * 1024));
+        Assert.assertTrue(stream.read.get() < 20 * 1024);
+    }
+
+    @Test
+    public void testMaxBytes() throws IOException {
+        String html = "<html><body>" + padding(100 * 1024) + "<script type=\"application/ld+json\">" + JSON + "</script></body></html>";
+        CountingStream stream = new CountingStream(html);
+        Assert.assertNull(BurstPageExtractor.readLinkedDataBlock(stream, 16 * 1024));
+        Assert.assertEquals(16 * 1024, stream.read.get());
+    }
+
+    @Test
+    public void testLiteCrawl() {
+        final String page = page(100 * 1024);
+        final AtomicLong read = new AtomicLong();
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setDelayBetweenImagesMillis(0).setMetadataLite(true)
+                .setFetchBackend(new FetchBackend() {
+
+                    @Override
+                    public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+                        return new FetchResponse(200, null, new CountingStream(page, read));
+                    }
+                });
+
+        List<BurstImage> images = TestBurstSitemapCrawler.newCrawler(options).crawl();
+        Assert.assertEquals(TestBurstSitemapCrawler.NUM_PHOTOS, images.size());
+
+        BurstImage image = images.get(0);
+        Assert.assertEquals("Pouring Hot Coffee", image.title);
+        Assert.assertEquals("Matthew Henry", image.author);
+        Assert.assertEquals("https://burst.shopifycdn.com/photos/pouring-hot-coffee.jpg", image.url);
+        Assert.assertTrue(image.tags.isEmpty());
+
+        // a fraction of each page is read
+        Assert.assertTrue(read.get() < TestBurstSitemapCrawler.NUM_PHOTOS * page.length() / 4);
+    }
+
+    @Test
+    public void testAbandonedBodyDisconnects() throws IOException {
+        final String page = page(100 * 1024);
+        Map<String, String> headers = Collections.singletonMap("content-length", String.valueOf(page.length()));
+
+        // read to its end, the connection is kept for reuse
+        RecordingConnection connection = new RecordingConnection();
+        FetchResponse response = new FetchResponse(200, headers, new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), connection);
+        Streams.readFully(response.getBody());
+        response.close();
+        Assert.assertFalse(connection.disconnected);
+
+        // read through a gzip reader, which never sees the end of a chunked body
+        connection = new RecordingConnection();
+        response = new FetchResponse(200, null, new ByteArrayInputStream(gzip(page)), connection);
+        Assert.assertEquals(page, new String(Streams.readFully(Streams.decompressIfNeeded(response.getBody())), StandardCharsets.UTF_8));
+        response.close();
+        Assert.assertFalse(connection.disconnected);
+
+        // abandoned after the linked data, the connection is dropped
+        connection = new RecordingConnection();
+        response = new FetchResponse(200, headers, new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)), connection);
+        Assert.assertEquals(JSON, BurstPageExtractor.readLinkedDataBlock(response.getBody(), 1024 * 1024));
+        response.close();
+        Assert.assertTrue(connection.disconnected);
+    }
+
+    private static String page(int paddingBytes) {
+        return "<html><head><script>var s = '<script type=\"application/ld+json\">';</script>"
+                + "<script type=\"application/ld+json\">" + JSON + "</script></head><body><main><div class=\"photo__meta\">"
+                + "<a href=\"/tags/coffee\">coffee</a></div>" + padding(paddingBytes) + "</main></body></html>";
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(text.getBytes(StandardCharsets.UTF_8));
+        gzip.close();
+        return bytes.toByteArray();
+    }
+
+    private static String padding(int bytes) {
+        StringBuilder builder = new StringBuilder(bytes);
+        while (builder.length() < bytes) {
+            builder.append("<p>lorem ipsum</p>");
+        }
+
+        return builder.toString();
+    }
+
+    /**
+     * Counts the bytes read from the page.
+     */
+    private static class CountingStream extends InputStream {
+
+        private final InputStream stream;
+
+        final AtomicLong read;
+
+        CountingStream(String content) {
+            this(content, new AtomicLong());
+        }
+
+        CountingStream(String content, AtomicLong read) {
+            this.stream = new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+            this.read = read;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int value = this.stream.read();
+            if (value >= 0) {
+                this.read.incrementAndGet();
+            }
+
+            return value;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int count = this.stream.read(buffer, offset, length);
+            if (count > 0) {
+                this.read.addAndGet(count);
+            }
+
+            return count;
+        }
+
+    }
+
+    /**
+     * Connection that only records being disconnected
+     */
+    private static class RecordingConnection extends HttpURLConnection {
+
+        volatile boolean disconnected;
+
+        RecordingConnection() throws IOException {
+            super(new URL("https://burst.shopify.com/photos/pouring-hot-coffee"));
+        }
+
+        @Override
+        public void connect() {
+            // nothing to connect to
+        }
+
+        @Override
+        public void disconnect() {
+            this.disconnected = true;
+        }
+
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+
+    }
+
+}
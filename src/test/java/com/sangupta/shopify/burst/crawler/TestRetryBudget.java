@@ -0,0 +1,145 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestRetryBudget {
+
+    @Test
+    public void testBudget() {
+        RetryBudget budget = new RetryBudget(0.5);
+
+        // the initial burst
+        for (int index = 0; index < 10; index++) {
+            Assert.assertTrue(budget.tryRetry());
+        }
+
+        Assert.assertFalse(budget.tryRetry());
+
+        // one retry for every two requests
+        budget.onRequest();
+        Assert.assertFalse(budget.tryRetry());
+        budget.onRequest();
+        Assert.assertTrue(budget.tryRetry());
+        Assert.assertFalse(budget.tryRetry());
+    }
+
+    @Test
+    public void testRetriesTimeouts() {
+        final AtomicInteger requests = new AtomicInteger();
+        BurstCrawler crawler = newCrawler(new BurstCrawlerOptions().setRetryBackoffMillis(1), new FetchBackend() {
+
+            @Override
+            public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+                if (requests.incrementAndGet() < 3) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+
+                return new FetchResponse(200, null, new ByteArrayInputStream("<html></html>".getBytes("UTF-8")));
+            }
+        });
+
+        Assert.assertEquals("<html></html>", crawler.getHtml("https://burst.shopify.com/photos"));
+        Assert.assertEquals(3, requests.get());
+    }
+
+    @Test
+    public void testRetriesServerErrorsWithinLimits() {
+        final AtomicInteger requests = new AtomicInteger();
+        FetchBackend failing = new FetchBackend() {
+
+            @Override
+            public FetchResponse fetch(String url, Map<String, String> headers) {
+                requests.incrementAndGet();
+                return new FetchResponse(502, null, null);
+            }
+        };
+
+        BurstCrawler crawler = newCrawler(new BurstCrawlerOptions().setRetryBackoffMillis(0).setMaxRetries(2).setRetryBudgetRatio(0), failing);
+        Assert.assertNull(crawler.getHtml("https://burst.shopify.com/photos"));
+        Assert.assertEquals(3, requests.get());
+
+        // the initial burst of 10 retries is spent by now
+        for (int index = 0; index < 4; index++) {
+            crawler.getHtml("https://burst.shopify.com/photos");
+        }
+
+        requests.set(0);
+        Assert.assertNull(crawler.getHtml("https://burst.shopify.com/photos"));
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testWaitsForRetryAfter() {
+        final AtomicInteger requests = new AtomicInteger();
+        BurstCrawler crawler = newCrawler(new BurstCrawlerOptions().setRetryBackoffMillis(0), new FetchBackend() {
+
+            @Override
+            public FetchResponse fetch(String url, Map<String, String> headers) {
+                if (requests.incrementAndGet() == 1) {
+                    return new FetchResponse(503, Collections.singletonMap("retry-after", "1"), null);
+                }
+
+                return new FetchResponse(200, null, new ByteArrayInputStream("<html></html>".getBytes(StandardCharsets.UTF_8)));
+            }
+        });
+
+        long start = System.nanoTime();
+        Assert.assertEquals("<html></html>", crawler.getHtml("https://burst.shopify.com/photos"));
+        Assert.assertEquals(2, requests.get());
+        Assert.assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 1000);
+    }
+
+    @Test
+    public void testDoesNotRetryUnknownHost() {
+        final AtomicInteger requests = new AtomicInteger();
+        BurstCrawler crawler = newCrawler(new BurstCrawlerOptions().setRetryBackoffMillis(0), new FetchBackend() {
+
+            @Override
+            public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+                requests.incrementAndGet();
+                throw new UnknownHostException("burst.shopify.com");
+            }
+        });
+
+        Assert.assertNull(crawler.getHtml("https://burst.shopify.com/photos"));
+        Assert.assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void testMaxConnectionsNotSetUntilDirectFetch() {
+        String previous = System.clearProperty("http.maxConnections");
+        try {
+            newCrawler(new BurstCrawlerOptions().setMaxConnectionsPerHost(16), new FetchBackend() {
+
+                @Override
+                public FetchResponse fetch(String url, Map<String, String> headers) throws IOException {
+                    return new FetchResponse(200, new HashMap<String, String>(), new ByteArrayInputStream(new byte[0]));
+                }
+            }).getHtml("https://burst.shopify.com/photos");
+
+            new BurstCrawler(new BurstCrawlerOptions().setMaxConnectionsPerHost(16));
+            Assert.assertNull(System.getProperty("http.maxConnections"));
+        } finally {
+            if (previous != null) {
+                System.setProperty("http.maxConnections", previous);
+            }
+        }
+    }
+
+    private static BurstCrawler newCrawler(BurstCrawlerOptions options, FetchBackend backend) {
+        return new BurstCrawler(options.setFetchBackend(backend));
+    }
+
+}
@@ -0,0 +1,238 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestShardedCrawlCoordinator {
+    
+    private static final int LAST_PAGE = 7;
+    
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    
+    @Test
+    public void testShardedCrawl() throws Exception {
+        final ShardedCrawlCoordinator coordinator = newCoordinator(new AtomicBoolean(false));
+        Assert.assertEquals(3, coordinator.prepare());
+        
+        // two workers in parallel
+        final List<Integer> completed = Collections.synchronizedList(new ArrayList<Integer>());
+        List<Thread> threads = new ArrayList<>();
+        for (int index = 0; index < 2; index++) {
+            final String workerId = "worker-" + index;
+            Thread thread = new Thread(new Runnable() {
+                
+                @Override
+                public void run() {
+                    try {
+                        completed.add(coordinator.work(workerId));
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            
+            thread.start();
+            threads.add(thread);
+        }
+        
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        
+        Assert.assertEquals(3, completed.get(0) + completed.get(1));
+        Assert.assertTrue(coordinator.getLeases().isFinished());
+        
+        // pages overlap by two photos
+        Assert.assertEquals(LAST_PAGE * 10 + 2, coordinator.merge().size());
+    }
+    
+    @Test
+    public void testFailedShardIsReleased() throws Exception {
+        AtomicBoolean failPage = new AtomicBoolean(true);
+        ShardedCrawlCoordinator coordinator = newCoordinator(failPage);
+        coordinator.prepare();
+        
+        Assert.assertEquals(3, coordinator.work("worker"));
+        Assert.assertFalse(failPage.get());
+        
+        for (ShardLeaseFile.Shard shard : coordinator.getLeases().list()) {
+            Assert.assertEquals(ShardLeaseFile.State.DONE, shard.state);
+            Assert.assertEquals(shard.startPage == 4 ? 2 : 1, shard.attempts);
+        }
+        
+        Assert.assertEquals(LAST_PAGE * 10 + 2, coordinator.merge().size());
+    }
+    
+    @Test
+    public void testExpiredLease() throws Exception {
+        ShardLeaseFile leases = new ShardLeaseFile(new File(this.folder.getRoot(), "shards.lease"));
+        Assert.assertTrue(leases.create(1, 5, 10));
+        Assert.assertFalse(leases.create(1, 5, 10));
+        
+        ShardLeaseFile.Shard first = leases.acquire("a", 1, 2);
+        Assert.assertNotNull(first);
+        Thread.sleep(10);
+        
+        // expired, so leased again
+        ShardLeaseFile.Shard second = leases.acquire("b", 60000, 2);
+        Assert.assertEquals(first.id, second.id);
+        Assert.assertFalse(leases.complete(first));
+        Assert.assertTrue(leases.release(second));
+        
+        // attempts exhausted
+        Assert.assertNull(leases.acquire("c", 60000, 2));
+        Assert.assertEquals(ShardLeaseFile.State.FAILED, leases.list().get(0).state);
+        Assert.assertTrue(leases.isFinished());
+    }
+    
+    @Test
+    public void testLeaseRenewedWhileCrawling() throws Exception {
+        // a single shard crawled slower than its lease
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setPagesPerShard(10).setDelayBetweenPagesMillis(0).setShardLeaseMillis(100);
+        final ShardedCrawlCoordinator coordinator = newCoordinator(options, new AtomicBoolean(false), 50);
+        coordinator.prepare();
+        
+        Thread thread = new Thread(new Runnable() {
+            
+            @Override
+            public void run() {
+                try {
+                    coordinator.work("worker");
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        });
+        
+        thread.start();
+        Thread.sleep(250);
+        Assert.assertNull(coordinator.getLeases().acquire("other", 60000, 5));
+        thread.join();
+        
+        ShardLeaseFile.Shard shard = coordinator.getLeases().list().get(0);
+        Assert.assertEquals(ShardLeaseFile.State.DONE, shard.state);
+        Assert.assertEquals(1, shard.attempts);
+        Assert.assertEquals(LAST_PAGE * 10 + 2, coordinator.merge().size());
+    }
+    
+    @Test
+    public void testCommandLineCrawlerNeedsNoHttpService() throws Exception {
+        ShardedCrawlCoordinator coordinator = new ShardedCrawlCoordinator(this.folder.getRoot(), ShardedCrawlCoordinator.commandLineOptions()) {
+            
+            @Override
+            protected BurstCrawler newCrawler(BurstCrawlerOptions options) {
+                return new BurstCrawler(options) {
+                    
+                    @Override
+                    protected HttpURLConnection openConnection(String url) throws IOException {
+                        return new ListingConnection(url);
+                    }
+                };
+            }
+        };
+        
+        Assert.assertEquals(1, coordinator.prepare());
+        Assert.assertEquals(LAST_PAGE, coordinator.getLeases().list().get(0).endPage);
+    }
+    
+    private ShardedCrawlCoordinator newCoordinator(AtomicBoolean failPage) {
+        return newCoordinator(new BurstCrawlerOptions().setPagesPerShard(3).setDelayBetweenPagesMillis(0), failPage, 0);
+    }
+    
+    /**
+     * Create a coordinator whose crawlers serve generated listing pages, each
+     * after the given delay. Page <code>N</code> links photos <code>10N</code>
+     * to <code>10N + 11</code>. Page 5 fails once if asked to.
+     */
+    private ShardedCrawlCoordinator newCoordinator(BurstCrawlerOptions options, final AtomicBoolean failPage, final long delayMillis) {
+        return new ShardedCrawlCoordinator(this.folder.getRoot(), options) {
+            
+            @Override
+            protected BurstCrawler newCrawler(BurstCrawlerOptions options) {
+                BurstCrawler crawler = new BurstCrawler(options) {
+                    
+                    @Override
+                    protected String getHtml(String url) {
+                        int page = url.contains("page=") ? Integer.parseInt(url.substring(url.indexOf("page=") + 5)) : 1;
+                        if (page == 5 && failPage.compareAndSet(true, false)) {
+                            return null;
+                        }
+                        
+                        try {
+                            Thread.sleep(delayMillis);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        
+                        return listing(page);
+                    }
+                };
+                
+                crawler.setHttpService(new TestBurstSitemapCrawler.FakeSitemapHttpService());
+                return crawler;
+            }
+        };
+    }
+    
+    private static String listing(int page) {
+        StringBuilder builder = new StringBuilder("<html><body><main>");
+        for (int index = 0; index < 12; index++) {
+            builder.append("<a class=\"photo-tile__image-wrapper\" href=\"/photos/photo-").append(page * 10 + index).append("\"></a>");
+        }
+        
+        builder.append("<span class=\"last\"><a href=\"/photos?page=").append(LAST_PAGE).append("&amp;sort=latest\">Last</a></span>");
+        return builder.append("</main></body></html>").toString();
+    }
+    
+    /**
+     * Connection serving the first listing page
+     */
+    private static class ListingConnection extends HttpURLConnection {
+        
+        ListingConnection(String url) throws IOException {
+            super(new URL(url));
+        }
+        
+        @Override
+        public int getResponseCode() {
+            return HTTP_OK;
+        }
+        
+        @Override
+        public InputStream getInputStream() {
+            return new ByteArrayInputStream(listing(1).getBytes(StandardCharsets.UTF_8));
+        }
+        
+        @Override
+        public void connect() {
+            // nothing to connect to
+        }
+        
+        @Override
+        public void disconnect() {
+            // nothing to disconnect
+        }
+        
+        @Override
+        public boolean usingProxy() {
+            return false;
+        }
+        
+    }
+
+}
@@ -0,0 +1,96 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestSitemapReader {
+    
+    private static final String SITEMAP = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<urlset xmlns=\"http://www.sitemaps.org/schemas/sitemap/0.9\" xmlns:image=\"http://www.google.com/schemas/sitemap-image/1.1\">\n"
+            + "  <url><loc>https://burst.shopify.com/photos/one</loc><lastmod>2019-03-10</lastmod>"
+            + "<image:image><image:loc>https://burst.shopifycdn.com/photos/one.jpg</image:loc></image:image></url>\n"
+            + "  <!-- <url><loc>https://burst.shopify.com/photos/commented</loc></url> -->\n"
+            + "  <url><loc><![CDATA[ https://burst.shopify.com/photos/two?a=1]]>&amp;b=2 </loc></url>\n"
+            + "</urlset>";
+    
+    @Test
+    public void testPlain() throws IOException {
+        assertEntries(new SitemapReader(new ByteArrayInputStream(SITEMAP.getBytes("UTF-8"))));
+    }
+    
+    @Test
+    public void testGzipped() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(SITEMAP.getBytes("UTF-8"));
+        gzip.close();
+        
+        assertEntries(new SitemapReader(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+    
+    @Test
+    public void testShortReads() throws IOException {
+        for (int chunk : new int[] { 1, 7 }) {
+            assertEntries(new SitemapReader(new ChunkedInputStream(SITEMAP.getBytes("UTF-8"), chunk)));
+        }
+    }
+    
+    @Test
+    public void testMalformed() throws IOException {
+        SitemapReader reader = new SitemapReader(new ByteArrayInputStream("<urlset><url><loc>https://burst.shopify.com/photos/one</loc></url><url><loc>".getBytes("UTF-8")));
+        
+        Assert.assertTrue(reader.hasNext());
+        Assert.assertEquals("https://burst.shopify.com/photos/one", reader.next().loc);
+        Assert.assertFalse(reader.hasNext());
+        reader.close();
+    }
+    
+    private void assertEntries(SitemapReader reader) throws IOException {
+        try {
+            Assert.assertTrue(reader.hasNext());
+            SitemapEntry entry = reader.next();
+            Assert.assertEquals("https://burst.shopify.com/photos/one", entry.loc);
+            Assert.assertEquals("2019-03-10", entry.lastmod);
+            
+            Assert.assertTrue(reader.hasNext());
+            entry = reader.next();
+            Assert.assertEquals("https://burst.shopify.com/photos/two?a=1&b=2", entry.loc);
+            Assert.assertNull(entry.lastmod);
+            
+            Assert.assertFalse(reader.hasNext());
+        } finally {
+            reader.close();
+        }
+    }
+    
+    /**
+     * Returns at most a few bytes per read, as a network socket may
+     */
+    private static class ChunkedInputStream extends ByteArrayInputStream {
+        
+        private final int chunk;
+        
+        ChunkedInputStream(byte[] bytes, int chunk) {
+            super(bytes);
+            this.chunk = chunk;
+        }
+        
+        @Override
+        public synchronized int read(byte[] bytes, int offset, int length) {
+            return super.read(bytes, offset, Math.min(length, this.chunk));
+        }
+        
+        @Override
+        public synchronized int available() {
+            // keep buffering readers from coalescing reads
+            return 0;
+        }
+        
+    }
+
+}
@@ -0,0 +1,50 @@
+package com.sangupta.shopify.burst.crawler;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class TestStringInterner {
+    
+    @Test
+    public void testImagesShareValues() {
+        StringInterner interner = new StringInterner();
+        
+        BurstImage first = image();
+        BurstImage second = image();
+        Assert.assertNotSame(first.author, second.author);
+        
+        interner.intern(first);
+        interner.intern(second);
+        
+        Assert.assertSame(first.author, second.author);
+        Assert.assertSame(first.licenseUrl, second.licenseUrl);
+        Assert.assertSame(first.tags.get(1), second.tags.get(1));
+        Assert.assertNull(second.authorUrl);
+        Assert.assertEquals(4, interner.size());
+    }
+    
+    @Test
+    public void testMaxSize() {
+        StringInterner interner = new StringInterner(1);
+        
+        String first = new String("first");
+        Assert.assertSame(first, interner.intern(first));
+        Assert.assertSame(first, interner.intern(new String("first")));
+        
+        // full, returned as is
+        String second = new String("second");
+        Assert.assertSame(second, interner.intern(second));
+        Assert.assertNotSame(second, interner.intern(new String("second")));
+        Assert.assertEquals(1, interner.size());
+    }
+    
+    private static BurstImage image() {
+        BurstImage image = new BurstImage();
+        image.author = new String("Sarah Pflug");
+        image.licenseUrl = new String("https://burst.shopify.com/licenses/shopify-some-rights-reserved");
+        image.tags.add(new String("coffee"));
+        image.tags.add(new String("morning"));
+        return image;
+    }
+    
+}
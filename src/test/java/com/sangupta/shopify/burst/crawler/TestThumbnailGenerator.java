@@ -0,0 +1,87 @@
+package com.sangupta.shopify.burst.crawler;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import javax.imageio.ImageIO;
+
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class TestThumbnailGenerator {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testGeneratesDerivatives() throws IOException {
+        File large = this.image("large.png", 2000, 1000);
+        File small = this.image("small.png", 80, 40);
+
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setThumbnailSizes(100, 500).setThumbnailWorkers(2);
+        ThumbnailGenerator generator = new ThumbnailGenerator(this.folder.newFolder("thumbnails"), options);
+        generator.consume(downloaded(large));
+        generator.consume(downloaded(small));
+        generator.close();
+
+        Assert.assertEquals(2, generator.getGenerated());
+        assertSize(generator.getFile(large, 500), 500, 250);
+        assertSize(generator.getFile(large, 100), 100, 50);
+
+        // never scaled up
+        assertSize(generator.getFile(small, 500), 80, 40);
+        assertSize(generator.getFile(small, 100), 80, 40);
+        Assert.assertEquals("large.jpg", generator.getFile(large, 100).getName());
+    }
+
+    @Test
+    public void testSkipsExistingAndReportsFailures() throws IOException {
+        File image = this.image("photo.png", 300, 200);
+        File broken = this.folder.newFile("broken.jpg");
+        Files.write(broken.toPath(), "not an image".getBytes("UTF-8"));
+
+        File thumbnails = this.folder.newFolder("thumbnails");
+        BurstCrawlerOptions options = new BurstCrawlerOptions().setThumbnailSizes(50);
+        ThumbnailGenerator generator = new ThumbnailGenerator(thumbnails, options);
+        generator.consume(downloaded(image));
+        generator.close();
+
+        generator = new ThumbnailGenerator(thumbnails, options);
+        generator.consume(downloaded(image));
+        generator.consume(downloaded(broken));
+        generator.close();
+
+        Assert.assertEquals(0, generator.getGenerated());
+        Assert.assertEquals(1, generator.getSkipped());
+        Assert.assertEquals("unsupported-format", generator.getFailures().get(broken.getAbsolutePath()));
+    }
+
+    @Test
+    public void testScaleHalvesFirst() {
+        BufferedImage scaled = ThumbnailGenerator.scale(new BufferedImage(1000, 600, BufferedImage.TYPE_INT_ARGB), 120);
+        Assert.assertEquals(120, scaled.getWidth());
+        Assert.assertEquals(72, scaled.getHeight());
+        Assert.assertEquals(BufferedImage.TYPE_INT_RGB, scaled.getType());
+    }
+
+    private File image(String name, int width, int height) throws IOException {
+        File file = new File(this.folder.getRoot(), name);
+        ImageIO.write(new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB), "png", file);
+        return file;
+    }
+
+    private static DownloadedImage downloaded(File file) {
+        return new DownloadedImage(new BurstImage(), file, file.length(), null, null);
+    }
+
+    private static void assertSize(File file, int width, int height) throws IOException {
+        BufferedImage image = ImageIO.read(file);
+        Assert.assertEquals(width, image.getWidth());
+        Assert.assertEquals(height, image.getHeight());
+    }
+
+}